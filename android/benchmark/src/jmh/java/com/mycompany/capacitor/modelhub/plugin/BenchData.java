@@ -0,0 +1,190 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic inputs shared by the benchmarks. Payloads are half random (incompressible, like
+ * quantized weights) and half repeated bytes, so deflate has something to do.
+ */
+final class BenchData {
+
+    static final String PASSWORD = "bench";
+
+    /**
+     * Throughput in bytes: JMH reports an {@code OPERATIONS} aux counter per second, so the
+     * {@code bytes} column reads as B/s next to the op/s of the benchmark itself.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    /**
+     * {@link BufferPool} activity per iteration: new buffers, reuses, and allocations past the
+     * budget. The pools are process-wide, so each thread reports its share of the global delta and
+     * JMH's sum across threads comes out right.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Pool {
+        public long bufferAllocs;
+        public long bufferReuses;
+        public long bufferOverflows;
+
+        private int threads;
+        private long allocs0;
+        private long reuses0;
+        private long overflows0;
+
+        @Setup(Level.Iteration)
+        public void reset(ThreadParams tp) {
+            threads = tp.getThreadCount();
+            allocs0 = allocs();
+            reuses0 = reuses();
+            overflows0 = overflows();
+        }
+
+        /** Call at the end of each op; assigns, so the last call of the iteration wins. */
+        void sample() {
+            bufferAllocs = (allocs() - allocs0) / threads;
+            bufferReuses = (reuses() - reuses0) / threads;
+            bufferOverflows = (overflows() - overflows0) / threads;
+        }
+
+        private static long allocs() {
+            return BufferPool.direct().allocations() + BufferPool.heap().allocations();
+        }
+
+        private static long reuses() {
+            return BufferPool.direct().reuses() + BufferPool.heap().reuses();
+        }
+
+        private static long overflows() {
+            return BufferPool.direct().overflows() + BufferPool.heap().overflows();
+        }
+    }
+
+    private BenchData() {
+    }
+
+    static File tempDir(String prefix) throws IOException {
+        File d = Files.createTempDirectory("modelhub-" + prefix).toFile();
+        d.deleteOnExit();
+        return d;
+    }
+
+    static byte[] payload(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        Arrays.fill(b, size / 2, size, (byte) seed);
+        return b;
+    }
+
+    static File file(File dir, String name, int size) throws IOException {
+        File f = new File(dir, name);
+        // noinspection ResultOfMethodCallIgnored
+        f.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(f)) {
+            os.write(payload(size, size));
+        }
+        return f;
+    }
+
+    /**
+     * @param layout {@code <entries>x<size>}, size with {@code k} / {@code m} suffix, e.g. {@code 16x4m}
+     * @param aes    AES-256 encrypted (what the plugin ships) or plain deflate
+     */
+    static File zip(File dir, String layout, boolean aes) throws IOException {
+        File out = new File(dir, layout + (aes ? "-aes" : "-plain") + ".zip");
+        if (out.isFile())
+            return out;
+        int entries = Integer.parseInt(layout.substring(0, layout.indexOf('x')));
+        int size = parseSize(layout.substring(layout.indexOf('x') + 1));
+        try (ZipFile zf = new ZipFile(out, PASSWORD.toCharArray())) {
+            for (int i = 0; i < entries; i++) {
+                ZipParameters p = new ZipParameters();
+                p.setFileNameInZip((i % 4 == 0 ? "" : "shard" + (i % 4) + "/") + "w" + i + ".bin");
+                p.setCompressionMethod(CompressionMethod.DEFLATE);
+                if (aes) {
+                    p.setEncryptFiles(true);
+                    p.setEncryptionMethod(EncryptionMethod.AES);
+                    p.setAesKeyStrength(AesKeyStrength.KEY_STRENGTH_256);
+                }
+                zf.addStream(new ByteArrayInputStream(payload(size, i)), p);
+            }
+        }
+        return out;
+    }
+
+    static long uncompressedSize(String layout) {
+        int entries = Integer.parseInt(layout.substring(0, layout.indexOf('x')));
+        return (long) entries * parseSize(layout.substring(layout.indexOf('x') + 1));
+    }
+
+    /** A root whose {@code state.json} holds {@code n} records shaped like real installs. */
+    static File stateRoot(int n) throws Exception {
+        File root = tempDir("state" + n);
+        StateStore s = new StateStore(root);
+        for (int i = 0; i < n; i++)
+            s.put("model-" + i, record(i));
+        s.flush();
+        return root;
+    }
+
+    static JSONObject record(int i) throws Exception {
+        return new JSONObject()
+                .put("installedVersion", "1." + i)
+                .put("sha256", Hashes.toHex(payload(32, i)))
+                .put("zipSize", 100_000_000L + i)
+                .put("unpackTo", "models/model-" + i)
+                .put("installedAt", 1_700_000_000_000L + i)
+                .put("lastAccess", 1_700_000_000_000L + i)
+                .put("usage", 200_000_000L + i)
+                .put("pinned", false);
+    }
+
+    static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null)
+            for (File c : children)
+                deleteRecursively(c);
+        // noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+
+    private static int parseSize(String s) {
+        char unit = s.charAt(s.length() - 1);
+        if (unit == 'k')
+            return Integer.parseInt(s.substring(0, s.length() - 1)) * 1024;
+        if (unit == 'm')
+            return Integer.parseInt(s.substring(0, s.length() - 1)) * 1024 * 1024;
+        return Integer.parseInt(s);
+    }
+}
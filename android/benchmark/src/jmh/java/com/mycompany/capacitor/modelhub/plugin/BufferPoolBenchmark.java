@@ -0,0 +1,78 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copy and hash loops running side by side, as under parallel installs. Besides throughput and
+ * {@code gc.alloc.rate.norm}, reports how many {@link BufferPool} buffers were allocated vs reused
+ * ({@code bufferAllocs} / {@code bufferReuses} / {@code bufferOverflows}); steady state should show
+ * reuses only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+public class BufferPoolBenchmark {
+
+    @Param({ "1", "16" })
+    public int sizeMb;
+
+    private File dir;
+    private File file;
+    private byte[] data;
+    private final AtomicInteger ids = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Out {
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp(BufferPoolBenchmark b) {
+            file = new File(b.dir, "out-" + b.ids.incrementAndGet() + ".bin");
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchData.tempDir("pool");
+        data = BenchData.payload(sizeMb * 1024 * 1024, sizeMb);
+        file = BenchData.file(dir, "in.bin", data.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchData.deleteRecursively(dir);
+    }
+
+    /** The bundled-asset path: stream → heap pool buffer → file. */
+    @Benchmark
+    public void copyToFile(Out out, BenchData.Bytes b, BenchData.Pool p) throws Exception {
+        ModelInstaller.copyToFile(new ByteArrayInputStream(data), out.file);
+        b.bytes += data.length;
+        p.sample();
+    }
+
+    /** Zip verify: FileChannel → direct pool buffer → digest. */
+    @Benchmark
+    public String sha256File(BenchData.Bytes b, BenchData.Pool p) throws Exception {
+        String h = Hashes.sha256File(file);
+        b.bytes += data.length;
+        p.sample();
+        return h;
+    }
+}
@@ -0,0 +1,147 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup {@code check} over 40+ installed models. {@code perFileScan} is the path check() took
+ * before install fingerprints: an asset open/close per key to see whether a bundle exists, then
+ * exists/isFile/length on every checkFile. {@code fingerprint} is the fast path on its own (index
+ * lookup plus one root-dir stat); {@code check} and {@code checkDeep} go through
+ * {@link ModelInstaller#check} end to end, JSON results included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CheckBenchmark {
+
+    private static final int FILES = 12;
+    private static final int CHECK_FILES = 4;
+
+    @Param({ "40", "200" })
+    public int models;
+
+    private File dir;
+    private File root;
+    private File bundled;
+    private JSONArray items;
+    private JSONObject[] fingerprints;
+    private AssetSource assets;
+    private Map<String, Long> index;
+    private ModelInstaller installer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchData.tempDir("check");
+        root = new File(dir, "models");
+        bundled = new File(dir, "assets");
+        // noinspection ResultOfMethodCallIgnored
+        bundled.mkdirs();
+        assets = new DirectoryAssetSource(bundled);
+        index = new HashMap<>();
+        items = new JSONArray();
+        fingerprints = new JSONObject[models];
+        StateStore state = StateStore.get(root);
+        for (int m = 0; m < models; m++) {
+            String key = "model-" + m;
+            File installed = new File(root, "m/" + key);
+            JSONArray checkFiles = new JSONArray();
+            for (int i = 0; i < FILES; i++) {
+                String rel = (i % 3 == 0 ? "" : "shard" + (i % 3) + "/") + "w" + i + ".bin";
+                BenchData.file(installed, rel, 64);
+                if (i < CHECK_FILES)
+                    checkFiles.put(rel);
+            }
+            // 一半模型随包带 zip
+            if (m % 2 == 0)
+                index.put(key, BenchData.file(bundled, key + ".zip", 64).length());
+            fingerprints[m] = InstallFingerprint.capture(installed, checkFiles);
+            state.put(key, BenchData.record(m).put("unpackTo", "m/" + key).put("fingerprint", fingerprints[m]));
+            items.put(new JSONObject().put("key", key).put("unpackTo", "m/" + key).put("checkFiles", checkFiles));
+        }
+        state.flush();
+        installer = new ModelInstaller(new LocalFsRoot(root), assets, (url, range) -> {
+            throw new IOException("offline");
+        }, null, new ModelInstaller.Options());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        installer.shutdown();
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int perFileScan() {
+        int installed = 0;
+        for (int m = 0; m < models; m++) {
+            JSONObject it = items.optJSONObject(m);
+            String key = it.optString("key");
+            boolean hasBundled;
+            try (InputStream in = assets.open(key)) {
+                hasBundled = in != null;
+            } catch (Exception e) {
+                hasBundled = false;
+            }
+            if (scan(new File(root, it.optString("unpackTo")), it.optJSONArray("checkFiles")) && hasBundled)
+                installed++;
+        }
+        return installed;
+    }
+
+    @Benchmark
+    public int fingerprint() {
+        int installed = 0;
+        for (int m = 0; m < models; m++) {
+            JSONObject it = items.optJSONObject(m);
+            boolean hasBundled = index.containsKey(it.optString("key"));
+            if (InstallFingerprint.matchesFast(fingerprints[m], new File(root, it.optString("unpackTo")),
+                    it.optJSONArray("checkFiles")) && hasBundled)
+                installed++;
+        }
+        return installed;
+    }
+
+    @Benchmark
+    public JSONObject check() throws Exception {
+        return installer.check(items, false);
+    }
+
+    @Benchmark
+    public JSONObject checkDeep() throws Exception {
+        return installer.check(items, true);
+    }
+
+    // 改成 fingerprint 之前 checkInstalled 的做法
+    private static boolean scan(File dir, JSONArray checkFiles) {
+        if (!dir.exists() || !dir.isDirectory())
+            return false;
+        if (new File(dir, PackFile.NAME).isFile())
+            return false;
+        for (int i = 0; i < checkFiles.length(); i++) {
+            File f = new File(dir, checkFiles.optString(i, ""));
+            if (!f.exists())
+                return false;
+            if (f.isFile() && f.length() < 16)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/** The cross-filesystem promote fallback ({@link StorageManager#copyDir}). */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CopyDirBenchmark {
+
+    @Param({ "1x64m", "16x4m", "1024x64k" })
+    public String layout;
+
+    private File src;
+    private File dst;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File dir = BenchData.tempDir("copy");
+        src = new File(dir, "src");
+        dst = new File(dir, "dst");
+        int entries = Integer.parseInt(layout.substring(0, layout.indexOf('x')));
+        int size = (int) (BenchData.uncompressedSize(layout) / entries);
+        for (int i = 0; i < entries; i++)
+            BenchData.file(src, (i % 4 == 0 ? "" : "shard" + (i % 4) + "/") + "w" + i + ".bin", size);
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanDst() {
+        BenchData.deleteRecursively(dst);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchData.deleteRecursively(src.getParentFile());
+    }
+
+    @Benchmark
+    public void copyDir(BenchData.Bytes b) throws Exception {
+        StorageManager.copyDir(src, dst);
+        b.bytes += BenchData.uncompressedSize(layout);
+    }
+}
@@ -0,0 +1,97 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Reading an installed file through {@link ModelChannel}: plaintext against {@code encryptAtRest}
+ * (per-chunk AES-GCM), sequentially as a loader would and as small random reads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class EncryptedReadBenchmark {
+
+    @Param({ "64" })
+    public int sizeMb;
+
+    @Param({ "false", "true" })
+    public boolean encrypted;
+
+    private final SecretKey key = new SecretKeySpec(BenchData.payload(32, 7), "AES");
+    private final ByteBuffer buf = ByteBuffer.allocate(256 * 1024);
+    private final ByteBuffer small = ByteBuffer.allocate(4096);
+    private final Random rnd = new Random(1);
+    private File dir;
+    private File file;
+    private long size;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchData.tempDir("enc");
+        File plain = BenchData.file(dir, "plain.bin", sizeMb * 1024 * 1024);
+        size = plain.length();
+        if (!encrypted) {
+            file = plain;
+            return;
+        }
+        file = new File(dir, "enc.bin");
+        byte[] data = BenchData.payload((int) size, size);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            EncryptedFile.Writer w = new EncryptedFile.Writer(raf.getChannel(), key,
+                    EncryptedFile.DEFAULT_CHUNK_SIZE);
+            w.write(data, 0, data.length);
+            w.finish();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public long sequential(BenchData.Bytes b) throws Exception {
+        long total = 0;
+        try (ModelChannel ch = ModelChannel.open(file, encrypted ? key : null)) {
+            int n;
+            buf.clear();
+            while ((n = ch.read(buf)) > 0) {
+                total += n;
+                buf.clear();
+            }
+        }
+        b.bytes += total;
+        return total;
+    }
+
+    @Benchmark
+    public long random4k(BenchData.Bytes b) throws Exception {
+        long total = 0;
+        try (ModelChannel ch = ModelChannel.open(file, encrypted ? key : null)) {
+            for (int i = 0; i < 256; i++) {
+                small.clear();
+                total += ch.read(small, (long) (rnd.nextDouble() * (size - small.capacity())));
+            }
+        }
+        b.bytes += total;
+        return total;
+    }
+}
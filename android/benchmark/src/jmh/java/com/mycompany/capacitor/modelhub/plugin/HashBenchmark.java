@@ -0,0 +1,81 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/** Whole-file sha256 (zip verify), the hex encoder and the chunked integrity verify. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    @Param({ "1", "64", "256" })
+    public int sizeMb;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    private File dir;
+    private File file;
+    private IntegrityManifest manifest;
+    private final byte[] digest = BenchData.payload(32, 1);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchData.tempDir("hash");
+        // 4 个分片，让多线程校验有活可分
+        JSONArray files = new JSONArray();
+        for (int i = 0; i < 4; i++) {
+            File f = BenchData.file(dir, "w" + i + ".bin", sizeMb * 1024 * 1024 / 4);
+            files.put(new JSONObject().put("path", f.getName()).put("size", f.length())
+                    .put("sha256", Hashes.sha256File(f)));
+        }
+        file = new File(dir, "w0.bin");
+        manifest = IntegrityManifest.parse(new JSONObject().put("files", files));
+        // 第一次完整校验补齐分块哈希，后面测的是分块并行路径
+        IntegrityVerifier.verify(manifest, dir, true, threads, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public String sha256File(BenchData.Bytes b) throws Exception {
+        b.bytes += file.length();
+        return Hashes.sha256File(file);
+    }
+
+    @Benchmark
+    public String toHex() {
+        return Hashes.toHex(digest);
+    }
+
+    @Benchmark
+    public Object integrityFull(BenchData.Bytes b) throws Exception {
+        IntegrityVerifier.Result r = IntegrityVerifier.verify(manifest, dir, true, threads, null);
+        b.bytes += r.bytes;
+        return r;
+    }
+
+    @Benchmark
+    public Object integritySample(BenchData.Bytes b) throws Exception {
+        IntegrityVerifier.Result r = IntegrityVerifier.verify(manifest, dir, false, threads, null);
+        b.bytes += r.bytes;
+        return r;
+    }
+}
@@ -0,0 +1,69 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code state.json} costs at 10 to 10,000 records: cold load (plugin start), a record write
+ * (journal append, what every install and throttled access does), snapshot (getUsage / eviction)
+ * and a full compaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class StateStoreBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int records;
+
+    private File root;
+    private StateStore store;
+    private JSONObject rec;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = BenchData.stateRoot(records);
+        store = new StateStore(root);
+        rec = BenchData.record(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.flush();
+        BenchData.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public StateStore load() {
+        return new StateStore(root);
+    }
+
+    @Benchmark
+    public void put() {
+        store.put("model-" + (next++ % records), rec);
+    }
+
+    @Benchmark
+    public Map<String, JSONObject> snapshot() {
+        return store.snapshot();
+    }
+
+    @Benchmark
+    public void compact() {
+        store.flush();
+    }
+}
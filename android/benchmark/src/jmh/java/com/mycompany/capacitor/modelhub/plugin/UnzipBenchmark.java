@@ -0,0 +1,88 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import net.lingala.zip4j.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction paths over the same archives: zip4j {@code extractAll} (unpackThreads=1),
+ * {@link ParallelUnzipper} and the single-pass {@link StreamingZipInstaller}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class UnzipBenchmark {
+
+    // 一个大文件 / 若干分片 / 大量小文件
+    @Param({ "1x64m", "16x4m", "1024x64k" })
+    public String layout;
+
+    @Param({ "true", "false" })
+    public boolean aes;
+
+    private File dir;
+    private File zip;
+    private File out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchData.tempDir("unzip");
+        zip = BenchData.zip(dir, layout, aes);
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanOut() {
+        out = new File(dir, "out");
+        BenchData.deleteRecursively(out);
+        // noinspection ResultOfMethodCallIgnored
+        out.mkdirs();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void extractAll(BenchData.Bytes b) throws Exception {
+        new ZipFile(zip, BenchData.PASSWORD.toCharArray()).extractAll(out.getAbsolutePath());
+        b.bytes += BenchData.uncompressedSize(layout);
+    }
+
+    @Benchmark
+    public Object parallel2(BenchData.Bytes b) throws Exception {
+        ParallelUnzipper.Result r = ParallelUnzipper.extract(zip, out, BenchData.PASSWORD, 2, null);
+        b.bytes += r.bytes;
+        return r;
+    }
+
+    @Benchmark
+    public Object parallel4(BenchData.Bytes b) throws Exception {
+        ParallelUnzipper.Result r = ParallelUnzipper.extract(zip, out, BenchData.PASSWORD, 4, null);
+        b.bytes += r.bytes;
+        return r;
+    }
+
+    @Benchmark
+    public Object streaming(BenchData.Bytes b) throws Exception {
+        try (InputStream in = new FileInputStream(zip)) {
+            StreamingZipInstaller.Result r = StreamingZipInstaller.install(in, out, BenchData.PASSWORD, null, null);
+            b.bytes += BenchData.uncompressedSize(layout);
+            return r;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bundled-model paths that need a real APK: the {@code copyAssetZipToTmp} copy, the single-pass
+ * install straight from the APK ({@code openFd} + offset reads) and the compressed-asset stream.
+ * Assets are generated by {@code generateBenchAssets}; sizes are in the name, so MB/s is size over
+ * the reported median time.
+ */
+@RunWith(Parameterized.class)
+public class AssetInstallBenchmark {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> assets() {
+        return Arrays.asList(new Object[][] {
+                { "bench_1x16m_stored" }, { "bench_1x16m_deflated" },
+                { "bench_64x256k_stored" }, { "bench_64x256k_deflated" },
+        });
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final String key;
+    private Context ctx;
+    private File work;
+
+    public AssetInstallBenchmark(String key) {
+        this.key = key;
+    }
+
+    @Before
+    public void setUp() {
+        ctx = InstrumentationRegistry.getInstrumentation().getContext();
+        work = new File(ctx.getCacheDir(), "bench-" + key);
+        DeltaUpdater.deleteRecursively(work);
+        // noinspection ResultOfMethodCallIgnored
+        work.mkdirs();
+    }
+
+    private String assetPath() {
+        return AssetIndex.DIR + "/" + key + ".zip";
+    }
+
+    @Test
+    public void copyAssetZipToTmp() throws Exception {
+        File out = new File(work, key + ".zip");
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            try (InputStream in = ctx.getAssets().open(assetPath(), AssetManager.ACCESS_STREAMING)) {
+                ModelInstaller.copyToFile(in, out);
+            }
+        }
+    }
+
+    @Test
+    public void sha256OfCopiedZip() throws Exception {
+        File out = new File(work, key + ".zip");
+        try (InputStream in = ctx.getAssets().open(assetPath(), AssetManager.ACCESS_STREAMING)) {
+            ModelInstaller.copyToFile(in, out);
+        }
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning())
+            Hashes.sha256File(out);
+    }
+
+    @Test
+    public void streamingInstallFromApk() throws Exception {
+        File dir = new File(work, "unpack");
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            DeltaUpdater.deleteRecursively(dir);
+            // noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+            state.resumeTiming();
+            // 与 installFromAsset 相同：未压缩走 openFd 偏移读，压缩的走 AssetManager 流
+            if (key.endsWith("_stored")) {
+                try (AssetFileDescriptor afd = ctx.getAssets().openFd(assetPath());
+                        FileInputStream apk = new FileInputStream(afd.getFileDescriptor())) {
+                    InputStream in = new ChannelRangeInputStream(apk.getChannel(), afd.getStartOffset(),
+                            afd.getLength(), 1024 * 1024);
+                    StreamingZipInstaller.install(in, dir, "", new AndroidFsRoot(work), null);
+                }
+            } else {
+                try (InputStream in = ctx.getAssets().open(assetPath(), AssetManager.ACCESS_STREAMING)) {
+                    StreamingZipInstaller.install(in, dir, "", new AndroidFsRoot(work), null);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void centralDirectoryFromApk() throws Exception {
+        if (!key.endsWith("_stored"))
+            return;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            try (AssetFileDescriptor afd = ctx.getAssets().openFd(assetPath());
+                    FileInputStream apk = new FileInputStream(afd.getFileDescriptor())) {
+                ZipCentralDirectory.read(
+                        ZipCentralDirectory.of(apk.getChannel(), afd.getStartOffset(), afd.getLength()));
+            }
+        }
+    }
+}
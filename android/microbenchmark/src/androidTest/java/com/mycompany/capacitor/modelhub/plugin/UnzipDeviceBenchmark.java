@@ -0,0 +1,119 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Staged-zip extraction on device storage (AES archives generated into the cache dir once), and
+ * the cost of {@code posix_fallocate} preallocation versus a sparse {@code setLength}.
+ */
+@RunWith(Parameterized.class)
+public class UnzipDeviceBenchmark {
+
+    private static final String PASSWORD = "bench";
+
+    @Parameterized.Parameters(name = "{0}x{1}")
+    public static List<Object[]> layouts() {
+        return Arrays.asList(new Object[][] { { 1, 32 << 20 }, { 8, 4 << 20 }, { 256, 64 << 10 } });
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int entries;
+    private final int size;
+    private File work;
+    private File zip;
+    private FsRoot fs; // 真正的 posix_fallocate / link
+
+    public UnzipDeviceBenchmark(int entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getContext();
+        work = new File(ctx.getCacheDir(), "bench-unzip-" + entries + "x" + size);
+        // noinspection ResultOfMethodCallIgnored
+        work.mkdirs();
+        fs = new AndroidFsRoot(work);
+        zip = new File(work, "m.zip");
+        if (zip.isFile())
+            return;
+        try (ZipFile zf = new ZipFile(zip, PASSWORD.toCharArray())) {
+            Random rnd = new Random(entries);
+            for (int i = 0; i < entries; i++) {
+                byte[] data = new byte[size];
+                rnd.nextBytes(data);
+                Arrays.fill(data, size / 2, size, (byte) i);
+                ZipParameters p = new ZipParameters();
+                p.setFileNameInZip("w" + i + ".bin");
+                p.setEncryptFiles(true);
+                p.setEncryptionMethod(EncryptionMethod.AES);
+                p.setAesKeyStrength(AesKeyStrength.KEY_STRENGTH_256);
+                zf.addStream(new ByteArrayInputStream(data), p);
+            }
+        }
+    }
+
+    private File cleanOut(BenchmarkState state) {
+        state.pauseTiming();
+        File out = new File(work, "out");
+        DeltaUpdater.deleteRecursively(out);
+        // noinspection ResultOfMethodCallIgnored
+        out.mkdirs();
+        state.resumeTiming();
+        return out;
+    }
+
+    @Test
+    public void extractAll() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning())
+            new ZipFile(zip, PASSWORD.toCharArray()).extractAll(cleanOut(state).getAbsolutePath());
+    }
+
+    @Test
+    public void parallelDefaultThreads() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning())
+            ParallelUnzipper.extract(zip, cleanOut(state), PASSWORD, ParallelUnzipper.defaultThreads(), fs);
+    }
+
+    @Test
+    public void preallocate() throws Exception {
+        File f = new File(work, "prealloc.bin");
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            // noinspection ResultOfMethodCallIgnored
+            f.delete();
+            state.resumeTiming();
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                StorageManager.preallocate(fs, raf, (long) entries * size);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Model zips shipped with the app, by key. On Android these are {@code assets/models/<key>.zip};
+ * {@link DirectoryAssetSource} serves {@code <dir>/<key>.zip} for a plain JVM.
+ */
+public interface AssetSource {
+
+    /** @return size of the bundled zip, or -1 if there is none for {@code key} */
+    long size(String key);
+
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Positional access to the zip when it sits uncompressed in some file (the APK for a
+     * non-compressed asset), so it can be read without a stream and its central directory peeked.
+     *
+     * @return null if the asset is only available as a stream
+     */
+    Region openRegion(String key) throws IOException;
+
+    /** {@code [offset, offset + length)} of {@code channel}; closing releases the underlying file. */
+    final class Region implements Closeable {
+        public final FileChannel channel;
+        public final long offset;
+        public final long length;
+        private final Closeable owner;
+
+        public Region(FileChannel channel, long offset, long length, Closeable owner) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+            this.owner = owner;
+        }
+
+        @Override
+        public void close() throws IOException {
+            owner.close();
+        }
+    }
+}
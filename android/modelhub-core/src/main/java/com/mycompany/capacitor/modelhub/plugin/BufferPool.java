@@ -0,0 +1,146 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Process-wide I/O buffers for the copy, hash and download loops, so parallel installs share a
+ * bounded set instead of each allocating a fresh megabyte per call.
+ *
+ * <p>Two pools: {@link #direct()} for loops that stay inside NIO channels (file → digest, file →
+ * file), where a direct buffer saves the kernel-to-heap copy, and {@link #heap()} for loops that
+ * must hand a {@code byte[]} to a stream API (HTTP bodies, zip4j, assets). Each keeps at most
+ * {@code maxBytes} of buffers; when all of them are out, {@link #acquire()} returns a throwaway
+ * buffer instead of blocking, so a loop never waits on another one.
+ *
+ * <p>The buffer size follows measured storage throughput ({@link #recordStorage}): slow eMMC gets
+ * small buffers, so more loops fit in the budget; fast UFS gets larger ones, fewer syscalls.
+ * Buffers of a stale size are dropped on release.
+ */
+final class BufferPool {
+
+    static final int SMALL = 64 * 1024;
+    static final int MEDIUM = 256 * 1024;
+    static final int LARGE = 1024 * 1024;
+    static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    // 小于这个量的样本不计：小文件主要是 open/close 的开销，测不出带宽
+    static final long MIN_SAMPLE_BYTES = 4L * 1024 * 1024;
+
+    private static final BufferPool DIRECT = new BufferPool(true, DEFAULT_MAX_BYTES);
+    private static final BufferPool HEAP = new BufferPool(false, DEFAULT_MAX_BYTES);
+
+    private final boolean direct;
+    private final long maxBytes;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private final Set<ByteBuffer> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long retained; // 池里（含借出）的总字节
+    private int size = MEDIUM;
+    private double bytesPerSec; // 滑动平均，0 = 还没测过
+
+    private long allocations;
+    private long reuses;
+    private long overflows;
+
+    BufferPool(boolean direct, long maxBytes) {
+        this.direct = direct;
+        this.maxBytes = maxBytes;
+    }
+
+    static BufferPool direct() {
+        return DIRECT;
+    }
+
+    static BufferPool heap() {
+        return HEAP;
+    }
+
+    /** Feeds one measured disk transfer to both shared pools. */
+    static void recordStorage(long bytes, long nanos) {
+        DIRECT.record(bytes, nanos);
+        HEAP.record(bytes, nanos);
+    }
+
+    /** Buffer size for a storage throughput; {@link #MEDIUM} while unknown. */
+    static int sizeFor(double bytesPerSec) {
+        if (bytesPerSec <= 0)
+            return MEDIUM;
+        if (bytesPerSec < 64.0 * 1024 * 1024)
+            return SMALL;
+        if (bytesPerSec < 512.0 * 1024 * 1024)
+            return MEDIUM;
+        return LARGE;
+    }
+
+    /** A cleared buffer; give it back with {@link #release}. Heap buffers are array-backed from offset 0. */
+    synchronized ByteBuffer acquire() {
+        ByteBuffer b = free.pollFirst();
+        if (b != null) {
+            reuses++;
+            b.clear();
+            return b;
+        }
+        allocations++;
+        b = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        if (retained + size <= maxBytes) {
+            retained += size;
+            owned.add(b);
+        } else {
+            overflows++;
+        }
+        return b;
+    }
+
+    synchronized void release(ByteBuffer b) {
+        if (b == null || !owned.contains(b))
+            return; // 超额临时分配的，交给 GC
+        if (b.capacity() != size) {
+            owned.remove(b);
+            retained -= b.capacity();
+            return;
+        }
+        free.addFirst(b);
+    }
+
+    synchronized void record(long bytes, long nanos) {
+        if (bytes < MIN_SAMPLE_BYTES || nanos <= 0)
+            return;
+        double sample = bytes * 1e9 / nanos;
+        bytesPerSec = bytesPerSec == 0 ? sample : bytesPerSec * 0.75 + sample * 0.25;
+        int next = sizeFor(bytesPerSec);
+        if (next == size)
+            return;
+        size = next;
+        // 空闲的旧尺寸缓冲直接丢掉，借出的在 release 时丢
+        for (ByteBuffer b : free) {
+            owned.remove(b);
+            retained -= b.capacity();
+        }
+        free.clear();
+    }
+
+    synchronized int bufferSize() {
+        return size;
+    }
+
+    synchronized long retainedBytes() {
+        return retained;
+    }
+
+    /** Buffers allocated so far, pooled or not. */
+    synchronized long allocations() {
+        return allocations;
+    }
+
+    synchronized long reuses() {
+        return reuses;
+    }
+
+    /** Allocations made past {@code maxBytes}, dropped on release. */
+    synchronized long overflows() {
+        return overflows;
+    }
+}
@@ -0,0 +1,81 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads {@code [offset, offset + length)} of a file through positional {@link FileChannel}
+ * reads, e.g. an uncompressed asset inside the APK. The channel's own position is never
+ * touched and the channel is not closed by {@link #close()}.
+ */
+final class ChannelRangeInputStream extends InputStream {
+
+    private final FileChannel ch;
+    private final long end;
+    private final ByteBuffer buf;
+    private long pos;
+
+    ChannelRangeInputStream(FileChannel ch, long offset, long length, int bufferSize) {
+        this.ch = ch;
+        this.pos = offset;
+        this.end = offset + length;
+        this.buf = ByteBuffer.allocate(bufferSize);
+        this.buf.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return buf.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+        long skipped = Math.min(n, buf.remaining());
+        buf.position(buf.position() + (int) skipped);
+        if (skipped < n) {
+            long more = Math.min(n - skipped, end - pos);
+            pos += more;
+            skipped += more;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long a = buf.remaining() + (end - pos);
+        return (int) Math.min(Integer.MAX_VALUE, a);
+    }
+
+    private boolean fill() throws IOException {
+        if (buf.hasRemaining())
+            return true;
+        if (pos >= end)
+            return false;
+        buf.clear();
+        if (end - pos < buf.capacity())
+            buf.limit((int) (end - pos));
+        int n = ch.read(buf, pos);
+        if (n < 0)
+            throw new IOException("unexpected EOF at " + pos);
+        pos += n;
+        buf.flip();
+        return buf.hasRemaining();
+    }
+}
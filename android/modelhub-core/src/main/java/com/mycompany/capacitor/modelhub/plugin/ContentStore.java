@@ -0,0 +1,232 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed blob store under {@code <root>/_cas/<sha[0..2]>/<sha256>}. Installed files are
+ * hard links to their blob, so a tokenizer or base shard shared by several models is stored once.
+ * Blobs are read-only (and so is every installed link to them).
+ *
+ * <p>Reference counts are derived from the {@code blobs} map ({@code path -> sha256}) in each
+ * state record rather than kept separately, so they can never drift from what is installed.
+ */
+final class ContentStore {
+
+    static final String DIR = "_cas";
+
+    private static final Map<String, ContentStore> INSTANCES = new HashMap<>();
+
+    private final File dir;
+    private final FsRoot fs;
+    // 本进程里已确认内容对得上的 blob，再次链接时不用重算
+    private final Set<String> verified = new HashSet<>();
+
+    static ContentStore get(FsRoot fs) {
+        synchronized (INSTANCES) {
+            String k = fs.dir().getAbsolutePath();
+            ContentStore s = INSTANCES.get(k);
+            if (s == null) {
+                s = new ContentStore(fs);
+                INSTANCES.put(k, s);
+            }
+            return s;
+        }
+    }
+
+    // 测试用；正常走 get(fs) 共享实例
+    ContentStore(FsRoot fs) {
+        this.fs = fs;
+        dir = new File(fs.dir(), DIR);
+    }
+
+    File blobFor(String sha256) {
+        String sha = sha256.toLowerCase(Locale.ROOT);
+        return new File(new File(dir, sha.substring(0, 2)), sha);
+    }
+
+    boolean has(String sha256) {
+        return sha256.length() > 2 && blobFor(sha256).isFile();
+    }
+
+    /**
+     * Replaces every file under {@code installedDir} with a hard link to its blob, adding blobs that
+     * are not in the store yet. An existing blob is hashed (once per process) before anything is
+     * linked to it; a corrupt one is {@link #forget forgotten} and replaced by the installed file.
+     * Files that cannot be linked (filesystem without hard links) stay as they are and are left
+     * out of the result.
+     *
+     * @param known optional {@code path -> {sha256, s, m}} records; a recorded hash is reused while the
+     *            file's size and mtime still match
+     * @return {@code path -> sha256} of the files now backed by the store
+     */
+    synchronized JSONObject ingest(File installedDir, JSONObject known) throws Exception {
+        JSONObject blobs = new JSONObject();
+        ingest(installedDir, "", known, blobs);
+        return blobs;
+    }
+
+    private void ingest(File d, String prefix, JSONObject known, JSONObject blobs) throws Exception {
+        File[] children = d.listFiles();
+        if (children == null)
+            return;
+        for (File f : children) {
+            String rel = prefix.isEmpty() ? f.getName() : prefix + "/" + f.getName();
+            if (f.isDirectory()) {
+                ingest(f, rel, known, blobs);
+                continue;
+            }
+            String sha = knownSha(known, rel, f);
+            if (sha == null)
+                sha = Hashes.sha256File(f);
+            sha = sha.toLowerCase(Locale.ROOT);
+            File blob = blobFor(sha);
+            if (blob.isFile() && !verified.contains(sha)) {
+                if (blob.length() == f.length() && sha.equals(Hashes.sha256File(blob))) {
+                    verified.add(sha);
+                } else {
+                    // 截断或位翻转的 blob 不能盖到刚校验过的文件上：丢掉，用这份重新入库
+                    forget(sha);
+                    if (blob.exists())
+                        continue; // 删不掉，不去动它
+                }
+            }
+            if (blob.isFile()) {
+                // 先链到临时名再 rename 覆盖，f 不会有缺失的窗口
+                File tmp = new File(f.getParentFile(), f.getName() + ".cas");
+                // noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                if (!fs.link(blob, tmp))
+                    continue;
+                if (!tmp.renameTo(f)) {
+                    // noinspection ResultOfMethodCallIgnored
+                    tmp.delete();
+                    continue;
+                }
+            } else {
+                // noinspection ResultOfMethodCallIgnored
+                blob.getParentFile().mkdirs();
+                if (!fs.link(f, blob))
+                    continue;
+                // noinspection ResultOfMethodCallIgnored
+                blob.setReadOnly();
+                verified.add(sha);
+            }
+            blobs.put(rel, sha);
+        }
+    }
+
+    /**
+     * Drops the references in {@code released} and deletes blobs no record in {@code records} still
+     * points at.
+     *
+     * @return bytes freed
+     */
+    synchronized long release(JSONObject released, Collection<JSONObject> records) {
+        if (released == null || released.length() == 0)
+            return 0L;
+        Map<String, Integer> refs = refCounts(records);
+        long freed = 0;
+        Iterator<String> it = released.keys();
+        while (it.hasNext()) {
+            String sha = released.optString(it.next(), "");
+            if (sha.isEmpty() || refs.containsKey(sha.toLowerCase(Locale.ROOT)))
+                continue;
+            File blob = blobFor(sha);
+            long len = blob.length();
+            if (blob.delete())
+                freed += len;
+            verified.remove(sha.toLowerCase(Locale.ROOT));
+        }
+        return freed;
+    }
+
+    /**
+     * Deletes every blob no record references, e.g. after a crash between an install and its
+     * state write.
+     *
+     * @return bytes freed
+     */
+    synchronized long gc(Collection<JSONObject> records) {
+        Map<String, Integer> refs = refCounts(records);
+        long freed = 0;
+        File[] shards = dir.listFiles();
+        if (shards == null)
+            return 0L;
+        for (File shard : shards) {
+            File[] blobs = shard.listFiles();
+            if (blobs == null)
+                continue;
+            for (File blob : blobs) {
+                if (refs.containsKey(blob.getName()))
+                    continue;
+                long len = blob.length();
+                if (blob.delete())
+                    freed += len;
+                verified.remove(blob.getName());
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Takes a blob out of the store (e.g. found corrupt) without touching the installed links to
+     * it; later installs fetch or ingest a fresh copy instead of linking this one.
+     */
+    synchronized void forget(String sha256) {
+        if (sha256.length() <= 2)
+            return;
+        verified.remove(sha256.toLowerCase(Locale.ROOT));
+        // noinspection ResultOfMethodCallIgnored
+        blobFor(sha256).delete();
+    }
+
+    /** Bytes held by the store. */
+    long size() {
+        long total = 0;
+        File[] shards = dir.listFiles();
+        if (shards == null)
+            return 0L;
+        for (File shard : shards) {
+            File[] blobs = shard.listFiles();
+            if (blobs != null)
+                for (File blob : blobs)
+                    total += blob.length();
+        }
+        return total;
+    }
+
+    static Map<String, Integer> refCounts(Collection<JSONObject> records) {
+        Map<String, Integer> refs = new HashMap<>();
+        for (JSONObject rec : records) {
+            JSONObject blobs = rec == null ? null : rec.optJSONObject("blobs");
+            if (blobs == null)
+                continue;
+            Iterator<String> it = blobs.keys();
+            while (it.hasNext()) {
+                String sha = blobs.optString(it.next(), "").toLowerCase(Locale.ROOT);
+                if (sha.isEmpty())
+                    continue;
+                Integer n = refs.get(sha);
+                refs.put(sha, n == null ? 1 : n + 1);
+            }
+        }
+        return refs;
+    }
+
+    private static String knownSha(JSONObject known, String rel, File f) {
+        JSONObject k = known == null ? null : known.optJSONObject(rel);
+        if (k == null || k.optLong("s", -1L) != f.length() || k.optLong("m", -1L) != f.lastModified())
+            return null;
+        String sha = k.optString("sha256", "");
+        return sha.isEmpty() ? null : sha;
+    }
+}
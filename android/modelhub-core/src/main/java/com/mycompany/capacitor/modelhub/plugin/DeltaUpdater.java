@@ -0,0 +1,292 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Version-to-version update driven by a per-file manifest. Files whose size and sha256 match the
+ * installed copy (or a {@link ContentStore} blob) are hard-linked into a staging dir; only changed
+ * or new files are fetched.
+ * The staged tree then replaces {@code installedDir} with a rename swap, so the old version stays
+ * intact until the new one is complete.
+ *
+ * <p>Manifest:
+ * <pre>
+ * { "version": "2", "baseUrl": "https://cdn/m/2/",
+ *   "files": [ { "path": "weights/a.bin", "size": 123, "sha256": "...", "url": "optional" } ] }
+ * </pre>
+ * {@code url} defaults to {@code baseUrl + path}.
+ */
+final class DeltaUpdater {
+
+    /** Downloads one file; {@code onBytes} gets the bytes of this file fetched so far. */
+    interface Fetcher {
+        void fetch(String url, File out, RangeDownloader.Listener onBytes) throws Exception;
+    }
+
+    interface Listener {
+        void onProgress(long fetched, long total);
+    }
+
+    static final String STAGE_MARKER = ".mhdelta";
+
+    static final class FileEntry {
+        final String path;
+        final long size;
+        final String sha256;
+        final String url;
+
+        FileEntry(String path, long size, String sha256, String url) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+            this.url = url;
+        }
+    }
+
+    static final class Manifest {
+        final String version;
+        final List<FileEntry> files;
+
+        private Manifest(String version, List<FileEntry> files) {
+            this.version = version;
+            this.files = files;
+        }
+
+        static Manifest parse(JSONObject o) throws IOException {
+            String base = o.optString("baseUrl", "");
+            JSONArray arr = o.optJSONArray("files");
+            if (arr == null)
+                throw new IOException("DELTA_BAD_MANIFEST files missing");
+            List<FileEntry> files = new ArrayList<>();
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject f = arr.optJSONObject(i);
+                String path = f == null ? "" : f.optString("path", "").replace('\\', '/');
+                String sha = f == null ? "" : f.optString("sha256", "");
+                // 不允许跳出 installedDir
+                if (path.isEmpty() || path.startsWith("/") || ("/" + path + "/").contains("/../") || sha.isEmpty())
+                    throw new IOException("DELTA_BAD_MANIFEST entry " + i);
+                String url = f.optString("url", "");
+                if (url.isEmpty())
+                    url = base + path;
+                files.add(new FileEntry(path, f.optLong("size", -1L), sha, url));
+            }
+            return new Manifest(o.optString("version", ""), files);
+        }
+    }
+
+    static final class Plan {
+        final List<FileEntry> reuse = new ArrayList<>();
+        final List<FileEntry> fromStore = new ArrayList<>(); // 别的模型已有同内容
+        final List<FileEntry> fetch = new ArrayList<>();
+        long fetchBytes;
+    }
+
+    private DeltaUpdater() {
+    }
+
+    /**
+     * Decides per file whether the installed copy can be reused. A recorded sha256 is trusted only
+     * while the file's size and mtime still match the record; otherwise a same-size file is rehashed.
+     */
+    static Plan plan(Manifest m, File installedDir, JSONObject oldFiles, ContentStore store) throws Exception {
+        Plan plan = new Plan();
+        for (FileEntry e : m.files) {
+            File cur = new File(installedDir, e.path);
+            boolean same = cur.isFile() && (e.size < 0 || cur.length() == e.size)
+                    && e.sha256.equalsIgnoreCase(hashOf(cur, e.path, oldFiles));
+            if (same) {
+                plan.reuse.add(e);
+            } else if (store != null && store.has(e.sha256)) {
+                plan.fromStore.add(e);
+            } else {
+                plan.fetch.add(e);
+                plan.fetchBytes += Math.max(0L, e.size);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Builds the new tree in {@code stageDir}. A stage left by an earlier attempt at the same version
+     * is kept, so finished files are not fetched again and partial ones resume.
+     */
+    static void stage(Plan plan, String version, File installedDir, File stageDir, ContentStore store, FsRoot fs,
+            Fetcher fetcher, Listener listener) throws Exception {
+        File marker = new File(stageDir, STAGE_MARKER);
+        if (!version.equals(readMarker(marker))) {
+            deleteRecursively(stageDir);
+            // noinspection ResultOfMethodCallIgnored
+            stageDir.mkdirs();
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(marker), "UTF-8")) {
+                w.write(version);
+            }
+        }
+
+        for (FileEntry e : plan.reuse) {
+            File dst = new File(stageDir, e.path);
+            mkParent(dst);
+            // noinspection ResultOfMethodCallIgnored
+            dst.delete();
+            link(fs, new File(installedDir, e.path), dst);
+            checkCancelled();
+        }
+        for (FileEntry e : plan.fromStore) {
+            File dst = new File(stageDir, e.path);
+            mkParent(dst);
+            // noinspection ResultOfMethodCallIgnored
+            dst.delete();
+            link(fs, store.blobFor(e.sha256), dst);
+            checkCancelled();
+        }
+
+        long[] base = { 0L };
+        for (FileEntry e : plan.fetch) {
+            File dst = new File(stageDir, e.path);
+            mkParent(dst);
+            boolean done = dst.isFile() && !RangeDownloader.journalFor(dst).exists()
+                    && dst.length() == e.size && e.sha256.equalsIgnoreCase(Hashes.sha256File(dst));
+            if (!done) {
+                // 没有续传 journal 的旧文件可能是上次链进来的硬链接，先断开，免得写穿到已安装版本
+                if (!RangeDownloader.journalFor(dst).exists()) {
+                    // noinspection ResultOfMethodCallIgnored
+                    dst.delete();
+                }
+                fetcher.fetch(e.url, dst, (downloaded, t) -> {
+                    if (listener != null)
+                        listener.onProgress(base[0] + downloaded, plan.fetchBytes);
+                });
+                String got = Hashes.sha256File(dst);
+                if (!e.sha256.equalsIgnoreCase(got)) {
+                    // noinspection ResultOfMethodCallIgnored
+                    dst.delete();
+                    throw new IOException(
+                            "SHA256_MISMATCH delta " + e.path + " expected=" + e.sha256 + " got=" + got);
+                }
+            }
+            base[0] += Math.max(0L, e.size);
+            if (listener != null)
+                listener.onProgress(base[0], plan.fetchBytes);
+        }
+    }
+
+    /**
+     * Puts {@code stageDir} in place of {@code installedDir}. Both renames stay on one filesystem;
+     * if the second fails the old tree is moved back.
+     */
+    static void swap(File stageDir, File installedDir, File trashDir) throws IOException {
+        // noinspection ResultOfMethodCallIgnored
+        new File(stageDir, STAGE_MARKER).delete();
+        deleteRecursively(trashDir);
+        if (installedDir.exists() && !installedDir.renameTo(trashDir))
+            throw new IOException("DELTA_SWAP_FAILED");
+        if (!stageDir.renameTo(installedDir)) {
+            // noinspection ResultOfMethodCallIgnored
+            trashDir.renameTo(installedDir);
+            throw new IOException("DELTA_SWAP_FAILED");
+        }
+        deleteRecursively(trashDir);
+    }
+
+    /**
+     * Per-file record for state.json: {@code path -> {v, sha256, s, m}}, where {@code v} is the
+     * version the file was last fetched for.
+     */
+    static JSONObject fileRecords(Plan plan, File installedDir, String version, String oldVersion,
+            JSONObject oldFiles) throws JSONException {
+        JSONObject out = new JSONObject();
+        for (FileEntry e : plan.reuse) {
+            JSONObject prev = oldFiles == null ? null : oldFiles.optJSONObject(e.path);
+            String v = prev != null ? prev.optString("v", oldVersion) : oldVersion;
+            out.put(e.path, fileRecord(new File(installedDir, e.path), v, e.sha256));
+        }
+        for (FileEntry e : plan.fromStore)
+            out.put(e.path, fileRecord(new File(installedDir, e.path), version, e.sha256));
+        for (FileEntry e : plan.fetch)
+            out.put(e.path, fileRecord(new File(installedDir, e.path), version, e.sha256));
+        return out;
+    }
+
+    /** Refreshes {@code s}/{@code m} after files were swapped for store links. */
+    static void restat(JSONObject files, File installedDir) throws JSONException {
+        Iterator<String> it = files.keys();
+        while (it.hasNext()) {
+            String path = it.next();
+            JSONObject r = files.optJSONObject(path);
+            File f = new File(installedDir, path);
+            if (r != null && f.isFile()) {
+                r.put("s", f.length());
+                r.put("m", f.lastModified());
+            }
+        }
+    }
+
+    private static JSONObject fileRecord(File f, String version, String sha256) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("v", version);
+        r.put("sha256", sha256.toLowerCase(Locale.ROOT));
+        r.put("s", f.length());
+        r.put("m", f.lastModified());
+        return r;
+    }
+
+    private static String hashOf(File f, String path, JSONObject oldFiles) throws Exception {
+        JSONObject prev = oldFiles == null ? null : oldFiles.optJSONObject(path);
+        if (prev != null && prev.optLong("s", -1L) == f.length() && prev.optLong("m", -1L) == f.lastModified()) {
+            String sha = prev.optString("sha256", "");
+            if (!sha.isEmpty())
+                return sha;
+        }
+        return Hashes.sha256File(f);
+    }
+
+    // 硬链接不占额外空间；不支持（或跨文件系统）时退回拷贝
+    static void link(FsRoot fs, File src, File dst) throws IOException {
+        if (fs != null && fs.link(src, dst))
+            return;
+        StorageManager.copyFile(src, dst);
+    }
+
+    private static String readMarker(File marker) {
+        if (!marker.isFile())
+            return null;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(marker), "UTF-8"))) {
+            return r.readLine();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void mkParent(File f) {
+        File parent = f.getParentFile();
+        if (parent != null && !parent.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            parent.mkdirs();
+        }
+    }
+
+    private static void checkCancelled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("CANCELLED");
+    }
+
+    static void deleteRecursively(File f) {
+        if (f == null || !f.exists())
+            return;
+        if (f.isDirectory()) {
+            File[] children = f.listFiles();
+            if (children != null)
+                for (File c : children)
+                    deleteRecursively(c);
+        }
+        // noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
@@ -0,0 +1,37 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** {@link AssetSource} over {@code <dir>/<key>.zip}; every zip is seekable. */
+public final class DirectoryAssetSource implements AssetSource {
+
+    private final File dir;
+
+    public DirectoryAssetSource(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public long size(String key) {
+        File f = fileFor(key);
+        return f.isFile() ? f.length() : -1L;
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return new FileInputStream(fileFor(key));
+    }
+
+    @Override
+    public Region openRegion(String key) throws IOException {
+        FileInputStream in = new FileInputStream(fileFor(key));
+        return new Region(in.getChannel(), 0L, in.getChannel().size(), in);
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, key + ".zip");
+    }
+}
@@ -0,0 +1,204 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * On-disk format of a file installed with {@code encryptAtRest}: the plaintext is cut into
+ * fixed-size chunks, each sealed with AES-GCM on its own, so any byte range can be read by
+ * decrypting only the chunks it covers ({@link ModelChannel}).
+ *
+ * <pre>
+ * 0   "MHEC"
+ * 4   u16 version (1), u16 reserved
+ * 8   u32 chunk size
+ * 12  u64 plaintext length
+ * 20  8 bytes random file nonce
+ * 28  u32 reserved
+ * 32  chunks: ciphertext || 16-byte tag, chunk i at 32 + i * (chunk size + 16)
+ * </pre>
+ *
+ * Chunk {@code i} uses IV {@code nonce || u32 i} and AAD {@code u32 i || u8 last}, so chunks cannot
+ * be reordered and a truncated file fails on its new last chunk. The chunk index is implicit in
+ * the fixed stride. A file always has at least one chunk, even when empty.
+ */
+final class EncryptedFile {
+
+    static final int HEADER = 32;
+    static final int TAG = 16;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = { 'M', 'H', 'E', 'C' };
+    private static final int VERSION = 1;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static final class Header {
+        final int chunkSize;
+        final long length;
+        final byte[] nonce;
+
+        Header(int chunkSize, long length, byte[] nonce) {
+            this.chunkSize = chunkSize;
+            this.length = length;
+            this.nonce = nonce;
+        }
+
+        long chunks() {
+            return EncryptedFile.chunks(length, chunkSize);
+        }
+
+        long offsetOf(long chunk) {
+            return HEADER + chunk * (chunkSize + TAG);
+        }
+
+        int plainSizeOf(long chunk) {
+            return (int) Math.min(chunkSize, length - chunk * chunkSize);
+        }
+    }
+
+    private EncryptedFile() {
+    }
+
+    static long chunks(long length, int chunkSize) {
+        return Math.max(1L, (length + chunkSize - 1) / chunkSize);
+    }
+
+    /** Size on disk of {@code length} plaintext bytes. */
+    static long encryptedLength(long length, int chunkSize) {
+        return HEADER + length + chunks(length, chunkSize) * TAG;
+    }
+
+    static Header readHeader(FileChannel ch, File f) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER);
+        while (b.hasRemaining())
+            if (ch.read(b, b.position()) < 0)
+                throw new IOException("ENCRYPTION_CORRUPT truncated header: " + f.getName());
+        b.flip();
+        byte[] magic = new byte[4];
+        b.get(magic);
+        if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1] || magic[2] != MAGIC[2] || magic[3] != MAGIC[3])
+            throw new IOException("ENCRYPTION_CORRUPT not an encrypted file: " + f.getName());
+        int version = b.getShort() & 0xffff;
+        if (version != VERSION)
+            throw new IOException("ENCRYPTION_CORRUPT unsupported version " + version + ": " + f.getName());
+        b.getShort();
+        int chunkSize = b.getInt();
+        long length = b.getLong();
+        byte[] nonce = new byte[8];
+        b.get(nonce);
+        if (chunkSize <= 0 || length < 0 || ch.size() != encryptedLength(length, chunkSize))
+            throw new IOException("ENCRYPTION_CORRUPT bad length: " + f.getName());
+        return new Header(chunkSize, length, nonce);
+    }
+
+    /** Plaintext length, read from the header. */
+    static long plainLength(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return readHeader(raf.getChannel(), f).length;
+        }
+    }
+
+    static GCMParameterSpec iv(byte[] nonce, long chunk) {
+        ByteBuffer iv = ByteBuffer.allocate(12);
+        iv.put(nonce);
+        iv.putInt((int) chunk);
+        return new GCMParameterSpec(TAG * 8, iv.array());
+    }
+
+    static byte[] aad(long chunk, boolean last) {
+        ByteBuffer b = ByteBuffer.allocate(5);
+        b.putInt((int) chunk);
+        b.put((byte) (last ? 1 : 0));
+        return b.array();
+    }
+
+    /**
+     * Encrypts a stream of plaintext into {@code ch} from offset 0. One chunk is held back until the
+     * next write or {@link #finish()} so the last chunk can be sealed as such; the header goes in
+     * last, once the length is known. Not thread-safe; one writer per file.
+     */
+    static final class Writer {
+        private final FileChannel ch;
+        private final SecretKey key;
+        private final int chunkSize;
+        private final byte[] nonce = new byte[8];
+        private final Cipher cipher;
+        private final byte[] pending;
+        private final byte[] sealed;
+        private int filled;
+        private long chunk;
+        private long length;
+
+        Writer(FileChannel ch, SecretKey key, int chunkSize) throws IOException {
+            this.ch = ch;
+            this.key = key;
+            this.chunkSize = chunkSize;
+            RANDOM.nextBytes(nonce);
+            pending = new byte[chunkSize];
+            sealed = new byte[chunkSize + TAG];
+            try {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IOException("ENCRYPTION_UNAVAILABLE " + e.getMessage(), e);
+            }
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                // 满了且后面还有数据，才能确定它不是最后一块
+                if (filled == chunkSize)
+                    seal(false);
+                int n = Math.min(len, chunkSize - filled);
+                System.arraycopy(b, off, pending, filled, n);
+                filled += n;
+                off += n;
+                len -= n;
+                length += n;
+            }
+        }
+
+        /** Seals the last chunk and writes the header. @return bytes on disk */
+        long finish() throws IOException {
+            seal(true);
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            h.put(MAGIC);
+            h.putShort((short) VERSION);
+            h.putShort((short) 0);
+            h.putInt(chunkSize);
+            h.putLong(length);
+            h.put(nonce);
+            h.putInt(0);
+            h.flip();
+            long pos = 0;
+            while (h.hasRemaining())
+                pos += ch.write(h, pos);
+            return encryptedLength(length, chunkSize);
+        }
+
+        private void seal(boolean last) throws IOException {
+            int n;
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, iv(nonce, chunk));
+                cipher.updateAAD(aad(chunk, last));
+                n = cipher.doFinal(pending, 0, filled, sealed, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("ENCRYPTION_UNAVAILABLE " + e.getMessage(), e);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(sealed, 0, n);
+            long pos = HEADER + chunk * (chunkSize + TAG);
+            while (bb.hasRemaining())
+                pos += ch.write(bb, pos);
+            chunk++;
+            filled = 0;
+        }
+    }
+}
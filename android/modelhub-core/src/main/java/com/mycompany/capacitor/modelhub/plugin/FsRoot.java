@@ -0,0 +1,27 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The models directory plus the filesystem calls that differ per platform. The install engine
+ * only goes through {@code java.io} / {@code java.nio} otherwise, so it runs unchanged on a plain
+ * JVM ({@link LocalFsRoot}) and on Android, where the plugin supplies an {@code android.system.Os}
+ * backed implementation.
+ */
+public interface FsRoot {
+
+    /** Root of everything the installer writes: installed trees, {@code _tmp}, {@code state.json}. */
+    File dir();
+
+    /** Hard link {@code dst -> src}; false if the platform or filesystem can't do it. */
+    boolean link(File src, File dst);
+
+    /**
+     * Allocates the first {@code len} bytes of {@code raf} up front where the platform can. Best
+     * effort: returns quietly when unsupported, throws {@code INSUFFICIENT_STORAGE} when the
+     * filesystem reports it is full.
+     */
+    void allocate(RandomAccessFile raf, long len) throws IOException;
+}
@@ -0,0 +1,71 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/** SHA-256 helpers shared by the install paths. Loops stop with {@code CANCELLED} when interrupted. */
+final class Hashes {
+
+    interface Listener {
+        void onProgress(long hashed, long total);
+    }
+
+    private Hashes() {
+    }
+
+    static String sha256File(File f) throws Exception {
+        return sha256File(f, null);
+    }
+
+    /** @param listener bytes hashed so far against the file length, may be null */
+    static String sha256File(File f, Listener listener) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        long total = f.length();
+        long hashed = 0;
+        ProgressGate gate = new ProgressGate();
+        long t0 = System.nanoTime();
+        BufferPool pool = BufferPool.direct();
+        ByteBuffer buf = pool.acquire();
+        // 直接从 FileChannel 读进 direct buffer，不经过 InputStream 再拷一遍
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel ch = raf.getChannel()) {
+            int n;
+            while ((n = ch.read(buf)) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("CANCELLED");
+                hashed += n;
+                if (listener != null && gate.tick(hashed, total))
+                    listener.onProgress(hashed, total);
+            }
+        } finally {
+            pool.release(buf);
+        }
+        BufferPool.recordStorage(hashed, System.nanoTime() - t0);
+        return toHex(md.digest());
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 查表；String.format 每个字节都要解析一次格式串
+    static String toHex(byte[] d) {
+        char[] out = new char[d.length * 2];
+        for (int i = 0; i < d.length; i++) {
+            out[2 * i] = HEX[(d[i] >> 4) & 0xf];
+            out[2 * i + 1] = HEX[d[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    static byte[] fromHex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return b;
+    }
+}
@@ -0,0 +1,41 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Minimal HTTP client the installer needs: plain, ranged and conditional GETs. The default is
+ * {@link UrlConnectionTransport}; tests and embedders can swap in their own (a local stand-in
+ * server, an OkHttp or Cronet client for HTTP/2, fault injection). The installer adds retries
+ * ({@link RetryPolicy}) on top, so implementations should not retry themselves.
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends {@code GET url}, with a {@code Range} header when {@code range} is not null (e.g.
+     * {@code "bytes=0-0"}). Status codes are not checked here; the caller closes the response.
+     */
+    Response get(String url, String range) throws IOException;
+
+    /**
+     * Same as {@link #get(String, String)} with extra request headers, e.g. {@code If-None-Match}.
+     * The default drops them, which costs a full response where a 304 would have done.
+     */
+    default Response get(String url, String range, Map<String, String> headers) throws IOException {
+        return get(url, range);
+    }
+
+    interface Response extends Closeable {
+        int code() throws IOException;
+
+        /** @return null if absent */
+        String header(String name);
+
+        /** @return -1 if unknown */
+        long contentLength();
+
+        InputStream body() throws IOException;
+    }
+}
@@ -0,0 +1,111 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of an installed tree (relative path, size, mtime per file plus the root dir mtime),
+ * recorded in the state record at install time. {@code check} compares only the root dir
+ * mtime against it; a deep check re-stats every recorded file.
+ */
+final class InstallFingerprint {
+
+    private InstallFingerprint() {
+    }
+
+    static JSONObject capture(File dir, JSONArray checkFiles) throws JSONException {
+        JSONArray files = new JSONArray();
+        collect(dir, "", files);
+
+        JSONObject fp = new JSONObject();
+        fp.put("dirMtime", dir.lastModified());
+        fp.put("checkFiles", signature(checkFiles));
+        fp.put("files", files);
+        return fp;
+    }
+
+    /** True if the fingerprint was taken for the same checkFiles and the root dir is untouched. */
+    static boolean matchesFast(JSONObject fp, File dir, JSONArray checkFiles) {
+        if (fp == null)
+            return false;
+        if (!signature(checkFiles).equals(fp.optString("checkFiles", null)))
+            return false;
+        // 只 stat 一次根目录
+        long m = dir.lastModified();
+        return m != 0L && m == fp.optLong("dirMtime", -1L);
+    }
+
+    /** Re-stats every recorded file; any missing or changed file means the install is corrupt. */
+    static boolean matchesDeep(JSONObject fp, File dir) {
+        JSONArray files = fp.optJSONArray("files");
+        if (files == null)
+            return false;
+        for (int i = 0; i < files.length(); i++) {
+            JSONObject f = files.optJSONObject(i);
+            if (f == null)
+                return false;
+            File file = new File(dir, f.optString("p", ""));
+            if (!file.isFile() || file.length() != f.optLong("s", -1L) || file.lastModified() != f.optLong("m", -1L))
+                return false;
+        }
+        return true;
+    }
+
+    /** Relative paths of every recorded file, in capture order. */
+    static List<String> paths(JSONObject fp) {
+        List<String> out = new ArrayList<>();
+        JSONArray files = fp == null ? null : fp.optJSONArray("files");
+        if (files != null)
+            for (int i = 0; i < files.length(); i++) {
+                JSONObject f = files.optJSONObject(i);
+                if (f != null)
+                    out.add(f.optString("p", ""));
+            }
+        return out;
+    }
+
+    /** The checkFiles the fingerprint was taken for; empty if none were given. */
+    static List<String> checkFiles(JSONObject fp) {
+        String sig = fp == null ? "" : fp.optString("checkFiles", "");
+        List<String> out = new ArrayList<>();
+        if (!sig.isEmpty())
+            Collections.addAll(out, sig.split("\n"));
+        return out;
+    }
+
+    static String signature(JSONArray checkFiles) {
+        if (checkFiles == null || checkFiles.length() == 0)
+            return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < checkFiles.length(); i++) {
+            if (i > 0)
+                sb.append('\n');
+            sb.append(checkFiles.optString(i, ""));
+        }
+        return sb.toString();
+    }
+
+    private static void collect(File dir, String prefix, JSONArray out) throws JSONException {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        for (File c : children) {
+            String rel = prefix.isEmpty() ? c.getName() : prefix + "/" + c.getName();
+            if (c.isDirectory()) {
+                collect(c, rel, out);
+            } else {
+                JSONObject f = new JSONObject();
+                f.put("p", rel);
+                f.put("s", c.length());
+                f.put("m", c.lastModified());
+                out.put(f);
+            }
+        }
+    }
+}
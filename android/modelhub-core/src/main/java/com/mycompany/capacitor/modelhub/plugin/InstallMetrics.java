@@ -0,0 +1,134 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-install timings. Phase names match {@code ProgressEvent.phase}; each phase accumulates
+ * wall time and bytes moved so slow installs can be attributed to network, sha256, AES/inflate
+ * or a {@code copyDir} fallback.
+ */
+final class InstallMetrics {
+
+    private static final class Phase {
+        long nanos;
+        long bytes;
+    }
+
+    final String key;
+    final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    private String source = "none";
+    private boolean streaming;
+    private int retries;
+    private boolean copyDirFallback;
+    private String code;
+    private long totalNanos = -1;
+
+    InstallMetrics(String key) {
+        this.key = key;
+    }
+
+    synchronized void phase(String name, long nanos, long bytes) {
+        Phase p = phases.get(name);
+        if (p == null) {
+            p = new Phase();
+            phases.put(name, p);
+        }
+        p.nanos += nanos;
+        p.bytes += bytes;
+    }
+
+    synchronized void source(String source, boolean streaming) {
+        this.source = source;
+        this.streaming = streaming;
+    }
+
+    synchronized void retries(int n) {
+        retries += n;
+    }
+
+    synchronized void copyDirFallback() {
+        copyDirFallback = true;
+    }
+
+    /**
+     * Marks the install finished. Only the first call counts (a shared flight reports back to
+     * every batch that joined it).
+     *
+     * @return true if this call finished it
+     */
+    synchronized boolean finish(String code) {
+        if (totalNanos >= 0)
+            return false;
+        this.code = code;
+        totalNanos = System.nanoTime() - startNanos;
+        return true;
+    }
+
+    synchronized JSONObject toJson() {
+        JSONObject o = new JSONObject();
+        try {
+            o.put("key", key);
+            o.put("startedAt", startedAt);
+            o.put("totalMs", ms(totalNanos >= 0 ? totalNanos : System.nanoTime() - startNanos));
+            o.put("source", source);
+            o.put("streaming", streaming);
+            o.put("retries", retries);
+            o.put("copyDirFallback", copyDirFallback);
+            if (code != null)
+                o.put("code", code);
+
+            JSONObject ps = new JSONObject();
+            for (Map.Entry<String, Phase> e : phases.entrySet()) {
+                Phase p = e.getValue();
+                JSONObject j = new JSONObject();
+                j.put("ms", ms(p.nanos));
+                j.put("bytes", p.bytes);
+                if (p.bytes > 0 && p.nanos > 0)
+                    j.put("mbps", (p.bytes / (1024.0 * 1024.0)) / (p.nanos / 1e9));
+                ps.put(e.getKey(), j);
+            }
+            o.put("phases", ps);
+        } catch (JSONException ignored) {
+        }
+        return o;
+    }
+
+    private static double ms(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    /** Bounded in-memory history of finished installs, newest last. */
+    static final class Ring {
+        private final int capacity;
+        private final ArrayDeque<InstallMetrics> items;
+
+        Ring(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.items = new ArrayDeque<>(this.capacity);
+        }
+
+        synchronized void add(InstallMetrics m) {
+            if (items.size() == capacity)
+                items.removeFirst();
+            items.addLast(m);
+        }
+
+        synchronized List<InstallMetrics> list() {
+            return new ArrayList<>(items);
+        }
+
+        synchronized void clear() {
+            items.clear();
+        }
+    }
+}
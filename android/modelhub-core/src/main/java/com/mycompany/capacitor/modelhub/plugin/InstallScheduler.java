@@ -0,0 +1,380 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined install scheduler: each job goes fetch -> verify -> unpack, and every phase has
+ * its own bounded priority pool (network / CPU / disk), so a batch overlaps one model's
+ * download with another's sha256 and a third one's extraction.
+ *
+ * <p>Installs are single-flight per key: a job whose {@link Job#flightId()} matches the
+ * in-flight one attaches to it and completes with the same job/result, while a job for the
+ * same key but another version/sha256 waits for the current flight to finish first. A caller
+ * that stops waiting {@link Ticket#detach detaches} its own claim; the flight is cancelled only
+ * when nobody else is attached to it.
+ */
+final class InstallScheduler {
+
+    interface Job {
+        String key();
+
+        /** key + version + sha256; equal ids mean the same install and can share one run */
+        String flightId();
+
+        int priority();
+    }
+
+    interface Step<J> {
+        /** @return true if the job is finished and later phases should be skipped */
+        boolean run(J job) throws Exception;
+    }
+
+    interface Callback<J> {
+        void onComplete(List<Outcome<J>> outcomes);
+    }
+
+    static final class Outcome<J> {
+        final J job;
+        final Exception error;
+        /** The caller detached while others kept the flight running; {@code job} may still be in progress. */
+        final boolean detached;
+
+        Outcome(J job, Exception error, boolean detached) {
+            this.job = job;
+            this.error = error;
+            this.detached = detached;
+        }
+    }
+
+    /** One {@link #runAllAsync} call's claim on the flights it started or attached to. */
+    final class Ticket {
+        private final List<Slot<?>> slots;
+
+        Ticket(List<Slot<?>> slots) {
+            this.slots = slots;
+        }
+
+        /**
+         * Gives up this call's claim. A flight other callers still wait on keeps running and this
+         * call completes right away with {@code CANCELLED}; a flight nobody else waits on is
+         * cancelled like {@link #cancel}, and this call completes once it stops.
+         *
+         * @return false if everything had already finished
+         */
+        boolean detach() {
+            return InstallScheduler.this.detach(this);
+        }
+    }
+
+    private final PriorityExecutor downloadPool;
+    private final PriorityExecutor verifyPool;
+    private final PriorityExecutor unpackPool;
+
+    // key -> 正在调度的 slot，用于 cancel；所有 slot 状态都在 running 锁下修改
+    private final Map<String, Set<Slot<?>>> running = new HashMap<>();
+    // key -> 最后一个排上的 flight，新请求据此合并或排队
+    private final Map<String, Slot<?>> flights = new HashMap<>();
+
+    InstallScheduler(int downloadConcurrency, int verifyConcurrency, int unpackConcurrency) {
+        downloadPool = new PriorityExecutor("download", downloadConcurrency);
+        verifyPool = new PriorityExecutor("verify", verifyConcurrency);
+        unpackPool = new PriorityExecutor("unpack", unpackConcurrency);
+    }
+
+    /**
+     * Schedules all jobs and returns immediately; {@code callback} runs on the pool thread that
+     * finishes the last job. Jobs sharing a {@link Job#flightId()} run once, and the same key at
+     * another version/sha256 runs after it; outcomes are in input order and an attached job's
+     * outcome carries the job object that actually ran.
+     */
+    <J extends Job> Ticket runAllAsync(List<J> jobs, Step<J> fetch, Step<J> verify, Step<J> unpack,
+            Callback<J> callback) {
+        // 同一批里重复的 flight 只装一次；同 key 不同版本各装各的，下面按 flight 排队
+        Map<String, Slot<J>> unique = new LinkedHashMap<>();
+        List<Slot<J>> slots = new ArrayList<>(jobs.size());
+        for (J job : jobs) {
+            Slot<J> s = unique.get(job.flightId());
+            if (s == null) {
+                s = new Slot<>(job);
+                unique.put(job.flightId(), s);
+            }
+            slots.add(s);
+        }
+
+        Ticket ticket = new Ticket(new ArrayList<>(unique.values()));
+        if (unique.isEmpty()) {
+            callback.onComplete(new ArrayList<>());
+            return ticket;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(unique.size());
+        Runnable onSlotDone = () -> {
+            if (remaining.decrementAndGet() != 0)
+                return;
+            List<Outcome<J>> out = new ArrayList<>(jobs.size());
+            for (Slot<J> s : slots)
+                out.add(new Outcome<>(s.resolvedJob(), s.callerError != null ? s.callerError : s.error, s.detached));
+            callback.onComplete(out);
+        };
+
+        for (Slot<J> s : unique.values()) {
+            s.onDone = onSlotDone;
+            Runnable start = () -> submit(downloadPool, s, fetch,
+                    () -> submit(verifyPool, s, verify, () -> submit(unpackPool, s, unpack, null)));
+
+            boolean startNow = false;
+            synchronized (running) {
+                Slot<?> tail = flights.get(s.job.key());
+                if (tail != null && tail.job.flightId().equals(s.job.flightId())) {
+                    // 同一个安装正在进行：挂上去，拿同一份结果
+                    s.attachedTo = tail;
+                    s.attachWaiter = () -> finishAttached(s, tail);
+                    tail.waiters.add(s.attachWaiter);
+                    tail.attached.add(s);
+                    continue;
+                }
+                running.computeIfAbsent(s.job.key(), k -> new HashSet<>()).add(s);
+                flights.put(s.job.key(), s);
+                if (tail == null) {
+                    startNow = true;
+                } else {
+                    // 同 key 不同版本：等前一个结束再开始，避免抢 installedDir
+                    tail.waiters.add(start);
+                }
+            }
+            if (startNow)
+                start.run();
+        }
+        return ticket;
+    }
+
+    /** Blocking variant of {@link #runAllAsync}. */
+    <J extends Job> List<Outcome<J>> runAll(List<J> jobs, Step<J> fetch, Step<J> verify, Step<J> unpack)
+            throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<List<Outcome<J>>> box = new ArrayList<>(1);
+        runAllAsync(jobs, fetch, verify, unpack, out -> {
+            box.add(out);
+            latch.countDown();
+        });
+        latch.await();
+        return box.get(0);
+    }
+
+    /**
+     * Cancels every scheduled or running job for {@code key}. Queued phases are dropped,
+     * running ones are interrupted and finish with a {@code CANCELLED} error.
+     */
+    boolean cancel(String key) {
+        List<Slot<?>> targets;
+        synchronized (running) {
+            Set<Slot<?>> set = running.get(key);
+            if (set == null || set.isEmpty())
+                return false;
+            targets = new ArrayList<>(set);
+        }
+        for (Slot<?> s : targets)
+            s.cancel();
+        return true;
+    }
+
+    private boolean detach(Ticket t) {
+        boolean any = false;
+        List<Slot<?>> cancel = new ArrayList<>();
+        List<Runnable> notify = new ArrayList<>();
+        synchronized (running) {
+            for (Slot<?> s : t.slots) {
+                if (s.finished || s.callerDone)
+                    continue;
+                any = true;
+                Slot<?> owner = s.attachedTo != null ? s.attachedTo : s;
+                // 还有别人等这个 flight：只摘掉自己；没人等了就整个取消，结果照常回来
+                boolean othersWait = s.attachedTo == null
+                        ? !owner.attached.isEmpty()
+                        : !owner.callerDone || owner.attached.size() > 1;
+                if (!othersWait) {
+                    cancel.add(owner);
+                    continue;
+                }
+                s.detached = true;
+                s.callerDone = true;
+                if (s.attachedTo != null) {
+                    owner.waiters.remove(s.attachWaiter);
+                    owner.attached.remove(s);
+                    s.finished = true;
+                    s.error = new IOException("CANCELLED");
+                } else {
+                    s.callerError = new IOException("CANCELLED");
+                }
+                notify.add(s.onDone);
+            }
+        }
+        for (Slot<?> s : cancel)
+            s.cancel();
+        for (Runnable r : notify)
+            r.run();
+        return any;
+    }
+
+    /** True while any job for {@code key} is queued or running. */
+    boolean isBusy(String key) {
+        synchronized (running) {
+            Set<Slot<?>> set = running.get(key);
+            return set != null && !set.isEmpty();
+        }
+    }
+
+    /**
+     * Runs {@code action} unless a job for {@code key} is queued or running; no job for the key
+     * can be scheduled until it returns.
+     *
+     * @return false if the key was busy
+     */
+    boolean whileIdle(String key, Runnable action) {
+        synchronized (running) {
+            if (isBusy(key))
+                return false;
+            action.run();
+            return true;
+        }
+    }
+
+    int inflight() {
+        synchronized (running) {
+            int n = 0;
+            for (Set<Slot<?>> set : running.values())
+                n += set.size();
+            return n;
+        }
+    }
+
+    List<PriorityExecutor> pools() {
+        List<PriorityExecutor> l = new ArrayList<>(3);
+        l.add(downloadPool);
+        l.add(verifyPool);
+        l.add(unpackPool);
+        return l;
+    }
+
+    void shutdownNow() {
+        downloadPool.shutdownNow();
+        verifyPool.shutdownNow();
+        unpackPool.shutdownNow();
+    }
+
+    private <J extends Job> void submit(PriorityExecutor pool, Slot<J> s, Step<J> step, Runnable next) {
+        if (s.cancelled) {
+            finish(s, new IOException("CANCELLED"));
+            return;
+        }
+        try {
+            Future<?> f = pool.submit(s.job.priority(), () -> {
+                boolean finished;
+                Exception err = null;
+                try {
+                    finished = step.run(s.job) || next == null;
+                } catch (Exception e) {
+                    err = e;
+                    finished = true;
+                }
+                if (err != null && s.cancelled) {
+                    // 被中断的 I/O 会抛各种异常，统一成 CANCELLED
+                    finish(s, new IOException("CANCELLED"));
+                } else if (finished) {
+                    finish(s, err);
+                } else {
+                    next.run();
+                }
+            }, () -> finish(s, new IOException("CANCELLED")));
+            s.current = f;
+            if (s.cancelled)
+                f.cancel(true);
+        } catch (RuntimeException rejected) {
+            finish(s, rejected);
+        }
+    }
+
+    private void finish(Slot<?> s, Exception err) {
+        List<Runnable> waiters;
+        boolean notify;
+        synchronized (running) {
+            if (s.finished)
+                return;
+            s.finished = true;
+            s.error = err;
+            Set<Slot<?>> set = running.get(s.job.key());
+            if (set != null) {
+                set.remove(s);
+                if (set.isEmpty())
+                    running.remove(s.job.key());
+            }
+            if (flights.get(s.job.key()) == s)
+                flights.remove(s.job.key());
+            waiters = new ArrayList<>(s.waiters);
+            s.waiters.clear();
+            s.attached.clear();
+            notify = !s.callerDone;
+            s.callerDone = true;
+        }
+        if (notify)
+            s.onDone.run();
+        for (Runnable w : waiters)
+            w.run();
+    }
+
+    private void finishAttached(Slot<?> s, Slot<?> target) {
+        synchronized (running) {
+            if (s.finished)
+                return; // 已经 detach
+            s.finished = true;
+            s.callerDone = true;
+            s.error = target.error;
+        }
+        s.onDone.run();
+    }
+
+    private static final class Slot<J extends Job> {
+        final J job;
+        final List<Runnable> waiters = new ArrayList<>();
+        // 挂在这个 flight 上、还在等结果的其它调用
+        final List<Slot<?>> attached = new ArrayList<>();
+        boolean finished;
+        // 本次调用的回调已经发过（正常结束或 detach）
+        boolean callerDone;
+        boolean detached;
+        volatile Exception error;
+        volatile Exception callerError;
+        volatile boolean cancelled;
+        volatile Future<?> current;
+        Slot<?> attachedTo;
+        Runnable attachWaiter;
+        Runnable onDone;
+
+        Slot(J job) {
+            this.job = job;
+        }
+
+        @SuppressWarnings("unchecked")
+        J resolvedJob() {
+            // 合并到别的 flight 上时，结果在那个 job 里（同一类调用方，类型一致）
+            return attachedTo == null ? job : (J) attachedTo.job;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> f = current;
+            if (f != null)
+                f.cancel(true);
+        }
+    }
+}
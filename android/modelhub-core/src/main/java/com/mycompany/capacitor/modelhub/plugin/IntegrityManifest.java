@@ -0,0 +1,152 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-file integrity manifest of an installed model:
+ * {@code {chunkSize, files: [{path, size, sha256?, chunks?: [sha256 of each chunkSize slice]}]}}.
+ * Chunk hashes let a file be spot-checked or verified by several threads at once; a full verify of
+ * a file that only has {@code sha256} fills its chunks in, so later sample checks are cheap.
+ *
+ * <p>Kept next to {@code state.json} as {@code _integrity/<key>.json} rather than inside the
+ * record, since chunk lists of multi-GB weights would bloat every journal compaction.
+ */
+final class IntegrityManifest {
+
+    static final String DIR = "_integrity";
+    static final long DEFAULT_CHUNK_SIZE = 4L * 1024 * 1024;
+
+    static final class Entry {
+        final String path;
+        final long size;
+        final String sha256; // 可为空（只有 chunks）
+        volatile String[] chunks; // 可为 null；完整校验后补上
+
+        Entry(String path, long size, String sha256, String[] chunks) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+            this.chunks = chunks;
+        }
+
+        int chunkCount(long chunkSize) {
+            return (int) ((size + chunkSize - 1) / chunkSize);
+        }
+    }
+
+    final long chunkSize;
+    final List<Entry> files;
+
+    IntegrityManifest(long chunkSize, List<Entry> files) {
+        this.chunkSize = chunkSize;
+        this.files = files;
+    }
+
+    static IntegrityManifest parse(JSONObject o) throws IOException {
+        long chunkSize = o.optLong("chunkSize", DEFAULT_CHUNK_SIZE);
+        JSONArray arr = o.optJSONArray("files");
+        if (arr == null || chunkSize <= 0 || chunkSize > Integer.MAX_VALUE)
+            throw new IOException("INTEGRITY_BAD_MANIFEST files/chunkSize");
+        List<Entry> files = new ArrayList<>();
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject f = arr.optJSONObject(i);
+            String path = f == null ? "" : f.optString("path", "").replace('\\', '/');
+            long size = f == null ? -1L : f.optLong("size", -1L);
+            String sha = f == null ? "" : f.optString("sha256", "").toLowerCase(Locale.ROOT);
+            JSONArray c = f == null ? null : f.optJSONArray("chunks");
+            // 不允许跳出安装目录；至少要有一种哈希
+            if (path.isEmpty() || path.startsWith("/") || ("/" + path + "/").contains("/../") || size < 0
+                    || (sha.isEmpty() && c == null))
+                throw new IOException("INTEGRITY_BAD_MANIFEST entry " + i);
+            String[] chunks = null;
+            if (c != null) {
+                chunks = new String[c.length()];
+                for (int j = 0; j < chunks.length; j++)
+                    chunks[j] = c.optString(j, "").toLowerCase(Locale.ROOT);
+            }
+            Entry e = new Entry(path, size, sha, chunks);
+            if (chunks != null && chunks.length != e.chunkCount(chunkSize))
+                throw new IOException("INTEGRITY_BAD_MANIFEST chunk count " + path);
+            files.add(e);
+        }
+        return new IntegrityManifest(chunkSize, files);
+    }
+
+    JSONObject toJson() {
+        try {
+            JSONArray arr = new JSONArray();
+            for (Entry e : files) {
+                JSONObject f = new JSONObject().put("path", e.path).put("size", e.size);
+                if (!e.sha256.isEmpty())
+                    f.put("sha256", e.sha256);
+                String[] chunks = e.chunks;
+                if (chunks != null) {
+                    JSONArray c = new JSONArray();
+                    for (String h : chunks)
+                        c.put(h);
+                    f.put("chunks", c);
+                }
+                arr.put(f);
+            }
+            return new JSONObject().put("chunkSize", chunkSize).put("files", arr);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    long totalBytes() {
+        long total = 0;
+        for (Entry e : files)
+            total += e.size;
+        return total;
+    }
+
+    static File fileFor(File root, String key) {
+        return new File(new File(root, DIR), key + ".json");
+    }
+
+    /** Writes to a temp file and renames it over {@code f}. */
+    void save(File f) throws IOException {
+        // noinspection ResultOfMethodCallIgnored
+        f.getParentFile().mkdirs();
+        File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            os.write(toJson().toString().getBytes("UTF-8"));
+            os.flush();
+        }
+        if (!tmp.renameTo(f)) {
+            // noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("cannot write " + f);
+        }
+    }
+
+    /** @return null if missing or unreadable */
+    static IntegrityManifest load(File f) {
+        if (!f.isFile())
+            return null;
+        try (InputStream in = new FileInputStream(f)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) >= 0)
+                bos.write(buf, 0, n);
+            return parse(new JSONObject(new String(bos.toByteArray(), "UTF-8")));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
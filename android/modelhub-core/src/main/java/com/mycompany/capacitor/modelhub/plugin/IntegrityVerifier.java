@@ -0,0 +1,293 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Checks an installed tree against an {@link IntegrityManifest} on up to {@code threads} workers
+ * (the calling thread is one of them). Work is split per chunk where chunk hashes are known, so a
+ * single multi-GB shard is hashed by all workers; files with only a whole-file hash are one task
+ * each and get their chunk hashes computed in the same pass.
+ *
+ * <p>{@code sample} mode checks sizes, the first and last chunk and a few random ones per file,
+ * and small unchunked files in full; it is meant for cheap periodic bit-rot checks.
+ *
+ * <p>Files installed with {@code encryptAtRest} are read through {@link ModelChannel}, so the
+ * manifest's plaintext hashes apply to them too.
+ */
+final class IntegrityVerifier {
+
+    interface Listener {
+        void onProgress(long hashed, long total);
+    }
+
+    static final class Result {
+        final List<String> corrupt; // 缺失、大小不对或哈希不符的路径
+        final int files;
+        final long bytes; // 实际读过的字节
+
+        Result(List<String> corrupt, int files, long bytes) {
+            this.corrupt = corrupt;
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        boolean ok() {
+            return corrupt.isEmpty();
+        }
+    }
+
+    static final int SAMPLE_CHUNKS = 8;
+
+    // chunk < 0 表示整个文件一遍哈希
+    private static final class Task {
+        final IntegrityManifest.Entry entry;
+        final int chunk;
+        final long bytes;
+
+        Task(IntegrityManifest.Entry entry, int chunk, long bytes) {
+            this.entry = entry;
+            this.chunk = chunk;
+            this.bytes = bytes;
+        }
+    }
+
+    private IntegrityVerifier() {
+    }
+
+    static Result verify(IntegrityManifest m, File dir, boolean full, int threads, Listener listener)
+            throws IOException {
+        return verify(m, dir, full, threads, listener, null);
+    }
+
+    /** @param atRest key the tree was encrypted with; null for plaintext */
+    static Result verify(IntegrityManifest m, File dir, boolean full, int threads, Listener listener,
+            SecretKey atRest) throws IOException {
+        Set<String> corrupt = Collections.synchronizedSet(new TreeSet<String>());
+        List<Task> tasks = new ArrayList<>();
+        Random rnd = new Random();
+        for (IntegrityManifest.Entry e : m.files) {
+            File f = new File(dir, e.path);
+            if (!f.isFile() || plainSize(f, atRest) != e.size) {
+                corrupt.add(e.path);
+                continue;
+            }
+            String[] chunks = e.chunks;
+            if (chunks != null) {
+                for (int c : pickChunks(chunks.length, full, rnd))
+                    tasks.add(new Task(e, c, Math.min(m.chunkSize, e.size - c * m.chunkSize)));
+            } else if (full || e.size <= m.chunkSize) {
+                tasks.add(new Task(e, -1, e.size));
+            }
+        }
+        // 整文件任务通常最大，先排
+        Collections.sort(tasks, (a, b) -> Long.compare(b.bytes, a.bytes));
+        long total = 0;
+        for (Task t : tasks)
+            total += t.bytes;
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong hashed = new AtomicLong();
+        AtomicReference<IOException> error = new AtomicReference<>();
+        long totalBytes = total;
+        ProgressGate gate = new ProgressGate();
+        Listener gated = listener == null ? null : (done, all) -> {
+            if (gate.tick(done, all))
+                listener.onProgress(done, all);
+        };
+        Runnable worker = () -> work(m, dir, atRest, tasks, next, hashed, totalBytes, corrupt, error, gated);
+        int helpers = Math.min(Math.max(1, threads), tasks.size()) - 1;
+
+        ExecutorService pool = null;
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            if (helpers > 0) {
+                pool = Executors.newFixedThreadPool(helpers, r -> {
+                    Thread t = new Thread(r, "modelhub-verify");
+                    t.setDaemon(true);
+                    return t;
+                });
+                for (int i = 0; i < helpers; i++)
+                    futures.add(pool.submit(worker));
+            }
+            worker.run();
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error.compareAndSet(null, new InterruptedIOException("CANCELLED"));
+                    break;
+                } catch (Exception ignored) {
+                    // work() 自己把异常放进 error
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        if (error.get() != null)
+            throw error.get();
+        return new Result(new ArrayList<>(corrupt), m.files.size(), hashed.get());
+    }
+
+    private static List<Integer> pickChunks(int n, boolean full, Random rnd) {
+        List<Integer> picked = new ArrayList<>();
+        if (full || n <= SAMPLE_CHUNKS) {
+            for (int i = 0; i < n; i++)
+                picked.add(i);
+            return picked;
+        }
+        // 首尾必查（header / 截断最常见），中间随机
+        Set<Integer> s = new TreeSet<>();
+        s.add(0);
+        s.add(n - 1);
+        while (s.size() < SAMPLE_CHUNKS)
+            s.add(rnd.nextInt(n));
+        picked.addAll(s);
+        return picked;
+    }
+
+    private static long plainSize(File f, SecretKey atRest) {
+        try {
+            return ModelChannel.size(f, atRest);
+        } catch (IOException e) {
+            return -1; // 头部坏了，按大小不对处理
+        }
+    }
+
+    private static void work(IntegrityManifest m, File dir, SecretKey atRest, List<Task> tasks, AtomicInteger next,
+            AtomicLong hashed, long total, Set<String> corrupt, AtomicReference<IOException> error,
+            Listener listener) {
+        MessageDigest md;
+        MessageDigest chunkMd;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+            chunkMd = MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            error.compareAndSet(null, new IOException(e.getMessage(), e));
+            return;
+        }
+        BufferPool pool = BufferPool.direct();
+        ByteBuffer buf = pool.acquire();
+        try {
+            int i;
+            while (error.get() == null && (i = next.getAndIncrement()) < tasks.size()) {
+                Task t = tasks.get(i);
+                if (corrupt.contains(t.entry.path))
+                    continue; // 同一文件已有块不对，不用再读
+                try {
+                    boolean ok = t.chunk < 0
+                            ? checkFile(m, new File(dir, t.entry.path), atRest, t.entry, md, chunkMd, buf, hashed,
+                                    total, listener)
+                            : checkChunk(m, new File(dir, t.entry.path), atRest, t.entry, t.chunk, md, buf, hashed,
+                                    total, listener);
+                    if (!ok)
+                        corrupt.add(t.entry.path);
+                } catch (InterruptedIOException e) {
+                    error.compareAndSet(null, e);
+                } catch (IOException e) {
+                    // 被中断时 FileChannel 抛 ClosedByInterruptException，统一成 CANCELLED；其余读错算坏文件
+                    if (Thread.currentThread().isInterrupted())
+                        error.compareAndSet(null, new InterruptedIOException("CANCELLED"));
+                    else
+                        corrupt.add(t.entry.path);
+                }
+            }
+        } finally {
+            pool.release(buf);
+        }
+    }
+
+    private static boolean checkChunk(IntegrityManifest m, File f, SecretKey atRest, IntegrityManifest.Entry e,
+            int chunk, MessageDigest md, ByteBuffer bb, AtomicLong hashed, long total, Listener listener)
+            throws IOException {
+        md.reset();
+        long pos = chunk * m.chunkSize;
+        long end = Math.min(e.size, pos + m.chunkSize);
+        try (ModelChannel ch = ModelChannel.open(f, atRest)) {
+            while (pos < end) {
+                bb.clear();
+                bb.limit((int) Math.min(bb.capacity(), end - pos));
+                int n = ch.read(bb, pos);
+                if (n < 0)
+                    return false;
+                bb.flip();
+                md.update(bb);
+                pos += n;
+                progress(hashed, n, total, listener);
+            }
+        }
+        return Hashes.toHex(md.digest()).equals(e.chunks[chunk]);
+    }
+
+    // 一遍读完：整文件哈希 + 每块哈希；整文件对得上才把块哈希记下来
+    private static boolean checkFile(IntegrityManifest m, File f, SecretKey atRest, IntegrityManifest.Entry e,
+            MessageDigest md, MessageDigest chunkMd, ByteBuffer bb, AtomicLong hashed, long total, Listener listener)
+            throws IOException {
+        md.reset();
+        chunkMd.reset();
+        String[] chunks = new String[e.chunkCount(m.chunkSize)];
+        int c = 0;
+        long inChunk = 0;
+        try (ModelChannel in = ModelChannel.open(f, atRest)) {
+            bb.clear();
+            int n;
+            while ((n = in.read(bb)) >= 0) {
+                bb.flip();
+                md.update(bb);
+                int off = 0;
+                while (off < n) {
+                    int len = (int) Math.min(n - off, m.chunkSize - inChunk);
+                    // 同一段数据再喂给块哈希：只移动 position/limit，不拷贝
+                    bb.limit(off + len).position(off);
+                    chunkMd.update(bb);
+                    off += len;
+                    inChunk += len;
+                    if (inChunk == m.chunkSize) {
+                        if (c >= chunks.length)
+                            return false; // 比清单长
+                        chunks[c++] = Hashes.toHex(chunkMd.digest());
+                        inChunk = 0;
+                    }
+                }
+                bb.clear();
+                progress(hashed, n, total, listener);
+            }
+        }
+        if (inChunk > 0) {
+            if (c >= chunks.length)
+                return false;
+            chunks[c++] = Hashes.toHex(chunkMd.digest());
+        }
+        if (c != chunks.length || !Hashes.toHex(md.digest()).equals(e.sha256))
+            return false;
+        e.chunks = chunks;
+        return true;
+    }
+
+    private static void progress(AtomicLong hashed, int n, long total, Listener listener) throws IOException {
+        long done = hashed.addAndGet(n);
+        if (listener != null)
+            listener.onProgress(done, total);
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("CANCELLED");
+    }
+}
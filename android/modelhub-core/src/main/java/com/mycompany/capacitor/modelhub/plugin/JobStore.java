@@ -0,0 +1,394 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Persistent queue of background installs, one record per key in {@code _jobs/state.json}
+ * (same journal format as {@link StateStore}). The record carries the item and policy so a job
+ * can be restarted by a fresh process; state changes and phase changes are written through,
+ * byte progress is kept in memory only. Whatever runs the jobs (WorkManager on Android) calls
+ * {@link #started} / {@link #finished}; the store is also a {@link ProgressSink} so it can sit next
+ * to the UI sink and follow phases.
+ *
+ * <p>The zip {@code password} and request {@code headers} never go into the journal in plain
+ * text: with a {@link KeyProvider} they are sealed (AES-GCM) under a per-job data key, otherwise
+ * they stay in memory and a job restarted by a new process fails with {@code SECRET_MISSING}
+ * unless it is enqueued again. Either way they are dropped once the job is finished.
+ */
+final class JobStore implements ProgressSink {
+
+    static final String DIR = "_jobs";
+    static final long KEEP_FINISHED_MS = 7L * 24 * 60 * 60 * 1000;
+
+    static final String QUEUED = "queued";
+    static final String RUNNING = "running";
+    static final String SUCCEEDED = "succeeded";
+    static final String FAILED = "failed";
+    static final String CANCELLED = "cancelled";
+
+    static final String[] SECRET_FIELDS = { "password", "headers" };
+    // 与模型自己的 at-rest 密钥分开命名，任务结束删钥匙不会碰到模型
+    static final String KEY_PREFIX = "job:";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final StateStore store;
+    private final KeyProvider keys; // null 时秘密字段只留在内存
+    // key -> 从 item 里摘出来的 password / headers
+    private final Map<String, JSONObject> secrets = new ConcurrentHashMap<>();
+    // key -> 最近一条进度，只在内存
+    private final Map<String, JSONObject> live = new ConcurrentHashMap<>();
+
+    JobStore(File root) {
+        this(root, null);
+    }
+
+    JobStore(File root, KeyProvider keys) {
+        File dir = new File(root, DIR);
+        // noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        this.keys = keys;
+        store = StateStore.get(dir);
+        prune(System.currentTimeMillis());
+        scrubLegacy();
+        // 上个进程死时还在跑的，等调度方重新拉起
+        for (Map.Entry<String, JSONObject> e : store.snapshot().entrySet())
+            if (RUNNING.equals(e.getValue().optString("state")))
+                requeued(e.getKey(), null, "interrupted");
+    }
+
+    /**
+     * Records a job for {@code item.key} unless one is already queued or running.
+     *
+     * @return the record now on file
+     */
+    synchronized JSONObject enqueue(JSONObject item, String policy) throws JSONException {
+        String key = item.optString("key", "");
+        // 后台任务只走 staged：streaming 断了只能从头来，staged 可以按阶段续
+        JSONObject it = new JSONObject(item.toString());
+        it.put("installMode", "staged");
+        JSONObject secret = takeSecrets(it);
+        JSONObject cur = store.get(key);
+        if (cur != null && active(cur)) {
+            // 重新入队顺带补回内存里的秘密（换了进程又没有 KeyProvider 时靠这个续上）
+            if (secret != null && cur.optBoolean("secret", false))
+                secrets.put(key, secret);
+            return cur;
+        }
+        forgetSecrets(key);
+        long now = System.currentTimeMillis();
+        JSONObject rec = new JSONObject();
+        rec.put("key", key);
+        rec.put("item", it);
+        rec.put("policy", policy);
+        rec.put("state", QUEUED);
+        rec.put("attempts", 0);
+        rec.put("createdAt", now);
+        rec.put("updatedAt", now);
+        if (secret != null) {
+            secrets.put(key, secret);
+            rec.put("secret", true);
+            String sealed = seal(key, secret);
+            if (sealed != null)
+                rec.put("sealed", sealed);
+        }
+        store.put(key, rec);
+        live.remove(key);
+        return rec;
+    }
+
+    /**
+     * The job's install item with its password / headers put back.
+     *
+     * @throws IOException {@code SECRET_MISSING ...} if they were kept in memory only and this
+     *                     process never saw the enqueue, or the sealed copy can no longer be opened
+     */
+    JSONObject item(String key) throws IOException {
+        JSONObject rec = store.get(key);
+        JSONObject item = rec == null ? null : rec.optJSONObject("item");
+        if (item == null)
+            throw new IOException("NOT_FOUND no job for " + key);
+        try {
+            JSONObject out = copy(item);
+            if (!rec.optBoolean("secret", false))
+                return out;
+            JSONObject secret = secrets.get(key);
+            if (secret == null)
+                secret = unseal(key, rec.optString("sealed", ""));
+            if (secret == null)
+                throw new IOException("SECRET_MISSING password/headers not available after restart, enqueue again: "
+                        + key);
+            for (String f : SECRET_FIELDS)
+                if (secret.has(f))
+                    out.put(f, secret.get(f));
+            return out;
+        } catch (JSONException e) {
+            throw new IOException("SECRET_MISSING " + e.getMessage(), e);
+        }
+    }
+
+    JSONObject get(String key) {
+        return store.get(key);
+    }
+
+    void started(String key, int attempt) {
+        transition(key, RUNNING, null, null, null, attempt);
+    }
+
+    /** Back to {@code queued}, e.g. stopped for constraints or a retryable failure. */
+    void requeued(String key, String code, String message) {
+        transition(key, QUEUED, code, message, null, -1);
+    }
+
+    void finished(String key, JSONObject result) {
+        transition(key, SUCCEEDED, null, null, result, -1);
+    }
+
+    void failed(String key, String code, String message, JSONObject result) {
+        transition(key, FAILED, code, message, result, -1);
+    }
+
+    void cancelled(String key) {
+        transition(key, CANCELLED, "CANCELLED", null, null, -1);
+    }
+
+    /** Public view of every job, oldest first; running ones carry their latest progress. */
+    JSONArray list() throws JSONException {
+        List<JSONObject> recs = new ArrayList<>(store.snapshot().values());
+        Collections.sort(recs, (a, b) -> Long.compare(a.optLong("createdAt"), b.optLong("createdAt")));
+        JSONArray out = new JSONArray();
+        for (JSONObject rec : recs)
+            out.put(publicView(rec));
+        return out;
+    }
+
+    JSONObject view(String key) throws JSONException {
+        JSONObject rec = store.get(key);
+        return rec == null ? null : publicView(rec);
+    }
+
+    @Override
+    public void onProgress(String key, String phase, Long downloaded, Long total, Double progress,
+            String message) {
+        JSONObject rec = store.get(key);
+        if (rec == null || !RUNNING.equals(rec.optString("state")))
+            return;
+        try {
+            JSONObject p = new JSONObject();
+            if (downloaded != null)
+                p.put("downloaded", downloaded);
+            if (total != null)
+                p.put("total", total);
+            if (progress != null)
+                p.put("progress", progress);
+            live.put(key, p);
+            // 只在阶段切换时落盘，字节进度太密
+            if (!phase.equals(rec.optString("phase")) && !"done".equals(phase) && !"error".equals(phase)) {
+                store.update(key, cur -> {
+                    if (cur == null || !RUNNING.equals(cur.optString("state")))
+                        return null;
+                    try {
+                        return copy(cur).put("phase", phase).put("updatedAt", System.currentTimeMillis());
+                    } catch (JSONException e) {
+                        return null;
+                    }
+                });
+            }
+        } catch (JSONException ignored) {
+        }
+    }
+
+    static boolean active(JSONObject rec) {
+        String st = rec.optString("state");
+        return QUEUED.equals(st) || RUNNING.equals(st);
+    }
+
+    /**
+     * Failures worth another attempt later: transport errors, server-side HTTP codes, disk full,
+     * and a model held open by a {@link ModelHandle}.
+     */
+    static boolean retryable(String code) {
+        if (code == null)
+            return false;
+        if (code.startsWith("HTTP_")) {
+            String n = code.substring("HTTP_".length());
+            return n.startsWith("5") || n.equals("408") || n.equals("429");
+        }
+        return "ERROR".equals(code) || "INSUFFICIENT_STORAGE".equals(code) || "IN_USE".equals(code);
+    }
+
+    // ===================== Internals =====================
+
+    private void transition(String key, String state, String code, String message, JSONObject result,
+            int attempt) {
+        store.update(key, cur -> {
+            if (cur == null)
+                return null;
+            try {
+                JSONObject next = copy(cur);
+                next.put("state", state);
+                next.put("updatedAt", System.currentTimeMillis());
+                if (attempt >= 0)
+                    next.put("attempts", attempt);
+                next.remove("code");
+                next.remove("message");
+                if (code != null)
+                    next.put("code", code);
+                if (message != null)
+                    next.put("message", message);
+                if (result != null)
+                    next.put("result", result);
+                if (!QUEUED.equals(state) && !RUNNING.equals(state)) {
+                    next.remove("secret");
+                    next.remove("sealed");
+                }
+                return next;
+            } catch (JSONException e) {
+                return null;
+            }
+        });
+        if (!RUNNING.equals(state))
+            live.remove(key);
+        if (!QUEUED.equals(state) && !RUNNING.equals(state))
+            forgetSecrets(key);
+    }
+
+    // 从 item 里摘掉秘密字段；没有时返回 null
+    private static JSONObject takeSecrets(JSONObject item) throws JSONException {
+        JSONObject secret = null;
+        for (String f : SECRET_FIELDS) {
+            Object v = item.opt(f);
+            if (v == null)
+                continue;
+            if (secret == null)
+                secret = new JSONObject();
+            secret.put(f, v);
+            item.remove(f);
+        }
+        return secret;
+    }
+
+    private void forgetSecrets(String key) {
+        secrets.remove(key);
+        if (keys != null)
+            keys.delete(KEY_PREFIX + key);
+    }
+
+    // hex(iv) ":" hex(密文)；AAD 是 key，记录之间不能互换。封不了就只留内存
+    private String seal(String key, JSONObject secret) {
+        if (keys == null)
+            return null;
+        try {
+            SecretKey k = keys.key(KEY_PREFIX + key, true);
+            byte[] iv = new byte[12];
+            RANDOM.nextBytes(iv);
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            c.init(Cipher.ENCRYPT_MODE, k, new GCMParameterSpec(128, iv));
+            c.updateAAD(key.getBytes("UTF-8"));
+            byte[] ct = c.doFinal(secret.toString().getBytes("UTF-8"));
+            return Hashes.toHex(iv) + ":" + Hashes.toHex(ct);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private JSONObject unseal(String key, String sealed) {
+        int i = sealed.indexOf(':');
+        if (keys == null || i <= 0)
+            return null;
+        try {
+            SecretKey k = keys.key(KEY_PREFIX + key, false);
+            if (k == null)
+                return null;
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            c.init(Cipher.DECRYPT_MODE, k, new GCMParameterSpec(128, Hashes.fromHex(sealed.substring(0, i))));
+            c.updateAAD(key.getBytes("UTF-8"));
+            return new JSONObject(new String(c.doFinal(Hashes.fromHex(sealed.substring(i + 1))), "UTF-8"));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // 旧版本把整个 item（含 password/headers）写进了 journal：
+    // 活动的改成封存，结束的直接去掉，再压实一次
+    private void scrubLegacy() {
+        boolean changed = false;
+        for (Map.Entry<String, JSONObject> e : store.snapshot().entrySet()) {
+            JSONObject rec = e.getValue();
+            JSONObject item = rec.optJSONObject("item");
+            if (item == null)
+                continue;
+            try {
+                JSONObject it = copy(item);
+                JSONObject secret = takeSecrets(it);
+                if (secret == null)
+                    continue;
+                JSONObject next = copy(rec).put("item", it);
+                if (active(rec)) {
+                    secrets.put(e.getKey(), secret);
+                    next.put("secret", true);
+                    String sealed = seal(e.getKey(), secret);
+                    if (sealed != null)
+                        next.put("sealed", sealed);
+                }
+                store.put(e.getKey(), next);
+                changed = true;
+            } catch (JSONException ignored) {
+            }
+        }
+        if (changed)
+            store.flush();
+    }
+
+    private JSONObject publicView(JSONObject rec) throws JSONException {
+        JSONObject o = new JSONObject();
+        String key = rec.optString("key");
+        o.put("key", key);
+        o.put("state", rec.optString("state"));
+        o.put("attempts", rec.optInt("attempts", 0));
+        o.put("createdAt", rec.optLong("createdAt"));
+        o.put("updatedAt", rec.optLong("updatedAt"));
+        for (String f : new String[] { "phase", "code", "message" }) {
+            String v = rec.optString(f, "");
+            if (!v.isEmpty())
+                o.put(f, v);
+        }
+        JSONObject result = rec.optJSONObject("result");
+        if (result != null)
+            o.put("result", result);
+        JSONObject p = live.get(key);
+        if (p != null && RUNNING.equals(rec.optString("state"))) {
+            for (String f : new String[] { "downloaded", "total", "progress" })
+                if (p.has(f))
+                    o.put(f, p.get(f));
+        }
+        return o;
+    }
+
+    private void prune(long now) {
+        for (Map.Entry<String, JSONObject> e : store.snapshot().entrySet()) {
+            JSONObject rec = e.getValue();
+            if (!active(rec) && now - rec.optLong("updatedAt") > KEEP_FINISHED_MS)
+                store.remove(e.getKey());
+        }
+    }
+
+    private static JSONObject copy(JSONObject o) throws JSONException {
+        return new JSONObject(o.toString());
+    }
+}
@@ -0,0 +1,19 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Data keys for models installed with {@code encryptAtRest}, one AES key per model key. The engine
+ * asks for a key with {@code create} when it installs and without it when it opens; where the key
+ * lives (e.g. wrapped by an Android Keystore key) is up to the implementation.
+ */
+public interface KeyProvider {
+
+    /** @return the model's key, or null if it has none and {@code create} is false */
+    SecretKey key(String modelKey, boolean create) throws IOException;
+
+    /** Forgets the model's key; files still encrypted with it become unreadable. */
+    void delete(String modelKey);
+}
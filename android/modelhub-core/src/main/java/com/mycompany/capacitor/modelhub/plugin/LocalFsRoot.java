@@ -0,0 +1,42 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * {@link FsRoot} for a plain JVM: hard links through {@code java.nio.file}, no block allocation
+ * (files are sized with a sparse {@code setLength}).
+ */
+public class LocalFsRoot implements FsRoot {
+
+    private final File dir;
+
+    public LocalFsRoot(File dir) {
+        this.dir = dir;
+        if (!dir.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+        }
+    }
+
+    @Override
+    public File dir() {
+        return dir;
+    }
+
+    @Override
+    public boolean link(File src, File dst) {
+        try {
+            java.nio.file.Files.createLink(dst.toPath(), src.toPath());
+            return true;
+        } catch (Throwable ignored) {
+            // Android API < 26 没有 java.nio.file
+            return false;
+        }
+    }
+
+    @Override
+    public void allocate(RandomAccessFile raf, long len) throws IOException {
+    }
+}
@@ -0,0 +1,151 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders the URLs an item can be fetched from ({@code remoteUrl} plus {@code mirrors}) by
+ * measured latency. Hosts never seen before are probed in parallel with a one-byte range request;
+ * its time to first byte is kept per host (moving average) for later installs, and every
+ * successful download feeds it too. A failure pushes its host to the back until it succeeds again
+ * or {@code penaltyTtlMs} passes, after which the host is probed afresh. With a single URL nothing
+ * is probed.
+ */
+final class MirrorSelector {
+
+    static final long PROBE_TIMEOUT_MS = 3000;
+    // 探测失败 / 超时 / 下载失败的主机按这个延迟排，之后成功一次就会被拉回来
+    static final double PENALTY_MS = 60_000;
+    // 罚时到期后重新探测，免得一次抖动让镜像整个进程都排在最后
+    static final long DEFAULT_PENALTY_TTL_MS = 5 * 60_000;
+
+    private final HttpTransport http;
+    private final long penaltyTtlNanos;
+    private final Map<String, Double> latencyMs = new HashMap<>();
+    private final Map<String, Long> penalizedAt = new HashMap<>();
+    private final ExecutorService probes = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "modelhub-mirror-probe");
+        t.setDaemon(true);
+        return t;
+    });
+
+    MirrorSelector(HttpTransport http) {
+        this(http, DEFAULT_PENALTY_TTL_MS);
+    }
+
+    MirrorSelector(HttpTransport http, long penaltyTtlMs) {
+        this.http = http;
+        this.penaltyTtlNanos = TimeUnit.MILLISECONDS.toNanos(penaltyTtlMs);
+    }
+
+    /** {@code primary} first, then {@code mirrors}; blanks and duplicates dropped. */
+    static List<String> candidates(String primary, List<String> mirrors) {
+        LinkedHashSet<String> s = new LinkedHashSet<>();
+        if (primary != null && !primary.isEmpty())
+            s.add(primary);
+        if (mirrors != null)
+            for (String m : mirrors)
+                if (m != null && !m.trim().isEmpty())
+                    s.add(m.trim());
+        return new ArrayList<>(s);
+    }
+
+    /** Fastest first; ties (and unknowns after a probe timeout) keep the given order. */
+    List<String> order(List<String> urls) {
+        if (urls.size() <= 1)
+            return urls;
+        probeUnknown(urls);
+        List<String> out = new ArrayList<>(urls);
+        Map<String, Double> snapshot;
+        synchronized (this) {
+            snapshot = new HashMap<>(latencyMs);
+        }
+        // 稳定排序：同分时保留调用方给的顺序
+        Collections.sort(out, (a, b) -> Double.compare(score(snapshot, a), score(snapshot, b)));
+        return out;
+    }
+
+    /** A successful request's time to first byte; clears any failure penalty on the host. */
+    synchronized void record(String url, long nanos) {
+        String h = host(url);
+        double ms = nanos / 1e6;
+        Double prev = penalizedAt.remove(h) != null ? null : latencyMs.get(h);
+        latencyMs.put(h, prev == null ? ms : prev * 0.7 + ms * 0.3);
+    }
+
+    synchronized void failed(String url) {
+        String h = host(url);
+        latencyMs.put(h, PENALTY_MS);
+        penalizedAt.put(h, System.nanoTime());
+    }
+
+    synchronized Double latencyMs(String url) {
+        return latencyMs.get(host(url));
+    }
+
+    private void probeUnknown(List<String> urls) {
+        List<String> unknown = new ArrayList<>();
+        synchronized (this) {
+            for (String u : urls) {
+                String h = host(u);
+                Long at = penalizedAt.get(h);
+                if (!latencyMs.containsKey(h) || (at != null && System.nanoTime() - at >= penaltyTtlNanos))
+                    unknown.add(u);
+            }
+        }
+        if (unknown.isEmpty())
+            return;
+        List<Future<?>> futures = new ArrayList<>();
+        for (String u : unknown)
+            futures.add(probes.submit(() -> probe(u)));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 超时的探测在后台接着跑，先按失败排
+                futures.get(i).cancel(true);
+                failed(unknown.get(i));
+            }
+        }
+    }
+
+    private void probe(String url) {
+        long t0 = System.nanoTime();
+        try (HttpTransport.Response r = http.get(url, "bytes=0-0")) {
+            int rc = r.code();
+            if (rc == 200 || rc == 206)
+                record(url, System.nanoTime() - t0);
+            else
+                failed(url);
+        } catch (Exception e) {
+            failed(url);
+        }
+    }
+
+    private static double score(Map<String, Double> snapshot, String url) {
+        Double ms = snapshot.get(host(url));
+        return ms != null ? ms : PENALTY_MS;
+    }
+
+    static String host(String url) {
+        try {
+            URI u = URI.create(url);
+            return u.getScheme() + "://" + u.getAuthority();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Read-only, seekable plaintext view of one installed file, from {@link ModelHandle#reader}.
+ * Plain files read straight through their {@link FileChannel}. Files installed with
+ * {@code encryptAtRest} ({@link EncryptedFile}) are decrypted on demand: a read decrypts and
+ * authenticates only the chunks it touches and keeps the most recent ones in a small LRU cache,
+ * so sequential reads cost one decrypt per chunk and nothing decrypted is ever written out. A
+ * chunk that fails authentication throws {@code ENCRYPTION_CORRUPT ...}.
+ *
+ * <p>Same shape as {@code SeekableByteChannel} (API 24, above this library's minSdk) plus a
+ * positional {@link #read(ByteBuffer, long)}. Thread-safe; reads are serialized.
+ */
+public final class ModelChannel implements ReadableByteChannel {
+
+    static final int DEFAULT_CACHE_CHUNKS = 16;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel ch;
+    private final SecretKey key;
+    private final EncryptedFile.Header header; // 明文文件为 null
+    private final long base; // 明文时的起始偏移（packed 容器里的一项）
+    private final long length; // 明文时的长度，-1 = 到文件尾
+    private final Cipher cipher;
+    private final Map<Long, byte[]> cache;
+    private final ByteBuffer sealed;
+    private byte[] spare; // 淘汰下来的块缓冲，下一次未命中复用
+    private long position;
+    private boolean open = true;
+
+    ModelChannel(File file, SecretKey key, int cacheChunks) throws IOException {
+        this(file, key, cacheChunks, 0, -1);
+    }
+
+    private ModelChannel(File file, SecretKey key, int cacheChunks, long base, long length) throws IOException {
+        this.file = file;
+        this.key = key;
+        this.base = base;
+        this.length = length;
+        raf = new RandomAccessFile(file, "r");
+        ch = raf.getChannel();
+        if (key == null) {
+            header = null;
+            cipher = null;
+            cache = null;
+            sealed = null;
+            return;
+        }
+        try {
+            header = EncryptedFile.readHeader(ch, file);
+            cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (GeneralSecurityException e) {
+            raf.close();
+            throw new IOException("ENCRYPTION_UNAVAILABLE " + e.getMessage(), e);
+        }
+        int capacity = Math.max(1, cacheChunks);
+        cache = new LinkedHashMap<Long, byte[]>(capacity + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                if (size() <= capacity)
+                    return false;
+                spare = eldest.getValue();
+                return true;
+            }
+        };
+        sealed = ByteBuffer.allocate(header.chunkSize + EncryptedFile.TAG);
+    }
+
+    /** Plain view when {@code key} is null, otherwise a decrypting one. Caller closes it. */
+    static ModelChannel open(File f, SecretKey key) throws IOException {
+        return new ModelChannel(f, key, DEFAULT_CACHE_CHUNKS);
+    }
+
+    /** Plain view of {@code [offset, offset + length)} of {@code f}, e.g. one entry of a packed container. */
+    static ModelChannel slice(File f, long offset, long length) throws IOException {
+        return new ModelChannel(f, null, 0, offset, length);
+    }
+
+    /** Plaintext length of {@code f}; its on-disk length when {@code key} is null. */
+    static long size(File f, SecretKey key) throws IOException {
+        return key == null ? f.length() : EncryptedFile.plainLength(f);
+    }
+
+    public boolean encrypted() {
+        return header != null;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int n = read(dst, position);
+        if (n > 0)
+            position += n;
+        return n;
+    }
+
+    /** Reads at {@code pos} without moving the channel's position. */
+    public synchronized int read(ByteBuffer dst, long pos) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+        if (header == null)
+            return readPlain(dst, pos);
+        if (pos >= header.length)
+            return -1;
+        int total = 0;
+        while (dst.hasRemaining() && pos < header.length) {
+            long c = pos / header.chunkSize;
+            byte[] plain = chunk(c);
+            int off = (int) (pos - c * header.chunkSize);
+            int n = Math.min(dst.remaining(), header.plainSizeOf(c) - off);
+            dst.put(plain, off, n);
+            pos += n;
+            total += n;
+        }
+        return total;
+    }
+
+    private int readPlain(ByteBuffer dst, long pos) throws IOException {
+        if (length < 0)
+            return ch.read(dst, pos);
+        if (pos >= length)
+            return -1;
+        int limit = dst.limit();
+        if (dst.remaining() > length - pos)
+            dst.limit(dst.position() + (int) (length - pos));
+        try {
+            return ch.read(dst, base + pos);
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    private byte[] chunk(long c) throws IOException {
+        byte[] plain = cache.get(c);
+        if (plain != null)
+            return plain;
+        sealed.clear();
+        sealed.limit(header.plainSizeOf(c) + EncryptedFile.TAG);
+        long pos = header.offsetOf(c);
+        while (sealed.hasRemaining()) {
+            int n = ch.read(sealed, pos);
+            if (n < 0)
+                throw new IOException("ENCRYPTION_CORRUPT truncated chunk " + c + ": " + file.getName());
+            pos += n;
+        }
+        plain = spare != null ? spare : new byte[header.chunkSize];
+        spare = null;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, EncryptedFile.iv(header.nonce, c));
+            cipher.updateAAD(EncryptedFile.aad(c, c == header.chunks() - 1));
+            cipher.doFinal(sealed.array(), 0, sealed.limit(), plain, 0);
+        } catch (AEADBadTagException e) {
+            throw new IOException("ENCRYPTION_CORRUPT chunk " + c + " failed authentication: " + file.getName());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("ENCRYPTION_UNAVAILABLE " + e.getMessage(), e);
+        }
+        cache.put(c, plain);
+        return plain;
+    }
+
+    public synchronized long position() {
+        return position;
+    }
+
+    public synchronized ModelChannel position(long newPosition) {
+        if (newPosition < 0)
+            throw new IllegalArgumentException("negative position");
+        position = newPosition;
+        return this;
+    }
+
+    /** Plaintext size. */
+    public long size() throws IOException {
+        if (header != null)
+            return header.length;
+        return length >= 0 ? length : ch.size();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open)
+            return;
+        open = false;
+        if (cache != null)
+            cache.clear();
+        raf.close();
+    }
+}
@@ -0,0 +1,313 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Read-only view of one installed model for runtimes that map weights instead of copying them
+ * into the heap. Obtained from {@link ModelInstaller#open}; paths are relative to the install dir.
+ *
+ * <p>Each open handle holds a reference on its key: eviction skips the model, and {@code remove}
+ * or an update that would replace the files fails with {@code IN_USE} until every handle is
+ * closed. Buffers mapped through a handle stay readable after {@link #close()} (a mapping outlives
+ * its channel), but the files behind them are no longer protected.
+ *
+ * <p>For a model installed with {@code layout: "packed"} every path lives inside one
+ * {@code model.mhpk}: {@link #file}, {@link #channel} and {@link #fd} return the container, and
+ * {@link #region} says where the entry starts. {@link #map} handles both layouts the same way.
+ *
+ * <p>A model installed with {@code encryptAtRest} has no plaintext on disk to map or hand out as
+ * an fd; those calls fail with {@code ENCRYPTED}. Read it through {@link #reader}, which decrypts
+ * chunk by chunk and works for every layout.
+ */
+public final class ModelHandle implements Closeable {
+
+    // 单个 MappedByteBuffer 最多 2GB；prefetch 按这个窗口分段映射
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private final Registry registry;
+    private final String key;
+    private final File dir;
+    private final String version;
+    private final JSONObject fingerprint;
+    private final PackFile.Index pack; // 散文件布局时为 null
+    private final SecretKey atRest; // 未加密时为 null
+    private final Map<String, RandomAccessFile> files = new HashMap<>();
+    private boolean closed;
+
+    ModelHandle(Registry registry, String key, File dir, String version, JSONObject fingerprint,
+            PackFile.Index pack, SecretKey atRest) {
+        this.registry = registry;
+        this.key = key;
+        this.dir = dir;
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.pack = pack;
+        this.atRest = atRest;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public File dir() {
+        return dir;
+    }
+
+    /** Installed version, empty if the item had none. */
+    public String version() {
+        return version;
+    }
+
+    /** True if the model is one page-aligned container rather than loose files. */
+    public boolean packed() {
+        return pack != null;
+    }
+
+    /** True if the files are encrypted at rest; use {@link #reader}. */
+    public boolean encrypted() {
+        return atRest != null;
+    }
+
+    /** Every file recorded at install time (the container's entries when packed). */
+    public List<String> files() {
+        if (pack != null)
+            return new ArrayList<>(pack.entries.keySet());
+        return InstallFingerprint.paths(fingerprint);
+    }
+
+    /**
+     * Resolves {@code path} inside the install dir (the container when packed); rejects anything
+     * that escapes it.
+     */
+    public File file(String path) throws IOException {
+        if (pack != null) {
+            entry(path);
+            return new File(dir, PackFile.NAME);
+        }
+        File f = new File(dir, StorageManager.safeRel(path));
+        if (!f.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator) || !f.isFile())
+            throw new IOException("NOT_FOUND no such file in " + key + ": " + path);
+        return f;
+    }
+
+    /**
+     * Where {@code path}'s bytes are: the file itself from offset 0, or its slice of the container.
+     * Packed entries start on a 16 KiB boundary, so the offset can go straight to a native mmap.
+     */
+    public Region region(String path) throws IOException {
+        plaintext();
+        return stored(path);
+    }
+
+    /**
+     * Seekable plaintext reader on {@code path}: decrypts on demand for encrypted installs, reads
+     * the entry's slice of the container when packed. Each call opens a new one; the caller closes it.
+     */
+    public ModelChannel reader(String path) throws IOException {
+        checkOpen();
+        if (pack != null) {
+            PackFile.Entry e = entry(path);
+            return ModelChannel.slice(new File(dir, PackFile.NAME), e.offset, e.length);
+        }
+        return ModelChannel.open(file(path), atRest);
+    }
+
+    // 磁盘上的字节在哪：加密时就是整份密文文件
+    private Region stored(String path) throws IOException {
+        if (pack != null) {
+            PackFile.Entry e = entry(path);
+            return new Region(new File(dir, PackFile.NAME), e.offset, e.length);
+        }
+        File f = file(path);
+        return new Region(f, 0, f.length());
+    }
+
+    /** Channel on {@code path} (the container when packed), opened once per handle and closed with it. */
+    public FileChannel channel(String path) throws IOException {
+        plaintext();
+        return open(file(path)).getChannel();
+    }
+
+    /** Descriptor for runtimes that take an fd (e.g. a native loader); owned by the handle, do not close. */
+    public FileDescriptor fd(String path) throws IOException {
+        plaintext();
+        return open(file(path)).getFD();
+    }
+
+    /** Maps the whole file read-only; files over 2 GB need {@link #map(String, long, long)}. */
+    public MappedByteBuffer map(String path) throws IOException {
+        Region r = region(path);
+        if (r.length > Integer.MAX_VALUE)
+            throw new IOException("file too large for one mapping: " + path + " (" + r.length + " bytes)");
+        return open(r.file).getChannel().map(FileChannel.MapMode.READ_ONLY, r.offset, r.length);
+    }
+
+    /** Maps {@code [offset, offset + length)} of {@code path}; offsets are relative to the file. */
+    public MappedByteBuffer map(String path, long offset, long length) throws IOException {
+        Region r = region(path);
+        if (offset < 0 || length < 0 || offset + length > r.length)
+            throw new IOException("range out of bounds: " + path + " [" + offset + ", +" + length + ")");
+        return open(r.file).getChannel().map(FileChannel.MapMode.READ_ONLY, r.offset + offset, length);
+    }
+
+    /**
+     * Pages in the checkFiles (all files if the item had none) ahead of the first inference. For an
+     * encrypted install this warms the ciphertext, which is what {@link #reader} reads.
+     */
+    public long prefetch() throws IOException {
+        List<String> paths = InstallFingerprint.checkFiles(fingerprint);
+        return prefetch(paths.isEmpty() ? files() : paths);
+    }
+
+    /**
+     * Touches every page of {@code paths} in order ({@link MappedByteBuffer#load()}), which reads
+     * them into the page cache sequentially so readahead kicks in. Blocking.
+     *
+     * @return bytes paged in
+     */
+    public long prefetch(List<String> paths) throws IOException {
+        long total = 0;
+        for (String p : paths) {
+            Region r = stored(p);
+            FileChannel ch = open(r.file).getChannel();
+            for (long off = 0; off < r.length; off += MAP_WINDOW) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("CANCELLED");
+                long len = Math.min(MAP_WINDOW, r.length - off);
+                ch.map(FileChannel.MapMode.READ_ONLY, r.offset + off, len).load();
+            }
+            total += r.length;
+        }
+        return total;
+    }
+
+    /** Closes every descriptor and drops the reference; idempotent. */
+    @Override
+    public void close() {
+        Map<String, RandomAccessFile> toClose;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            toClose = new LinkedHashMap<>(files);
+            files.clear();
+        }
+        for (RandomAccessFile raf : toClose.values()) {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+        registry.release(key);
+    }
+
+    private void plaintext() throws IOException {
+        if (atRest != null)
+            throw new IOException("ENCRYPTED model is encrypted at rest, read it through reader(): " + key);
+    }
+
+    private synchronized void checkOpen() throws IOException {
+        if (closed)
+            throw new IOException("handle closed: " + key);
+    }
+
+    private PackFile.Entry entry(String path) throws IOException {
+        PackFile.Entry e = pack.get(path);
+        if (e == null)
+            throw new IOException("NOT_FOUND no such file in " + key + ": " + path);
+        return e;
+    }
+
+    // 按实际文件缓存：packed 时所有 path 共用容器这一个 fd
+    private synchronized RandomAccessFile open(File f) throws IOException {
+        if (closed)
+            throw new IOException("handle closed: " + key);
+        String k = f.getPath();
+        RandomAccessFile raf = files.get(k);
+        if (raf == null) {
+            raf = new RandomAccessFile(f, "r");
+            files.put(k, raf);
+        }
+        return raf;
+    }
+
+    /** A file, or a slice of the packed container. */
+    public static final class Region {
+        public final File file;
+        public final long offset;
+        public final long length;
+
+        Region(File file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Open-handle counts per key. An install that is about to swap files calls
+     * {@link #beginReplace}, which fails while handles are open (or another replace of the key is
+     * under way) and makes {@link #acquire} fail until {@link #endReplace}.
+     */
+    static final class Registry {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final Set<String> replacing = new HashSet<>();
+
+        synchronized void acquire(String key) throws IOException {
+            if (replacing.contains(key))
+                throw new IOException("BUSY install in progress: " + key);
+            Integer n = refs.get(key);
+            refs.put(key, n == null ? 1 : n + 1);
+        }
+
+        synchronized void release(String key) {
+            Integer n = refs.get(key);
+            if (n == null)
+                return;
+            if (n <= 1)
+                refs.remove(key);
+            else
+                refs.put(key, n - 1);
+        }
+
+        synchronized boolean inUse(String key) {
+            return refs.containsKey(key);
+        }
+
+        synchronized int count(String key) {
+            Integer n = refs.get(key);
+            return n == null ? 0 : n;
+        }
+
+        synchronized void beginReplace(String key) throws IOException {
+            // 同一 key 只能有一个替换/删除在进行，否则先结束的那个会提前放开另一个
+            if (replacing.contains(key))
+                throw new IOException("BUSY install in progress: " + key);
+            if (refs.containsKey(key))
+                throw new IOException("IN_USE model is open (" + refs.get(key) + " handle(s)): " + key);
+            replacing.add(key);
+        }
+
+        synchronized void endReplace(String key) {
+            replacing.remove(key);
+        }
+    }
+}
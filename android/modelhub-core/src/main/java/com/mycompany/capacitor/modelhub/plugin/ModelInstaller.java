@@ -0,0 +1,1707 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import net.lingala.zip4j.exception.ZipException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * The install engine behind the plugin, free of Android and Capacitor types so it runs (and is
+ * tested) on a plain JVM. Everything platform specific comes in through four interfaces:
+ * {@link FsRoot} (models dir, hard links, block allocation), {@link AssetSource} (bundled zips),
+ * {@link HttpTransport} and {@link ProgressSink}. Results are {@link JSONObject}s in the shape the
+ * JS API returns.
+ *
+ * <p>Thread-safe; one instance per models dir. Installs run on the pools of an
+ * {@link InstallScheduler} and report back through {@link Callback} on a worker thread.
+ */
+public final class ModelInstaller {
+
+    static final int MAINTENANCE_THREADS = 2;
+
+    /** Tunables, mirroring the plugin config keys. */
+    public static final class Options {
+        public int downloadConcurrency = 3;
+        public int verifyConcurrency = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        public int unpackConcurrency = 2;
+        public int metricsCapacity = 50;
+        public boolean contentStore = false;
+        public long storageBudgetBytes = 0L; // <= 0 不限
+        public long storageMarginBytes = 64L * 1024 * 1024;
+        public int unpackThreads = ParallelUnzipper.defaultThreads();
+        public int verifyThreads = ParallelUnzipper.defaultThreads();
+        public int downloadConnections = RangeDownloader.DEFAULT_CONNECTIONS;
+        public long downloadChunkBytes = RangeDownloader.DEFAULT_CHUNK_SIZE;
+        public KeyProvider keyProvider; // encryptAtRest 需要；为 null 时这类安装以 ENCRYPTION_UNAVAILABLE 失败
+        public RetryPolicy retry = RetryPolicy.defaults(); // 所有远端请求共用
+    }
+
+    /** One install's result, in input order. {@code result} is set for failures too. */
+    public static final class Outcome {
+        public final String key;
+        public final JSONObject result;
+        public final Exception error; // null = 成功
+        public final String code;
+
+        Outcome(String key, JSONObject result, Exception error, String code) {
+            this.key = key;
+            this.result = result;
+            this.error = error;
+            this.code = code;
+        }
+    }
+
+    public interface Callback {
+        void onComplete(List<Outcome> outcomes);
+    }
+
+    /** One {@link #ensure} call's claim on its installs. */
+    public interface Ticket {
+        /**
+         * Stops waiting: installs other callers share keep running for them and this call's
+         * callback gets {@code CANCELLED} right away; installs only this call waits on are
+         * cancelled. Unlike {@link #cancel(String)}, never fails another caller.
+         *
+         * @return false if everything had already finished
+         */
+        boolean detach();
+    }
+
+    private final FsRoot fs;
+    private final AssetSource assets;
+    private final HttpTransport http;
+    private final HttpTransport remote; // http + 重试，给单次请求用；下载器自己包一层以便按 job 计重试次数
+    private final RetryPolicy retry;
+    private final MirrorSelector mirrors;
+    private final ProgressSink progress;
+    private final InstallScheduler scheduler;
+    // verify / prefetch 这类按需调用；不和安装的三个池抢
+    private final PriorityExecutor maintenance = new PriorityExecutor("maintenance", MAINTENANCE_THREADS);
+    private final InstallMetrics.Ring metricsRing;
+    private final boolean useContentStore;
+    private final StorageManager storage;
+    private final ModelHandle.Registry handles = new ModelHandle.Registry();
+    private final int unpackThreads;
+    private final int verifyThreads;
+    private final int downloadConnections;
+    private final long downloadChunkBytes;
+    private final KeyProvider keys;
+
+    public ModelInstaller(FsRoot fs, AssetSource assets, HttpTransport http, ProgressSink progress,
+            Options options) {
+        this.fs = fs;
+        this.assets = assets;
+        this.http = http;
+        retry = options.retry != null ? options.retry : RetryPolicy.defaults();
+        remote = new RetryingTransport(http, retry, null);
+        mirrors = new MirrorSelector(http);
+        this.progress = progress;
+        scheduler = new InstallScheduler(options.downloadConcurrency, options.verifyConcurrency,
+                options.unpackConcurrency);
+        metricsRing = new InstallMetrics.Ring(options.metricsCapacity);
+        useContentStore = options.contentStore;
+        unpackThreads = options.unpackThreads;
+        verifyThreads = options.verifyThreads;
+        downloadConnections = options.downloadConnections;
+        downloadChunkBytes = options.downloadChunkBytes;
+        keys = options.keyProvider;
+        storage = new StorageManager(root(), state(), contentStore(), options.storageBudgetBytes,
+                options.storageMarginBytes, new StorageManager.Busy() {
+                    @Override
+                    public boolean isBusy(String key) {
+                        return scheduler.isBusy(key) || handles.inUse(key);
+                    }
+
+                    // 淘汰和 remove() 走同一套 beginReplace：删的过程中 open() 会拿到 BUSY
+                    @Override
+                    public boolean beginRemove(String key) {
+                        if (scheduler.isBusy(key))
+                            return false;
+                        try {
+                            handles.beginReplace(key);
+                            return true;
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    }
+
+                    @Override
+                    public void endRemove(String key) {
+                        handles.endReplace(key);
+                    }
+
+                    // 查空闲和挪走 _tmp 在调度锁内做完，期间新的安装排不进来
+                    @Override
+                    public boolean whileIdle(String key, Runnable action) {
+                        return scheduler.whileIdle(key, action);
+                    }
+                });
+        // 清掉上次崩溃留下的 _tmp 残留，放后台不挡初始化
+        Thread gc = new Thread(storage::gc, "modelhub-gc");
+        gc.setDaemon(true);
+        gc.start();
+    }
+
+    public File root() {
+        File root = fs.dir();
+        if (!root.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            root.mkdirs();
+        }
+        return root;
+    }
+
+    public File pathFor(String unpackTo) {
+        return new File(root(), StorageManager.safeRel(unpackTo));
+    }
+
+    // ===================== API =====================
+
+    /**
+     * Installs {@code items} (each a JS {@code ModelItem}) through the pipelined scheduler; the
+     * callback gets one outcome per item in input order.
+     */
+    public Ticket ensure(List<JSONObject> items, String policy, String priority, Callback done) {
+        int p = "background".equals(priority) ? PriorityExecutor.PRIORITY_BACKGROUND
+                : PriorityExecutor.PRIORITY_FOREGROUND;
+        List<InstallJob> jobs = new ArrayList<>();
+        for (JSONObject item : items)
+            jobs.add(new InstallJob(item, policy, p));
+        return runJobs(jobs, done);
+    }
+
+    /** @return {@code {results, elapsedMs}} as returned by {@code check()} */
+    public JSONObject check(JSONArray items, boolean deep) throws JSONException {
+        long t0 = System.nanoTime();
+        StateStore store = state();
+
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject it = items.getJSONObject(i);
+
+            String key = it.optString("key", "");
+            String unpackTo = it.optString("unpackTo", "");
+            JSONArray checkFiles = it.optJSONArray("checkFiles");
+
+            File installedDir = pathFor(unpackTo);
+            long bundledSize = assets.size(key);
+            JSONObject rec = store.get(key);
+            Status st = checkStatus(key, installedDir, rec, unpackTo, checkFiles, deep);
+
+            JSONObject r = new JSONObject();
+            r.put("key", key);
+            r.put("installedPath", installedDir.getAbsolutePath());
+            r.put("hasBundledZip", bundledSize >= 0);
+            if (bundledSize >= 0)
+                r.put("bundledSize", bundledSize);
+            r.put("status", st.value);
+
+            if (rec != null) {
+                r.put("state", publicState(rec));
+            }
+            results.put(r);
+        }
+
+        JSONObject ret = new JSONObject();
+        ret.put("results", results);
+        ret.put("elapsedMs", (System.nanoTime() - t0) / 1_000_000.0);
+        return ret;
+    }
+
+    public boolean cancel(String key) {
+        return scheduler.cancel(key);
+    }
+
+    public boolean isBusy(String key) {
+        return scheduler.isBusy(key);
+    }
+
+    /**
+     * Runs a blocking call that may read gigabytes (verify, prefetch) on a small shared pool
+     * ({@link #MAINTENANCE_THREADS}), so the bridge thread is free without a thread per call.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException after {@link #shutdown()}
+     */
+    public void runAsync(Runnable task) {
+        maintenance.submit(PriorityExecutor.PRIORITY_FOREGROUND, task, null);
+    }
+
+    public JSONObject queueStats() throws JSONException {
+        JSONObject pools = new JSONObject();
+        int queued = 0;
+        int active = 0;
+        for (PriorityExecutor p : scheduler.pools()) {
+            JSONObject o = new JSONObject();
+            o.put("threads", p.threads());
+            o.put("queued", p.queued());
+            o.put("active", p.active());
+            o.put("completed", p.completed());
+            pools.put(p.name(), o);
+            queued += p.queued();
+            active += p.active();
+        }
+        // 不算进安装的 queued / active
+        pools.put(maintenance.name(), new JSONObject()
+                .put("threads", maintenance.threads())
+                .put("queued", maintenance.queued())
+                .put("active", maintenance.active())
+                .put("completed", maintenance.completed()));
+        JSONObject r = new JSONObject();
+        r.put("inflight", scheduler.inflight());
+        r.put("queued", queued);
+        r.put("active", active);
+        r.put("pools", pools);
+        return r;
+    }
+
+    public JSONArray metrics(boolean clear) {
+        JSONArray items = new JSONArray();
+        for (InstallMetrics m : metricsRing.list())
+            items.put(m.toJson());
+        if (clear)
+            metricsRing.clear();
+        return items;
+    }
+
+    /**
+     * @return {@code {key, removed, freedBytes}}; throws {@code BUSY} while the key installs and
+     *         {@code IN_USE} while a {@link ModelHandle} on it is open
+     */
+    public JSONObject remove(String key) throws IOException, JSONException {
+        if (scheduler.isBusy(key))
+            throw new IOException("BUSY install in progress: " + key);
+        boolean existed = state().has(key);
+        long freed;
+        handles.beginReplace(key);
+        try {
+            freed = storage.remove(key);
+        } finally {
+            handles.endReplace(key);
+        }
+        if (keys != null)
+            keys.delete(key);
+        return new JSONObject().put("key", key).put("removed", existed).put("freedBytes", freed);
+    }
+
+    /**
+     * Opens a read-only handle on an installed model. Close it when done; until then the model is
+     * not evicted, removed or replaced.
+     */
+    public ModelHandle open(String key) throws IOException {
+        if (state().get(key) == null)
+            throw new IOException("NOT_INSTALLED not installed: " + key);
+        handles.acquire(key);
+        // 拿到引用后再读一次记录：期间可能刚好换过版本
+        JSONObject rec = state().get(key);
+        File dir = rec == null ? null : pathFor(rec.optString("unpackTo", ""));
+        if (rec == null || rec.optBoolean("corrupt", false) || !dir.isDirectory()) {
+            handles.release(key);
+            throw new IOException("NOT_INSTALLED not installed: " + key);
+        }
+        PackFile.Index pack = null;
+        if (PackFile.isPacked(dir)) {
+            try {
+                pack = PackFile.read(new File(dir, PackFile.NAME));
+            } catch (IOException e) {
+                handles.release(key);
+                throw e;
+            }
+        }
+        SecretKey atRest;
+        try {
+            atRest = installedKey(key, rec);
+        } catch (IOException e) {
+            handles.release(key);
+            throw e;
+        }
+        storage.touch(key);
+        return new ModelHandle(handles, key, dir, rec.optString("installedVersion", ""),
+                rec.optJSONObject("fingerprint"), pack, atRest);
+    }
+
+    /** Open {@link ModelHandle}s on {@code key}. */
+    public int openHandles(String key) {
+        return handles.count(key);
+    }
+
+    public void pin(String key, boolean pinned) throws IOException {
+        if (!storage.pin(key, pinned))
+            throw new IOException("NOT_INSTALLED not installed: " + key);
+    }
+
+    /**
+     * 按安装时保存的清单重新校验：sample 抽查首尾和随机几块，full 读全部字节。
+     * 发现坏文件时把记录标成 corrupt，下次 ensure 会重装。阻塞，full 可能读几个 GB。
+     */
+    public JSONObject verify(String key, boolean full) throws Exception {
+        JSONObject rec = state().get(key);
+        if (rec == null)
+            throw new IOException("NOT_INSTALLED not installed: " + key);
+        if (scheduler.isBusy(key))
+            throw new IOException("BUSY install in progress: " + key);
+        File dir = pathFor(rec.optString("unpackTo", ""));
+        if (PackFile.isPacked(dir))
+            return verifyPacked(key, new File(dir, PackFile.NAME), full);
+        IntegrityManifest m = IntegrityManifest.load(IntegrityManifest.fileFor(root(), key));
+        if (m == null)
+            throw new IOException("NO_INTEGRITY_MANIFEST no integrity manifest for " + key);
+
+        long t0 = System.nanoTime();
+        IntegrityVerifier.Result res = IntegrityVerifier.verify(m, dir, full, verifyThreads, null,
+                installedKey(key, rec));
+        if (!res.ok())
+            markCorrupt(key, res.corrupt);
+        JSONArray corrupt = new JSONArray();
+        for (String p : res.corrupt)
+            corrupt.put(p);
+        JSONObject ret = new JSONObject();
+        ret.put("key", key);
+        ret.put("mode", full ? "full" : "sample");
+        ret.put("ok", res.ok());
+        ret.put("corrupt", corrupt);
+        ret.put("files", res.files);
+        ret.put("checkedBytes", res.bytes);
+        ret.put("elapsedMs", (System.nanoTime() - t0) / 1_000_000.0);
+        return ret;
+    }
+
+    // packed：sample 只校验头部和索引，full 逐项重算 sha256
+    private JSONObject verifyPacked(String key, File pack, boolean full) throws Exception {
+        long t0 = System.nanoTime();
+        List<String> bad = new ArrayList<>();
+        int files = 0;
+        long bytes = 0;
+        try {
+            PackFile.Index index = PackFile.read(pack);
+            files = index.entries.size();
+            if (full) {
+                bad.addAll(PackFile.verify(pack, index, null));
+                bytes = index.dataBytes();
+            }
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException)
+                throw e;
+            bad.add(PackFile.NAME);
+        }
+        // 坏的是容器这一个文件（content store 里也只有它这个 blob）
+        if (!bad.isEmpty())
+            markCorrupt(key, Collections.singletonList(PackFile.NAME));
+        JSONArray corrupt = new JSONArray();
+        for (String p : bad)
+            corrupt.put(p);
+        JSONObject ret = new JSONObject();
+        ret.put("key", key);
+        ret.put("mode", full ? "full" : "sample");
+        ret.put("ok", bad.isEmpty());
+        ret.put("corrupt", corrupt);
+        ret.put("files", files);
+        ret.put("checkedBytes", bytes);
+        ret.put("elapsedMs", (System.nanoTime() - t0) / 1_000_000.0);
+        return ret;
+    }
+
+    public JSONObject usage() throws JSONException {
+        JSONArray models = new JSONArray();
+        long used = 0;
+        for (Map.Entry<String, JSONObject> e : state().snapshot().entrySet()) {
+            JSONObject rec = e.getValue();
+            JSONObject m = new JSONObject();
+            m.put("key", e.getKey());
+            m.put("bytes", StorageManager.usageOf(rec));
+            m.put("lastAccess", rec.optLong("lastAccess", rec.optLong("installedAt", 0L)));
+            m.put("pinned", rec.optBoolean("pinned", false));
+            m.put("unpackTo", rec.optString("unpackTo", ""));
+            String v = rec.optString("installedVersion", "");
+            if (!v.isEmpty())
+                m.put("installedVersion", v);
+            models.put(m);
+            used += StorageManager.usageOf(rec);
+        }
+        ContentStore cas = contentStore();
+        JSONObject r = new JSONObject();
+        r.put("usedBytes", used);
+        r.put("budgetBytes", storage.budget());
+        r.put("tmpBytes", storage.tmpBytes());
+        if (cas != null)
+            r.put("storeBytes", cas.size());
+        r.put("freeBytes", root().getUsableSpace());
+        r.put("models", models);
+        return r;
+    }
+
+    /** Interrupts running installs and flushes {@code state.json}. */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        maintenance.shutdownNow();
+        state().flush();
+    }
+
+    // ===================== Core Ensure =====================
+    // 安装拆成 fetch -> verify -> unpack 三段，由 InstallScheduler 分别放到不同的池里跑
+
+    private boolean fetchStep(InstallJob job) throws Exception {
+        String key = job.key;
+
+        if (key.isEmpty() || job.unpackTo.isEmpty()) {
+            throw new IllegalArgumentException("key/unpackTo is required");
+        }
+        if (job.encrypted && job.packed)
+            throw new IllegalArgumentException("encryptAtRest cannot be combined with layout packed");
+
+        job.installedDir = pathFor(job.unpackTo);
+
+        emit(key, "checking", null, null, null, "checking installed");
+        long t0 = System.nanoTime();
+        Status st0 = checkInstalled(job.installedDir, job.checkFiles);
+        job.metrics.phase("checking", System.nanoTime() - t0, 0L);
+        boolean deltaFailed = false;
+        JSONObject rec0 = state().get(key);
+        // verify() 查出过坏文件的安装要重装
+        if (st0 == Status.INSTALLED && rec0 != null && rec0.optBoolean("corrupt", false))
+            st0 = Status.CORRUPT;
+        if (wantsDelta(job, st0 == Status.INSTALLED, rec0)) {
+            // 整包 ETag 没变：远端还是装着的那个文件，只记下新 version，增量和整包都不用拉
+            if (st0 == Status.INSTALLED && unchangedSinceInstall(job, rec0)) {
+                JSONObject rec = new JSONObject(rec0.toString());
+                rec.put("installedVersion", job.version);
+                state().put(key, rec);
+                storage.touch(key);
+                job.result = EnsureResult.ok(
+                        key,
+                        job.installedDir.getAbsolutePath(),
+                        emptyToNull(job.version),
+                        "installed",
+                        "not modified",
+                        hasBundled(key),
+                        "none",
+                        job.sha256,
+                        0L,
+                        job.unpackTo,
+                        rec);
+                return true;
+            }
+            try {
+                deltaUpdate(job, rec0);
+                return true;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (Exception e) {
+                // 增量失败时已装版本没动过；有整包地址就退回整包下载（不再回头用 bundle）
+                if (job.remoteUrl.isEmpty())
+                    throw e;
+                emit(key, "checking", null, null, null, "delta failed, full download: " + e.getMessage());
+                deltaFailed = true;
+            }
+        } else if (st0 == Status.INSTALLED) {
+            storage.touch(key);
+            if (job.pinned)
+                storage.pin(key, true);
+            // 已存在也回传 state（如果有）
+            JSONObject rec = state().get(key);
+
+            job.result = EnsureResult.ok(
+                    key,
+                    job.installedDir.getAbsolutePath(),
+                    emptyToNull(job.version),
+                    "installed",
+                    "already installed",
+                    hasBundled(key),
+                    "none",
+                    job.sha256,
+                    0L,
+                    job.unpackTo,
+                    rec);
+            return true;
+        }
+
+        resolveIntegrity(job);
+        job.hasBundled = hasBundled(key);
+        boolean useBundle = !deltaFailed && !"downloadOnly".equals(job.policy) && job.hasBundled;
+
+        // 预算内腾地方；不知道大小时只能装完再收
+        makeRoom(key, job.installSize > 0 ? job.installSize : useBundle ? assets.size(key) : 0L);
+
+        // ---- bundle 优先 ----
+        if (useBundle) {
+            // 写盘前先按峰值占用预留空间，磁盘不够直接失败，不解到一半
+            storage.reserve(key, bundlePeak(job));
+            // bundle 不再拷到 _tmp：unpack 阶段直接从 asset 边校验边解压
+            job.usedSource = "bundle";
+            job.metrics.source(job.usedSource, true);
+            return false;
+        }
+
+        if ("bundleOnly".equals(job.policy)) {
+            throw new IOException("MODEL_MISSING_BUNDLED");
+        }
+
+        // ---- download ----
+        if (job.remoteUrl.isEmpty()) {
+            throw new IOException("MODEL_MISSING_REMOTE_URL");
+        }
+
+        job.usedSource = "download";
+        job.metrics.source(job.usedSource, job.streaming);
+        storage.reserve(key, remotePeak(job));
+        if (job.streaming) {
+            try (HttpTransport.Response r = openFirstSource(job); InputStream in = r.body()) {
+                job.zipSize = installStreaming(job, in, r.contentLength(), "downloading", "downloaded");
+            }
+            finishInstall(job);
+            return true;
+        }
+        job.zip = downloadZipToTmp(job);
+        job.zipSize = job.zip.length();
+        return false;
+    }
+
+    private boolean verifyStep(InstallJob job) throws Exception {
+        if (job.zip == null || job.sha256.isEmpty())
+            return false;
+
+        String key = job.key;
+        boolean downloaded = "download".equals(job.usedSource);
+        JSONObject marker = downloaded ? stageMarker(job, job.zip) : null;
+        if (marker != null && job.sha256.equalsIgnoreCase(marker.optString("sha256", ""))) {
+            // 上次进程在 verify 之后、unpack 完成之前退出
+            emit(key, "verifying", job.zipSize, job.zipSize, 1.0, "resumed: already verified");
+            return false;
+        }
+        emit(key, "verifying", 0L, job.zip.length(), 0.0, "sha256 verifying");
+        long t0 = System.nanoTime();
+        String got = Hashes.sha256File(job.zip,
+                (hashed, total) -> emit(key, "verifying", hashed, total, total > 0 ? hashed * 1.0 / total : 0.0,
+                        null));
+        job.metrics.phase("verifying", System.nanoTime() - t0, job.zipSize);
+        if (!job.sha256.equalsIgnoreCase(got)) {
+            boolean bundled = "bundle".equals(job.usedSource);
+            // noinspection ResultOfMethodCallIgnored
+            job.zip.delete();
+            if (!bundled) {
+                // noinspection ResultOfMethodCallIgnored
+                RangeDownloader.journalFor(job.zip).delete();
+                // noinspection ResultOfMethodCallIgnored
+                stageMarkerFor(job.zip).delete();
+            }
+            throw new IOException("SHA256_MISMATCH " + (bundled ? "bundled" : "downloaded") + " expected="
+                    + job.sha256 + " got=" + got);
+        }
+        if (downloaded)
+            markStage(job, job.zip, got);
+        return false;
+    }
+
+    private boolean unpackStep(InstallJob job) throws Exception {
+        if (job.zip == null && "bundle".equals(job.usedSource)) {
+            installFromAsset(job);
+        } else {
+            installFromZip(job);
+        }
+        finishInstall(job);
+        return true;
+    }
+
+    /**
+     * 能按偏移读的 asset（APK 里未压缩）直接读 channel；其余走 asset 流。两种都只读一遍，不落临时 zip。
+     * zip4j 流式解析不了的包（如 STORED + data descriptor）退回拷贝到 _tmp 的老路径。
+     */
+    private void installFromAsset(InstallJob job) throws Exception {
+        try {
+            try (AssetSource.Region region = assets.openRegion(job.key)) {
+                if (region != null) {
+                    InputStream in = new ChannelRangeInputStream(region.channel, region.offset, region.length,
+                            1024 * 1024);
+                    job.zipSize = installStreaming(job, in, region.length, "unpacking", "bundled");
+                    return;
+                }
+            }
+            try (InputStream in = assets.open(job.key)) {
+                job.zipSize = installStreaming(job, in, assets.size(job.key), "unpacking", "bundled");
+            }
+        } catch (ZipException e) {
+            if (e.getType() == ZipException.Type.WRONG_PASSWORD)
+                throw e;
+            job.metrics.source(job.usedSource, false);
+            job.zip = copyAssetZipToTmp(job.key, job.metrics);
+            job.zipSize = job.zip.length();
+            verifyStep(job);
+            installFromZip(job);
+        }
+    }
+
+    private void finishInstall(InstallJob job) {
+        long t0 = System.nanoTime();
+        JSONObject old = state().get(job.key);
+        ContentStore cas = contentStore();
+        // 加密文件每份的 nonce 都不同，入库也去不了重
+        if (cas != null && !job.encrypted) {
+            try {
+                job.blobs = cas.ingest(job.installedDir, job.files);
+                if (job.files != null)
+                    DeltaUpdater.restat(job.files, job.installedDir);
+            } catch (Exception ignored) {
+                // 入库失败不影响安装本身，文件仍是普通文件
+            }
+        }
+        JSONObject fp = null;
+        try {
+            fp = InstallFingerprint.capture(job.installedDir, job.checkFiles);
+        } catch (Exception ignored) {
+        }
+        // 清单先于 state 落盘；没有清单的安装把上一版的删掉，免得拿旧哈希去校验新文件
+        File integrityFile = IntegrityManifest.fileFor(root(), job.key);
+        try {
+            // packed 安装由 model.mhpk 自带的逐项哈希校验，清单里的路径已不存在
+            if (job.integrity != null && !job.packed)
+                job.integrity.save(integrityFile);
+            else
+                // noinspection ResultOfMethodCallIgnored
+                integrityFile.delete();
+        } catch (IOException ignored) {
+            // 写不了清单只是少了以后的 verify，不影响安装本身
+        }
+        writeStateRecord(job, fp, old);
+        if (cas != null && old != null)
+            cas.release(old.optJSONObject("blobs"), state().snapshot().values());
+        // 事先不知道大小的安装，装完再按预算收一次（尽力而为，不让已完成的安装失败）
+        storage.ensureRoom(0L, job.key, null);
+        job.metrics.phase("finalizing", System.nanoTime() - t0, 0L);
+        JSONObject rec = state().get(job.key);
+
+        boolean bundled = "bundle".equals(job.usedSource);
+        emit(job.key, "done", null, null, 1.0, "installed");
+        job.result = EnsureResult.ok(
+                job.key,
+                job.installedDir.getAbsolutePath(),
+                emptyToNull(job.version),
+                "installed",
+                bundled ? "installed from bundle"
+                        : "delta".equals(job.usedSource) ? "installed via delta manifest" : "installed from download",
+                bundled || job.hasBundled,
+                job.usedSource,
+                job.sha256,
+                job.zipSize,
+                job.unpackTo,
+                rec);
+    }
+
+    // ===================== Delta update =====================
+
+    // 需要 deltaManifestUrl；已装时看版本号变没变。
+    // 未装时只在开了 content store 且不走 bundle 时按清单装（共享文件直接链接）。bundleOnly 不联网
+    private boolean wantsDelta(InstallJob job, boolean installed, JSONObject rec) {
+        if (job.deltaManifestUrl.isEmpty() || job.version.isEmpty() || "bundleOnly".equals(job.policy))
+            return false;
+        // 增量按散文件复用；packed 两头都没有散文件，走整包
+        if (job.packed || PackFile.isPacked(job.installedDir))
+            return false;
+        // 增量拉下来的是明文文件，复用的旧文件也按明文哈希；加密安装同样走整包
+        if (job.encrypted || (rec != null && rec.optBoolean("encrypted", false)))
+            return false;
+        if (installed)
+            return rec == null || !job.version.equals(rec.optString("installedVersion", ""));
+        return contentStore() != null && ("downloadOnly".equals(job.policy) || !hasBundled(job.key));
+    }
+
+    private boolean unchangedSinceInstall(InstallJob job, JSONObject rec) {
+        if (rec == null || job.remoteUrl.isEmpty())
+            return false;
+        // 调用方给了不同的 sha256，内容肯定变了
+        if (!job.sha256.isEmpty() && !job.sha256.equalsIgnoreCase(rec.optString("sha256", "")))
+            return false;
+        return notModified(job.remoteUrl, rec.optString("etag", ""));
+    }
+
+    private void deltaUpdate(InstallJob job, JSONObject rec) throws Exception {
+        String key = job.key;
+        job.hasBundled = hasBundled(key);
+        job.usedSource = "delta";
+        job.metrics.source(job.usedSource, false);
+
+        emit(key, "checking", null, null, null, "fetching delta manifest");
+        long t0 = System.nanoTime();
+        DeltaUpdater.Manifest m = DeltaUpdater.Manifest.parse(fetchJson(job.deltaManifestUrl));
+        if (!m.version.isEmpty() && !m.version.equals(job.version))
+            throw new IOException("DELTA_BAD_MANIFEST version " + m.version + " != " + job.version);
+        resolveIntegrity(job);
+        // 标了 corrupt 的记录里的哈希不可信，全部重算
+        JSONObject oldFiles = rec == null || rec.optBoolean("corrupt", false) ? null : rec.optJSONObject("files");
+        String oldVersion = rec == null ? "" : rec.optString("installedVersion", "");
+        ContentStore cas = contentStore();
+        DeltaUpdater.Plan plan = DeltaUpdater.plan(m, job.installedDir, oldFiles, cas);
+        job.metrics.phase("checking", System.nanoTime() - t0, 0L);
+        long newSize = 0;
+        for (DeltaUpdater.FileEntry e : m.files)
+            newSize += Math.max(0L, e.size);
+        makeRoom(key, newSize);
+        // 复用的文件是硬链接，只有要拉的部分占新空间
+        storage.reserve(key, plan.fetchBytes);
+
+        File tmpDir = new File(root(), StorageManager.TMP_DIR);
+        File stageDir = new File(tmpDir, "delta_" + key);
+        RangeDownloader dl = newDownloader();
+        emit(key, "downloading", 0L, plan.fetchBytes, 0.0, "delta: fetch " + plan.fetch.size() + ", reuse "
+                + plan.reuse.size() + ", shared " + plan.fromStore.size());
+        t0 = System.nanoTime();
+        try {
+            DeltaUpdater.stage(plan, job.version, job.installedDir, stageDir, cas, fs, dl::download,
+                    (fetched, total) -> emit(key, "downloading", fetched, total,
+                            total > 0 ? fetched * 1.0 / total : 0.0, null));
+        } finally {
+            job.metrics.retries(dl.retries());
+        }
+        job.metrics.phase("downloading", System.nanoTime() - t0, plan.fetchBytes);
+
+        Status st = checkInstalled(stageDir, job.checkFiles);
+        if (st != Status.INSTALLED)
+            throw new IOException("UNPACK_INVALID:" + st.value);
+        verifyIntegrity(job, stageDir);
+
+        emit(key, "finalizing", null, null, null, "finalizing");
+        t0 = System.nanoTime();
+        handles.beginReplace(key);
+        try {
+            DeltaUpdater.swap(stageDir, job.installedDir, new File(tmpDir, "old_" + key));
+        } finally {
+            handles.endReplace(key);
+        }
+        job.metrics.phase("finalizing", System.nanoTime() - t0, 0L);
+
+        job.zipSize = plan.fetchBytes;
+        job.files = DeltaUpdater.fileRecords(plan, job.installedDir, job.version, oldVersion, oldFiles);
+        finishInstall(job);
+    }
+
+    private JSONObject fetchJson(String urlStr) throws Exception {
+        try (HttpTransport.Response r = openRemote(urlStr); InputStream in = r.body()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) >= 0)
+                bos.write(buf, 0, n);
+            return new JSONObject(new String(bos.toByteArray(), "UTF-8"));
+        }
+    }
+
+    private Ticket runJobs(List<InstallJob> jobs, Callback done) {
+        InstallScheduler.Ticket t = scheduler.runAllAsync(jobs, this::fetchStep, this::verifyStep, this::unpackStep, outs -> {
+            List<Outcome> results = new ArrayList<>(outs.size());
+            for (InstallScheduler.Outcome<InstallJob> out : outs) {
+                InstallJob job = out.job;
+                InstallMetrics m = job.metrics;
+                String code = out.error != null ? codeOf(out.error) : "installed";
+                // 同一 flight 会回到多个批次，只在第一次结束时入环；detach 的调用方先走了，flight 还在跑，不算
+                if (!out.detached && m.finish(code)) {
+                    metricsRing.add(m);
+                    storage.release(job.key);
+                    // 空间不够时解了一半的目录留着只会更挤；可续传的 zip 保留
+                    if ("INSUFFICIENT_STORAGE".equals(code))
+                        deleteRecursively(new File(new File(root(), StorageManager.TMP_DIR), "unpack_" + job.key));
+                    // 每个失败的 flight 发一次 error，和成功时的 done 对称
+                    if (out.error != null)
+                        emit(job.key, "error", null, null, null,
+                                out.error.getMessage() != null ? out.error.getMessage() : code);
+                }
+                EnsureResult r = job.result;
+                if (out.error != null) {
+                    // 关键：单条失败不让整个批量失败，按失败结果回传
+                    r = EnsureResult.fail(
+                            job.key,
+                            pathFor(job.unpackTo).getAbsolutePath(),
+                            code,
+                            out.error.getMessage(),
+                            hasBundled(job.key),
+                            job.unpackTo);
+                }
+                JSONObject json = null;
+                if (r != null) {
+                    r.metrics = m.toJson();
+                    json = r.toJson();
+                }
+                results.add(new Outcome(job.key, json, out.error, code));
+            }
+            done.onComplete(results);
+        });
+        return t::detach;
+    }
+
+    private void installFromZip(InstallJob job) throws Exception {
+        String key = job.key;
+        File zip = job.zip;
+        // zip 已经落盘，按 central directory 里的解压总量重新预留（之前多半只是估计）
+        storage.reserve(key, localUnpackedSize(zip));
+        File unpackDir = prepareUnpackDir(key);
+
+        emit(key, "unpacking", null, null, null, "unpacking zip");
+        long t0 = System.nanoTime();
+        unzipAesZip(zip, unpackDir, job.password, atRestKey(job),
+                (written, total) -> emit(key, "unpacking", written, total,
+                        total > 0 ? written * 1.0 / total : 0.0, null));
+        job.metrics.phase("unpacking", System.nanoTime() - t0, zip.length());
+
+        promote(job, unpackDir);
+
+        // noinspection ResultOfMethodCallIgnored
+        zip.delete();
+        // noinspection ResultOfMethodCallIgnored
+        stageMarkerFor(zip).delete();
+    }
+
+    /**
+     * 边读边解：source 只读一遍，sha256 在 EOF 时校验，通过后才 promote。
+     *
+     * @return 读取的 zip 字节数
+     */
+    private long installStreaming(InstallJob job, InputStream in, long total, String phase, String source)
+            throws Exception {
+        String key = job.key;
+        String sha256 = job.sha256;
+        File unpackDir = prepareUnpackDir(key);
+
+        emit(key, phase, 0L, total, 0.0, "streaming install");
+        long t0 = System.nanoTime();
+        StreamingZipInstaller.Result res = StreamingZipInstaller.install(in, unpackDir, job.password, fs,
+                read -> emit(key, phase, read, total, total > 0 ? read * 1.0 / total : 0.0, null), atRestKey(job));
+        emit(key, phase, res.bytesRead, total, 1.0, "stream complete");
+        // 读、解密、解压、哈希在同一遍里，整段记在 phase 名下
+        job.metrics.phase(phase, System.nanoTime() - t0, res.bytesRead);
+
+        if (!sha256.isEmpty()) {
+            emit(key, "verifying", null, null, null, "sha256 verifying");
+            String got = Hashes.toHex(res.digest);
+            if (!sha256.equalsIgnoreCase(got)) {
+                deleteRecursively(unpackDir);
+                throw new IOException("SHA256_MISMATCH " + source + " expected=" + sha256 + " got=" + got);
+            }
+        }
+
+        promote(job, unpackDir);
+        return res.bytesRead;
+    }
+
+    private File prepareUnpackDir(String key) {
+        File tmpRoot = new File(root(), StorageManager.TMP_DIR);
+        // noinspection ResultOfMethodCallIgnored
+        tmpRoot.mkdirs();
+
+        File unpackDir = new File(tmpRoot, "unpack_" + key);
+        deleteRecursively(unpackDir);
+        // noinspection ResultOfMethodCallIgnored
+        unpackDir.mkdirs();
+        return unpackDir;
+    }
+
+    private void promote(InstallJob job, File unpackDir) throws Exception {
+        String key = job.key;
+        File installedDir = job.installedDir;
+        Status st = checkInstalled(unpackDir, job.checkFiles);
+        if (st != Status.INSTALLED) {
+            throw new IOException("UNPACK_INVALID:" + st.value);
+        }
+        verifyIntegrity(job, unpackDir);
+        if (job.packed)
+            repack(job, unpackDir);
+
+        emit(key, "finalizing", null, null, null, "finalizing");
+        long t0 = System.nanoTime();
+        // 有 handle 开着时不动已装目录，以 IN_USE 失败；下载好的 zip 和阶段标记还在，重试不用重下
+        handles.beginReplace(key);
+        try {
+            deleteRecursively(installedDir);
+            if (!unpackDir.renameTo(installedDir)) {
+                // 跨文件系统 rename 失败，退回整树拷贝（慢路径，单独记一笔）
+                job.metrics.copyDirFallback();
+                storage.reserve(key, StorageManager.sizeOf(unpackDir));
+                StorageManager.copyDir(unpackDir, installedDir);
+                deleteRecursively(unpackDir);
+            }
+        } finally {
+            handles.endReplace(key);
+        }
+        job.metrics.phase("finalizing", System.nanoTime() - t0, 0L);
+    }
+
+    // 在暂存目录里就地打包，promote 换上去的已是单文件；边拷边删，多占的空间不超过最大的那个文件
+    private void repack(InstallJob job, File dir) throws Exception {
+        String key = job.key;
+        long total = StorageManager.sizeOf(dir);
+        emit(key, "finalizing", 0L, total, 0.0, "packing");
+        long t0 = System.nanoTime();
+        PackFile.pack(dir, (written, all) -> emit(key, "finalizing", written, all,
+                all > 0 ? written * 1.0 / all : 0.0, null));
+        job.metrics.phase("finalizing", System.nanoTime() - t0, total);
+    }
+
+    // ===================== Zip / Assets / Download =====================
+
+    // 单线程也走 ParallelUnzipper（只用调用线程），这样解压字节进度和多线程一致
+    private void unzipAesZip(File zipFile, File targetDir, String password, SecretKey atRest,
+            ParallelUnzipper.Listener listener) throws Exception {
+        ParallelUnzipper.extract(zipFile, targetDir, password, Math.max(1, unpackThreads), fs, listener, atRest);
+        checkCancelled();
+    }
+
+    private File copyAssetZipToTmp(String key, InstallMetrics metrics) throws Exception {
+        emit(key, "copying", null, null, null, "copying bundled zip");
+        long t0 = System.nanoTime();
+        File tmpDir = new File(root(), StorageManager.TMP_DIR);
+        // noinspection ResultOfMethodCallIgnored
+        tmpDir.mkdirs();
+        File out = new File(tmpDir, key + ".zip");
+
+        try (InputStream in = assets.open(key)) {
+            copyToFile(in, out);
+        }
+        metrics.phase("copying", System.nanoTime() - t0, out.length());
+        return out;
+    }
+
+    // 包级可见：microbenchmark 直接测这一段
+    // 不套 Buffered*：池里的缓冲够大，多一层只多一次拷贝
+    static void copyToFile(InputStream in, File out) throws IOException {
+        BufferPool pool = BufferPool.heap();
+        ByteBuffer bb = pool.acquire();
+        byte[] buf = bb.array();
+        long t0 = System.nanoTime();
+        long copied = 0;
+        try (InputStream src = in; OutputStream os = new FileOutputStream(out)) {
+            int n;
+            while ((n = src.read(buf)) >= 0) {
+                os.write(buf, 0, n);
+                copied += n;
+                checkCancelled();
+            }
+        } finally {
+            pool.release(bb);
+        }
+        BufferPool.recordStorage(copied, System.nanoTime() - t0);
+    }
+
+    private File downloadZipToTmp(InstallJob job) throws Exception {
+        String key = job.key;
+        String urlStr = job.remoteUrl;
+        InstallMetrics metrics = job.metrics;
+        File tmpDir = new File(root(), StorageManager.TMP_DIR);
+        // noinspection ResultOfMethodCallIgnored
+        tmpDir.mkdirs();
+        File out = new File(tmpDir, key + ".zip");
+        if (stageMarker(job, out) != null) {
+            emit(key, "downloading", out.length(), out.length(), 1.0, "resumed: already downloaded");
+            return out;
+        }
+        // 同一地址下完过、但 version 变了：ETag 没变就是同一个文件，不重下
+        String prevEtag = staleStageEtag(job, out);
+        if (prevEtag != null && notModified(urlStr, prevEtag)) {
+            job.etag = prevEtag;
+            markStage(job, out, null);
+            emit(key, "downloading", out.length(), out.length(), 1.0, "not modified: reusing download");
+            return out;
+        }
+
+        emit(key, "downloading", 0L, 0L, 0.0, "starting download");
+        long t0 = System.nanoTime();
+        long total = -1;
+        IOException last = null;
+        for (String url : sources(job)) {
+            RangeDownloader dl = newDownloader();
+            try {
+                total = dl.download(url, out,
+                        (downloaded, t) -> emit(key, "downloading", downloaded, t,
+                                t > 0 ? downloaded * 1.0 / t : 0.0, null));
+                job.etag = dl.etag();
+                if (dl.probeNanos() >= 0)
+                    mirrors.record(url, dl.probeNanos());
+                break;
+            } catch (IOException e) {
+                if (cancelled(e))
+                    throw e;
+                // 重试用完还不行就换下一个镜像；分片日志的 validator 对得上时接着续传
+                mirrors.failed(url);
+                last = e;
+                emit(key, "downloading", null, null, null,
+                        "source failed: " + MirrorSelector.host(url) + " " + e.getMessage());
+            } finally {
+                metrics.retries(dl.retries());
+            }
+        }
+        if (total < 0)
+            throw last;
+        metrics.phase("downloading", System.nanoTime() - t0, total);
+        markStage(job, out, null);
+        emit(key, "downloading", total, total, 1.0, "download complete");
+        return out;
+    }
+
+    // ---- stage marker ----
+    // 整包下完、校验通过各记一次（_tmp/<key>.zip.ok），进程被杀后从最后完成的阶段接着走，不重下也不重算哈希
+
+    static File stageMarkerFor(File zip) {
+        return new File(zip.getParentFile(), zip.getName() + ".ok");
+    }
+
+    private void markStage(InstallJob job, File zip, String verifiedSha256) {
+        try {
+            JSONObject o = new JSONObject();
+            o.put("url", job.remoteUrl);
+            o.put("version", job.version);
+            o.put("size", zip.length());
+            if (verifiedSha256 != null)
+                o.put("sha256", verifiedSha256);
+            if (job.etag != null)
+                o.put("etag", job.etag);
+            StateStore.writeAtomic(stageMarkerFor(zip), o.toString());
+        } catch (Exception ignored) {
+            // 只影响续传，下次最多重下一遍
+        }
+    }
+
+    /** @return the marker if {@code zip} is a complete download of this job's url/version, else null */
+    private JSONObject stageMarker(InstallJob job, File zip) {
+        File m = stageMarkerFor(zip);
+        if (!m.isFile() || !zip.isFile())
+            return null;
+        try {
+            JSONObject o = new JSONObject(StateStore.readText(m));
+            if (job.remoteUrl.equals(o.optString("url")) && job.version.equals(o.optString("version"))
+                    && o.optLong("size", -1L) == zip.length())
+                return o;
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    /** ETag of a complete download of the same url whose marker is for another version, else null. */
+    private String staleStageEtag(InstallJob job, File zip) {
+        File m = stageMarkerFor(zip);
+        if (!m.isFile() || !zip.isFile())
+            return null;
+        try {
+            JSONObject o = new JSONObject(StateStore.readText(m));
+            String etag = o.optString("etag", "");
+            if (job.remoteUrl.equals(o.optString("url")) && o.optLong("size", -1L) == zip.length() && !etag.isEmpty())
+                return etag;
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    // If-None-Match 条件请求：只有 304 算没变；其它结果（含出错）都走正常下载
+    private boolean notModified(String url, String etag) {
+        if (url.isEmpty() || etag == null || etag.isEmpty())
+            return false;
+        try (HttpTransport.Response r = remote.get(url, "bytes=0-0",
+                Collections.singletonMap("If-None-Match", etag))) {
+            return r.code() == 304;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // remoteUrl + mirrors，按测得的延迟排好；同一个 job 只排一次
+    private List<String> sources(InstallJob job) {
+        if (job.sources == null)
+            job.sources = mirrors.order(MirrorSelector.candidates(job.remoteUrl, job.mirrors));
+        return job.sources;
+    }
+
+    // 流式安装：第一个能打开的源；读到一半断了没法换源（zip 流已经吃进去一部分）
+    private HttpTransport.Response openFirstSource(InstallJob job) throws IOException {
+        IOException last = null;
+        for (String url : sources(job)) {
+            long t0 = System.nanoTime();
+            try {
+                HttpTransport.Response r = openRemote(url);
+                mirrors.record(url, System.nanoTime() - t0);
+                job.etag = r.header("ETag");
+                return r;
+            } catch (IOException e) {
+                if (cancelled(e))
+                    throw e;
+                mirrors.failed(url);
+                last = e;
+                emit(job.key, "downloading", null, null, null,
+                        "source failed: " + MirrorSelector.host(url) + " " + e.getMessage());
+            }
+        }
+        throw last;
+    }
+
+    // 读超时（SocketTimeoutException）也是 InterruptedIOException，不算取消
+    private static boolean cancelled(IOException e) {
+        return Thread.currentThread().isInterrupted()
+                || (e instanceof InterruptedIOException && "CANCELLED".equals(e.getMessage()));
+    }
+
+    private RangeDownloader newDownloader() {
+        return new RangeDownloader(http, fs, downloadConnections, downloadChunkBytes, retry);
+    }
+
+    private HttpTransport.Response openRemote(String urlStr) throws IOException {
+        HttpTransport.Response r = remote.get(urlStr, null);
+        try {
+            int rc = r.code();
+            if (rc != 200)
+                throw new IOException("HTTP_" + rc);
+            return r;
+        } catch (IOException e) {
+            r.close();
+            throw e;
+        }
+    }
+
+    // ===================== Integrity =====================
+
+    private void resolveIntegrity(InstallJob job) throws Exception {
+        if (job.integrity != null)
+            return;
+        if (job.integritySpec != null)
+            job.integrity = IntegrityManifest.parse(job.integritySpec);
+        else if (!job.integrityUrl.isEmpty() && !"bundleOnly".equals(job.policy)) // bundleOnly 不联网
+            job.integrity = IntegrityManifest.parse(fetchJson(job.integrityUrl));
+    }
+
+    // promote / 增量 swap 之前按清单完整校验一遍（多线程），同时补齐各文件的分块哈希
+    private void verifyIntegrity(InstallJob job, File dir) throws Exception {
+        if (job.integrity == null)
+            return;
+        String key = job.key;
+        emit(key, "verifying", 0L, job.integrity.totalBytes(), 0.0, "verifying files");
+        long t0 = System.nanoTime();
+        IntegrityVerifier.Result res = IntegrityVerifier.verify(job.integrity, dir, true, verifyThreads,
+                (hashed, total) -> emit(key, "verifying", hashed, total, total > 0 ? hashed * 1.0 / total : 0.0,
+                        null), atRestKey(job));
+        job.metrics.phase("verifying", System.nanoTime() - t0, res.bytes);
+        if (!res.ok()) {
+            deleteRecursively(dir);
+            throw new IOException("INTEGRITY_MISMATCH " + res.corrupt.size() + " file(s): " + res.corrupt);
+        }
+    }
+
+    /**
+     * 标记后 check 报 corrupt、ensure 会重装。坏文件若链在 content store 里，blob 本身就是坏的，
+     * 从 store 里摘掉，别的模型不会再链到它。
+     */
+    private void markCorrupt(String key, List<String> paths) {
+        JSONObject rec = state().get(key);
+        ContentStore cas = contentStore();
+        JSONObject blobs = rec == null ? null : rec.optJSONObject("blobs");
+        if (cas != null && blobs != null && paths != null)
+            for (String p : paths)
+                if (blobs.has(p))
+                    cas.forget(blobs.optString(p, ""));
+        state().update(key, cur -> {
+            if (cur == null || cur.optBoolean("corrupt", false))
+                return null;
+            try {
+                return new JSONObject(cur.toString()).put("corrupt", true);
+            } catch (Exception e) {
+                return null;
+            }
+        });
+    }
+
+    // ===================== Encryption at rest =====================
+
+    // 装的时候要：没有就生成
+    private SecretKey atRestKey(InstallJob job) throws IOException {
+        if (!job.encrypted)
+            return null;
+        if (keys == null)
+            throw new IOException("ENCRYPTION_UNAVAILABLE no key provider configured");
+        return keys.key(job.key, true);
+    }
+
+    // 读已装的：记录里标了 encrypted 才要，且必须已存在
+    private SecretKey installedKey(String key, JSONObject rec) throws IOException {
+        if (rec == null || !rec.optBoolean("encrypted", false))
+            return null;
+        if (keys == null)
+            throw new IOException("ENCRYPTION_UNAVAILABLE no key provider configured");
+        SecretKey k = keys.key(key, false);
+        if (k == null)
+            throw new IOException("ENCRYPTION_KEY_MISSING no key for " + key);
+        return k;
+    }
+
+    // ===================== Space reservation =====================
+
+    // bundle 装的是解压后的树：能按偏移读的 asset 直接读 central directory；
+    // 只能流式读的 asset 用 installSize 或 zip 本身大小估（模型权重基本不可压缩）
+    private long bundlePeak(InstallJob job) {
+        try (AssetSource.Region region = assets.openRegion(job.key)) {
+            if (region != null)
+                return ZipCentralDirectory.read(
+                        ZipCentralDirectory.of(region.channel, region.offset, region.length)).uncompressed;
+        } catch (Exception ignored) {
+        }
+        return job.installSize > 0 ? job.installSize : assets.size(job.key);
+    }
+
+    /**
+     * 下载的峰值：还没落盘的 zip 部分 + 解压后的树（流式安装不落 zip）。zip 大小和解压总量靠几次
+     * Range 请求读远端 central directory 得到；服务端不支持 Range 时只能用 installSize 兜底，
+     * 由预分配和解压前的重新预留把关。
+     */
+    private long remotePeak(InstallJob job) {
+        if (!job.streaming) {
+            // 上次已完整下载：只差解压，不用再去远端读 central directory
+            File done = new File(new File(root(), StorageManager.TMP_DIR), job.key + ".zip");
+            if (stageMarker(job, done) != null)
+                return localUnpackedSize(done);
+        }
+        ZipCentralDirectory.Source src = newDownloader().remoteSource(sources(job).get(0));
+        long zipLen;
+        try {
+            zipLen = src.size();
+        } catch (Exception e) {
+            return Math.max(0L, job.installSize);
+        }
+        long unpacked;
+        try {
+            unpacked = ZipCentralDirectory.read(src).uncompressed;
+        } catch (Exception e) {
+            unpacked = job.installSize > 0 ? job.installSize : zipLen;
+        }
+        if (job.streaming)
+            return unpacked;
+        // 续传时 zip 已经按全长预分配过
+        File part = new File(new File(root(), StorageManager.TMP_DIR), job.key + ".zip");
+        return Math.max(0L, zipLen - (part.isFile() ? part.length() : 0L)) + unpacked;
+    }
+
+    private static long localUnpackedSize(File zip) {
+        try (RandomAccessFile raf = new RandomAccessFile(zip, "r")) {
+            return ZipCentralDirectory.read(ZipCentralDirectory.of(raf.getChannel(), 0L, raf.length())).uncompressed;
+        } catch (Exception e) {
+            return zip.length();
+        }
+    }
+
+    private void makeRoom(String key, long needed) throws IOException {
+        List<String> evicted = new ArrayList<>();
+        boolean fits = storage.ensureRoom(needed, key, evicted);
+        if (!evicted.isEmpty())
+            emit(key, "checking", null, null, null, "evicted " + evicted);
+        if (!fits)
+            throw new IOException("STORAGE_BUDGET_EXCEEDED needed=" + needed + " budget=" + storage.budget());
+    }
+
+    // ===================== State.json =====================
+
+    private StateStore state() {
+        return StateStore.get(root());
+    }
+
+    // 未开启 contentStore 配置时为 null
+    private ContentStore contentStore() {
+        return useContentStore ? ContentStore.get(fs) : null;
+    }
+
+    private void writeStateRecord(InstallJob job, JSONObject fingerprint, JSONObject old) {
+        try {
+            JSONObject rec = new JSONObject();
+            long now = System.currentTimeMillis();
+            rec.put("installedVersion", job.version);
+            rec.put("sha256", job.sha256);
+            rec.put("zipSize", job.zipSize);
+            rec.put("unpackTo", job.unpackTo);
+            rec.put("installedAt", now);
+            rec.put("lastAccess", now);
+            rec.put("usage", fingerprint != null ? StorageManager.fingerprintBytes(fingerprint)
+                    : StorageManager.sizeOf(job.installedDir));
+            rec.put("pinned", job.pinned || (old != null && old.optBoolean("pinned", false)));
+            if (fingerprint != null)
+                rec.put("fingerprint", fingerprint);
+            if (job.files != null)
+                rec.put("files", job.files); // 增量更新后每个文件来自哪个版本
+            if (job.blobs != null)
+                rec.put("blobs", job.blobs); // path -> sha256，引用 _cas 里的 blob
+            if (job.encrypted)
+                rec.put("encrypted", true); // 文件是 EncryptedFile 格式，读要经 ModelChannel
+            if (job.etag != null)
+                rec.put("etag", job.etag); // 整包的 ETag，换 version 时用来做条件请求
+            state().put(job.key, rec);
+        } catch (Exception ignored) {
+        }
+    }
+
+    // state 里的内部字段（fingerprint 等）不回传给 JS
+    static JSONObject publicState(JSONObject rec) {
+        // 浅拷贝：整条记录 toString 再解析一遍（含 fingerprint）比 check 的 stat 本身还贵
+        JSONObject o = new JSONObject();
+        try {
+            Iterator<String> it = rec.keys();
+            while (it.hasNext()) {
+                String k = it.next();
+                if (!"fingerprint".equals(k))
+                    o.put(k, rec.opt(k));
+            }
+        } catch (Exception ignored) {
+        }
+        return o;
+    }
+
+    // ===================== Installed checking =====================
+
+    enum Status {
+        INSTALLED("installed"),
+        MISSING("missing"),
+        CORRUPT("corrupt");
+
+        final String value;
+
+        Status(String v) {
+            value = v;
+        }
+    }
+
+    private Status checkInstalled(File dir, JSONArray checkFiles) {
+        if (dir == null || !dir.exists() || !dir.isDirectory())
+            return Status.MISSING;
+        File pack = new File(dir, PackFile.NAME);
+        if (pack.isFile())
+            return checkPacked(pack, checkFiles);
+        if (checkFiles == null || checkFiles.length() == 0)
+            return Status.INSTALLED;
+
+        for (int i = 0; i < checkFiles.length(); i++) {
+            String rel = checkFiles.optString(i, "");
+            if (rel.isEmpty())
+                continue;
+            File f = new File(dir, rel);
+            if (!f.exists())
+                return Status.CORRUPT;
+            if (f.isFile() && f.length() < 16)
+                return Status.CORRUPT;
+        }
+        return Status.INSTALLED;
+    }
+
+    // 只读一次头部和索引（一次 open + 一两次 read），checkFiles 在索引里查
+    private static Status checkPacked(File pack, JSONArray checkFiles) {
+        PackFile.Index index;
+        try {
+            index = PackFile.read(pack);
+        } catch (IOException e) {
+            return Status.CORRUPT;
+        }
+        if (checkFiles == null)
+            return Status.INSTALLED;
+        for (int i = 0; i < checkFiles.length(); i++) {
+            String rel = checkFiles.optString(i, "");
+            if (rel.isEmpty())
+                continue;
+            PackFile.Entry e = index.get(rel);
+            if (e == null || e.length < 16)
+                return Status.CORRUPT;
+        }
+        return Status.INSTALLED;
+    }
+
+    /**
+     * check() 用：有匹配的 fingerprint 时只 stat 一次根目录；deep 时做完整检查并逐个比对 fingerprint。
+     */
+    private Status checkStatus(String key, File dir, JSONObject rec, String unpackTo, JSONArray checkFiles,
+            boolean deep) {
+        JSONObject fp = null;
+        if (rec != null && unpackTo.equals(rec.optString("unpackTo", null)))
+            fp = rec.optJSONObject("fingerprint");
+        if (fp != null && rec.optBoolean("corrupt", false))
+            return Status.CORRUPT;
+
+        if (!deep && InstallFingerprint.matchesFast(fp, dir, checkFiles))
+            return Status.INSTALLED;
+
+        Status st = checkInstalled(dir, checkFiles);
+        if (deep && st == Status.INSTALLED && fp != null && !InstallFingerprint.matchesDeep(fp, dir))
+            return Status.CORRUPT;
+        // deep 时有清单就抽查几块，能发现 size/mtime 都没变的位翻转
+        if (deep && st == Status.INSTALLED && fp != null && !scheduler.isBusy(key)) {
+            IntegrityManifest m = IntegrityManifest.load(IntegrityManifest.fileFor(root(), key));
+            try {
+                IntegrityVerifier.Result res = m == null ? null : IntegrityVerifier.verify(m, dir, false,
+                        verifyThreads, null, installedKey(key, rec));
+                if (res != null && !res.ok()) {
+                    markCorrupt(key, res.corrupt);
+                    return Status.CORRUPT;
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        return st;
+    }
+
+    private boolean hasBundled(String key) {
+        return assets.size(key) >= 0;
+    }
+
+    // ===================== Utils =====================
+
+    private void emit(String key, String phase, Long downloaded, Long total, Double progress, String message) {
+        if (this.progress != null)
+            this.progress.onProgress(key, phase, downloaded, total, progress, message);
+    }
+
+    private void deleteRecursively(File f) {
+        if (f == null || !f.exists())
+            return;
+        if (f.isDirectory()) {
+            File[] children = f.listFiles();
+            if (children != null)
+                for (File c : children)
+                    deleteRecursively(c);
+        }
+        // noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+
+    // cancel() 会中断工作线程，各个拷贝循环据此尽快退出
+    static void checkCancelled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("CANCELLED");
+    }
+
+    private static String emptyToNull(String s) {
+        if (s == null)
+            return null;
+        s = s.trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    /** Error code for the JS side, taken from the message prefix the engine throws with. */
+    public static String codeOf(Exception e) {
+        String msg = (e.getMessage() == null) ? "" : e.getMessage();
+        if (msg.startsWith("HTTP_"))
+            return msg; // HTTP_403 / HTTP_404 ...
+        if (msg.startsWith("SHA256_MISMATCH"))
+            return "SHA256_MISMATCH";
+        if (msg.startsWith("UNPACK_INVALID"))
+            return "UNPACK_INVALID";
+        if (msg.equals("MODEL_MISSING_BUNDLED"))
+            return "MODEL_MISSING_BUNDLED";
+        if (msg.equals("MODEL_MISSING_REMOTE_URL"))
+            return "MODEL_MISSING_REMOTE_URL";
+        if (msg.equals("CANCELLED"))
+            return "CANCELLED";
+        if (msg.startsWith("STORAGE_BUDGET_EXCEEDED"))
+            return "STORAGE_BUDGET_EXCEEDED";
+        if (msg.startsWith("INSUFFICIENT_STORAGE") || msg.contains("ENOSPC") || msg.contains("No space left"))
+            return "INSUFFICIENT_STORAGE";
+        if (msg.startsWith("INTEGRITY_"))
+            return msg.split(" ", 2)[0]; // INTEGRITY_MISMATCH / INTEGRITY_BAD_MANIFEST
+        if (msg.startsWith("DELTA_"))
+            return msg.split(" ", 2)[0]; // DELTA_BAD_MANIFEST / DELTA_SWAP_FAILED
+        if (msg.startsWith("ENCRYPTION_"))
+            return msg.split(" ", 2)[0]; // ENCRYPTION_UNAVAILABLE / ENCRYPTION_KEY_MISSING / ENCRYPTION_CORRUPT
+        if (msg.startsWith("NOT_INSTALLED ") || msg.startsWith("BUSY ") || msg.startsWith("NO_INTEGRITY_MANIFEST ")
+                || msg.startsWith("IN_USE ") || msg.startsWith("NOT_FOUND ") || msg.startsWith("PACK_INVALID ")
+                || msg.startsWith("ENCRYPTED "))
+            return msg.split(" ", 2)[0];
+        if (e instanceof IllegalArgumentException)
+            return "BAD_ARGS";
+        return "ERROR";
+    }
+
+    // ===================== DTO =====================
+
+    static final class InstallJob implements InstallScheduler.Job {
+        final String policy;
+        final int priority;
+
+        final String key;
+        final String unpackTo;
+        final String password;
+        final String sha256;
+        final String remoteUrl;
+        final List<String> mirrors; // 与 remoteUrl 同一个文件的其它地址
+        final String version;
+        final JSONArray checkFiles;
+        final boolean streaming;
+        final String deltaManifestUrl;
+        final JSONObject integritySpec; // 内联的逐文件/分块哈希清单
+        final String integrityUrl;
+        final boolean packed; // layout "packed"：装完打成一个对齐的 model.mhpk
+        final boolean encrypted; // encryptAtRest：解压时直接写成分块 AES-GCM，磁盘上不落明文
+
+        File installedDir;
+        boolean hasBundled;
+        String usedSource; // bundle/download
+        File zip; // staged 模式下的临时 zip
+        long zipSize;
+        List<String> sources; // remoteUrl + mirrors 按延迟排序后的结果
+        String etag; // 下载响应的 ETag
+        JSONObject files; // 增量更新时的逐文件记录
+        JSONObject blobs; // 开启 content store 时 path -> sha256
+        IntegrityManifest integrity; // fetch 阶段从 integritySpec / integrityUrl 解析
+        final boolean pinned;
+        final long installSize; // 调用方预估的安装后大小，0 = 未知
+
+        EnsureResult result;
+        final InstallMetrics metrics;
+
+        InstallJob(JSONObject item, String policy, int priority) {
+            this.policy = policy;
+            this.priority = priority;
+            this.key = item.optString("key", "");
+            this.unpackTo = item.optString("unpackTo", "");
+            this.password = item.optString("password", "");
+            this.sha256 = item.optString("sha256", "");
+            this.remoteUrl = item.optString("remoteUrl", "");
+            this.mirrors = strings(item.optJSONArray("mirrors"));
+            this.version = item.optString("version", "");
+            this.checkFiles = item.optJSONArray("checkFiles");
+            this.streaming = "streaming".equals(item.optString("installMode", "staged"));
+            this.deltaManifestUrl = item.optString("deltaManifestUrl", "");
+            this.integritySpec = item.optJSONObject("integrity");
+            this.integrityUrl = item.optString("integrityUrl", "");
+            this.packed = "packed".equals(item.optString("layout", "loose"));
+            this.encrypted = item.optBoolean("encryptAtRest", false);
+            this.pinned = item.optBoolean("pinned", false);
+            this.installSize = item.optLong("installSize", 0L);
+            this.metrics = new InstallMetrics(key);
+        }
+
+        private static List<String> strings(JSONArray a) {
+            List<String> out = new ArrayList<>();
+            if (a != null)
+                for (int i = 0; i < a.length(); i++)
+                    out.add(a.optString(i, ""));
+            return out;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public String flightId() {
+            return key + "|" + version + "|" + sha256.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+
+    static class EnsureResult {
+        final String key;
+        final boolean ok;
+        final String installedPath;
+        final String installedVersion;
+
+        final String code;
+        final String message;
+
+        final boolean hasBundledZip;
+        final String usedSource; // bundle/download/none
+
+        final String sha256;
+        final long zipSize;
+        final String unpackTo;
+
+        final JSONObject state; // state.json record
+        JSONObject metrics; // 本次安装的分段耗时，runJobs 结束时填
+
+        private EnsureResult(
+                String key,
+                boolean ok,
+                String installedPath,
+                String installedVersion,
+                String code,
+                String message,
+                boolean hasBundledZip,
+                String usedSource,
+                String sha256,
+                long zipSize,
+                String unpackTo,
+                JSONObject state) {
+            this.key = key;
+            this.ok = ok;
+            this.installedPath = installedPath;
+            this.installedVersion = installedVersion;
+            this.code = code;
+            this.message = message;
+            this.hasBundledZip = hasBundledZip;
+            this.usedSource = usedSource;
+            this.sha256 = sha256;
+            this.zipSize = zipSize;
+            this.unpackTo = unpackTo;
+            this.state = state;
+        }
+
+        static EnsureResult ok(
+                String key,
+                String installedPath,
+                String installedVersion,
+                String code,
+                String message,
+                boolean hasBundledZip,
+                String usedSource,
+                String sha256,
+                long zipSize,
+                String unpackTo,
+                JSONObject state) {
+            return new EnsureResult(key, true, installedPath, installedVersion, code, message, hasBundledZip,
+                    usedSource, sha256, zipSize, unpackTo, state);
+        }
+
+        static EnsureResult fail(
+                String key,
+                String installedPath,
+                String code,
+                String message,
+                boolean hasBundledZip,
+                String unpackTo) {
+            return new EnsureResult(key, false, installedPath, null, code, message, hasBundledZip, "none", "", 0L,
+                    unpackTo, null);
+        }
+
+        JSONObject toJson() {
+            JSONObject o = new JSONObject();
+            try {
+                o.put("key", key);
+                o.put("ok", ok);
+                o.put("installedPath", installedPath == null ? "" : installedPath);
+
+                if (installedVersion != null)
+                    o.put("installedVersion", installedVersion);
+                if (code != null)
+                    o.put("code", code);
+                if (message != null)
+                    o.put("message", message);
+
+                o.put("hasBundledZip", hasBundledZip);
+                if (usedSource != null)
+                    o.put("usedSource", usedSource);
+
+                if (sha256 != null && !sha256.isEmpty())
+                    o.put("sha256", sha256);
+                o.put("zipSize", zipSize);
+                if (unpackTo != null)
+                    o.put("unpackTo", unpackTo);
+
+                if (state != null) {
+                    o.put("state", publicState(state));
+                }
+                if (metrics != null)
+                    o.put("metrics", metrics);
+            } catch (JSONException ignored) {
+            }
+            return o;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-file container ({@code model.mhpk}) an installed model can be repacked into, so runtimes
+ * map one file and {@code check} reads one header instead of stat-ing every checkFile.
+ *
+ * <pre>
+ * 0   "MHPK"
+ * 4   u16 version (1), u16 reserved
+ * 8   u32 alignment
+ * 12  u32 entry count
+ * 16  u32 index length
+ * 20  u64 file length (catches truncation)
+ * 28  32 bytes sha256 of the index
+ * 64  index: per entry u16 name length, UTF-8 name, u64 offset, u64 length, 32 bytes sha256
+ *     data: every entry starts on an {@link #ALIGN} boundary
+ * </pre>
+ *
+ * All integers are big-endian. Entries are stored in path order.
+ */
+final class PackFile {
+
+    static final String NAME = "model.mhpk";
+    // 16K 对齐：4K 页和 Android 15 的 16K 页设备都能直接按 entry 偏移 mmap
+    static final int ALIGN = 16 * 1024;
+
+    private static final byte[] MAGIC = { 'M', 'H', 'P', 'K' };
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+
+    interface Listener {
+        void onProgress(long written, long total);
+    }
+
+    static final class Entry {
+        final String name;
+        final long offset;
+        final long length;
+        final byte[] sha256;
+
+        Entry(String name, long offset, long length, byte[] sha256) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.sha256 = sha256;
+        }
+    }
+
+    static final class Index {
+        final Map<String, Entry> entries; // 按 name 排序
+
+        Index(Map<String, Entry> entries) {
+            this.entries = entries;
+        }
+
+        Entry get(String name) {
+            return entries.get(name);
+        }
+
+        long dataBytes() {
+            long n = 0;
+            for (Entry e : entries.values())
+                n += e.length;
+            return n;
+        }
+    }
+
+    private PackFile() {
+    }
+
+    static boolean isPacked(File dir) {
+        return new File(dir, NAME).isFile();
+    }
+
+    /**
+     * Packs every file under {@code dir} into {@code dir/model.mhpk}. Each loose file is deleted as
+     * soon as it has been copied, so the peak extra space is one file, not the whole model.
+     */
+    static Index pack(File dir, Listener listener) throws Exception {
+        List<String> names = new ArrayList<>();
+        collect(dir, "", names);
+        Collections.sort(names);
+
+        // 先按大小排好偏移，再一遍拷贝一遍哈希
+        long indexLen = 0;
+        for (String n : names)
+            indexLen += 2 + utf8(n).length + 8 + 8 + 32;
+        long pos = alignUp(HEADER + indexLen);
+        long total = 0;
+        long[] offsets = new long[names.size()];
+        long[] lengths = new long[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            lengths[i] = new File(dir, names.get(i)).length();
+            offsets[i] = pos;
+            pos = alignUp(pos + lengths[i]);
+            total += lengths[i];
+        }
+        long fileLen = names.isEmpty() ? alignUp(HEADER + indexLen) : offsets[names.size() - 1]
+                + lengths[names.size() - 1];
+
+        File out = new File(dir, NAME + ".tmp");
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        BufferPool pool = BufferPool.direct();
+        ByteBuffer buf = pool.acquire();
+        long written = 0;
+        ProgressGate gate = new ProgressGate();
+        try (RandomAccessFile raf = new RandomAccessFile(out, "rw"); FileChannel dst = raf.getChannel()) {
+            raf.setLength(fileLen);
+            for (int i = 0; i < names.size(); i++) {
+                File src = new File(dir, names.get(i));
+                md.reset();
+                long at = offsets[i];
+                try (RandomAccessFile in = new RandomAccessFile(src, "r"); FileChannel ch = in.getChannel()) {
+                    buf.clear();
+                    while (ch.read(buf) > 0) {
+                        buf.flip();
+                        int n = buf.limit();
+                        md.update(buf);
+                        buf.rewind();
+                        while (buf.hasRemaining())
+                            at += dst.write(buf, at);
+                        buf.clear();
+                        written += n;
+                        if (listener != null && gate.tick(written, total))
+                            listener.onProgress(written, total);
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedIOException("CANCELLED");
+                    }
+                }
+                if (at - offsets[i] != lengths[i])
+                    throw new IOException("PACK_INVALID size changed while packing " + names.get(i));
+                entries.put(names.get(i), new Entry(names.get(i), offsets[i], lengths[i], md.digest()));
+                // noinspection ResultOfMethodCallIgnored
+                src.delete();
+            }
+
+            byte[] index = encodeIndex(entries.values(), (int) indexLen);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.put(MAGIC);
+            header.putShort((short) VERSION);
+            header.putShort((short) 0);
+            header.putInt(ALIGN);
+            header.putInt(entries.size());
+            header.putInt(index.length);
+            header.putLong(fileLen);
+            header.put(MessageDigest.getInstance("SHA-256").digest(index));
+            header.clear();
+            writeFully(dst, header, 0);
+            writeFully(dst, ByteBuffer.wrap(index), HEADER);
+            dst.force(true);
+        } finally {
+            pool.release(buf);
+        }
+        deleteEmptyDirs(dir);
+        if (!out.renameTo(new File(dir, NAME)))
+            throw new IOException("PACK_INVALID rename failed");
+        return new Index(entries);
+    }
+
+    /** Reads and validates header and index; {@code PACK_INVALID ...} on any mismatch. */
+    static Index read(FileChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        readFully(ch, header, 0);
+        header.flip();
+        byte[] magic = new byte[4];
+        header.get(magic);
+        if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1] || magic[2] != MAGIC[2] || magic[3] != MAGIC[3])
+            throw new IOException("PACK_INVALID bad magic");
+        int version = header.getShort() & 0xffff;
+        if (version != VERSION)
+            throw new IOException("PACK_INVALID unsupported version " + version);
+        header.getShort();
+        header.getInt(); // alignment，读取时用不上
+        int count = header.getInt();
+        int indexLen = header.getInt();
+        long fileLen = header.getLong();
+        byte[] indexSha = new byte[32];
+        header.get(indexSha);
+        if (fileLen != ch.size())
+            throw new IOException("PACK_INVALID length " + ch.size() + " expected " + fileLen);
+        if (indexLen < 0 || HEADER + (long) indexLen > fileLen)
+            throw new IOException("PACK_INVALID bad index length");
+
+        ByteBuffer index = ByteBuffer.allocate(indexLen);
+        readFully(ch, index, HEADER);
+        try {
+            if (!MessageDigest.isEqual(indexSha, MessageDigest.getInstance("SHA-256").digest(index.array())))
+                throw new IOException("PACK_INVALID index checksum");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        index.flip();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[index.getShort() & 0xffff];
+            index.get(name);
+            long off = index.getLong();
+            long len = index.getLong();
+            byte[] sha = new byte[32];
+            index.get(sha);
+            if (off < HEADER + indexLen || len < 0 || off + len > fileLen)
+                throw new IOException("PACK_INVALID entry out of bounds");
+            String n = new String(name, "UTF-8");
+            entries.put(n, new Entry(n, off, len, sha));
+        }
+        return new Index(entries);
+    }
+
+    static Index read(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return read(raf.getChannel());
+        }
+    }
+
+    /**
+     * Re-hashes every entry against the index.
+     *
+     * @return names of entries whose bytes no longer match
+     */
+    static List<String> verify(File f, Index index, Listener listener) throws Exception {
+        List<String> corrupt = new ArrayList<>();
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        BufferPool pool = BufferPool.direct();
+        ByteBuffer buf = pool.acquire();
+        long total = index.dataBytes();
+        long done = 0;
+        ProgressGate gate = new ProgressGate();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel ch = raf.getChannel()) {
+            for (Entry e : index.entries.values()) {
+                md.reset();
+                long pos = e.offset;
+                long end = e.offset + e.length;
+                while (pos < end) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buf.capacity(), end - pos));
+                    int n = ch.read(buf, pos);
+                    if (n < 0)
+                        break;
+                    buf.flip();
+                    md.update(buf);
+                    pos += n;
+                    done += n;
+                    if (listener != null && gate.tick(done, total))
+                        listener.onProgress(done, total);
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException("CANCELLED");
+                }
+                if (pos != end || !MessageDigest.isEqual(e.sha256, md.digest()))
+                    corrupt.add(e.name);
+            }
+        } finally {
+            pool.release(buf);
+        }
+        return corrupt;
+    }
+
+    // ===================== Utils =====================
+
+    static long alignUp(long v) {
+        return (v + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    private static byte[] encodeIndex(Iterable<Entry> entries, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        for (Entry e : entries) {
+            byte[] name = utf8(e.name);
+            b.putShort((short) name.length);
+            b.put(name);
+            b.putLong(e.offset);
+            b.putLong(e.length);
+            b.put(e.sha256);
+        }
+        return b.array();
+    }
+
+    private static byte[] utf8(String s) throws IOException {
+        byte[] b = s.getBytes("UTF-8");
+        if (b.length > 0xffff)
+            throw new IOException("PACK_INVALID name too long: " + s);
+        return b;
+    }
+
+    private static void collect(File dir, String prefix, List<String> out) {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        for (File c : children) {
+            String rel = prefix.isEmpty() ? c.getName() : prefix + "/" + c.getName();
+            if (c.isDirectory())
+                collect(c, rel, out);
+            else if (!rel.equals(NAME) && !rel.equals(NAME + ".tmp"))
+                out.add(rel);
+        }
+    }
+
+    private static void deleteEmptyDirs(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        for (File c : children) {
+            if (c.isDirectory()) {
+                deleteEmptyDirs(c);
+                // noinspection ResultOfMethodCallIgnored
+                c.delete(); // 非空时删不掉，正好
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining())
+            pos += ch.write(b, pos);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos);
+            if (n < 0)
+                throw new IOException("PACK_INVALID truncated");
+            pos += n;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import net.lingala.zip4j.headers.HeaderReader;
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.Zip4jConfig;
+import net.lingala.zip4j.model.ZipModel;
+import net.lingala.zip4j.util.UnzipUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Multi-threaded replacement for {@code ZipFile.extractAll}. The central directory is read once,
+ * file entries are sorted largest first and pulled by up to {@code threads} workers (the calling
+ * thread is one of them). Each worker opens its own stream on the archive, decrypts/inflates one
+ * entry at a time and writes it with positional writes into a file preallocated to the entry's
+ * uncompressed size. CRC / AES MAC checks stay in zip4j's stream, which runs them at EOF.
+ * With an at-rest key the entries are re-encrypted on the way out ({@link EncryptedFile}), so no
+ * plaintext reaches the disk.
+ */
+final class ParallelUnzipper {
+
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    interface Listener {
+        /** Called from every worker; {@code total} is the archive's uncompressed size. */
+        void onProgress(long written, long total);
+    }
+
+    static final class Result {
+        final int entries;
+        final long bytes; // 解压后总字节
+
+        Result(int entries, long bytes) {
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+    }
+
+    private ParallelUnzipper() {
+    }
+
+    static int defaultThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    static Result extract(File zipFile, File targetDir, String password, int threads, FsRoot fs)
+            throws IOException {
+        return extract(zipFile, targetDir, password, threads, fs, null);
+    }
+
+    /**
+     * @param fs       block allocation for the extracted files; null sizes them sparsely
+     * @param listener bytes written so far, may be null
+     */
+    static Result extract(File zipFile, File targetDir, String password, int threads, FsRoot fs,
+            Listener listener) throws IOException {
+        return extract(zipFile, targetDir, password, threads, fs, listener, null);
+    }
+
+    /** @param atRest encrypts every entry with this key; null writes plaintext */
+    static Result extract(File zipFile, File targetDir, String password, int threads, FsRoot fs,
+            Listener listener, SecretKey atRest) throws IOException {
+        ZipModel model;
+        try (RandomAccessFile raf = new RandomAccessFile(zipFile, "r")) {
+            model = new HeaderReader().readAllHeaders(raf, new Zip4jConfig(null, BUFFER_SIZE, true));
+        }
+        model.setZipFile(zipFile);
+        if (model.isSplitArchive())
+            throw new IOException("split archives are not supported");
+
+        String rootPath = targetDir.getCanonicalPath() + File.separator;
+        List<FileHeader> files = new ArrayList<>();
+        long total = 0;
+        for (FileHeader h : model.getCentralDirectory().getFileHeaders()) {
+            File out = new File(targetDir, h.getFileName());
+            if (!out.getCanonicalPath().startsWith(rootPath))
+                throw new IOException("UNPACK_INVALID:bad entry " + h.getFileName());
+            if (h.isDirectory()) {
+                // noinspection ResultOfMethodCallIgnored
+                out.mkdirs();
+                continue;
+            }
+            File parent = out.getParentFile();
+            if (parent != null) {
+                // noinspection ResultOfMethodCallIgnored
+                parent.mkdirs();
+            }
+            files.add(h);
+            total += h.getUncompressedSize();
+        }
+        // 大文件先排，避免最后剩一个大 shard 单线程跑
+        Collections.sort(files, (a, b) -> Long.compare(b.getUncompressedSize(), a.getUncompressedSize()));
+
+        char[] pw = (password == null ? "" : password).toCharArray();
+        Progress progress = new Progress(listener, total);
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        int helpers = Math.min(Math.max(1, threads), files.size()) - 1;
+
+        ExecutorService pool = null;
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            if (helpers > 0) {
+                pool = Executors.newFixedThreadPool(helpers, r -> {
+                    Thread t = new Thread(r, "modelhub-unzip");
+                    t.setDaemon(true);
+                    return t;
+                });
+                for (int i = 0; i < helpers; i++)
+                    futures.add(pool.submit(() -> work(model, files, targetDir, pw, fs, atRest, progress, next, error)));
+            }
+            work(model, files, targetDir, pw, fs, atRest, progress, next, error);
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error.compareAndSet(null, new InterruptedIOException("CANCELLED"));
+                    break;
+                } catch (Exception ignored) {
+                    // work() 自己把异常放进 error
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+
+        Exception e = error.get();
+        if (e instanceof IOException)
+            throw (IOException) e;
+        if (e != null)
+            throw new IOException(e.getMessage(), e);
+        return new Result(files.size(), total);
+    }
+
+    private static void work(ZipModel model, List<FileHeader> files, File targetDir, char[] password, FsRoot fs,
+            SecretKey atRest, Progress progress, AtomicInteger next, AtomicReference<Exception> error) {
+        BufferPool pool = BufferPool.heap();
+        ByteBuffer bb = pool.acquire();
+        try {
+            int i;
+            while (error.get() == null && (i = next.getAndIncrement()) < files.size()) {
+                try {
+                    extractOne(model, files.get(i), new File(targetDir, files.get(i).getFileName()), password, fs,
+                            atRest, progress, bb, error);
+                } catch (Exception e) {
+                    // 被中断时 FileChannel 会抛 ClosedByInterruptException，统一成 CANCELLED
+                    error.compareAndSet(null,
+                            Thread.currentThread().isInterrupted() ? new InterruptedIOException("CANCELLED") : e);
+                }
+            }
+        } finally {
+            pool.release(bb);
+        }
+    }
+
+    private static void extractOne(ZipModel model, FileHeader h, File out, char[] password, FsRoot fs,
+            SecretKey atRest, Progress progress, ByteBuffer bb, AtomicReference<Exception> error) throws IOException {
+        long size = h.getUncompressedSize();
+        long pos = 0;
+        try (ZipInputStream in = UnzipUtil.createZipInputStream(model, h, password);
+                RandomAccessFile raf = new RandomAccessFile(out, "rw")) {
+            // 先占满空间，后面按偏移写，不走追加
+            StorageManager.preallocate(fs, raf, atRest == null ? size
+                    : EncryptedFile.encryptedLength(size, EncryptedFile.DEFAULT_CHUNK_SIZE));
+            FileChannel ch = raf.getChannel();
+            EncryptedFile.Writer enc = atRest == null ? null
+                    : new EncryptedFile.Writer(ch, atRest, EncryptedFile.DEFAULT_CHUNK_SIZE);
+            byte[] buf = bb.array();
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (enc != null) {
+                    enc.write(buf, 0, n);
+                    pos += n;
+                } else {
+                    bb.clear();
+                    bb.limit(n);
+                    while (bb.hasRemaining())
+                        pos += ch.write(bb, pos);
+                }
+                progress.add(n);
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("CANCELLED");
+                if (error.get() != null)
+                    return; // 别的 worker 已失败，尽快退出
+            }
+            if (pos != size)
+                throw new IOException("UNPACK_INVALID:size mismatch " + h.getFileName());
+            if (enc != null)
+                enc.finish();
+        }
+        UnzipUtil.applyFileAttributes(h, out);
+    }
+
+    // 各 worker 共享的已写字节数；没有 listener 时不计
+    private static final class Progress {
+        private final Listener listener;
+        private final long total;
+        private final AtomicLong written = new AtomicLong();
+        private final ProgressGate gate = new ProgressGate();
+
+        Progress(Listener listener, long total) {
+            this.listener = listener;
+            this.total = total;
+        }
+
+        void add(int n) {
+            if (listener == null)
+                return;
+            long done = written.addAndGet(n);
+            if (gate.tick(done, total))
+                listener.onProgress(done, total);
+        }
+    }
+}
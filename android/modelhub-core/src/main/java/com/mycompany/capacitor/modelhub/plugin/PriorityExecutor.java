@@ -0,0 +1,105 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size pool whose queue is ordered by priority (higher first), then FIFO.
+ * Foreground installs therefore jump ahead of queued background prefetches.
+ */
+final class PriorityExecutor {
+
+    static final int PRIORITY_BACKGROUND = 0;
+    static final int PRIORITY_FOREGROUND = 10;
+
+    private final String name;
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong seq = new AtomicLong();
+
+    PriorityExecutor(String name, int threads) {
+        this.name = name;
+        int n = Math.max(1, threads);
+        AtomicInteger tid = new AtomicInteger();
+        ThreadFactory tf = r -> {
+            Thread t = new Thread(r, name + "-" + tid.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        pool = new ThreadPoolExecutor(n, n, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), tf);
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param onCancelled runs if the task is cancelled before it started (it will never run)
+     */
+    Future<?> submit(int priority, Runnable r, Runnable onCancelled) {
+        Task t = new Task(priority, seq.incrementAndGet(), r, onCancelled);
+        pool.execute(t);
+        return t;
+    }
+
+    String name() {
+        return name;
+    }
+
+    int threads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    int queued() {
+        return pool.getQueue().size();
+    }
+
+    int active() {
+        return pool.getActiveCount();
+    }
+
+    long completed() {
+        return pool.getCompletedTaskCount();
+    }
+
+    void shutdownNow() {
+        pool.shutdownNow();
+    }
+
+    private static final class Task extends FutureTask<Void> implements Comparable<Task> {
+        final int priority;
+        final long seq;
+        final Runnable onCancelled;
+        final AtomicBoolean started = new AtomicBoolean();
+
+        Task(int priority, long seq, Runnable r, Runnable onCancelled) {
+            super(r, null);
+            this.priority = priority;
+            this.seq = seq;
+            this.onCancelled = onCancelled;
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true))
+                super.run();
+        }
+
+        @Override
+        protected void done() {
+            // 排队中被取消：run() 不会再执行，由调用方收尾
+            if (isCancelled() && started.compareAndSet(false, true) && onCancelled != null)
+                onCancelled.run();
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            if (priority != o.priority)
+                return priority > o.priority ? -1 : 1;
+            return Long.compare(seq, o.seq);
+        }
+    }
+}
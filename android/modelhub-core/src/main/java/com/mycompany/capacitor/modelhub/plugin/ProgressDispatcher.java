@@ -0,0 +1,135 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces progress from every in-flight install into at most {@code fps} batches per second.
+ * Between two frames only the latest event per key is kept; {@code done} / {@code error} events are
+ * never coalesced and go out ahead of the intermediate states in their frame. Batches are delivered
+ * one at a time on a single timer thread, so the listener never runs concurrently with itself.
+ */
+public final class ProgressDispatcher implements ProgressSink {
+
+    public static final int DEFAULT_FPS = 10;
+
+    public interface Listener {
+        void onBatch(List<Event> events);
+    }
+
+    public static final class Event {
+        public final String key;
+        public final String phase;
+        public final Long downloaded;
+        public final Long total;
+        public final Double progress;
+        public final String message;
+
+        Event(String key, String phase, Long downloaded, Long total, Double progress, String message) {
+            this.key = key;
+            this.phase = phase;
+            this.downloaded = downloaded;
+            this.total = total;
+            this.progress = progress;
+            this.message = message;
+        }
+
+        public boolean terminal() {
+            return "done".equals(phase) || "error".equals(phase);
+        }
+    }
+
+    private final long intervalNs;
+    private final Listener listener;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private final Map<String, Event> latest = new LinkedHashMap<>();
+    private final List<Event> terminal = new ArrayList<>();
+    private boolean scheduled;
+    private boolean closed;
+    private long lastFlush;
+
+    /** @param fps frames per second, clamped to 1..60 */
+    public ProgressDispatcher(int fps, Listener listener) {
+        this.intervalNs = TimeUnit.SECONDS.toNanos(1) / clampFps(fps);
+        this.listener = listener;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "modelhub-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        this.lastFlush = System.nanoTime() - intervalNs;
+    }
+
+    public static int clampFps(int fps) {
+        return Math.max(1, Math.min(60, fps));
+    }
+
+    @Override
+    public void onProgress(String key, String phase, Long downloaded, Long total, Double progress,
+            String message) {
+        Event ev = new Event(key, phase, downloaded, total, progress, message);
+        synchronized (lock) {
+            if (ev.terminal()) {
+                // 终态之前的中间态已经没意义
+                latest.remove(key);
+                terminal.add(ev);
+            } else {
+                // 先删再放，保证同一帧内按最近一次更新的顺序出
+                latest.remove(key);
+                latest.put(key, ev);
+            }
+            if (scheduled || closed)
+                return;
+            scheduled = true;
+            long delay = Math.max(0L, lastFlush + intervalNs - System.nanoTime());
+            try {
+                timer.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                scheduled = false;
+            }
+        }
+    }
+
+    /** Delivers whatever is pending now; also the timer's task. */
+    public void flush() {
+        List<Event> batch;
+        synchronized (lock) {
+            scheduled = false;
+            lastFlush = System.nanoTime();
+            if (terminal.isEmpty() && latest.isEmpty())
+                return;
+            batch = new ArrayList<>(terminal.size() + latest.size());
+            batch.addAll(terminal);
+            batch.addAll(latest.values());
+            terminal.clear();
+            latest.clear();
+        }
+        try {
+            listener.onBatch(batch);
+        } catch (RuntimeException ignored) {
+            // 监听方出错不能拖垮计时线程，否则之后的进度全丢
+        }
+    }
+
+    /** Stops the timer and hands the listener whatever is still pending. */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
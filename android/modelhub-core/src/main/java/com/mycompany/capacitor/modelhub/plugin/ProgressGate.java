@@ -0,0 +1,42 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+/**
+ * Throttles byte-progress callbacks in the copy loops that produce them, so a listener is not
+ * called on every {@code read}. A report goes through once {@link #MIN_BYTES} more bytes are done
+ * or {@link #MIN_INTERVAL_NS} has passed since the last one, and always when {@code done} reaches
+ * a known {@code total}. One gate may be shared by all worker threads of a transfer. Loops that
+ * don't know their total report the final count themselves if {@link #pending} says it was held.
+ */
+final class ProgressGate {
+
+    static final long MIN_BYTES = 1L << 20;
+    static final long MIN_INTERVAL_NS = 50_000_000L;
+
+    private volatile long lastNanos = System.nanoTime();
+    private volatile long lastBytes;
+
+    /** @return true if the caller should report {@code done} now */
+    boolean tick(long done, long total) {
+        boolean end = total >= 0 && done >= total;
+        long now = System.nanoTime();
+        if (!end && !due(done, now))
+            return false;
+        // 绝大多数 read 走上面的无锁判断；到点时加锁再看一次，几个线程同时到点只放一个
+        synchronized (this) {
+            if (!end && !due(done, now))
+                return false;
+            lastNanos = now;
+            lastBytes = done;
+            return true;
+        }
+    }
+
+    private boolean due(long done, long now) {
+        return done - lastBytes >= MIN_BYTES || now - lastNanos >= MIN_INTERVAL_NS;
+    }
+
+    /** True if {@code done} was never let through, i.e. the final count still has to be reported. */
+    boolean pending(long done) {
+        return done != lastBytes;
+    }
+}
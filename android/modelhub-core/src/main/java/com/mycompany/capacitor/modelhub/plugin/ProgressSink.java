@@ -0,0 +1,14 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+/**
+ * Receives install progress. Phases are the ones the JS side sees: {@code checking},
+ * {@code copying}, {@code downloading}, {@code verifying}, {@code unpacking}, {@code finalizing},
+ * {@code done}, {@code error}. Called from worker threads; byte counts are reported for
+ * downloading, verifying and unpacking, at most once per MiB or 50 ms per transfer
+ * ({@link ProgressGate}). Wrap the sink in a {@link ProgressDispatcher} before handing it to a UI.
+ */
+public interface ProgressSink {
+
+    /** Any of the nullable fields may be missing for a given phase. */
+    void onProgress(String key, String phase, Long downloaded, Long total, Double progress, String message);
+}
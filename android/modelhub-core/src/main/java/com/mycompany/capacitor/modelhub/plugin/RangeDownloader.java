@@ -0,0 +1,414 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resumable downloader: probes range support, then fetches fixed-size chunks in parallel
+ * into a preallocated file via positional writes. Completed chunks are appended to a
+ * sidecar journal ({@code <out>.part}) so an interrupted download only refetches the gaps.
+ * A journal is only resumed when it was written under the same strong validator (a non-weak
+ * {@code ETag}, else {@code Last-Modified}) the server sends now; without one there is no way
+ * to tell a changed remote from an unchanged one, so the file is truncated and fetched again.
+ * Requests go through a {@link RetryingTransport}, which alone retries connection errors and
+ * bad statuses; a chunk whose body breaks off midway is refetched here with the same backoff.
+ */
+final class RangeDownloader {
+
+    interface Listener {
+        void onProgress(long downloaded, long total);
+    }
+
+    static final int DEFAULT_CONNECTIONS = 4;
+    static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    private static final String JOURNAL_MAGIC = "mhpart1";
+
+    private final HttpTransport http;
+    private final FsRoot fs; // 可为 null：不预分配块
+    private final int connections;
+    private final long chunkSize;
+    private final RetryPolicy retry;
+    private final AtomicInteger retries = new AtomicInteger();
+    private volatile String etag;
+    private volatile long probeNanos = -1;
+
+    // 测试用：退避很短
+    RangeDownloader(int connections, long chunkSize) {
+        this(new UrlConnectionTransport(20000, 600000), null, connections, chunkSize, new RetryPolicy(3, 10L, 100L));
+    }
+
+    RangeDownloader(HttpTransport http, FsRoot fs, int connections, long chunkSize, RetryPolicy retry) {
+        this.http = new RetryingTransport(http, retry, retries);
+        this.fs = fs;
+        this.connections = Math.max(1, connections);
+        this.chunkSize = Math.max(64L * 1024, chunkSize);
+        this.retry = retry;
+    }
+
+    /** Requests retried so far by this downloader. */
+    int retries() {
+        return retries.get();
+    }
+
+    /** Time to the last download's first response (the range probe), -1 before one. */
+    long probeNanos() {
+        return probeNanos;
+    }
+
+    /** {@code ETag} of the last download's response, null if the server sent none. */
+    String etag() {
+        return etag;
+    }
+
+    static File journalFor(File out) {
+        return new File(out.getParentFile(), out.getName() + ".part");
+    }
+
+    /** 下载到 out；返回写入的总字节数。 */
+    long download(String urlStr, File out, Listener listener) throws Exception {
+        File journal = journalFor(out);
+
+        long total;
+        String validator;
+        long t0 = System.nanoTime();
+        try (HttpTransport.Response probe = http.get(urlStr, "bytes=0-0")) {
+            int rc = probe.code();
+            probeNanos = System.nanoTime() - t0;
+            etag = probe.header("ETag");
+            if (rc == 200) {
+                // 不支持 Range：直接把这个响应当整包下载
+                deleteQuietly(journal);
+                return downloadWhole(probe, out, listener);
+            }
+            // 空文件：bytes=0-0 不可满足，回 416 + "bytes */0"
+            if (rc == 416 && parseTotal(probe.header("Content-Range")) == 0)
+                return empty(journal, out, listener);
+            if (rc != 206)
+                throw new IOException("HTTP_" + rc);
+            total = parseTotal(probe.header("Content-Range"));
+            validator = validatorOf(probe);
+            drain(probe);
+        }
+        if (total == 0)
+            return empty(journal, out, listener);
+        if (total < 0) {
+            // Content-Range 没带总长，退回单连接
+            deleteQuietly(journal);
+            try (HttpTransport.Response r = http.get(urlStr, null)) {
+                int rc = r.code();
+                if (rc != 200)
+                    throw new IOException("HTTP_" + rc);
+                etag = r.header("ETag");
+                return downloadWhole(r, out, listener);
+            }
+        }
+
+        int chunkCount = (int) ((total + chunkSize - 1) / chunkSize);
+        BitSet done = readJournal(journal, total, chunkSize, validator, chunkCount);
+        if (done == null || !out.isFile() || out.length() != total) {
+            done = new BitSet(chunkCount);
+            startJournal(journal, total, validator);
+            try (RandomAccessFile raf = new RandomAccessFile(out, "rw")) {
+                // 旧内容一律不留，免得和新版本拼在一起
+                raf.setLength(0);
+                StorageManager.preallocate(fs, raf, total);
+            }
+        }
+
+        List<Integer> pending = new ArrayList<>();
+        long already = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            if (done.get(i))
+                already += chunkLength(i, total);
+            else
+                pending.add(i);
+        }
+
+        AtomicLong downloaded = new AtomicLong(already);
+        ProgressGate gate = new ProgressGate();
+        if (listener != null)
+            listener.onProgress(already, total);
+
+        if (!pending.isEmpty()) {
+            try (RandomAccessFile raf = new RandomAccessFile(out, "rw");
+                    FileChannel ch = raf.getChannel();
+                    Writer jw = new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8")) {
+                ExecutorService pool = Executors.newFixedThreadPool(Math.min(connections, pending.size()));
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int idx : pending) {
+                        futures.add(pool.submit(() -> {
+                            fetchChunk(urlStr, validator, ch, idx, total, downloaded, gate, listener);
+                            synchronized (jw) {
+                                jw.write(idx + "\n");
+                                jw.flush();
+                            }
+                            return null;
+                        }));
+                    }
+                    for (Future<?> f : futures)
+                        f.get();
+                } catch (ExecutionException e) {
+                    Throwable c = e.getCause();
+                    if (c instanceof Exception)
+                        throw (Exception) c;
+                    throw e;
+                } finally {
+                    // 先停掉其它分片再关 channel
+                    pool.shutdownNow();
+                    pool.awaitTermination(10, TimeUnit.SECONDS);
+                }
+                ch.force(false);
+            }
+        }
+
+        deleteQuietly(journal);
+        return total;
+    }
+
+    private void fetchChunk(String urlStr, String validator, FileChannel ch, int idx, long total,
+            AtomicLong downloaded, ProgressGate gate, Listener listener) throws Exception {
+        long start = idx * chunkSize;
+        long len = chunkLength(idx, total);
+
+        for (int attempt = 0;; attempt++) {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException("CANCELLED");
+            if (attempt > 0)
+                retry.sleep(attempt - 1, -1);
+            // 连不上、状态码错误：transport 已经按策略重试过，这里直接抛出，不再套一层
+            try (HttpTransport.Response r = http.get(urlStr, "bytes=" + start + "-" + (start + len - 1))) {
+                int rc = r.code();
+                if (rc != 206)
+                    throw new IOException("HTTP_" + rc);
+                String v = validatorOf(r);
+                if (validator != null && v != null && !validator.equals(v))
+                    throw new IOException("REMOTE_CHANGED");
+
+                // 这里只重试 body 读到一半断掉的
+                long written = 0;
+                BufferPool pool = BufferPool.heap();
+                ByteBuffer bb = pool.acquire();
+                byte[] buf = bb.array();
+                try (InputStream in = r.body()) {
+                    int n;
+                    while (written < len && (n = in.read(buf, 0, (int) Math.min(buf.length, len - written))) >= 0) {
+                        bb.clear().limit(n);
+                        long pos = start + written;
+                        while (bb.hasRemaining())
+                            pos += ch.write(bb, pos);
+                        written += n;
+                        long d = downloaded.addAndGet(n);
+                        if (listener != null && gate.tick(d, total))
+                            listener.onProgress(d, total);
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedIOException("CANCELLED");
+                    }
+                    if (written != len)
+                        throw new IOException("short range read idx=" + idx);
+                    return;
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (!RetryPolicy.retryable(e) || attempt + 1 >= retry.maxAttempts)
+                        throw e;
+                    downloaded.addAndGet(-written);
+                    retries.incrementAndGet();
+                } finally {
+                    pool.release(bb);
+                }
+            }
+        }
+    }
+
+    private long empty(File journal, File out, Listener listener) throws IOException {
+        deleteQuietly(journal);
+        new FileOutputStream(out).close();
+        if (listener != null)
+            listener.onProgress(0, 0);
+        return 0;
+    }
+
+    private long downloadWhole(HttpTransport.Response r, File out, Listener listener) throws IOException {
+        long total = r.contentLength();
+        long downloaded = 0;
+        ProgressGate gate = new ProgressGate();
+        BufferPool pool = BufferPool.heap();
+        ByteBuffer bb = pool.acquire();
+        byte[] buf = bb.array();
+        try (InputStream in = r.body(); OutputStream os = new FileOutputStream(out)) {
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                os.write(buf, 0, n);
+                downloaded += n;
+                if (listener != null && gate.tick(downloaded, total))
+                    listener.onProgress(downloaded, total);
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("CANCELLED");
+            }
+        } finally {
+            pool.release(bb);
+        }
+        // 没有 Content-Length 时 gate 认不出最后一次
+        if (listener != null && gate.pending(downloaded))
+            listener.onProgress(downloaded, total);
+        return downloaded;
+    }
+
+    /**
+     * Random access to a remote file through single range requests, e.g. to read a zip's central
+     * directory before downloading it. {@code size()} fails if the server doesn't do ranges.
+     */
+    ZipCentralDirectory.Source remoteSource(String urlStr) {
+        return new ZipCentralDirectory.Source() {
+            private long size = -1;
+
+            @Override
+            public long size() throws IOException {
+                if (size < 0) {
+                    try (HttpTransport.Response r = http.get(urlStr, "bytes=0-0")) {
+                        if (r.code() != 206)
+                            throw new IOException("range not supported: HTTP_" + r.code());
+                        size = parseTotal(r.header("Content-Range"));
+                        drain(r);
+                    }
+                    if (size < 0)
+                        throw new IOException("range not supported: no total");
+                }
+                return size;
+            }
+
+            @Override
+            public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+                if (len <= 0)
+                    return;
+                try (HttpTransport.Response r = http.get(urlStr, "bytes=" + pos + "-" + (pos + len - 1))) {
+                    if (r.code() != 206)
+                        throw new IOException("HTTP_" + r.code());
+                    try (InputStream in = r.body()) {
+                        int done = 0;
+                        while (done < len) {
+                            int n = in.read(b, off + done, len - done);
+                            if (n < 0)
+                                throw new IOException("short range read");
+                            done += n;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private long chunkLength(int idx, long total) {
+        long start = idx * chunkSize;
+        return Math.min(chunkSize, total - start);
+    }
+
+    // ===================== Journal =====================
+
+    private void startJournal(File journal, long total, String validator) throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(journal, false), "UTF-8")) {
+            w.write(JOURNAL_MAGIC + " " + total + " " + chunkSize + " " + (validator == null ? "-" : validator)
+                    + "\n");
+        }
+    }
+
+    private BitSet readJournal(File journal, long total, long chunkSize, String validator, int chunkCount) {
+        if (!journal.isFile())
+            return null;
+        try (InputStream in = new FileInputStream(journal)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0)
+                bos.write(buf, 0, n);
+            String content = bos.toString("UTF-8");
+
+            // 只认以 \n 结尾的完整行：最后一行可能是崩溃时写了一半
+            int end = content.lastIndexOf('\n');
+            if (end < 0)
+                return null;
+            String[] lines = content.substring(0, end).split("\n");
+
+            String[] h = lines[0].split(" ", 4);
+            if (h.length != 4 || !JOURNAL_MAGIC.equals(h[0]))
+                return null;
+            if (Long.parseLong(h[1]) != total || Long.parseLong(h[2]) != chunkSize)
+                return null;
+            // 两边都得有强校验值且一致才续传；没有校验值就分不出远端是否换过
+            if (validator == null || !validator.equals(h[3]))
+                return null;
+
+            BitSet done = new BitSet(chunkCount);
+            for (int i = 1; i < lines.length; i++) {
+                try {
+                    int idx = Integer.parseInt(lines[i].trim());
+                    if (idx >= 0 && idx < chunkCount)
+                        done.set(idx);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return done;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ===================== Utils =====================
+
+    static long parseTotal(String contentRange) {
+        // "bytes 0-0/12345"
+        if (contentRange == null)
+            return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0)
+            return -1;
+        String t = contentRange.substring(slash + 1).trim();
+        if (t.equals("*"))
+            return -1;
+        try {
+            return Long.parseLong(t);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 弱 ETag（W/"..."）不保证字节相同，不能拿来拼 Range
+    static String validatorOf(HttpTransport.Response r) {
+        String etag = r.header("ETag");
+        if (etag != null && !etag.isEmpty() && !etag.startsWith("W/"))
+            return etag.replace(' ', '_');
+        String lm = r.header("Last-Modified");
+        if (lm != null && !lm.isEmpty())
+            return lm.replace(' ', '_');
+        return null;
+    }
+
+    private static void drain(HttpTransport.Response r) {
+        try (InputStream in = r.body()) {
+            byte[] buf = new byte[64];
+            while (in.read(buf) >= 0) {
+                /* consume */ }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void deleteQuietly(File f) {
+        if (f.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+}
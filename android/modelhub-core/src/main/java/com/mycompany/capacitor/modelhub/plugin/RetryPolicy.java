@@ -0,0 +1,87 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * When and how long to wait before retrying a failed request: exponential backoff with jitter,
+ * capped at {@code maxDelayMs}. Retried: connection errors, timeouts, truncated bodies, 408, 429
+ * and 5xx. Not retried: other 4xx, a changed remote file ({@code REMOTE_CHANGED}), cancellation.
+ */
+public final class RetryPolicy {
+
+    /** Total tries, including the first. */
+    public final int maxAttempts;
+    public final long baseDelayMs;
+    public final long maxDelayMs;
+
+    private final Random random = new Random();
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(0L, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(4, 500L, 8000L);
+    }
+
+    static RetryPolicy none() {
+        return new RetryPolicy(1, 0L, 0L);
+    }
+
+    /**
+     * Delay before retry number {@code attempt + 1}: half of {@code base * 2^attempt} (capped)
+     * plus a random share of the other half, so clients that failed together don't come back
+     * together.
+     */
+    long delayMs(int attempt) {
+        long cap = baseDelayMs << Math.min(attempt, 20);
+        if (cap > maxDelayMs || cap < 0)
+            cap = maxDelayMs;
+        long half = cap / 2;
+        synchronized (random) {
+            return half + (half > 0 ? (long) (random.nextDouble() * (cap - half + 1)) : 0L);
+        }
+    }
+
+    static boolean retryableStatus(int rc) {
+        return rc == 408 || rc == 429 || rc >= 500;
+    }
+
+    static boolean retryable(IOException e) {
+        if (e instanceof InterruptedIOException && "CANCELLED".equals(e.getMessage()))
+            return false;
+        String msg = e.getMessage();
+        if (msg == null)
+            return true;
+        if ("REMOTE_CHANGED".equals(msg))
+            return false;
+        if (msg.startsWith("HTTP_")) {
+            try {
+                return retryableStatus(Integer.parseInt(msg.substring(5)));
+            } catch (NumberFormatException ignored) {
+                return false; // HTTP_INSECURE_REDIRECT 之类
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sleeps before the next try; {@code serverDelayMs} (from {@code Retry-After}, -1 if none)
+     * wins over the backoff but is still capped at {@code maxDelayMs}.
+     */
+    void sleep(int attempt, long serverDelayMs) throws InterruptedIOException {
+        long ms = serverDelayMs >= 0 ? Math.min(serverDelayMs, maxDelayMs) : delayMs(attempt);
+        if (ms <= 0)
+            return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CANCELLED");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retries {@link HttpTransport#get} on connection errors and retryable status codes, per a
+ * {@link RetryPolicy}. Only the request is retried: once a response with a good status is
+ * returned, errors while reading its body are the caller's to retry (ranges make that cheap).
+ * When every try fails on status, the last response is returned as is, so callers still see
+ * the real code.
+ */
+final class RetryingTransport implements HttpTransport {
+
+    private final HttpTransport inner;
+    private final RetryPolicy policy;
+    private final AtomicInteger retries;
+
+    RetryingTransport(HttpTransport inner, RetryPolicy policy, AtomicInteger retries) {
+        this.inner = inner;
+        this.policy = policy;
+        this.retries = retries != null ? retries : new AtomicInteger();
+    }
+
+    @Override
+    public Response get(String url, String range) throws IOException {
+        return get(url, range, null);
+    }
+
+    @Override
+    public Response get(String url, String range, Map<String, String> headers) throws IOException {
+        for (int attempt = 0;; attempt++) {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException("CANCELLED");
+            long serverDelay = -1;
+            try {
+                Response r = inner.get(url, range, headers);
+                int rc;
+                try {
+                    rc = r.code();
+                } catch (IOException e) {
+                    r.close();
+                    throw e;
+                }
+                if (!RetryPolicy.retryableStatus(rc) || attempt + 1 >= policy.maxAttempts)
+                    return r;
+                serverDelay = retryAfterMs(r.header("Retry-After"));
+                r.close();
+            } catch (IOException e) {
+                if (!RetryPolicy.retryable(e) || attempt + 1 >= policy.maxAttempts)
+                    throw e;
+            }
+            retries.incrementAndGet();
+            policy.sleep(attempt, serverDelay);
+        }
+    }
+
+    int retries() {
+        return retries.get();
+    }
+
+    // 只认秒数；HTTP 日期格式的少见，按普通退避处理
+    static long retryAfterMs(String v) {
+        if (v == null)
+            return -1;
+        try {
+            long s = Long.parseLong(v.trim());
+            return s >= 0 ? s * 1000 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
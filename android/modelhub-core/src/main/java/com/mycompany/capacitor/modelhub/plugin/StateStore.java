@@ -0,0 +1,226 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONObject;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide view of {@code state.json}. Loaded once per root, reads are served from memory,
+ * each write is one line appended to {@code state.journal}; the journal is folded back into
+ * {@code state.json} (atomic tmp + rename) once it grows past {@link #COMPACT_EVERY} lines.
+ *
+ * <p>Records handed out are shared; callers must treat them as read-only and {@link #put}
+ * a new object to change one.
+ */
+final class StateStore {
+
+    static final String STATE_FILE_NAME = "state.json";
+    static final String JOURNAL_FILE_NAME = "state.journal";
+    static final int COMPACT_EVERY = 64;
+
+    interface Updater {
+        JSONObject apply(JSONObject current);
+    }
+
+    private static final Map<String, StateStore> INSTANCES = new HashMap<>();
+
+    private final File stateFile;
+    private final File journalFile;
+    private final ConcurrentHashMap<String, JSONObject> records = new ConcurrentHashMap<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "modelhub-state");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean compactScheduled = new AtomicBoolean();
+
+    private Writer journal;
+    private int journalLines;
+
+    static StateStore get(File root) {
+        synchronized (INSTANCES) {
+            String k = root.getAbsolutePath();
+            StateStore s = INSTANCES.get(k);
+            if (s == null) {
+                s = new StateStore(root);
+                INSTANCES.put(k, s);
+            }
+            return s;
+        }
+    }
+
+    // 测试用；正常走 get(root) 共享实例
+    StateStore(File root) {
+        stateFile = new File(root, STATE_FILE_NAME);
+        journalFile = new File(root, JOURNAL_FILE_NAME);
+        load();
+    }
+
+    JSONObject get(String key) {
+        return records.get(key);
+    }
+
+    boolean has(String key) {
+        return records.containsKey(key);
+    }
+
+    /** Consistent copy of all records, in no particular order. */
+    synchronized Map<String, JSONObject> snapshot() {
+        return new LinkedHashMap<>(records);
+    }
+
+    synchronized void put(String key, JSONObject rec) {
+        records.put(key, rec);
+        append(key, rec);
+    }
+
+    /** Read-modify-write of one record under the store lock; returning null leaves it unchanged. */
+    synchronized void update(String key, Updater u) {
+        JSONObject next = u.apply(records.get(key));
+        if (next != null)
+            put(key, next);
+    }
+
+    synchronized void remove(String key) {
+        if (records.remove(key) != null)
+            append(key, null);
+    }
+
+    /** Folds the journal into state.json now. */
+    synchronized void flush() {
+        try {
+            compactLocked();
+        } catch (Exception ignored) {
+        }
+    }
+
+    // ===================== Journal =====================
+
+    private void append(String key, JSONObject rec) {
+        try {
+            JSONObject line = new JSONObject();
+            line.put("k", key);
+            if (rec == null)
+                line.put("d", true);
+            else
+                line.put("v", rec);
+            if (journal == null)
+                journal = new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8");
+            journal.write(line.toString());
+            journal.write('\n');
+            journal.flush();
+            journalLines++;
+        } catch (Exception e) {
+            // journal 写不进去就直接整份落盘
+            flush();
+            return;
+        }
+        if (journalLines >= COMPACT_EVERY && compactScheduled.compareAndSet(false, true)) {
+            // 多次触发合并成一次
+            compactor.execute(() -> {
+                compactScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    private void compactLocked() throws Exception {
+        JSONObject all = new JSONObject();
+        for (Map.Entry<String, JSONObject> e : records.entrySet())
+            all.put(e.getKey(), e.getValue());
+        writeAtomic(stateFile, all.toString());
+
+        // state.json 已包含全部记录，journal 可以丢掉；两步之间崩溃也只是重放幂等的 upsert
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        // noinspection ResultOfMethodCallIgnored
+        journalFile.delete();
+        journalLines = 0;
+    }
+
+    private void load() {
+        if (stateFile.exists()) {
+            try (InputStream in = new FileInputStream(stateFile)) {
+                String s = new String(readAll(in), "UTF-8");
+                JSONObject all = new JSONObject(s.isEmpty() ? "{}" : s);
+                Iterator<String> it = all.keys();
+                while (it.hasNext()) {
+                    String k = it.next();
+                    JSONObject rec = all.optJSONObject(k);
+                    if (rec != null)
+                        records.put(k, rec);
+                }
+            } catch (Exception ignored) {
+            }
+        }
+
+        if (journalFile.exists()) {
+            try (BufferedReader r = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(journalFile), "UTF-8"))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    journalLines++;
+                    try {
+                        JSONObject o = new JSONObject(line);
+                        String k = o.getString("k");
+                        if (o.optBoolean("d", false))
+                            records.remove(k);
+                        else
+                            records.put(k, o.getJSONObject("v"));
+                    } catch (Exception ignored) {
+                        // 崩溃留下的半行
+                    }
+                }
+            } catch (Exception ignored) {
+            }
+            // 启动时顺手压实，半行也一起清掉
+            flush();
+        }
+    }
+
+    static void writeAtomic(File f, String content) throws Exception {
+        File dir = f.getParentFile();
+        if (dir != null && !dir.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+        }
+        File tmp = new File(dir, f.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(content.getBytes("UTF-8"));
+            out.flush();
+            out.getFD().sync();
+        }
+        // 同一文件系统上 rename 直接覆盖是原子的；不行再退回先删后改名
+        if (!tmp.renameTo(f)) {
+            if (f.exists() && !f.delete()) {
+                /* ignore */ }
+            if (!tmp.renameTo(f))
+                throw new IOException("rename state tmp failed");
+        }
+    }
+
+    static String readText(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            return new String(readAll(in), "UTF-8");
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) >= 0)
+            bos.write(buf, 0, n);
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,482 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk accounting for installed models. Each state record carries {@code usage} (bytes of the
+ * installed tree), {@code lastAccess} and {@code pinned}; with a byte budget configured, unpinned
+ * models are evicted least-recently-used first to make room. Also owns uninstall and the startup
+ * sweep of {@code _tmp}.
+ *
+ * <p>Independently of the budget, installs reserve the peak free space they need (zip plus
+ * extracted tree) before writing anything, so a full disk fails fast with
+ * {@code INSUFFICIENT_STORAGE} instead of half-way through an unpack. Reservations of concurrent
+ * installs are subtracted from what the filesystem reports free.
+ *
+ * <p>Nothing is deleted under a lock: uninstall, eviction and the sweep only rename what goes
+ * into {@code _trash} (one rename per tree) while they hold it, and delete the trash afterwards.
+ */
+final class StorageManager {
+
+    interface Busy {
+        boolean isBusy(String key);
+
+        /**
+         * Claims {@code key} for deletion, so nothing opens it until {@link #endRemove}; false if
+         * it is in use. Eviction deletes only keys it could claim.
+         */
+        default boolean beginRemove(String key) {
+            return !isBusy(key);
+        }
+
+        default void endRemove(String key) {
+        }
+
+        /**
+         * Runs {@code action} only if no install of {@code key} is queued or running, and keeps new
+         * installs of it from being scheduled until it returns.
+         *
+         * @return false if the key was busy and {@code action} did not run
+         */
+        default boolean whileIdle(String key, Runnable action) {
+            if (isBusy(key))
+                return false;
+            action.run();
+            return true;
+        }
+    }
+
+    /** What one uninstall moved to the trash; deleted by {@link #purge} outside the lock. */
+    private static final class Removal {
+        final List<File> trashed = new ArrayList<>();
+        File installed; // 已挪进 _trash 的安装目录
+        JSONObject blobs; // 安装目录里链到 content store 的文件：删除时不算释放
+    }
+
+    // lastAccess 只是排序依据，1 分钟内的重复访问不再写 journal
+    static final long ACCESS_WRITE_INTERVAL_MS = 60_000L;
+    // 可续传的半成品最多留这么久
+    static final long TMP_MAX_AGE_MS = 7L * 24 * 3600 * 1000;
+
+    static final String TMP_DIR = "_tmp";
+    static final String TRASH_DIR = "_trash";
+
+    // copyFile 每次 transferTo 的量；分段是为了能及时响应取消
+    private static final long TRANSFER_CHUNK = 64L * 1024 * 1024;
+
+    private final File root;
+    private final StateStore state;
+    private final ContentStore cas; // 可为 null
+    private final long budget; // <= 0 不限
+    private final Busy busy;
+    private final long margin; // 给系统和 state journal 留的余量
+    private final Map<String, Long> reserved = new HashMap<>();
+    // 本实例挪进 _trash 的条目都带这个前缀；不带的是之前进程没删完的
+    private final String trashPrefix = Long.toString(System.nanoTime(), 36) + "-";
+    private final AtomicLong trashSeq = new AtomicLong();
+
+    StorageManager(File root, StateStore state, ContentStore cas, long budget, long margin, Busy busy) {
+        this.root = root;
+        this.state = state;
+        this.cas = cas;
+        this.budget = budget;
+        this.margin = margin;
+        this.busy = busy;
+    }
+
+    long budget() {
+        return budget;
+    }
+
+    static long usageOf(JSONObject rec) {
+        if (rec == null)
+            return 0L;
+        if (rec.has("usage"))
+            return rec.optLong("usage", 0L);
+        // 老记录没有 usage，用 fingerprint 里的文件大小凑
+        JSONObject fp = rec.optJSONObject("fingerprint");
+        return fp == null ? 0L : fingerprintBytes(fp);
+    }
+
+    static long fingerprintBytes(JSONObject fingerprint) {
+        JSONArray files = fingerprint.optJSONArray("files");
+        long total = 0;
+        if (files != null)
+            for (int i = 0; i < files.length(); i++)
+                total += files.optJSONObject(i).optLong("s", 0L);
+        return total;
+    }
+
+    long usedBytes() {
+        long total = 0;
+        for (JSONObject rec : state.snapshot().values())
+            total += usageOf(rec);
+        return total;
+    }
+
+    void touch(String key) {
+        long now = System.currentTimeMillis();
+        state.update(key, rec -> {
+            if (rec == null || now - rec.optLong("lastAccess", 0L) < ACCESS_WRITE_INTERVAL_MS)
+                return null;
+            return with(rec, "lastAccess", now);
+        });
+    }
+
+    /** @return false if {@code key} has no state record */
+    boolean pin(String key, boolean pinned) {
+        boolean[] found = { false };
+        state.update(key, rec -> {
+            if (rec == null)
+                return null;
+            found[0] = true;
+            return rec.optBoolean("pinned", false) == pinned ? null : with(rec, "pinned", pinned);
+        });
+        return found[0];
+    }
+
+    /**
+     * Reserves {@code bytes} of free space for {@code key}, replacing what it had reserved before
+     * (an install re-reserves as its estimate gets exact).
+     *
+     * @throws IOException {@code INSUFFICIENT_STORAGE} if the filesystem, minus the other installs'
+     *                     reservations and the margin, can't hold it
+     */
+    synchronized void reserve(String key, long bytes) throws IOException {
+        long others = 0;
+        for (Map.Entry<String, Long> e : reserved.entrySet())
+            if (!e.getKey().equals(key))
+                others += e.getValue();
+        long free = root.getUsableSpace() - others;
+        if (bytes + margin > free)
+            throw new IOException("INSUFFICIENT_STORAGE needed=" + bytes + " free=" + Math.max(0L, free - margin));
+        reserved.put(key, Math.max(0L, bytes));
+    }
+
+    synchronized void release(String key) {
+        reserved.remove(key);
+    }
+
+    synchronized long reservedBytes() {
+        long total = 0;
+        for (long v : reserved.values())
+            total += v;
+        return total;
+    }
+
+    /**
+     * Sizes {@code raf} to {@code len}, allocating the blocks up front where {@code fs} can
+     * ({@code posix_fallocate} on Android) so the extent is contiguous and ENOSPC shows up here
+     * rather than mid-write. Otherwise (or with a null {@code fs}) a sparse {@code setLength}.
+     */
+    static void preallocate(FsRoot fs, RandomAccessFile raf, long len) throws IOException {
+        if (len > 0 && fs != null)
+            fs.allocate(raf, len);
+        raf.setLength(len);
+    }
+
+    /**
+     * Evicts unpinned, idle models (least recently accessed first) until {@code needed} more bytes
+     * fit the budget. {@code installingKey}'s current usage is not counted since the install
+     * replaces it.
+     *
+     * @return false if the budget still can't hold {@code needed}
+     */
+    boolean ensureRoom(long needed, String installingKey, List<String> evicted) {
+        if (budget <= 0)
+            return true;
+        List<Removal> victims = new ArrayList<>();
+        boolean fits = pickVictims(needed, installingKey, evicted, victims);
+        for (Removal r : victims)
+            purge(r);
+        return fits;
+    }
+
+    // 锁内只选、只挪；删目录树在锁外，不挡 reserve / 其它淘汰
+    private synchronized boolean pickVictims(long needed, String installingKey, List<String> evicted,
+            List<Removal> victims) {
+        Map<String, JSONObject> all = state.snapshot();
+        long used = 0;
+        List<Map.Entry<String, JSONObject>> candidates = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> e : all.entrySet()) {
+            if (e.getKey().equals(installingKey))
+                continue;
+            used += usageOf(e.getValue());
+            if (!e.getValue().optBoolean("pinned", false) && !busy.isBusy(e.getKey()))
+                candidates.add(e);
+        }
+        Collections.sort(candidates, (a, b) -> Long.compare(lastAccess(a.getValue()), lastAccess(b.getValue())));
+
+        for (Map.Entry<String, JSONObject> c : candidates) {
+            if (used + needed <= budget)
+                break;
+            // 上面的 isBusy 只是筛选；检查到删除之间可能刚打开了 handle，删前再占住
+            if (!busy.beginRemove(c.getKey()))
+                continue;
+            try {
+                victims.add(detach(c.getKey()));
+            } finally {
+                busy.endRemove(c.getKey());
+            }
+            used -= usageOf(c.getValue());
+            if (evicted != null)
+                evicted.add(c.getKey());
+        }
+        return used + needed <= budget;
+    }
+
+    /**
+     * Deletes the installed tree, the state record, its integrity manifest, blobs only this model
+     * referenced and any {@code _tmp} leftovers for {@code key}.
+     *
+     * @return bytes freed on disk (shared blobs are not counted)
+     */
+    long remove(String key) {
+        return purge(detach(key));
+    }
+
+    // 锁内：记录去掉，文件挪进 _trash；之后谁也看不到这个 key 的东西了
+    private synchronized Removal detach(String key) {
+        Removal r = new Removal();
+        JSONObject rec = state.get(key);
+        if (rec != null) {
+            // unpackTo 为空时会落到 root 本身，绝不能删
+            String rel = safeRel(rec.optString("unpackTo", ""));
+            if (!rel.isEmpty())
+                r.installed = toTrash(new File(root, rel));
+            r.blobs = rec.optJSONObject("blobs");
+            state.remove(key);
+            r.trashed.add(toTrash(IntegrityManifest.fileFor(root, key)));
+        }
+        File tmp = new File(root, TMP_DIR);
+        for (String name : new String[] { key + ".zip", key + ".zip.part", key + ".zip.ok", "unpack_" + key,
+                "delta_" + key, "old_" + key })
+            r.trashed.add(toTrash(new File(tmp, name)));
+        return r;
+    }
+
+    private long purge(Removal r) {
+        long freed = 0;
+        if (r.installed != null)
+            freed += deleteCounting(r.installed, "", r.blobs);
+        for (File f : r.trashed)
+            if (f != null)
+                freed += deleteCounting(f, "", null);
+        if (cas != null && r.blobs != null)
+            freed += cas.release(r.blobs, state.snapshot().values());
+        return freed;
+    }
+
+    /**
+     * Renames {@code f} into {@code _trash} under a fresh name; deletes it in place if the rename
+     * fails.
+     *
+     * @return the trashed file, or null if {@code f} did not exist or was deleted in place
+     */
+    private File toTrash(File f) {
+        if (!f.exists())
+            return null;
+        File trash = new File(root, TRASH_DIR);
+        // noinspection ResultOfMethodCallIgnored
+        trash.mkdirs();
+        File to = new File(trash, trashPrefix + trashSeq.incrementAndGet() + "-" + f.getName());
+        if (f.renameTo(to))
+            return to;
+        deleteCounting(f, "", null);
+        return null;
+    }
+
+    /**
+     * Startup sweep of {@code _tmp}: extraction dirs and swap leftovers go; resumable downloads
+     * ({@code <key>.zip} with its {@code .part} journal or {@code .ok} stage marker) and delta stages are kept for
+     * {@link #TMP_MAX_AGE_MS}. Entries of keys that are busy are skipped; the idle check and the
+     * move to {@code _trash} happen under {@link Busy#whileIdle}, so an install scheduled in
+     * between keeps its files. Also empties trash left by an earlier process and drops store
+     * blobs no record references.
+     *
+     * @return bytes freed
+     */
+    long gc() {
+        long freed = 0;
+        long now = System.currentTimeMillis();
+        File[] stale = new File(root, TRASH_DIR).listFiles();
+        if (stale != null)
+            for (File f : stale)
+                if (!f.getName().startsWith(trashPrefix))
+                    freed += deleteCounting(f, "", null);
+
+        List<File> trashed = new ArrayList<>();
+        File[] entries = new File(root, TMP_DIR).listFiles();
+        if (entries != null) {
+            for (File f : entries) {
+                String name = f.getName();
+                String key = tmpKey(name);
+                boolean fresh = now - f.lastModified() < TMP_MAX_AGE_MS;
+                boolean keep;
+                if (name.endsWith(".zip.part") || name.endsWith(".zip.ok")) {
+                    keep = fresh && new File(f.getParentFile(), name.substring(0, name.lastIndexOf('.'))).isFile();
+                } else if (name.endsWith(".zip")) {
+                    File journal = RangeDownloader.journalFor(f);
+                    File marker = ModelInstaller.stageMarkerFor(f);
+                    keep = journal.isFile() && now - journal.lastModified() < TMP_MAX_AGE_MS
+                            || marker.isFile() && now - marker.lastModified() < TMP_MAX_AGE_MS;
+                } else if (name.startsWith("delta_")) {
+                    keep = fresh && new File(f, DeltaUpdater.STAGE_MARKER).isFile();
+                } else {
+                    keep = false;
+                }
+                if (keep)
+                    continue;
+                // 不拿本对象的锁：淘汰是先拿本锁再查 isBusy，这里反过来会死锁；rename 本身是原子的
+                if (key == null)
+                    trashed.add(toTrash(f));
+                else
+                    busy.whileIdle(key, () -> trashed.add(toTrash(f)));
+            }
+        }
+        for (File f : trashed)
+            if (f != null)
+                freed += deleteCounting(f, "", null);
+        if (cas != null)
+            freed += cas.gc(state.snapshot().values());
+        return freed;
+    }
+
+    long tmpBytes() {
+        return sizeOf(new File(root, TMP_DIR));
+    }
+
+    static String safeRel(String rel) {
+        if (rel == null)
+            return "";
+        rel = rel.replace("\\", "/");
+        while (rel.startsWith("/"))
+            rel = rel.substring(1);
+        rel = rel.replace("..", "");
+        return rel;
+    }
+
+    private static String tmpKey(String name) {
+        if (name.endsWith(".zip.part"))
+            return name.substring(0, name.length() - ".zip.part".length());
+        if (name.endsWith(".zip.ok"))
+            return name.substring(0, name.length() - ".zip.ok".length());
+        if (name.endsWith(".zip"))
+            return name.substring(0, name.length() - ".zip".length());
+        for (String p : new String[] { "unpack_", "delta_", "old_" })
+            if (name.startsWith(p))
+                return name.substring(p.length());
+        return null;
+    }
+
+    private static long lastAccess(JSONObject rec) {
+        return rec.optLong("lastAccess", rec.optLong("installedAt", 0L));
+    }
+
+    private static JSONObject with(JSONObject rec, String field, Object value) {
+        try {
+            JSONObject copy = new JSONObject(rec.toString());
+            copy.put(field, value);
+            return copy;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    static long sizeOf(File f) {
+        if (!f.exists())
+            return 0L;
+        if (!f.isDirectory())
+            return f.length();
+        long total = 0;
+        File[] children = f.listFiles();
+        if (children != null)
+            for (File c : children)
+                total += sizeOf(c);
+        return total;
+    }
+
+    /** Recursive copy, used when {@code renameTo} can't move a tree (different filesystem). */
+    static void copyDir(File src, File dst) throws IOException {
+        if (src.isDirectory()) {
+            if (!dst.exists()) {
+                // noinspection ResultOfMethodCallIgnored
+                dst.mkdirs();
+            }
+            File[] children = src.listFiles();
+            if (children != null) {
+                for (File c : children)
+                    copyDir(c, new File(dst, c.getName()));
+            }
+        } else {
+            File parent = dst.getParentFile();
+            if (parent != null && !parent.exists()) {
+                // noinspection ResultOfMethodCallIgnored
+                parent.mkdirs();
+            }
+            copyFile(src, dst);
+        }
+    }
+
+    /**
+     * Kernel-side copy ({@code FileChannel.transferTo}, sendfile/copy_file_range underneath): no
+     * user-space buffer at all. Stops with {@code CANCELLED} between transfers when interrupted.
+     */
+    static void copyFile(File src, File dst) throws IOException {
+        long t0 = System.nanoTime();
+        long size;
+        try (FileInputStream in = new FileInputStream(src);
+                FileOutputStream out = new FileOutputStream(dst);
+                FileChannel from = in.getChannel();
+                FileChannel to = out.getChannel()) {
+            size = from.size();
+            long pos = 0;
+            while (pos < size) {
+                // 单次 transferTo 可能只搬一部分（Linux 上限约 2G），按返回值推进
+                long n = from.transferTo(pos, Math.min(size - pos, TRANSFER_CHUNK), to);
+                if (n <= 0)
+                    break;
+                pos += n;
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("CANCELLED");
+            }
+            if (pos != size)
+                throw new IOException("short copy " + src.getName());
+        }
+        BufferPool.recordStorage(size, System.nanoTime() - t0);
+    }
+
+    // 统计真正释放的字节：链在 content store 里的文件（blobs 里有的 rel）不算
+    private static long deleteCounting(File f, String rel, JSONObject blobs) {
+        if (!f.exists())
+            return 0L;
+        long freed = 0;
+        if (f.isDirectory()) {
+            File[] children = f.listFiles();
+            if (children != null)
+                for (File c : children)
+                    freed += deleteCounting(c, rel.isEmpty() ? c.getName() : rel + "/" + c.getName(), blobs);
+        } else if (blobs == null || !blobs.has(rel)) {
+            freed = f.length();
+        }
+        // noinspection ResultOfMethodCallIgnored
+        f.delete();
+        return freed;
+    }
+}
@@ -0,0 +1,165 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.LocalFileHeader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Single-pass install: the source stream (HTTP body / asset stream) is hashed and
+ * unzipped at the same time, entries land in the target dir as they arrive.
+ * The caller compares {@link Result#digest} against the expected sha256 before promoting.
+ * With an at-rest key entries are written encrypted ({@link EncryptedFile}).
+ */
+final class StreamingZipInstaller {
+
+    interface Listener {
+        void onRead(long bytesRead);
+    }
+
+    static final class Result {
+        final byte[] digest;
+        final long bytesRead;
+        final int entries;
+
+        Result(byte[] digest, long bytesRead, int entries) {
+            this.digest = digest;
+            this.bytesRead = bytesRead;
+            this.entries = entries;
+        }
+    }
+
+    private StreamingZipInstaller() {
+    }
+
+    static Result install(InputStream source, File targetDir, String password, FsRoot fs, Listener listener)
+            throws Exception {
+        return install(source, targetDir, password, fs, listener, null);
+    }
+
+    static Result install(InputStream source, File targetDir, String password, FsRoot fs, Listener listener,
+            SecretKey atRest) throws Exception {
+        if (password == null)
+            password = "";
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        DigestInputStream din = new DigestInputStream(source, md);
+        CountingInputStream counted = new CountingInputStream(din, listener);
+
+        String rootPath = targetDir.getCanonicalPath() + File.separator;
+        BufferPool pool = BufferPool.heap();
+        ByteBuffer bb = pool.acquire();
+        try {
+            return extract(counted, md, targetDir, rootPath, password, fs, atRest, bb.array());
+        } finally {
+            pool.release(bb);
+        }
+    }
+
+    private static Result extract(CountingInputStream counted, MessageDigest md, File targetDir, String rootPath,
+            String password, FsRoot fs, SecretKey atRest, byte[] buf) throws Exception {
+        int entries = 0;
+
+        ZipInputStream zin = new ZipInputStream(counted, password.toCharArray());
+        LocalFileHeader h;
+        while ((h = zin.getNextEntry()) != null) {
+            File out = new File(targetDir, h.getFileName());
+            if (!out.getCanonicalPath().startsWith(rootPath))
+                throw new IOException("UNPACK_INVALID:bad entry " + h.getFileName());
+
+            if (h.isDirectory()) {
+                // noinspection ResultOfMethodCallIgnored
+                out.mkdirs();
+                continue;
+            }
+            File parent = out.getParentFile();
+            if (parent != null && !parent.exists()) {
+                // noinspection ResultOfMethodCallIgnored
+                parent.mkdirs();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(out, "rw")) {
+                // 头里有大小就先整块分配，ENOSPC 在第一次写之前就暴露；按实际写入长度收尾
+                long size = h.getUncompressedSize();
+                if (size > 0)
+                    StorageManager.preallocate(fs, raf, atRest == null ? size
+                            : EncryptedFile.encryptedLength(size, EncryptedFile.DEFAULT_CHUNK_SIZE));
+                EncryptedFile.Writer enc = atRest == null ? null
+                        : new EncryptedFile.Writer(raf.getChannel(), atRest, EncryptedFile.DEFAULT_CHUNK_SIZE);
+                long written = 0;
+                int n;
+                while ((n = zin.read(buf)) >= 0) {
+                    if (enc != null)
+                        enc.write(buf, 0, n);
+                    else
+                        raf.write(buf, 0, n);
+                    written += n;
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException("CANCELLED");
+                }
+                if (enc != null)
+                    written = enc.finish();
+                if (raf.length() != written)
+                    raf.setLength(written);
+            }
+            entries++;
+        }
+
+        // central directory 等尾部数据也要算进 sha256
+        while (counted.read(buf) >= 0) {
+            /* consume */ }
+        counted.finish();
+
+        return new Result(md.digest(), counted.count, entries);
+    }
+
+    static final class CountingInputStream extends FilterInputStream {
+        private final Listener listener;
+        private final ProgressGate gate = new ProgressGate();
+        long count;
+
+        CountingInputStream(InputStream in, Listener listener) {
+            super(in);
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                advance(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                advance(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skip 会绕过 digest，强制走 read
+            byte[] tmp = new byte[(int) Math.min(n, 8192)];
+            int r = read(tmp, 0, tmp.length);
+            return Math.max(r, 0);
+        }
+
+        private void advance(long n) {
+            count += n;
+            if (listener != null && gate.tick(count, -1))
+                listener.onRead(count);
+        }
+
+        // 总长未知：读完后补报一次最终字节数
+        void finish() {
+            if (listener != null && gate.pending(count))
+                listener.onRead(count);
+        }
+    }
+}
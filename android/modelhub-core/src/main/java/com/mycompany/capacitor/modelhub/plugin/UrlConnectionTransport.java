@@ -0,0 +1,148 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * {@link HttpTransport} over {@link HttpURLConnection}; works on Android and a plain JVM alike.
+ * Connections go back to the platform's keep-alive pool when a response is closed, so the range
+ * requests of one download and the installs of a batch reuse sockets (and TLS sessions) instead of
+ * handshaking per request. Redirects are followed here, up to {@link #MAX_REDIRECTS}, but never
+ * from https to http.
+ */
+public final class UrlConnectionTransport implements HttpTransport {
+
+    static final int MAX_REDIRECTS = 5;
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    @Override
+    public Response get(String url, String range) throws IOException {
+        return get(url, range, null);
+    }
+
+    @Override
+    public Response get(String url, String range, Map<String, String> headers) throws IOException {
+        URI u = uri(url);
+        for (int hop = 0;; hop++) {
+            HttpURLConnection conn = open(u, range, headers);
+            int rc;
+            try {
+                rc = conn.getResponseCode();
+            } catch (IOException e) {
+                conn.disconnect();
+                throw e;
+            }
+            String location = isRedirect(rc) ? conn.getHeaderField("Location") : null;
+            if (location == null)
+                return new UrlResponse(conn);
+            release(conn, null);
+            if (hop + 1 >= MAX_REDIRECTS)
+                throw new IOException("HTTP_TOO_MANY_REDIRECTS");
+            URI next = u.resolve(uri(location));
+            // 降级到明文会让中间人换掉模型包
+            if ("https".equalsIgnoreCase(u.getScheme()) && !"https".equalsIgnoreCase(next.getScheme()))
+                throw new IOException("HTTP_INSECURE_REDIRECT");
+            u = next;
+        }
+    }
+
+    // new URL(String) 在新 JDK 上已弃用；语法错误照旧当 MalformedURLException
+    private static URI uri(String s) throws MalformedURLException {
+        try {
+            return URI.create(s);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+    }
+
+    private HttpURLConnection open(URI u, String range, Map<String, String> headers) throws IOException {
+        HttpURLConnection conn;
+        try {
+            conn = (HttpURLConnection) u.toURL().openConnection();
+        } catch (IllegalArgumentException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+        try {
+            conn.setConnectTimeout(connectTimeoutMs);
+            conn.setReadTimeout(readTimeoutMs);
+            // 自己跟跳转：平台默认不跨协议，也不拦 https -> http
+            conn.setInstanceFollowRedirects(false);
+            // Range 请求不能让服务端 gzip，否则偏移对不上；整包下载也要真实的 Content-Length
+            conn.setRequestProperty("Accept-Encoding", "identity");
+            if (range != null)
+                conn.setRequestProperty("Range", range);
+            if (headers != null)
+                for (Map.Entry<String, String> h : headers.entrySet())
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+            conn.connect();
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+        return conn;
+    }
+
+    private static boolean isRedirect(int rc) {
+        return rc == 301 || rc == 302 || rc == 303 || rc == 307 || rc == 308;
+    }
+
+    // 关流而不是 disconnect：读完（或剩得不多）的连接回到 keep-alive 池；disconnect 会把它关掉
+    private static void release(HttpURLConnection conn, InputStream body) {
+        try {
+            InputStream in = body;
+            if (in == null)
+                in = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in != null)
+                in.close();
+        } catch (IOException e) {
+            conn.disconnect();
+        }
+    }
+
+    private static final class UrlResponse implements Response {
+        private final HttpURLConnection conn;
+        private InputStream body;
+
+        UrlResponse(HttpURLConnection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public int code() throws IOException {
+            return conn.getResponseCode();
+        }
+
+        @Override
+        public String header(String name) {
+            return conn.getHeaderField(name);
+        }
+
+        @Override
+        public long contentLength() {
+            return conn.getContentLengthLong();
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            if (body == null)
+                body = conn.getInputStream();
+            return body;
+        }
+
+        @Override
+        public void close() {
+            release(conn, body);
+        }
+    }
+}
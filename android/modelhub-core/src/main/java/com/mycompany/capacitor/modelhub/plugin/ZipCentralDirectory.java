@@ -0,0 +1,150 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads just the end-of-central-directory record and the central directory of a zip (zip64
+ * aware) to get entry count and size totals without touching the entry data. Works over any
+ * positional source: a file, an asset range inside the APK, or HTTP range requests.
+ */
+final class ZipCentralDirectory {
+
+    interface Source {
+        long size() throws IOException;
+
+        void readFully(long pos, byte[] b, int off, int len) throws IOException;
+    }
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int EOCD_MIN = 22;
+    private static final int MAX_COMMENT = 0xffff;
+
+    final int entries; // 不含目录
+    final long uncompressed;
+    final long compressed;
+
+    private ZipCentralDirectory(int entries, long uncompressed, long compressed) {
+        this.entries = entries;
+        this.uncompressed = uncompressed;
+        this.compressed = compressed;
+    }
+
+    static ZipCentralDirectory read(Source src) throws IOException {
+        long size = src.size();
+        if (size < EOCD_MIN)
+            throw new IOException("not a zip: too short");
+
+        // EOCD 在末尾，后面最多跟 64K 注释；前面可能紧挨着 20 字节的 zip64 locator
+        int tailLen = (int) Math.min(size, EOCD_MIN + MAX_COMMENT + 20);
+        long tailPos = size - tailLen;
+        byte[] tail = new byte[tailLen];
+        src.readFully(tailPos, tail, 0, tailLen);
+        ByteBuffer t = le(tail);
+
+        int eocd = -1;
+        for (int i = tailLen - EOCD_MIN; i >= 0; i--) {
+            if (t.getInt(i) == EOCD_SIG) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0)
+            throw new IOException("not a zip: no end of central directory");
+
+        long total = t.getShort(eocd + 10) & 0xffff;
+        long cdSize = t.getInt(eocd + 12) & 0xffffffffL;
+        long cdOffset = t.getInt(eocd + 16) & 0xffffffffL;
+
+        if ((total == 0xffff || cdSize == 0xffffffffL || cdOffset == 0xffffffffL) && eocd >= 20
+                && t.getInt(eocd - 20) == ZIP64_LOCATOR_SIG) {
+            long z64Pos = t.getLong(eocd - 20 + 8);
+            byte[] z = new byte[56];
+            src.readFully(z64Pos, z, 0, z.length);
+            ByteBuffer zb = le(z);
+            if (zb.getInt(0) != ZIP64_EOCD_SIG)
+                throw new IOException("bad zip64 end of central directory");
+            total = zb.getLong(32);
+            cdSize = zb.getLong(40);
+            cdOffset = zb.getLong(48);
+        }
+        if (cdOffset + cdSize > size || cdSize > Integer.MAX_VALUE)
+            throw new IOException("bad central directory bounds");
+
+        byte[] cd = new byte[(int) cdSize];
+        src.readFully(cdOffset, cd, 0, cd.length);
+        ByteBuffer b = le(cd);
+
+        int files = 0;
+        long unc = 0;
+        long comp = 0;
+        int p = 0;
+        for (long n = 0; n < total; n++) {
+            if (p + 46 > cd.length || b.getInt(p) != CEN_SIG)
+                throw new IOException("bad central directory entry " + n);
+            long c = b.getInt(p + 20) & 0xffffffffL;
+            long u = b.getInt(p + 24) & 0xffffffffL;
+            int nameLen = b.getShort(p + 28) & 0xffff;
+            int extraLen = b.getShort(p + 30) & 0xffff;
+            int commentLen = b.getShort(p + 32) & 0xffff;
+            boolean dir = nameLen > 0 && cd[p + 46 + nameLen - 1] == '/';
+
+            if (u == 0xffffffffL || c == 0xffffffffL) {
+                // zip64 extra (0x0001)：按顺序只放被置成 0xffffffff 的字段
+                int e = p + 46 + nameLen;
+                int end = e + extraLen;
+                while (e + 4 <= end) {
+                    int id = b.getShort(e) & 0xffff;
+                    int len = b.getShort(e + 2) & 0xffff;
+                    if (id == 0x0001) {
+                        int q = e + 4;
+                        if (u == 0xffffffffL) {
+                            u = b.getLong(q);
+                            q += 8;
+                        }
+                        if (c == 0xffffffffL)
+                            c = b.getLong(q);
+                        break;
+                    }
+                    e += 4 + len;
+                }
+            }
+            if (!dir) {
+                files++;
+                unc += u;
+                comp += c;
+            }
+            p += 46 + nameLen + extraLen + commentLen;
+        }
+        return new ZipCentralDirectory(files, unc, comp);
+    }
+
+    /** {@code [offset, offset + length)} of a channel, e.g. an uncompressed asset inside the APK. */
+    static Source of(FileChannel ch, long offset, long length) {
+        return new Source() {
+            @Override
+            public long size() {
+                return length;
+            }
+
+            @Override
+            public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+                ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+                while (bb.hasRemaining()) {
+                    int n = ch.read(bb, offset + pos + (bb.position() - off));
+                    if (n < 0)
+                        throw new IOException("unexpected EOF");
+                }
+            }
+        };
+    }
+
+    private static ByteBuffer le(byte[] b) {
+        return ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,105 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+public class BufferPoolTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void buffersAreReusedAndRetainedMemoryIsBounded() {
+        // 预算只够 2 个 MEDIUM
+        BufferPool pool = new BufferPool(true, 2L * BufferPool.MEDIUM);
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire();
+        ByteBuffer c = pool.acquire(); // 超额：临时分配，不阻塞
+        assertTrue(a.isDirect());
+        assertEquals(BufferPool.MEDIUM, a.capacity());
+        assertEquals(3, pool.allocations());
+        assertEquals(1, pool.overflows());
+        assertEquals(2L * BufferPool.MEDIUM, pool.retainedBytes());
+
+        a.put((byte) 1);
+        pool.release(b);
+        pool.release(c); // 不入池
+        pool.release(a); // 后进先出：最近用过的先借出
+        ByteBuffer d = pool.acquire();
+        assertSame(a, d);
+        assertEquals(0, d.position()); // 取出时已 clear
+        pool.acquire();
+        pool.acquire();
+        assertEquals(2, pool.reuses());
+        assertEquals(4, pool.allocations());
+        assertEquals(2L * BufferPool.MEDIUM, pool.retainedBytes());
+    }
+
+    @Test
+    public void heapBuffersAreArrayBacked() {
+        ByteBuffer b = new BufferPool(false, BufferPool.DEFAULT_MAX_BYTES).acquire();
+        assertTrue(b.hasArray());
+        assertEquals(0, b.arrayOffset());
+        assertEquals(b.capacity(), b.array().length);
+    }
+
+    @Test
+    public void bufferSizeFollowsMeasuredThroughput() {
+        assertEquals(BufferPool.MEDIUM, BufferPool.sizeFor(0));
+        assertEquals(BufferPool.SMALL, BufferPool.sizeFor(20.0 * MB));
+        assertEquals(BufferPool.MEDIUM, BufferPool.sizeFor(200.0 * MB));
+        assertEquals(BufferPool.LARGE, BufferPool.sizeFor(1500.0 * MB));
+
+        BufferPool pool = new BufferPool(false, BufferPool.DEFAULT_MAX_BYTES);
+        ByteBuffer old = pool.acquire();
+        pool.record(MB, 1_000_000_000L); // 样本太小，忽略
+        assertEquals(BufferPool.MEDIUM, pool.bufferSize());
+
+        pool.record(64 * MB, 4_000_000_000L); // 16 MB/s：慢 eMMC
+        assertEquals(BufferPool.SMALL, pool.bufferSize());
+        pool.release(old); // 旧尺寸，丢掉
+        assertEquals(0, pool.retainedBytes());
+        assertEquals(BufferPool.SMALL, pool.acquire().capacity());
+
+        // 换到快盘：滑动平均被拉上去
+        for (int i = 0; i < 10; i++)
+            pool.record(2048 * MB, 1_000_000_000L);
+        assertEquals(BufferPool.LARGE, pool.bufferSize());
+    }
+
+    @Test
+    public void pooledCopyAndHashPathsMatchPlainResults() throws Exception {
+        byte[] data = new byte[3 * BufferPool.LARGE + 17];
+        new Random(5).nextBytes(data);
+        File src = tmp.newFile("src.bin");
+        try (OutputStream os = new FileOutputStream(src)) {
+            os.write(data);
+        }
+
+        File dst = new File(tmp.getRoot(), "dst/copy.bin");
+        StorageManager.copyDir(src, dst);
+        assertArrayEquals(data, Files.readAllBytes(dst.toPath()));
+
+        File viaStream = tmp.newFile("stream.bin");
+        ModelInstaller.copyToFile(new ByteArrayInputStream(data), viaStream);
+        assertArrayEquals(data, Files.readAllBytes(viaStream.toPath()));
+
+        String expected = Hashes.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        assertEquals(expected, Hashes.sha256File(src));
+        assertEquals(expected, Hashes.sha256File(dst));
+    }
+}
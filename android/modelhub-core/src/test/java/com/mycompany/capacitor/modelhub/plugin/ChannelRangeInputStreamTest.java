@@ -0,0 +1,69 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ChannelRangeInputStreamTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private byte[] data;
+    private File file;
+
+    private FileChannel channel() throws Exception {
+        data = new byte[10_000];
+        new Random(9).nextBytes(data);
+        file = tmp.newFile("apk");
+        Files.write(file.toPath(), data);
+        return new RandomAccessFile(file, "r").getChannel();
+    }
+
+    @Test
+    public void readsExactlyTheWindowWithoutMovingOrClosingTheChannel() throws Exception {
+        try (FileChannel ch = channel()) {
+            ch.position(123);
+            // 缓冲比窗口小，跨好几次 fill
+            ChannelRangeInputStream in = new ChannelRangeInputStream(ch, 1000, 5000, 777);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] b = new byte[300];
+            int n;
+            while ((n = in.read(b)) > 0)
+                out.write(b, 0, n);
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 6000), out.toByteArray());
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(b, 0, b.length));
+            assertEquals(0, in.available());
+
+            in.close();
+            assertTrue(ch.isOpen());
+            assertEquals(123, ch.position());
+        }
+    }
+
+    @Test
+    public void skipCrossesBufferBoundariesAndStopsAtTheEnd() throws Exception {
+        try (FileChannel ch = channel()) {
+            ChannelRangeInputStream in = new ChannelRangeInputStream(ch, 100, 2000, 256);
+            assertEquals(data[100] & 0xff, in.read());
+            assertEquals(1999, in.available());
+            // 先吃掉缓冲里剩下的，再直接挪位置
+            assertEquals(1000, in.skip(1000));
+            assertEquals(data[1101] & 0xff, in.read());
+            assertEquals(998, in.skip(5000));
+            assertEquals(0, in.skip(1));
+            assertEquals(-1, in.read());
+        }
+    }
+}
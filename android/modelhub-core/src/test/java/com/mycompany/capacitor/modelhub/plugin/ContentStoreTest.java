@@ -0,0 +1,112 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ContentStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void write(File f, String content) throws Exception {
+        f.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(f)) {
+            os.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private static Object inode(File f) throws Exception {
+        return Files.readAttributes(f.toPath(), "unix:ino").get("ino");
+    }
+
+    @Test
+    public void sharedFilesAreStoredOnceAndFreedWithLastReference() throws Exception {
+        File root = tmp.getRoot();
+        ContentStore cas = new ContentStore(new LocalFsRoot(root));
+
+        File a = new File(root, "a");
+        write(new File(a, "tokenizer.json"), "shared tokenizer");
+        write(new File(a, "weights.bin"), "weights of a");
+        File b = new File(root, "b");
+        write(new File(b, "vocab/tokenizer.json"), "shared tokenizer");
+        write(new File(b, "weights.bin"), "weights of b");
+
+        JSONObject blobsA = cas.ingest(a, null);
+        JSONObject blobsB = cas.ingest(b, null);
+        assertEquals(2, blobsA.length());
+        assertEquals(2, blobsB.length());
+
+        String tok = blobsA.getString("tokenizer.json");
+        assertEquals(tok, blobsB.getString("vocab/tokenizer.json"));
+        File blob = cas.blobFor(tok);
+        assertTrue(blob.isFile());
+        // 两个模型里的文件都是同一个 inode
+        assertEquals(inode(blob), inode(new File(a, "tokenizer.json")));
+        assertEquals(inode(blob), inode(new File(b, "vocab/tokenizer.json")));
+
+        JSONObject recA = new JSONObject().put("blobs", blobsA);
+        JSONObject recB = new JSONObject().put("blobs", blobsB);
+
+        // 卸载 a：共享的 tokenizer 还被 b 引用，只释放 a 自己的权重
+        long freed = cas.release(blobsA, Arrays.asList(recB));
+        assertEquals("weights of a".length(), freed);
+        assertTrue(blob.isFile());
+        assertFalse(cas.blobFor(blobsA.getString("weights.bin")).exists());
+
+        freed = cas.release(blobsB, Arrays.<JSONObject>asList());
+        assertEquals("shared tokenizer".length() + "weights of b".length(), freed);
+        assertFalse(blob.exists());
+        assertEquals(2, ContentStore.refCounts(Arrays.asList(recA, recB)).get(tok).intValue());
+    }
+
+    @Test
+    public void knownHashesSkipRehashing() throws Exception {
+        File root = tmp.getRoot();
+        ContentStore cas = new ContentStore(new LocalFsRoot(root));
+        File a = new File(root, "a");
+        File f = new File(a, "x.bin");
+        write(f, "content");
+
+        // 记录里的 sha256 故意写错：size/mtime 对得上就直接信它
+        String fake = "ab" + "0".repeat(62);
+        JSONObject known = new JSONObject().put("x.bin",
+                new JSONObject().put("sha256", fake).put("s", f.length()).put("m", f.lastModified()));
+        assertEquals(fake, cas.ingest(a, known).getString("x.bin"));
+        assertTrue(cas.has(fake));
+    }
+
+    @Test
+    public void aCorruptBlobIsReplacedNotLinkedOverVerifiedData() throws Exception {
+        File root = tmp.getRoot();
+        ContentStore cas = new ContentStore(new LocalFsRoot(root));
+        File a = new File(root, "a");
+        File f = new File(a, "weights.bin");
+        write(f, "good weights");
+        String sha = Hashes.sha256File(f);
+
+        // 同名 blob 长度一样、内容坏了（比如掉电后的位翻转）
+        File blob = cas.blobFor(sha);
+        write(blob, "bad! weights");
+
+        assertEquals(sha, cas.ingest(a, null).getString("weights.bin"));
+        assertEquals("good weights", new String(Files.readAllBytes(f.toPath()), "UTF-8"));
+        assertEquals(sha, Hashes.sha256File(blob));
+        assertEquals(inode(blob), inode(f));
+
+        // 第二个模型照常链到修好的 blob
+        File b = new File(root, "b");
+        write(new File(b, "weights.bin"), "good weights");
+        cas.ingest(b, null);
+        assertEquals(inode(blob), inode(new File(b, "weights.bin")));
+    }
+}
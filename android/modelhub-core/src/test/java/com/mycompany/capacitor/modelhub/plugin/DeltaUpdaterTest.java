@@ -0,0 +1,158 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DeltaUpdaterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void write(File f, String content) throws Exception {
+        f.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(f)) {
+            os.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private static String sha(String content) throws Exception {
+        return Hashes.toHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes("UTF-8")));
+    }
+
+    private static JSONObject manifest(String version, Map<String, String> files) throws Exception {
+        JSONArray arr = new JSONArray();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            arr.put(new JSONObject()
+                    .put("path", e.getKey())
+                    .put("size", e.getValue().getBytes("UTF-8").length)
+                    .put("sha256", sha(e.getValue())));
+        }
+        return new JSONObject().put("version", version).put("baseUrl", "mem://").put("files", arr);
+    }
+
+    private FsRoot fs() {
+        return new LocalFsRoot(tmp.getRoot());
+    }
+
+    /** 假的 fetcher：从内存表里按 url 写文件，并记录被拉过哪些。 */
+    private static DeltaUpdater.Fetcher fetcher(Map<String, String> remote, List<String> fetched) {
+        return (url, out, onBytes) -> {
+            fetched.add(url);
+            String body = remote.get(url);
+            if (body == null)
+                throw new IOException("HTTP_404");
+            write(out, body);
+            onBytes.onProgress(body.length(), body.length());
+        };
+    }
+
+    @Test
+    public void fetchesOnlyChangedFilesAndSwapsInPlace() throws Exception {
+        File installed = tmp.newFolder("installed");
+        write(new File(installed, "tokenizer.json"), "tok-v1");
+        write(new File(installed, "weights/a.bin"), "aaaa-v1");
+        write(new File(installed, "weights/b.bin"), "bbbb-v1");
+        write(new File(installed, "old.txt"), "dropped in v2");
+
+        Map<String, String> v2 = new LinkedHashMap<>();
+        v2.put("tokenizer.json", "tok-v1");
+        v2.put("weights/a.bin", "aaaa-v2");
+        v2.put("weights/b.bin", "bbbb-v1");
+        v2.put("weights/c.bin", "new in v2");
+        Map<String, String> remote = new HashMap<>();
+        for (Map.Entry<String, String> e : v2.entrySet())
+            remote.put("mem://" + e.getKey(), e.getValue());
+
+        DeltaUpdater.Manifest m = DeltaUpdater.Manifest.parse(manifest("2", v2));
+        DeltaUpdater.Plan plan = DeltaUpdater.plan(m, installed, null, null);
+        assertEquals(2, plan.reuse.size());
+        assertEquals(2, plan.fetch.size());
+        assertEquals("aaaa-v2".length() + "new in v2".length(), plan.fetchBytes);
+
+        File stage = new File(tmp.getRoot(), "stage");
+        List<String> fetched = new ArrayList<>();
+        long[] last = { -1L };
+        DeltaUpdater.stage(plan, "2", installed, stage, null, fs(), fetcher(remote, fetched),
+                (done, total) -> last[0] = done);
+        assertEquals(2, fetched.size());
+        assertEquals(plan.fetchBytes, last[0]);
+
+        DeltaUpdater.swap(stage, installed, new File(tmp.getRoot(), "trash"));
+        assertFalse(stage.exists());
+        assertFalse(new File(installed, "old.txt").exists());
+        for (Map.Entry<String, String> e : v2.entrySet())
+            assertEquals(sha(e.getValue()), Hashes.sha256File(new File(installed, e.getKey())));
+
+        JSONObject files = DeltaUpdater.fileRecords(plan, installed, "2", "1", null);
+        assertEquals("1", files.getJSONObject("tokenizer.json").getString("v"));
+        assertEquals("1", files.getJSONObject("weights/b.bin").getString("v"));
+        assertEquals("2", files.getJSONObject("weights/a.bin").getString("v"));
+        assertEquals("2", files.getJSONObject("weights/c.bin").getString("v"));
+
+        // 下一次增量直接用记录里的 sha256，不用重算；未变的文件保留最早的版本号
+        DeltaUpdater.Plan again = DeltaUpdater.plan(m, installed, files, null);
+        assertEquals(4, again.reuse.size());
+        JSONObject files3 = DeltaUpdater.fileRecords(again, installed, "3", "2", files);
+        assertEquals("1", files3.getJSONObject("tokenizer.json").getString("v"));
+        assertEquals("2", files3.getJSONObject("weights/a.bin").getString("v"));
+    }
+
+    @Test
+    public void failedFetchLeavesInstalledTreeAndResumesStage() throws Exception {
+        File installed = tmp.newFolder("installed");
+        write(new File(installed, "a.bin"), "a-v1");
+        write(new File(installed, "b.bin"), "b-v1");
+
+        Map<String, String> v2 = new LinkedHashMap<>();
+        v2.put("a.bin", "a-v2");
+        v2.put("b.bin", "b-v2");
+        DeltaUpdater.Manifest m = DeltaUpdater.Manifest.parse(manifest("2", v2));
+        DeltaUpdater.Plan plan = DeltaUpdater.plan(m, installed, null, null);
+
+        Map<String, String> remote = new HashMap<>();
+        remote.put("mem://a.bin", "a-v2");
+        File stage = new File(tmp.getRoot(), "stage");
+        List<String> fetched = new ArrayList<>();
+        try {
+            DeltaUpdater.stage(plan, "2", installed, stage, null, fs(), fetcher(remote, fetched), null);
+            fail("expected b.bin to fail");
+        } catch (IOException expected) {
+        }
+        assertEquals(sha("a-v1"), Hashes.sha256File(new File(installed, "a.bin")));
+
+        // 重试：a.bin 已在 stage 里且校验通过，不再拉
+        remote.put("mem://b.bin", "b-v2");
+        fetched.clear();
+        DeltaUpdater.stage(plan, "2", installed, stage, null, fs(), fetcher(remote, fetched), null);
+        assertEquals(1, fetched.size());
+        assertEquals("mem://b.bin", fetched.get(0));
+    }
+
+    @Test
+    public void rejectsPathsOutsideInstallDir() throws Exception {
+        JSONObject bad = new JSONObject().put("files", new JSONArray()
+                .put(new JSONObject().put("path", "weights/../../evil").put("sha256", "00")));
+        try {
+            DeltaUpdater.Manifest.parse(bad);
+            fail("expected bad manifest");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("DELTA_BAD_MANIFEST"));
+        }
+    }
+}
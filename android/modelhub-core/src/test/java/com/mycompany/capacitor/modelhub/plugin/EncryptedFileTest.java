@@ -0,0 +1,150 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public class EncryptedFileTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int CHUNK = 4096;
+    private final SecretKey key = new SecretKeySpec(bytes(99, 32), "AES");
+
+    private static byte[] bytes(int seed, int n) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    // 按不规则的块写进去，覆盖跨块边界
+    private File encrypt(byte[] plain) throws IOException {
+        File f = tmp.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            EncryptedFile.Writer w = new EncryptedFile.Writer(raf.getChannel(), key, CHUNK);
+            int off = 0;
+            Random r = new Random(7);
+            while (off < plain.length) {
+                int n = Math.min(plain.length - off, 1 + r.nextInt(3 * CHUNK));
+                w.write(plain, off, n);
+                off += n;
+            }
+            assertEquals(EncryptedFile.encryptedLength(plain.length, CHUNK), w.finish());
+        }
+        return f;
+    }
+
+    private static byte[] readAt(ModelChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        while (b.hasRemaining() && ch.read(b, pos + b.position()) > 0) {
+        }
+        return b.array();
+    }
+
+    @Test
+    public void randomReadsMatchPlaintextAndNothingIsStoredInTheClear() throws Exception {
+        byte[] plain = bytes(1, 10 * CHUNK + 123);
+        File f = encrypt(plain);
+        assertEquals(EncryptedFile.encryptedLength(plain.length, CHUNK), f.length());
+        assertEquals(plain.length, EncryptedFile.plainLength(f));
+        // 明文里任取一段都不应出现在密文里
+        byte[] stored = Files.readAllBytes(f.toPath());
+        assertFalse(new String(stored, "ISO-8859-1").contains(new String(plain, 100, 32, "ISO-8859-1")));
+
+        try (ModelChannel ch = new ModelChannel(f, key, 2)) {
+            assertTrue(ch.encrypted());
+            assertEquals(plain.length, ch.size());
+            Random r = new Random(3);
+            for (int i = 0; i < 200; i++) {
+                int pos = r.nextInt(plain.length);
+                int len = Math.min(plain.length - pos, 1 + r.nextInt(2 * CHUNK + 5));
+                byte[] got = readAt(ch, pos, len);
+                for (int j = 0; j < len; j++)
+                    assertEquals(plain[pos + j], got[j]);
+            }
+            // 顺序读到尾
+            ch.position(plain.length - 10);
+            ByteBuffer tail = ByteBuffer.allocate(64);
+            assertEquals(10, ch.read(tail));
+            assertEquals(-1, ch.read(tail));
+        }
+    }
+
+    @Test
+    public void emptyAndExactChunkFilesRoundTrip() throws Exception {
+        for (int n : new int[] { 0, CHUNK, 2 * CHUNK }) {
+            byte[] plain = bytes(n, n);
+            File f = encrypt(plain);
+            try (ModelChannel ch = ModelChannel.open(f, key)) {
+                assertEquals(n, ch.size());
+                assertArrayEquals(plain, readAt(ch, 0, n));
+                assertEquals(-1, ch.read(ByteBuffer.allocate(1), n));
+            }
+        }
+    }
+
+    @Test
+    public void tamperingTruncationAndWrongKeyAreRejected() throws Exception {
+        byte[] plain = bytes(2, 3 * CHUNK + 1);
+        File f = encrypt(plain);
+
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            long at = EncryptedFile.HEADER + (CHUNK + EncryptedFile.TAG) + 5; // 第 1 块
+            raf.seek(at);
+            int b = raf.read();
+            raf.seek(at);
+            raf.write(b ^ 1);
+        }
+        try (ModelChannel ch = ModelChannel.open(f, key)) {
+            assertArrayEquals(Arrays.copyOf(plain, CHUNK), readAt(ch, 0, CHUNK)); // 别的块照读
+            assertCorrupt(() -> readAt(ch, CHUNK, 1));
+        }
+
+        // 去掉最后一块并改写头部长度：新的最后一块当初不是按 last 封的
+        File g = encrypt(plain);
+        try (RandomAccessFile raf = new RandomAccessFile(g, "rw")) {
+            raf.setLength(EncryptedFile.encryptedLength(3 * CHUNK, CHUNK));
+            raf.seek(12);
+            raf.writeLong(3 * CHUNK);
+        }
+        try (ModelChannel ch = ModelChannel.open(g, key)) {
+            assertCorrupt(() -> readAt(ch, 2 * CHUNK, 1));
+        }
+
+        File h = encrypt(plain);
+        try (ModelChannel ch = ModelChannel.open(h, new SecretKeySpec(bytes(5, 32), "AES"))) {
+            assertCorrupt(() -> readAt(ch, 0, 1));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(h, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertCorrupt(() -> ModelChannel.open(h, key));
+    }
+
+    private interface Io {
+        Object run() throws IOException;
+    }
+
+    private static void assertCorrupt(Io io) {
+        try {
+            io.run();
+            fail("damage not detected");
+        } catch (IOException e) {
+            assertEquals("ENCRYPTION_CORRUPT", ModelInstaller.codeOf(e));
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The transport stack ({@link UrlConnectionTransport}, {@link RetryingTransport},
+ * {@link MirrorSelector}) against an in-process server that injects faults: each path has a
+ * queue of scripted failures, consumed one per request, before it serves normally.
+ */
+public class HttpTransportTest {
+
+    private static final byte[] BODY = "0123456789abcdef".getBytes();
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private final Map<String, Deque<String>> faults = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", ex -> {
+            String path = ex.getRequestURI().getPath();
+            hits.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+            clientPorts.add(ex.getRemoteAddress().getPort());
+            Deque<String> q = faults.get(path);
+            String fault = q == null ? null : q.poll();
+            try {
+                if (fault != null && fault.startsWith("status:")) {
+                    ex.sendResponseHeaders(Integer.parseInt(fault.substring(7)), -1);
+                    return;
+                }
+                if (fault != null && fault.startsWith("retry-after:")) {
+                    ex.getResponseHeaders().add("Retry-After", fault.substring(12));
+                    ex.sendResponseHeaders(503, -1);
+                    return;
+                }
+                if (fault != null && fault.startsWith("sleep:"))
+                    sleep(Long.parseLong(fault.substring(6)));
+                if (path.startsWith("/redirect/")) {
+                    ex.getResponseHeaders().add("Location", path.substring("/redirect".length()));
+                    ex.sendResponseHeaders(302, -1);
+                    return;
+                }
+                ex.getResponseHeaders().add("ETag", ETAG);
+                if (ETAG.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                    ex.sendResponseHeaders(304, -1);
+                    return;
+                }
+                ex.sendResponseHeaders(200, BODY.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(BODY);
+                }
+            } finally {
+                ex.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void script(String path, String... steps) {
+        faults.put(path, new ConcurrentLinkedDeque<>(Arrays.asList(steps)));
+    }
+
+    private int hits(String path) {
+        AtomicInteger n = hits.get(path);
+        return n == null ? 0 : n.get();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] readAll(HttpTransport.Response r) throws IOException {
+        try (InputStream in = r.body()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] b = new byte[64];
+            int n;
+            while ((n = in.read(b)) >= 0)
+                bos.write(b, 0, n);
+            return bos.toByteArray();
+        }
+    }
+
+    private static int deadPort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private final UrlConnectionTransport plain = new UrlConnectionTransport(2000, 5000);
+
+    // ===================== RetryingTransport =====================
+
+    @Test
+    public void transientServerErrorsAreRetriedWithBackoff() throws Exception {
+        script("/m.zip", "status:503", "status:502");
+        AtomicInteger retries = new AtomicInteger();
+        HttpTransport t = new RetryingTransport(plain, new RetryPolicy(4, 10L, 50L), retries);
+
+        try (HttpTransport.Response r = t.get(url("/m.zip"), null)) {
+            assertEquals(200, r.code());
+            assertArrayEquals(BODY, readAll(r));
+        }
+        assertEquals(2, retries.get());
+        assertEquals(3, hits("/m.zip"));
+    }
+
+    @Test
+    public void clientErrorsAreNotRetriedAndExhaustedRetriesReturnTheLastStatus() throws Exception {
+        script("/gone.zip", "status:404", "status:404");
+        script("/down.zip", "status:503", "status:503", "status:503", "status:503");
+        HttpTransport t = new RetryingTransport(plain, new RetryPolicy(3, 1L, 5L), null);
+
+        try (HttpTransport.Response r = t.get(url("/gone.zip"), null)) {
+            assertEquals(404, r.code());
+        }
+        assertEquals(1, hits("/gone.zip"));
+        try (HttpTransport.Response r = t.get(url("/down.zip"), null)) {
+            assertEquals(503, r.code());
+        }
+        assertEquals(3, hits("/down.zip"));
+    }
+
+    @Test
+    public void retryAfterOverridesTheBackoff() throws Exception {
+        script("/m.zip", "retry-after:0");
+        // 退避本来要 5 秒；服务端说 0 秒就按 0 秒
+        HttpTransport t = new RetryingTransport(plain, new RetryPolicy(2, 5000L, 5000L), null);
+        long t0 = System.nanoTime();
+        try (HttpTransport.Response r = t.get(url("/m.zip"), null)) {
+            assertEquals(200, r.code());
+        }
+        assertTrue((System.nanoTime() - t0) / 1_000_000 < 2000);
+        assertEquals(3_600_000L, RetryingTransport.retryAfterMs("3600"));
+        assertEquals(-1L, RetryingTransport.retryAfterMs("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    public void connectionErrorsAreRetriedThenThrown() throws Exception {
+        AtomicInteger retries = new AtomicInteger();
+        HttpTransport t = new RetryingTransport(plain, new RetryPolicy(3, 1L, 5L), retries);
+        try {
+            t.get("http://127.0.0.1:" + deadPort() + "/m.zip", null).close();
+            fail("expected a connection error");
+        } catch (IOException expected) {
+        }
+        assertEquals(2, retries.get());
+    }
+
+    @Test
+    public void backoffGrowsExponentiallyWithJitterUpToTheCap() {
+        RetryPolicy p = new RetryPolicy(10, 100L, 1000L);
+        for (int i = 0; i < 200; i++) {
+            long d0 = p.delayMs(0);
+            long d2 = p.delayMs(2);
+            long d9 = p.delayMs(9);
+            assertTrue(d0 >= 50 && d0 <= 100);
+            assertTrue(d2 >= 200 && d2 <= 400);
+            assertTrue(d9 >= 500 && d9 <= 1000);
+        }
+        assertTrue(RetryPolicy.retryable(new IOException("HTTP_503")));
+        assertTrue(RetryPolicy.retryable(new IOException("HTTP_429")));
+        assertTrue(RetryPolicy.retryable(new SocketTimeoutException("read timed out")));
+        assertFalse(RetryPolicy.retryable(new IOException("HTTP_404")));
+        assertFalse(RetryPolicy.retryable(new IOException("REMOTE_CHANGED")));
+        assertFalse(RetryPolicy.retryable(new IOException("HTTP_INSECURE_REDIRECT")));
+        assertFalse(RetryPolicy.retryable(new InterruptedIOException("CANCELLED")));
+    }
+
+    // ===================== UrlConnectionTransport =====================
+
+    @Test
+    public void closedResponsesKeepTheConnectionAlive() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            try (HttpTransport.Response r = plain.get(url("/m.zip"), null)) {
+                assertArrayEquals(BODY, readAll(r));
+            }
+        }
+        // 5 次请求同一条连接（同一个客户端端口）
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void conditionalGetAnswers304ForAnUnchangedEtag() throws Exception {
+        try (HttpTransport.Response r = plain.get(url("/m.zip"), "bytes=0-0",
+                Collections.singletonMap("If-None-Match", ETAG))) {
+            assertEquals(304, r.code());
+        }
+        try (HttpTransport.Response r = plain.get(url("/m.zip"), null,
+                Collections.singletonMap("If-None-Match", "\"v0\""))) {
+            assertEquals(200, r.code());
+            assertEquals(ETAG, r.header("ETag"));
+        }
+    }
+
+    @Test
+    public void redirectsAreFollowedButNotForever() throws Exception {
+        try (HttpTransport.Response r = plain.get(url("/redirect/m.zip"), null)) {
+            assertEquals(200, r.code());
+            assertArrayEquals(BODY, readAll(r));
+        }
+        try {
+            plain.get(url("/redirect/redirect/redirect/redirect/redirect/m.zip"), null).close();
+            fail("expected too many redirects");
+        } catch (IOException e) {
+            assertEquals("HTTP_TOO_MANY_REDIRECTS", e.getMessage());
+        }
+    }
+
+    // ===================== MirrorSelector =====================
+
+    @Test
+    public void mirrorsAreOrderedByLatencyAndFailuresSinkToTheBack() throws Exception {
+        script("/slow.zip", "sleep:300");
+        String slow = url("/slow.zip");
+        String dead = "http://127.0.0.1:" + deadPort() + "/m.zip";
+        // 同一台机器换个写法当成另一个主机
+        String fast = "http://localhost:" + server.getAddress().getPort() + "/m.zip";
+
+        MirrorSelector sel = new MirrorSelector(plain);
+        assertEquals(Collections.singletonList(slow), sel.order(Collections.singletonList(slow)));
+        assertEquals(0, hits("/slow.zip")); // 只有一个地址时不探测
+
+        List<String> order = sel.order(Arrays.asList(slow, dead, fast));
+        assertEquals(Arrays.asList(fast, slow, dead), order);
+        assertEquals(Double.valueOf(MirrorSelector.PENALTY_MS), sel.latencyMs(dead));
+
+        // 下载失败后排到后面；已测过的主机不再探测
+        int probes = hits("/slow.zip");
+        sel.failed(fast);
+        assertEquals(slow, sel.order(Arrays.asList(fast, slow)).get(0));
+        assertEquals(probes, hits("/slow.zip"));
+        assertEquals(Arrays.asList(slow, fast), MirrorSelector.candidates(slow, Arrays.asList(" ", slow, fast)));
+    }
+
+    @Test
+    public void aFailedHostRegainsItsRankAfterSucceedingOrOnceThePenaltyExpires() throws Exception {
+        script("/slow.zip", "sleep:200");
+        String slow = url("/slow.zip");
+        String fast = "http://localhost:" + server.getAddress().getPort() + "/m.zip";
+        MirrorSelector sel = new MirrorSelector(plain, 300);
+        assertEquals(Arrays.asList(fast, slow), sel.order(Arrays.asList(slow, fast)));
+
+        // 一次下载失败排到后面，随后一次成功的下载把它拉回来
+        sel.failed(fast);
+        assertEquals(slow, sel.order(Arrays.asList(fast, slow)).get(0));
+        sel.record(fast, 1_000_000L);
+        assertEquals(1.0, sel.latencyMs(fast), 0.001);
+        assertEquals(fast, sel.order(Arrays.asList(slow, fast)).get(0));
+
+        // 没有成功的下载：罚时到期后重新探测
+        sel.failed(fast);
+        int probes = hits("/m.zip");
+        assertEquals(slow, sel.order(Arrays.asList(fast, slow)).get(0));
+        assertEquals(probes, hits("/m.zip"));
+        sleep(400);
+        assertEquals(fast, sel.order(Arrays.asList(slow, fast)).get(0));
+        assertEquals(probes + 1, hits("/m.zip"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class InstallFingerprintTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File tree() throws Exception {
+        File dir = tmp.newFolder("m");
+        Files.write(new File(dir, "config.json").toPath(), "{}".getBytes("UTF-8"));
+        File shards = new File(dir, "shards");
+        assertTrue(shards.mkdir());
+        Files.write(new File(shards, "w0.bin").toPath(), new byte[4096]);
+        return dir;
+    }
+
+    @Test
+    public void fastMatchNeedsTheSameCheckFilesAndAnUntouchedRoot() throws Exception {
+        File dir = tree();
+        JSONArray checkFiles = new JSONArray().put("config.json").put("shards/w0.bin");
+        JSONObject fp = InstallFingerprint.capture(dir, checkFiles);
+
+        assertTrue(InstallFingerprint.matchesFast(fp, dir, checkFiles));
+        assertFalse(InstallFingerprint.matchesFast(fp, dir, new JSONArray().put("config.json")));
+        assertFalse(InstallFingerprint.matchesFast(null, dir, checkFiles));
+
+        // 根目录里增删文件会改它的 mtime；显式设一个，不依赖文件系统的时间精度
+        Files.write(new File(dir, "extra.bin").toPath(), new byte[1]);
+        assertTrue(dir.setLastModified(dir.lastModified() + 2000));
+        assertFalse(InstallFingerprint.matchesFast(fp, dir, checkFiles));
+    }
+
+    @Test
+    public void deepMatchCatchesChangesBelowTheRoot() throws Exception {
+        File dir = tree();
+        JSONObject fp = InstallFingerprint.capture(dir, null);
+        assertTrue(InstallFingerprint.matchesDeep(fp, dir));
+
+        // 改子目录里的文件不碰根目录 mtime：fast 看不出来，deep 能
+        File w0 = new File(dir, "shards/w0.bin");
+        long m = w0.lastModified();
+        Files.write(w0.toPath(), new byte[10]);
+        assertTrue(w0.setLastModified(m));
+        assertTrue(InstallFingerprint.matchesFast(fp, dir, null));
+        assertFalse(InstallFingerprint.matchesDeep(fp, dir));
+
+        Files.write(w0.toPath(), new byte[4096]);
+        assertTrue(w0.setLastModified(m + 2000));
+        assertFalse(InstallFingerprint.matchesDeep(fp, dir));
+
+        assertTrue(w0.delete());
+        assertFalse(InstallFingerprint.matchesDeep(fp, dir));
+    }
+
+    @Test
+    public void recordsEveryFileAndTheCheckFilesItWasTakenFor() throws Exception {
+        File dir = tree();
+        JSONObject fp = InstallFingerprint.capture(dir, new JSONArray().put("shards/w0.bin").put("config.json"));
+
+        assertEquals(new HashSet<>(Arrays.asList("config.json", "shards/w0.bin")),
+                new HashSet<>(InstallFingerprint.paths(fp)));
+        assertEquals(Arrays.asList("shards/w0.bin", "config.json"), InstallFingerprint.checkFiles(fp));
+        assertEquals(Collections.emptyList(), InstallFingerprint.checkFiles(InstallFingerprint.capture(dir, null)));
+        // 存进状态文件再读回来照样能比
+        JSONObject reloaded = new JSONObject(fp.toString());
+        assertTrue(InstallFingerprint.matchesDeep(reloaded, dir));
+    }
+}
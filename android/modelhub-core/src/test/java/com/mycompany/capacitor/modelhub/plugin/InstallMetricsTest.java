@@ -0,0 +1,55 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+
+public class InstallMetricsTest {
+
+    @Test
+    public void phasesAccumulateAndReportThroughput() throws Exception {
+        InstallMetrics m = new InstallMetrics("m");
+        m.source("download", false);
+        m.phase("downloading", 500_000_000L, 8L * 1024 * 1024);
+        m.phase("downloading", 500_000_000L, 8L * 1024 * 1024);
+        m.phase("checking", 1_000_000L, 0L);
+        m.retries(2);
+        m.copyDirFallback();
+        assertTrue(m.finish("installed"));
+
+        JSONObject j = m.toJson();
+        assertEquals("download", j.getString("source"));
+        assertEquals(2, j.getInt("retries"));
+        assertTrue(j.getBoolean("copyDirFallback"));
+        assertEquals("installed", j.getString("code"));
+
+        JSONObject dl = j.getJSONObject("phases").getJSONObject("downloading");
+        assertEquals(1000.0, dl.getDouble("ms"), 0.01);
+        assertEquals(16.0, dl.getDouble("mbps"), 0.01);
+        // 没有字节的阶段不报吞吐
+        assertFalse(j.getJSONObject("phases").getJSONObject("checking").has("mbps"));
+    }
+
+    @Test
+    public void finishCountsOnceAndRingDropsOldest() {
+        InstallMetrics.Ring ring = new InstallMetrics.Ring(2);
+        InstallMetrics a = new InstallMetrics("a");
+        assertTrue(a.finish("installed"));
+        assertFalse(a.finish("CANCELLED"));
+        assertEquals("installed", a.toJson().optString("code"));
+
+        ring.add(a);
+        ring.add(new InstallMetrics("b"));
+        ring.add(new InstallMetrics("c"));
+        List<InstallMetrics> items = ring.list();
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(0).key);
+        assertEquals("c", items.get(1).key);
+
+        ring.clear();
+        assertTrue(ring.list().isEmpty());
+    }
+}
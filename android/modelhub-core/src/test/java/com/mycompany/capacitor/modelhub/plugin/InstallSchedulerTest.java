@@ -0,0 +1,328 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class InstallSchedulerTest {
+
+    private final InstallScheduler scheduler = new InstallScheduler(3, 2, 2);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    static final class Job implements InstallScheduler.Job {
+        final String key;
+        final String version;
+        final int priority;
+        final StringBuilder trace = new StringBuilder();
+
+        Job(String key) {
+            this(key, PriorityExecutor.PRIORITY_FOREGROUND);
+        }
+
+        Job(String key, int priority) {
+            this(key, "1", priority);
+        }
+
+        Job(String key, String version, int priority) {
+            this.key = key;
+            this.version = version;
+            this.priority = priority;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public String flightId() {
+            return key + "|" + version;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+
+    @Test
+    public void keepsInputOrderAndDedupesKeys() throws Exception {
+        ConcurrentHashMap<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        List<Job> jobs = Arrays.asList(new Job("a"), new Job("b"), new Job("a"), new Job("c"));
+
+        List<InstallScheduler.Outcome<Job>> out = scheduler.runAll(jobs,
+                j -> {
+                    fetches.computeIfAbsent(j.key, k -> new AtomicInteger()).incrementAndGet();
+                    // 让 a 最慢，检验结果顺序不受完成顺序影响
+                    Thread.sleep("a".equals(j.key) ? 80 : 5);
+                    j.trace.append("f");
+                    return false;
+                },
+                j -> {
+                    j.trace.append("v");
+                    return false;
+                },
+                j -> {
+                    j.trace.append("u");
+                    return true;
+                });
+
+        assertEquals(4, out.size());
+        assertEquals("a", out.get(0).job.key);
+        assertEquals("b", out.get(1).job.key);
+        assertSame(out.get(0).job, out.get(2).job);
+        assertEquals("c", out.get(3).job.key);
+        assertEquals(1, fetches.get("a").get());
+        for (InstallScheduler.Outcome<Job> o : out) {
+            assertNull(o.error);
+            assertEquals("fvu", o.job.trace.toString());
+        }
+    }
+
+    @Test
+    public void sameKeyAtAnotherVersionInOneBatchIsNotDeduped() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Job> jobs = Arrays.asList(new Job("m", "1", PriorityExecutor.PRIORITY_FOREGROUND),
+                new Job("m", "2", PriorityExecutor.PRIORITY_FOREGROUND),
+                new Job("m", "1", PriorityExecutor.PRIORITY_FOREGROUND));
+
+        List<InstallScheduler.Outcome<Job>> out = scheduler.runAll(jobs,
+                j -> {
+                    order.add(j.version);
+                    return true;
+                }, j -> false, j -> true);
+
+        // v2 拿到自己的结果，排在 v1 之后；重复的 v1 合并
+        assertEquals(Arrays.asList("1", "2"), order);
+        assertEquals("1", out.get(0).job.version);
+        assertEquals("2", out.get(1).job.version);
+        assertSame(out.get(0).job, out.get(2).job);
+    }
+
+    @Test
+    public void failureStopsOnlyThatJob() throws Exception {
+        List<Job> jobs = Arrays.asList(new Job("ok"), new Job("bad"), new Job("done"));
+
+        List<InstallScheduler.Outcome<Job>> out = scheduler.runAll(jobs,
+                j -> "done".equals(j.key),
+                j -> {
+                    if ("bad".equals(j.key))
+                        throw new IllegalStateException("boom");
+                    return false;
+                },
+                j -> {
+                    j.trace.append("u");
+                    return true;
+                });
+
+        assertNull(out.get(0).error);
+        assertEquals("u", out.get(0).job.trace.toString());
+        assertEquals("boom", out.get(1).error.getMessage());
+        assertEquals("", out.get(1).job.trace.toString());
+        assertNull(out.get(2).error);
+        assertEquals("", out.get(2).job.trace.toString());
+    }
+
+    @Test
+    public void cancelInterruptsRunningAndDropsQueued() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<List<InstallScheduler.Outcome<Job>>> box = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.runAllAsync(Arrays.asList(new Job("slow")),
+                j -> {
+                    started.countDown();
+                    Thread.sleep(10_000);
+                    return false;
+                },
+                j -> false,
+                j -> true,
+                out -> {
+                    box.set(out);
+                    done.countDown();
+                });
+
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.inflight());
+        assertTrue(scheduler.cancel("slow"));
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals("CANCELLED", box.get().get(0).error.getMessage());
+        assertEquals(0, scheduler.inflight());
+        assertFalse(scheduler.cancel("slow"));
+    }
+
+    @Test
+    public void foregroundJumpsAheadOfQueuedBackground() throws Exception {
+        InstallScheduler single = new InstallScheduler(1, 1, 1);
+        try {
+            CountDownLatch gate = new CountDownLatch(1);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            InstallScheduler.Step<Job> fetch = j -> {
+                if ("blocker".equals(j.key))
+                    gate.await();
+                order.add(j.key);
+                return true;
+            };
+            CountDownLatch all = new CountDownLatch(3);
+            InstallScheduler.Callback<Job> cb = out -> all.countDown();
+
+            single.runAllAsync(Arrays.asList(new Job("blocker")), fetch, j -> false, j -> true, cb);
+            single.runAllAsync(Arrays.asList(new Job("bg", PriorityExecutor.PRIORITY_BACKGROUND)), fetch,
+                    j -> false, j -> true, cb);
+            single.runAllAsync(Arrays.asList(new Job("fg")), fetch, j -> false, j -> true, cb);
+            gate.countDown();
+
+            assertTrue(all.await(2, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("blocker", "fg", "bg"), order);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentCallsForSameFlightShareOneRun() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        InstallScheduler.Step<Job> fetch = j -> {
+            fetches.incrementAndGet();
+            gate.await();
+            j.trace.append("f");
+            return true;
+        };
+        List<InstallScheduler.Outcome<Job>> first = Collections.synchronizedList(new ArrayList<>());
+        List<InstallScheduler.Outcome<Job>> second = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+
+        scheduler.runAllAsync(Arrays.asList(new Job("m")), fetch, j -> false, j -> true, out -> {
+            first.addAll(out);
+            done.countDown();
+        });
+        scheduler.runAllAsync(Arrays.asList(new Job("m")), fetch, j -> false, j -> true, out -> {
+            second.addAll(out);
+            done.countDown();
+        });
+        assertEquals(1, scheduler.inflight());
+        gate.countDown();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(1, fetches.get());
+        assertSame(first.get(0).job, second.get(0).job);
+        assertEquals("f", second.get(0).job.trace.toString());
+    }
+
+    @Test
+    public void detachingABackgroundCallerLeavesTheSharedFlightToTheForegroundOne() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger interrupted = new AtomicInteger();
+        InstallScheduler.Step<Job> fetch = j -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            j.trace.append("f");
+            return true;
+        };
+        AtomicReference<List<InstallScheduler.Outcome<Job>>> bg = new AtomicReference<>();
+        AtomicReference<List<InstallScheduler.Outcome<Job>>> fg = new AtomicReference<>();
+        CountDownLatch bgDone = new CountDownLatch(1);
+        CountDownLatch fgDone = new CountDownLatch(1);
+
+        // 后台 worker 先起 flight，前台 ensureInstalled 合并上来
+        InstallScheduler.Ticket worker = scheduler.runAllAsync(
+                Arrays.asList(new Job("m", PriorityExecutor.PRIORITY_BACKGROUND)), fetch, j -> false, j -> true,
+                out -> {
+                    bg.set(out);
+                    bgDone.countDown();
+                });
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        scheduler.runAllAsync(Arrays.asList(new Job("m")), fetch, j -> false, j -> true, out -> {
+            fg.set(out);
+            fgDone.countDown();
+        });
+
+        // 系统叫停 worker（比如断了 Wi-Fi）：worker 立刻拿到 CANCELLED，flight 不中断
+        assertTrue(worker.detach());
+        assertTrue(bgDone.await(2, TimeUnit.SECONDS));
+        assertEquals("CANCELLED", bg.get().get(0).error.getMessage());
+        assertTrue(bg.get().get(0).detached);
+        assertEquals(1, scheduler.inflight());
+
+        gate.countDown();
+        assertTrue(fgDone.await(2, TimeUnit.SECONDS));
+        assertNull(fg.get().get(0).error);
+        assertFalse(fg.get().get(0).detached);
+        assertEquals("f", fg.get().get(0).job.trace.toString());
+        assertEquals(0, interrupted.get());
+        assertFalse(worker.detach());
+    }
+
+    @Test
+    public void detachingTheOnlyCallerCancelsTheFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<List<InstallScheduler.Outcome<Job>>> box = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        InstallScheduler.Ticket t = scheduler.runAllAsync(Arrays.asList(new Job("solo")),
+                j -> {
+                    started.countDown();
+                    Thread.sleep(10_000);
+                    return false;
+                },
+                j -> false,
+                j -> true,
+                out -> {
+                    box.set(out);
+                    done.countDown();
+                });
+
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertTrue(t.detach());
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals("CANCELLED", box.get().get(0).error.getMessage());
+        // 没人再等：结果照常由 flight 自己发出，收尾不会被跳过
+        assertFalse(box.get().get(0).detached);
+        assertEquals(0, scheduler.inflight());
+    }
+
+    @Test
+    public void differentVersionOfSameKeyWaitsForCurrentFlight() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        InstallScheduler.Step<Job> fetch = j -> {
+            if ("1".equals(j.version))
+                gate.await();
+            order.add(j.version);
+            return true;
+        };
+        CountDownLatch done = new CountDownLatch(2);
+
+        scheduler.runAllAsync(Arrays.asList(new Job("m", "1", PriorityExecutor.PRIORITY_FOREGROUND)), fetch,
+                j -> false, j -> true, out -> done.countDown());
+        scheduler.runAllAsync(Arrays.asList(new Job("m", "2", PriorityExecutor.PRIORITY_FOREGROUND)), fetch,
+                j -> false, j -> true, out -> done.countDown());
+        Thread.sleep(50);
+        gate.countDown();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("1", "2"), order);
+    }
+}
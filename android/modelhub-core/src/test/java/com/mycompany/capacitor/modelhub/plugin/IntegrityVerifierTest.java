@@ -0,0 +1,136 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class IntegrityVerifierTest {
+
+    private static final long CHUNK = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] write(File f, int size, long seed) throws Exception {
+        f.getParentFile().mkdirs();
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        try (OutputStream os = new FileOutputStream(f)) {
+            os.write(data);
+        }
+        return data;
+    }
+
+    private static String sha(byte[] b) throws Exception {
+        return Hashes.toHex(MessageDigest.getInstance("SHA-256").digest(b));
+    }
+
+    private static void flipByte(File f, long pos) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(pos);
+            int b = raf.read();
+            raf.seek(pos);
+            raf.write(b ^ 0x01);
+        }
+    }
+
+    /** 只给整文件 sha256 的清单（和 delta 清单同样的字段）。 */
+    private IntegrityManifest install(File dir) throws Exception {
+        JSONArray files = new JSONArray();
+        int[] sizes = { 1_000_000, 3, 0, (int) CHUNK, 200_000 };
+        for (int i = 0; i < sizes.length; i++) {
+            String path = (i % 2 == 0 ? "weights/" : "") + "f" + i + ".bin";
+            byte[] data = write(new File(dir, path), sizes[i], i);
+            files.put(new JSONObject().put("path", path).put("size", sizes[i]).put("sha256", sha(data)));
+        }
+        return IntegrityManifest.parse(new JSONObject().put("chunkSize", CHUNK).put("files", files));
+    }
+
+    @Test
+    public void toHexMatchesFormat() throws Exception {
+        byte[] b = new byte[256];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) i;
+        StringBuilder expected = new StringBuilder();
+        for (byte x : b)
+            expected.append(String.format("%02x", x));
+        assertEquals(expected.toString(), Hashes.toHex(b));
+    }
+
+    @Test
+    public void fullVerifyFillsChunksAndSampleCatchesBitRot() throws Exception {
+        File dir = tmp.newFolder("m");
+        IntegrityManifest m = install(dir);
+
+        IntegrityVerifier.Result full = IntegrityVerifier.verify(m, dir, true, 4, null);
+        assertTrue(full.corrupt.toString(), full.ok());
+        assertEquals(1_000_000 + 3 + CHUNK + 200_000, full.bytes);
+        for (IntegrityManifest.Entry e : m.files)
+            assertEquals(e.path, e.chunkCount(CHUNK), e.chunks.length);
+
+        // 分块哈希落盘后再读回来，抽查只读一小部分
+        File saved = IntegrityManifest.fileFor(tmp.getRoot(), "m");
+        m.save(saved);
+        IntegrityManifest loaded = IntegrityManifest.load(saved);
+        assertNotNull(loaded);
+        IntegrityVerifier.Result sample = IntegrityVerifier.verify(loaded, dir, false, 2, null);
+        assertTrue(sample.ok());
+        assertTrue(sample.bytes < full.bytes);
+
+        // size 和 mtime 都不变的位翻转：首块必查
+        File big = new File(dir, "weights/f0.bin");
+        long mtime = big.lastModified();
+        flipByte(big, 10);
+        assertTrue(big.setLastModified(mtime));
+        assertEquals(Collections.singletonList("weights/f0.bin"),
+                IntegrityVerifier.verify(loaded, dir, false, 2, null).corrupt);
+
+        // 中间块的损坏 full 一定能查到；删掉的文件也算坏
+        flipByte(big, 10);
+        flipByte(new File(dir, "weights/f4.bin"), CHUNK + 5);
+        assertTrue(new File(dir, "f1.bin").delete());
+        assertEquals(Arrays.asList("f1.bin", "weights/f4.bin"),
+                IntegrityVerifier.verify(loaded, dir, true, 3, null).corrupt);
+    }
+
+    @Test
+    public void wholeFileMismatchDoesNotRecordChunks() throws Exception {
+        File dir = tmp.newFolder("m");
+        IntegrityManifest m = install(dir);
+        flipByte(new File(dir, "weights/f0.bin"), 999_999);
+        IntegrityVerifier.Result res = IntegrityVerifier.verify(m, dir, true, 1, null);
+        assertEquals(Collections.singletonList("weights/f0.bin"), res.corrupt);
+        assertNull(m.files.get(0).chunks);
+    }
+
+    @Test
+    public void rejectsBadManifests() throws Exception {
+        String[] bad = {
+                "{\"files\":[{\"path\":\"../x\",\"size\":1,\"sha256\":\"00\"}]}",
+                "{\"files\":[{\"path\":\"a\",\"size\":1}]}",
+                "{\"chunkSize\":4,\"files\":[{\"path\":\"a\",\"size\":9,\"chunks\":[\"00\",\"11\"]}]}",
+        };
+        for (String json : bad) {
+            try {
+                IntegrityManifest.parse(new JSONObject(json));
+                fail("expected bad manifest: " + json);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("INTEGRITY_BAD_MANIFEST"));
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+public class JobStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static JSONObject item(String key) throws Exception {
+        return new JSONObject().put("key", key).put("unpackTo", "m/" + key).put("installMode", "streaming");
+    }
+
+    @Test
+    public void enqueueKeepsActiveJobAndForcesStaged() throws Exception {
+        JobStore js = new JobStore(tmp.getRoot());
+        JSONObject rec = js.enqueue(item("a"), "downloadOnly");
+        assertEquals(JobStore.QUEUED, rec.getString("state"));
+        assertEquals("staged", rec.getJSONObject("item").getString("installMode"));
+
+        js.started("a", 1);
+        // 运行中再次入队返回原任务
+        JSONObject again = js.enqueue(item("a").put("version", "2"), "downloadOnly");
+        assertEquals(JobStore.RUNNING, again.getString("state"));
+        assertFalse(again.getJSONObject("item").has("version"));
+
+        js.finished("a", new JSONObject().put("ok", true));
+        assertEquals(JobStore.QUEUED, js.enqueue(item("a"), "downloadOnly").getString("state"));
+    }
+
+    @Test
+    public void progressIsLiveWhileRunningAndPhasesPersist() throws Exception {
+        File root = tmp.newFolder("root");
+        JobStore js = new JobStore(root);
+        js.enqueue(item("a"), "downloadOnly");
+        js.onProgress("a", "downloading", 5L, 10L, 0.5, null); // 还没 started，不记
+        assertFalse(js.view("a").has("phase"));
+
+        js.started("a", 1);
+        js.onProgress("a", "downloading", 5L, 10L, 0.5, null);
+        JSONObject v = js.view("a");
+        assertEquals("downloading", v.getString("phase"));
+        assertEquals(5L, v.getLong("downloaded"));
+        assertEquals(1, v.getInt("attempts"));
+
+        js.onProgress("a", "verifying", 1L, 10L, 0.1, null);
+        StateStore.get(new File(root, JobStore.DIR)).flush();
+        // 新进程：running 记录回到 queued，阶段保留，字节进度不保留
+        JobStore after = new JobStore(root);
+        JSONObject w = after.view("a");
+        assertEquals(JobStore.QUEUED, w.getString("state"));
+        assertEquals("verifying", w.getString("phase"));
+        assertFalse(w.has("downloaded"));
+    }
+
+    @Test
+    public void listIsOldestFirstAndCarriesFailures() throws Exception {
+        JobStore js = new JobStore(tmp.getRoot());
+        js.enqueue(item("a"), "downloadOnly");
+        Thread.sleep(5);
+        js.enqueue(item("b"), "downloadOnly");
+        js.started("b", 1);
+        js.failed("b", "HTTP_404", "HTTP_404", new JSONObject().put("ok", false));
+        js.cancelled("a");
+
+        JSONArray list = js.list();
+        assertEquals(2, list.length());
+        assertEquals("a", list.getJSONObject(0).getString("key"));
+        assertEquals(JobStore.CANCELLED, list.getJSONObject(0).getString("state"));
+        JSONObject b = list.getJSONObject(1);
+        assertEquals(JobStore.FAILED, b.getString("state"));
+        assertEquals("HTTP_404", b.getString("code"));
+        assertFalse(b.getJSONObject("result").getBoolean("ok"));
+    }
+
+    @Test
+    public void retryableCodes() {
+        assertTrue(JobStore.retryable("HTTP_503"));
+        assertTrue(JobStore.retryable("HTTP_429"));
+        assertTrue(JobStore.retryable("ERROR"));
+        assertTrue(JobStore.retryable("INSUFFICIENT_STORAGE"));
+        assertFalse(JobStore.retryable("HTTP_404"));
+        assertFalse(JobStore.retryable("SHA256_MISMATCH"));
+        assertFalse(JobStore.retryable(null));
+    }
+
+    /** 内存里的 KeyProvider，代替 Keystore。 */
+    private static final class MemoryKeys implements KeyProvider {
+        final Map<String, SecretKey> keys = new HashMap<>();
+
+        @Override
+        public synchronized SecretKey key(String modelKey, boolean create) throws IOException {
+            SecretKey k = keys.get(modelKey);
+            if (k == null && create) {
+                try {
+                    KeyGenerator g = KeyGenerator.getInstance("AES");
+                    g.init(256);
+                    k = g.generateKey();
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+                keys.put(modelKey, k);
+            }
+            return k;
+        }
+
+        @Override
+        public synchronized void delete(String modelKey) {
+            keys.remove(modelKey);
+        }
+    }
+
+    private static String onDisk(File root) throws Exception {
+        StateStore.get(new File(root, JobStore.DIR)).flush();
+        File state = new File(new File(root, JobStore.DIR), StateStore.STATE_FILE_NAME);
+        return new String(Files.readAllBytes(state.toPath()), "UTF-8");
+    }
+
+    private static JSONObject secretItem(String key) throws Exception {
+        return item(key).put("password", "hunter2-zip").put("headers",
+                new JSONObject().put("Authorization", "Bearer tok-123"));
+    }
+
+    @Test
+    public void secretsAreSealedOnDiskAndDroppedWhenTheJobEnds() throws Exception {
+        File root = tmp.newFolder("root");
+        MemoryKeys keys = new MemoryKeys();
+        JobStore js = new JobStore(root, keys);
+        JSONObject rec = js.enqueue(secretItem("a"), "downloadOnly");
+        assertFalse(rec.getJSONObject("item").has("password"));
+        String disk = onDisk(root);
+        assertFalse(disk, disk.contains("hunter2-zip"));
+        assertFalse(disk, disk.contains("tok-123"));
+
+        // 新进程（同一个 KeyProvider）拆封回完整 item
+        JobStore after = new JobStore(root, keys);
+        JSONObject it = after.item("a");
+        assertEquals("hunter2-zip", it.getString("password"));
+        assertEquals("Bearer tok-123", it.getJSONObject("headers").getString("Authorization"));
+        assertEquals("staged", it.getString("installMode"));
+        assertNotNull(keys.key(JobStore.KEY_PREFIX + "a", false));
+
+        after.started("a", 1);
+        after.finished("a", new JSONObject().put("ok", true));
+        assertFalse(after.get("a").has("sealed"));
+        assertNull(keys.key(JobStore.KEY_PREFIX + "a", false));
+        assertFalse(after.item("a").has("password"));
+    }
+
+    @Test
+    public void withoutAKeyProviderSecretsStayInMemoryOnly() throws Exception {
+        File root = tmp.newFolder("root");
+        JobStore js = new JobStore(root);
+        js.enqueue(secretItem("a"), "downloadOnly");
+        assertEquals("hunter2-zip", js.item("a").getString("password"));
+        assertFalse(onDisk(root).contains("hunter2-zip"));
+
+        // 换了进程拿不回来，直到调用方再入队一次
+        JobStore after = new JobStore(root);
+        try {
+            after.item("a");
+            fail("expected SECRET_MISSING");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("SECRET_MISSING"));
+        }
+        after.enqueue(secretItem("a"), "downloadOnly");
+        assertEquals("hunter2-zip", after.item("a").getString("password"));
+
+        after.cancelled("a");
+        assertFalse(after.item("a").has("password"));
+    }
+
+    @Test
+    public void legacyPlaintextSecretsAreScrubbedOnLoad() throws Exception {
+        File root = tmp.newFolder("root");
+        StateStore raw = StateStore.get(new File(root, JobStore.DIR));
+        JSONObject legacy = new JSONObject().put("key", "a").put("item", secretItem("a")).put("state", JobStore.QUEUED)
+                .put("attempts", 0).put("createdAt", 1L).put("updatedAt", System.currentTimeMillis());
+        raw.put("a", legacy);
+        raw.put("b", new JSONObject(legacy.toString()).put("key", "b").put("state", JobStore.FAILED));
+        assertTrue(onDisk(root).contains("hunter2-zip"));
+
+        JobStore js = new JobStore(root, new MemoryKeys());
+        assertFalse(onDisk(root).contains("hunter2-zip"));
+        assertFalse(new File(new File(root, JobStore.DIR), StateStore.JOURNAL_FILE_NAME).exists());
+        assertEquals("hunter2-zip", js.item("a").getString("password"));
+        assertFalse(js.item("b").has("password"));
+    }
+}
@@ -0,0 +1,283 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public class ModelHandleTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+    private File bundled;
+    private ModelInstaller mi;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("models");
+        bundled = tmp.newFolder("assets");
+        ModelInstaller.Options o = new ModelInstaller.Options();
+        o.storageMarginBytes = 0L;
+        mi = new ModelInstaller(new LocalFsRoot(root), new DirectoryAssetSource(bundled),
+                new UrlConnectionTransport(1000, 1000), null, o);
+    }
+
+    @After
+    public void tearDown() {
+        mi.shutdown();
+    }
+
+    private static byte[] bytes(int seed, int n) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private void bundle(String key, int seed) throws Exception {
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(bundled, key + ".zip")))) {
+            zos.putNextEntry(new ZipEntry("weights.bin"));
+            zos.write(bytes(seed, 300_000));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("cfg/config.json"));
+            zos.write("{}".getBytes("UTF-8"));
+            zos.closeEntry();
+        }
+    }
+
+    private ModelInstaller.Outcome ensure(String key, String version) throws Exception {
+        return ensure(key, version, "loose");
+    }
+
+    private ModelInstaller.Outcome ensure(String key, String version, String layout) throws Exception {
+        JSONObject item = new JSONObject().put("key", key).put("unpackTo", "m/" + key).put("version", version)
+                .put("checkFiles", new JSONArray().put("weights.bin")).put("layout", layout);
+        return ensure(item);
+    }
+
+    private ModelInstaller.Outcome ensure(JSONObject item) throws Exception {
+        List<ModelInstaller.Outcome> box = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        mi.ensure(Collections.singletonList(item), "bundleOnly", "foreground", outs -> {
+            box.addAll(outs);
+            latch.countDown();
+        });
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        return box.get(0);
+    }
+
+    @Test
+    public void mapsFdAndPrefetchesInstalledFiles() throws Exception {
+        bundle("a", 1);
+        assertNull(ensure("a", "1").error);
+
+        try (ModelHandle h = mi.open("a")) {
+            assertEquals("1", h.version());
+            assertEquals(2, h.files().size());
+
+            MappedByteBuffer mb = h.map("weights.bin");
+            byte[] got = new byte[mb.remaining()];
+            mb.get(got);
+            assertArrayEquals(bytes(1, 300_000), got);
+
+            // fd 归 handle 管，流不关
+            assertEquals('{', new FileInputStream(h.fd("cfg/config.json")).read());
+            // 默认只预读 checkFiles
+            assertEquals(300_000L, h.prefetch());
+            assertEquals(300_002L, h.prefetch(h.files()));
+
+            try {
+                h.map("../state.json");
+                fail("escaped install dir");
+            } catch (IOException e) {
+                assertEquals("NOT_FOUND", ModelInstaller.codeOf(e));
+            }
+        }
+    }
+
+    @Test
+    public void openHandleBlocksRemoveAndReplace() throws Exception {
+        bundle("a", 1);
+        assertNull(ensure("a", "1").error);
+
+        ModelHandle h1 = mi.open("a");
+        ModelHandle h2 = mi.open("a");
+        assertEquals(2, mi.openHandles("a"));
+        try {
+            mi.remove("a");
+            fail("removed while open");
+        } catch (IOException e) {
+            assertEquals("IN_USE", ModelInstaller.codeOf(e));
+        }
+
+        // 检查文件丢了要重装，但 handle 开着时不能替换目录；已映射的内容照样可读
+        MappedByteBuffer mb = h1.map("weights.bin");
+        assertTrue(new File(root, "m/a/weights.bin").delete());
+        bundle("a", 2);
+        ModelInstaller.Outcome out = ensure("a", "2");
+        assertEquals("IN_USE", out.code);
+        assertTrue(new File(root, "m/a/cfg/config.json").isFile());
+        assertEquals(bytes(1, 300_000)[0], mb.get(0));
+
+        h1.close();
+        h1.close(); // 幂等
+        assertEquals(1, mi.openHandles("a"));
+        h2.close();
+        assertEquals(0, mi.openHandles("a"));
+
+        assertNull(ensure("a", "2").error);
+        try (ModelHandle h = mi.open("a")) {
+            assertEquals("2", h.version());
+            assertEquals(bytes(2, 300_000)[0], h.map("weights.bin").get(0));
+        }
+        assertTrue(mi.remove("a").getBoolean("removed"));
+        try {
+            mi.open("a");
+            fail("opened a removed model");
+        } catch (IOException e) {
+            assertEquals("NOT_INSTALLED", ModelInstaller.codeOf(e));
+        }
+    }
+
+    @Test
+    public void packedInstallMapsEntriesFromOneContainer() throws Exception {
+        bundle("a", 1);
+        assertNull(ensure("a", "1", "packed").error);
+
+        File dir = new File(root, "m/a");
+        assertArrayEquals(new String[] { PackFile.NAME }, dir.list());
+        JSONArray items = new JSONArray().put(new JSONObject().put("key", "a").put("unpackTo", "m/a")
+                .put("checkFiles", new JSONArray().put("weights.bin")));
+        assertEquals("installed", mi.check(items, true).getJSONArray("results").getJSONObject(0)
+                .getString("status"));
+
+        try (ModelHandle h = mi.open("a")) {
+            assertTrue(h.packed());
+            assertEquals(2, h.files().size());
+            ModelHandle.Region r = h.region("weights.bin");
+            assertEquals(new File(dir, PackFile.NAME), r.file);
+            assertEquals(0, r.offset % PackFile.ALIGN);
+            assertEquals(300_000L, r.length);
+
+            MappedByteBuffer mb = h.map("weights.bin");
+            byte[] got = new byte[mb.remaining()];
+            mb.get(got);
+            assertArrayEquals(bytes(1, 300_000), got);
+            assertEquals('{', h.map("cfg/config.json", 0, 1).get(0));
+            assertEquals(300_002L, h.prefetch(h.files()));
+            try {
+                h.region("missing.bin");
+                fail("found a missing entry");
+            } catch (IOException e) {
+                assertEquals("NOT_FOUND", ModelInstaller.codeOf(e));
+            }
+        }
+
+        assertTrue(mi.verify("a", true).getBoolean("ok"));
+        // 翻一位数据：头部仍然合法，sample 查不出，full 能定位到具体文件
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, PackFile.NAME), "rw")) {
+            PackFile.Entry e = PackFile.read(raf.getChannel()).get("weights.bin");
+            raf.seek(e.offset + 10);
+            int b = raf.read();
+            raf.seek(e.offset + 10);
+            raf.write(b ^ 0x01);
+        }
+        assertTrue(mi.verify("a", false).getBoolean("ok"));
+        JSONObject full = mi.verify("a", true);
+        assertFalse(full.getBoolean("ok"));
+        assertEquals("weights.bin", full.getJSONArray("corrupt").getString(0));
+        assertEquals("corrupt", mi.check(items, false).getJSONArray("results").getJSONObject(0)
+                .getString("status"));
+    }
+
+    @Test
+    public void encryptedInstallIsReadThroughDecryptingChannel() throws Exception {
+        Map<String, SecretKey> keys = new HashMap<>();
+        ModelInstaller.Options o = new ModelInstaller.Options();
+        o.storageMarginBytes = 0L;
+        o.keyProvider = new KeyProvider() {
+            @Override
+            public SecretKey key(String modelKey, boolean create) {
+                if (!keys.containsKey(modelKey) && create)
+                    keys.put(modelKey, new SecretKeySpec(bytes(modelKey.hashCode(), 32), "AES"));
+                return keys.get(modelKey);
+            }
+
+            @Override
+            public void delete(String modelKey) {
+                keys.remove(modelKey);
+            }
+        };
+        mi.shutdown();
+        mi = new ModelInstaller(new LocalFsRoot(root), new DirectoryAssetSource(bundled),
+                new UrlConnectionTransport(1000, 1000), null, o);
+
+        bundle("a", 1);
+        byte[] weights = bytes(1, 300_000);
+        // 清单按明文哈希；安装时经解密通道校验
+        JSONObject integrity = new JSONObject().put("files", new JSONArray()
+                .put(new JSONObject().put("path", "weights.bin").put("size", weights.length)
+                        .put("sha256", Hashes.toHex(MessageDigest.getInstance("SHA-256").digest(weights)))));
+        JSONObject item = new JSONObject().put("key", "a").put("unpackTo", "m/a").put("version", "1")
+                .put("checkFiles", new JSONArray().put("weights.bin")).put("encryptAtRest", true)
+                .put("integrity", integrity);
+        assertNull(ensure(item).error);
+
+        File onDisk = new File(root, "m/a/weights.bin");
+        assertEquals(EncryptedFile.encryptedLength(weights.length, EncryptedFile.DEFAULT_CHUNK_SIZE), onDisk.length());
+        try (ModelHandle h = mi.open("a")) {
+            assertTrue(h.encrypted());
+            try (ModelChannel ch = h.reader("weights.bin")) {
+                assertEquals(weights.length, ch.size());
+                ByteBuffer got = ByteBuffer.allocate(weights.length);
+                while (got.hasRemaining() && ch.read(got) > 0) {
+                }
+                assertArrayEquals(weights, got.array());
+            }
+            try {
+                h.map("weights.bin");
+                fail("mapped ciphertext");
+            } catch (IOException e) {
+                assertEquals("ENCRYPTED", ModelInstaller.codeOf(e));
+            }
+        }
+        assertTrue(mi.verify("a", true).getBoolean("ok"));
+
+        // 同一个包，packed 和 encryptAtRest 不能同时要
+        item.put("layout", "packed").put("unpackTo", "m/b").put("key", "b");
+        bundle("b", 1);
+        assertEquals("BAD_ARGS", ensure(item).code);
+
+        mi.remove("a");
+        assertFalse(keys.containsKey("a"));
+    }
+}
@@ -0,0 +1,553 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Drives the whole engine on a plain JVM: many installs at once against an in-process HTTP
+ * stand-in (ranges supported) and a directory of bundled zips.
+ */
+public class ModelInstallerTest {
+
+    private static final int MODELS = 24;
+    private static final int ENTRIES = 3;
+    private static final int ENTRY_SIZE = 96 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverPool;
+    private final Map<String, byte[]> served = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Map<String, AtomicInteger> pathRequests = new ConcurrentHashMap<>();
+
+    private File root;
+    private File bundled;
+    private final Map<String, AtomicInteger> doneEvents = new ConcurrentHashMap<>();
+    private final Map<String, String> errorEvents = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("models");
+        bundled = tmp.newFolder("assets");
+        serverPool = Executors.newFixedThreadPool(8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(serverPool);
+        server.createContext("/", ex -> {
+            requests.incrementAndGet();
+            String path = ex.getRequestURI().getPath().substring(1);
+            pathRequests.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+            String range = ex.getRequestHeaders().getFirst("Range");
+            // flaky/<name>：探测（bytes=0-0）正常，其余一律 503，模拟下到一半坏掉的源
+            boolean flaky = path.startsWith("flaky/");
+            if (flaky)
+                path = path.substring("flaky/".length());
+            byte[] body = served.get(path);
+            if (body == null || (flaky && !"bytes=0-0".equals(range))) {
+                ex.sendResponseHeaders(body == null ? 404 : 503, -1);
+                ex.close();
+                return;
+            }
+            String etag = "\"" + Arrays.hashCode(body) + "\"";
+            ex.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+            if (range == null) {
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+            String[] se = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(se[0]);
+            int end = Math.min(Integer.parseInt(se[1]), body.length - 1);
+            ex.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            ex.sendResponseHeaders(206, end - start + 1);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body, start, end - start + 1);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverPool.shutdownNow();
+    }
+
+    private String url(String name) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + name;
+    }
+
+    private ModelInstaller installer() {
+        return installer(new DirectoryAssetSource(bundled));
+    }
+
+    private ModelInstaller installer(AssetSource assets) {
+        ModelInstaller.Options o = new ModelInstaller.Options();
+        o.downloadConcurrency = 4;
+        o.verifyConcurrency = 2;
+        o.unpackConcurrency = 3;
+        o.storageMarginBytes = 0L;
+        o.unpackThreads = 2;
+        o.downloadConnections = 3;
+        o.downloadChunkBytes = 64 * 1024;
+        o.retry = new RetryPolicy(3, 5L, 20L);
+        ProgressSink sink = (key, phase, downloaded, total, progress, message) -> {
+            if ("done".equals(phase))
+                doneEvents.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            if ("error".equals(phase))
+                errorEvents.put(key, message);
+        };
+        return new ModelInstaller(new LocalFsRoot(root), assets, new UrlConnectionTransport(5000, 30000), sink, o);
+    }
+
+    /** 记下每种访问各调了几次，看 bundle 是查索引、走流还是按偏移读。 */
+    private static class CountingAssets implements AssetSource {
+        final AssetSource inner;
+        final AtomicInteger sizes = new AtomicInteger();
+        final AtomicInteger opens = new AtomicInteger();
+        final AtomicInteger regions = new AtomicInteger();
+
+        CountingAssets(AssetSource inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public long size(String key) {
+            sizes.incrementAndGet();
+            return inner.size(key);
+        }
+
+        @Override
+        public InputStream open(String key) throws IOException {
+            opens.incrementAndGet();
+            return inner.open(key);
+        }
+
+        @Override
+        public Region openRegion(String key) throws IOException {
+            regions.incrementAndGet();
+            return inner.openRegion(key);
+        }
+    }
+
+    /** 每个条目一半随机一半重复，DEFLATED 后仍有几十 KB。 */
+    private static byte[] modelZip(int seed) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                zos.putNextEntry(new ZipEntry("w" + i + ".bin"));
+                zos.write(entry(seed, i));
+                zos.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] entry(int seed, int i) {
+        byte[] data = new byte[ENTRY_SIZE];
+        new Random(seed * 31L + i).nextBytes(data);
+        Arrays.fill(data, ENTRY_SIZE / 2, ENTRY_SIZE, (byte) i);
+        return data;
+    }
+
+    private static String sha(byte[] b) throws Exception {
+        return Hashes.toHex(MessageDigest.getInstance("SHA-256").digest(b));
+    }
+
+    private static JSONObject item(String key, String remoteUrl, String sha256, boolean streaming) throws Exception {
+        return new JSONObject()
+                .put("key", key)
+                .put("unpackTo", "m/" + key)
+                .put("remoteUrl", remoteUrl)
+                .put("sha256", sha256)
+                .put("version", "1")
+                .put("installMode", streaming ? "streaming" : "staged")
+                .put("checkFiles", new JSONArray().put("w0.bin"));
+    }
+
+    private static List<ModelInstaller.Outcome> await(ModelInstaller mi, List<JSONObject> items, String policy)
+            throws Exception {
+        List<List<ModelInstaller.Outcome>> box = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        mi.ensure(items, policy, "foreground", outs -> {
+            box.add(outs);
+            latch.countDown();
+        });
+        assertTrue("installs did not finish", latch.await(120, TimeUnit.SECONDS));
+        return box.get(0);
+    }
+
+    private void assertInstalled(String key, int seed) throws Exception {
+        for (int i = 0; i < ENTRIES; i++) {
+            byte[] got = Files.readAllBytes(new File(root, "m/" + key + "/w" + i + ".bin").toPath());
+            assertArrayEquals(key + "/w" + i, entry(seed, i), got);
+        }
+    }
+
+    @Test
+    public void manyConcurrentDownloadsInstallInInputOrder() throws Exception {
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < MODELS; i++) {
+            byte[] zip = modelZip(i);
+            served.put("m" + i + ".zip", zip);
+            items.add(item("m" + i, url("m" + i + ".zip"), sha(zip), i % 2 == 1));
+        }
+        ModelInstaller mi = installer();
+
+        List<ModelInstaller.Outcome> outs = await(mi, items, "downloadOnly");
+        assertEquals(MODELS, outs.size());
+        for (int i = 0; i < MODELS; i++) {
+            ModelInstaller.Outcome out = outs.get(i);
+            assertNull(out.key + ": " + out.error, out.error);
+            assertEquals("m" + i, out.key);
+            assertTrue(out.result.getBoolean("ok"));
+            assertEquals("download", out.result.getString("usedSource"));
+            assertEquals(1, doneEvents.get(out.key).get());
+            assertInstalled(out.key, i);
+        }
+        assertEquals(MODELS, mi.metrics(false).length());
+        assertEquals(0, mi.queueStats().getInt("inflight"));
+
+        // 第二轮全部命中已安装，不再下载
+        int before = requests.get();
+        outs = await(mi, items, "downloadOnly");
+        for (ModelInstaller.Outcome out : outs)
+            assertEquals("already installed", out.result.getString("message"));
+        assertEquals(before, requests.get());
+
+        JSONArray checked = mi.check(new JSONArray(items), true).getJSONArray("results");
+        for (int i = 0; i < MODELS; i++)
+            assertEquals("installed", checked.getJSONObject(i).getString("status"));
+        mi.shutdown();
+    }
+
+    @Test
+    public void concurrentCallersForOneKeyShareOneInstall() throws Exception {
+        byte[] zip = modelZip(7);
+        served.put("shared.zip", zip);
+        JSONObject item = item("shared", url("shared.zip"), sha(zip), false);
+        ModelInstaller mi = installer();
+
+        int callers = 16;
+        CountDownLatch latch = new CountDownLatch(callers);
+        List<ModelInstaller.Outcome> all = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        for (int c = 0; c < callers; c++) {
+            pool.execute(() -> mi.ensure(Collections.singletonList(item), "downloadOnly", "foreground",
+                    outs -> {
+                        synchronized (all) {
+                            all.addAll(outs);
+                        }
+                        latch.countDown();
+                    }));
+        }
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertEquals(callers, all.size());
+        for (ModelInstaller.Outcome out : all) {
+            assertNull(String.valueOf(out.error), out.error);
+            assertTrue(out.result.getBoolean("ok"));
+        }
+        assertInstalled("shared", 7);
+        // 同一 flight 只装一次：一条 metrics、一次 done
+        assertEquals(1, mi.metrics(false).length());
+        assertEquals(1, doneEvents.get("shared").get());
+        mi.shutdown();
+    }
+
+    @Test
+    public void resumesFromVerifiedZipWithoutRefetching() throws Exception {
+        byte[] zip = modelZip(42);
+        served.put("resume.zip", zip);
+        JSONObject bad = item("resume", url("resume.zip"), sha(zip), false)
+                .put("checkFiles", new JSONArray().put("missing.bin"));
+        ModelInstaller mi = installer();
+
+        // 下载、校验都过了，解压后检查失败：zip 和阶段标记留在 _tmp
+        assertEquals("UNPACK_INVALID", await(mi, Collections.singletonList(bad), "downloadOnly").get(0).code);
+        File tmpZip = new File(root, StorageManager.TMP_DIR + "/resume.zip");
+        assertTrue(ModelInstaller.stageMarkerFor(tmpZip).isFile());
+
+        // 新实例（模拟进程重启）直接从解压阶段续
+        int before = requests.get();
+        ModelInstaller fresh = installer();
+        JSONObject good = item("resume", url("resume.zip"), sha(zip), false);
+        ModelInstaller.Outcome out = await(fresh, Collections.singletonList(good), "downloadOnly").get(0);
+        assertNull(String.valueOf(out.error), out.error);
+        assertEquals(before, requests.get());
+        assertInstalled("resume", 42);
+        assertFalse(tmpZip.exists());
+        assertFalse(ModelInstaller.stageMarkerFor(tmpZip).exists());
+        mi.shutdown();
+        fresh.shutdown();
+    }
+
+    @Test
+    public void bundledAndRemoteMixWithPerItemFailures() throws Exception {
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            byte[] zip = modelZip(100 + i);
+            try (OutputStream os = new FileOutputStream(new File(bundled, "b" + i + ".zip"))) {
+                os.write(zip);
+            }
+            items.add(item("b" + i, "", sha(zip), false));
+        }
+        // 哈希不对的 bundle、不存在的远端、正常的远端
+        items.add(item("bad", "", "00", false));
+        Files.write(new File(bundled, "bad.zip").toPath(), modelZip(1));
+        items.add(item("gone", url("gone.zip"), "", false));
+        byte[] zip = modelZip(200);
+        served.put("r.zip", zip);
+        items.add(item("r", url("r.zip"), sha(zip), true));
+        ModelInstaller mi = installer();
+
+        List<ModelInstaller.Outcome> outs = await(mi, items, "bundleThenDownload");
+        for (int i = 0; i < 8; i++) {
+            assertNull(outs.get(i).error);
+            assertEquals("bundle", outs.get(i).result.getString("usedSource"));
+            assertInstalled("b" + i, 100 + i);
+        }
+        assertEquals("SHA256_MISMATCH", outs.get(8).code);
+        assertFalse(outs.get(8).result.getBoolean("ok"));
+        assertTrue(outs.get(8).result.getBoolean("hasBundledZip"));
+        assertEquals("HTTP_404", outs.get(9).code);
+        assertEquals("HTTP_404", outs.get(9).result.getString("code"));
+        assertNull(outs.get(10).error);
+        assertInstalled("r", 200);
+        // 失败的条目各有一条 error 事件，成功的没有
+        assertEquals(2, errorEvents.size());
+        assertTrue(errorEvents.get("bad").startsWith("SHA256_MISMATCH"));
+        assertEquals("HTTP_404", errorEvents.get("gone"));
+
+        JSONObject usage = mi.usage();
+        assertEquals(9, usage.getJSONArray("models").length());
+        assertFalse(new File(root, "m/bad").exists());
+        mi.shutdown();
+    }
+
+    @Test
+    public void mirrorsTakeOverWhenThePrimaryKeepsFailing() throws Exception {
+        byte[] staged = modelZip(300);
+        byte[] streamed = modelZip(301);
+        served.put("s.zip", staged);
+        served.put("t.zip", streamed);
+        List<JSONObject> items = new ArrayList<>();
+        items.add(item("s", url("flaky/s.zip"), sha(staged), false)
+                .put("mirrors", new JSONArray().put(url("s.zip"))));
+        items.add(item("t", url("flaky/t.zip"), sha(streamed), true)
+                .put("mirrors", new JSONArray().put(url("t.zip"))));
+        ModelInstaller mi = installer();
+
+        List<ModelInstaller.Outcome> outs = await(mi, items, "downloadOnly");
+        for (ModelInstaller.Outcome out : outs)
+            assertNull(out.key + ": " + out.error, out.error);
+        assertInstalled("s", 300);
+        assertInstalled("t", 301);
+        // 主地址按策略重试过才放弃
+        assertTrue(pathRequests.get("flaky/t.zip").get() >= 3);
+        assertTrue(outs.get(0).result.getJSONObject("metrics").getInt("retries") >= 2);
+        mi.shutdown();
+    }
+
+    @Test
+    public void unchangedEtagSkipsTheUpdateAndAChangedOneInstallsIt() throws Exception {
+        byte[] v1 = modelZip(400);
+        served.put("e.zip", v1);
+        ModelInstaller mi = installer();
+        assertNull(await(mi, Collections.singletonList(item("e", url("e.zip"), "", false)), "downloadOnly")
+                .get(0).error);
+
+        // 版本号变了，但远端文件没变：一次 304，不拉增量清单也不重下
+        JSONObject v2 = item("e", url("e.zip"), "", false).put("version", "2")
+                .put("deltaManifestUrl", url("e.delta.json"));
+        int before = requests.get();
+        ModelInstaller.Outcome out = await(mi, Collections.singletonList(v2), "downloadOnly").get(0);
+        assertNull(String.valueOf(out.error), out.error);
+        assertEquals("not modified", out.result.getString("message"));
+        assertEquals("2", out.result.getString("installedVersion"));
+        assertEquals(before + 1, requests.get());
+        assertNull(pathRequests.get("e.delta.json"));
+
+        // 远端换了文件：ETag 对不上，增量清单取不到就整包重装
+        byte[] v3zip = modelZip(401);
+        served.put("e.zip", v3zip);
+        JSONObject v3 = item("e", url("e.zip"), sha(v3zip), false).put("version", "3")
+                .put("deltaManifestUrl", url("e.delta.json"));
+        out = await(mi, Collections.singletonList(v3), "downloadOnly").get(0);
+        assertNull(String.valueOf(out.error), out.error);
+        assertEquals("download", out.result.getString("usedSource"));
+        assertInstalled("e", 401);
+        mi.shutdown();
+    }
+
+    @Test
+    public void verifyAndPrefetchCallsShareABoundedPool() throws Exception {
+        ModelInstaller mi = installer();
+        int calls = ModelInstaller.MAINTENANCE_THREADS * 4;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(calls);
+        for (int i = 0; i < calls; i++) {
+            mi.runAsync(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    gate.await();
+                } catch (InterruptedException ignored) {
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        Thread.sleep(100);
+        JSONObject pool = mi.queueStats().getJSONObject("pools").getJSONObject("maintenance");
+        assertEquals(ModelInstaller.MAINTENANCE_THREADS, pool.getInt("active"));
+        assertEquals(calls - ModelInstaller.MAINTENANCE_THREADS, pool.getInt("queued"));
+        // 不计入安装的排队数
+        assertEquals(0, mi.queueStats().getInt("queued"));
+
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(ModelInstaller.MAINTENANCE_THREADS, peak.get());
+        mi.shutdown();
+    }
+
+    @Test
+    public void checkTrustsTheFingerprintAndDeepCheckReStatsEveryFile() throws Exception {
+        byte[] zip = modelZip(400);
+        Files.write(new File(bundled, "fp.zip").toPath(), zip);
+        JSONObject item = item("fp", "", sha(zip), false);
+        ModelInstaller mi = installer();
+        assertNull(await(mi, Collections.singletonList(item), "bundleOnly").get(0).error);
+        JSONArray items = new JSONArray().put(item);
+        assertEquals("installed", mi.check(items, true).getJSONArray("results").getJSONObject(0).getString("status"));
+
+        // 原地改写非 checkFiles 的文件：根目录 mtime 不变，快速 check 只 stat 根目录
+        File w2 = new File(root, "m/fp/w2.bin");
+        long m = w2.lastModified();
+        Files.write(w2.toPath(), new byte[16]);
+        assertTrue(w2.setLastModified(m));
+        assertEquals("installed", mi.check(items, false).getJSONArray("results").getJSONObject(0).getString("status"));
+        assertEquals("corrupt", mi.check(items, true).getJSONArray("results").getJSONObject(0).getString("status"));
+        mi.shutdown();
+    }
+
+    @Test
+    public void checkAnswersBundlesFromTheIndexWithoutOpeningThem() throws Exception {
+        byte[] zip = modelZip(500);
+        Files.write(new File(bundled, "idx.zip").toPath(), zip);
+        CountingAssets assets = new CountingAssets(new DirectoryAssetSource(bundled));
+        ModelInstaller mi = installer(assets);
+
+        JSONArray items = new JSONArray().put(item("idx", "", sha(zip), false)).put(item("none", "", "", false));
+        JSONArray results = mi.check(items, false).getJSONArray("results");
+        JSONObject idx = results.getJSONObject(0);
+        assertTrue(idx.getBoolean("hasBundledZip"));
+        assertEquals(zip.length, idx.getLong("bundledSize"));
+        assertEquals("missing", idx.getString("status"));
+        JSONObject none = results.getJSONObject(1);
+        assertFalse(none.getBoolean("hasBundledZip"));
+        assertFalse(none.has("bundledSize"));
+
+        // 批量失败的结果也从索引取 hasBundledZip
+        ModelInstaller.Outcome out = await(mi, Collections.singletonList(item("none", "", "", false)),
+                "bundleOnly").get(0);
+        assertEquals("MODEL_MISSING_BUNDLED", out.code);
+        assertFalse(out.result.getBoolean("hasBundledZip"));
+
+        assertTrue(assets.sizes.get() >= 3);
+        assertEquals(0, assets.opens.get());
+        assertEquals(0, assets.regions.get());
+        mi.shutdown();
+    }
+
+    @Test
+    public void bundlesInstallFromTheirRegionWithoutATempCopy() throws Exception {
+        byte[] zip = modelZip(600);
+        Files.write(new File(bundled, "apk.zip").toPath(), zip);
+        CountingAssets assets = new CountingAssets(new DirectoryAssetSource(bundled));
+        ModelInstaller mi = installer(assets);
+
+        ModelInstaller.Outcome out = await(mi, Collections.singletonList(item("apk", "", sha(zip), false)),
+                "bundleOnly").get(0);
+        assertNull(String.valueOf(out.error), out.error);
+        assertEquals("bundle", out.result.getString("usedSource"));
+        assertInstalled("apk", 600);
+        // region 既用来读 central directory 估空间，也用来解包；asset 流一次都没开
+        assertTrue(assets.regions.get() > 0);
+        assertEquals(0, assets.opens.get());
+        assertFalse(new File(root, "_tmp/apk.zip").exists());
+        mi.shutdown();
+    }
+
+    @Test
+    public void streamOnlyBundlesFallBackToTheAssetStream() throws Exception {
+        byte[] zip = modelZip(601);
+        Files.write(new File(bundled, "gz.zip").toPath(), zip);
+        // APK 里压缩过的 asset：没有可按偏移读的 region
+        CountingAssets assets = new CountingAssets(new DirectoryAssetSource(bundled)) {
+            @Override
+            public Region openRegion(String key) {
+                regions.incrementAndGet();
+                return null;
+            }
+        };
+        ModelInstaller mi = installer(assets);
+
+        JSONObject bad = item("gz", "", "00" + sha(zip).substring(2), false);
+        assertEquals("SHA256_MISMATCH", await(mi, Collections.singletonList(bad), "bundleOnly").get(0).code);
+        assertFalse(new File(root, "m/gz").exists());
+
+        ModelInstaller.Outcome out = await(mi, Collections.singletonList(item("gz", "", sha(zip), false)),
+                "bundleOnly").get(0);
+        assertNull(String.valueOf(out.error), out.error);
+        assertInstalled("gz", 601);
+        // 每次安装只读一遍流，不拷贝到 _tmp
+        assertEquals(2, assets.opens.get());
+        assertFalse(new File(root, "_tmp/gz.zip").exists());
+        mi.shutdown();
+    }
+}
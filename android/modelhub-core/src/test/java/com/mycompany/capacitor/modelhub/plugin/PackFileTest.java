@@ -0,0 +1,112 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class PackFileTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] bytes(int seed, int n) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static void write(File f, byte[] b) throws IOException {
+        // noinspection ResultOfMethodCallIgnored
+        f.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(b);
+        }
+    }
+
+    private static byte[] readAt(File f, long off, int len) throws IOException {
+        byte[] b = new byte[len];
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            raf.seek(off);
+            raf.readFully(b);
+        }
+        return b;
+    }
+
+    private File model() throws IOException {
+        File dir = tmp.newFolder("m");
+        write(new File(dir, "weights.bin"), bytes(1, 100_000));
+        write(new File(dir, "tok/vocab.txt"), bytes(2, 5));
+        write(new File(dir, "empty"), new byte[0]);
+        return dir;
+    }
+
+    @Test
+    public void packsAlignedEntriesAndRemovesLooseFiles() throws Exception {
+        File dir = model();
+        PackFile.pack(dir, null);
+
+        assertEquals(Collections.singletonList(PackFile.NAME), Arrays.asList(dir.list()));
+        File pack = new File(dir, PackFile.NAME);
+        PackFile.Index index = PackFile.read(pack);
+        assertEquals(Arrays.asList("empty", "tok/vocab.txt", "weights.bin"),
+                Arrays.asList(index.entries.keySet().toArray()));
+        for (PackFile.Entry e : index.entries.values())
+            assertEquals(0, e.offset % PackFile.ALIGN);
+
+        PackFile.Entry w = index.get("weights.bin");
+        assertEquals(100_000, w.length);
+        assertArrayEquals(bytes(1, 100_000), readAt(pack, w.offset, 100_000));
+        assertArrayEquals(bytes(2, 5), readAt(pack, index.get("tok/vocab.txt").offset, 5));
+        assertTrue(PackFile.verify(pack, index, null).isEmpty());
+    }
+
+    @Test
+    public void detectsDamagedHeaderIndexAndData() throws Exception {
+        File dir = model();
+        PackFile.Index index = PackFile.pack(dir, null);
+        File pack = new File(dir, PackFile.NAME);
+
+        // 数据区翻一位：头部照样合法，只有逐项校验能发现
+        long at = index.get("weights.bin").offset + 4096;
+        flip(pack, at);
+        assertEquals(Collections.singletonList("weights.bin"), PackFile.verify(pack, PackFile.read(pack), null));
+        flip(pack, at);
+
+        flip(pack, 70); // 索引区
+        assertInvalid(pack);
+        flip(pack, 70);
+
+        try (RandomAccessFile raf = new RandomAccessFile(pack, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertInvalid(pack);
+    }
+
+    private static void flip(File f, long at) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(at);
+            int b = raf.read();
+            raf.seek(at);
+            raf.write(b ^ 0x01);
+        }
+    }
+
+    private static void assertInvalid(File pack) {
+        try {
+            PackFile.read(pack);
+            fail("damaged pack accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("PACK_INVALID"));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public class ParallelUnzipperTest {
+
+    private static final String PASSWORD = "secret";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** AES-256 zip; 前半段随机（不可压缩），后半段重复（可压缩）。 */
+    private File buildZip(String name, int[] sizes) throws Exception {
+        File zip = new File(tmp.getRoot(), name);
+        ZipFile zf = new ZipFile(zip, PASSWORD.toCharArray());
+        Random rnd = new Random(sizes.length);
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            rnd.nextBytes(data);
+            Arrays.fill(data, data.length / 2, data.length, (byte) i);
+            ZipParameters p = new ZipParameters();
+            p.setEncryptFiles(true);
+            p.setEncryptionMethod(EncryptionMethod.AES);
+            p.setAesKeyStrength(AesKeyStrength.KEY_STRENGTH_256);
+            p.setFileNameInZip((i % 2 == 0 ? "weights/" : "") + "f" + i + ".bin");
+            zf.addStream(new ByteArrayInputStream(data), p);
+        }
+        zf.close();
+        return zip;
+    }
+
+    private static byte[] read(File f) throws Exception {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] b = new byte[(int) f.length()];
+            int off = 0;
+            int n;
+            while (off < b.length && (n = in.read(b, off, b.length - off)) > 0)
+                off += n;
+            return b;
+        }
+    }
+
+    private static void assertSameTree(File expected, File actual) throws Exception {
+        File[] files = expected.listFiles();
+        assertNotNull(files);
+        for (File e : files) {
+            File a = new File(actual, e.getName());
+            if (e.isDirectory()) {
+                assertTrue(a.isDirectory());
+                assertSameTree(e, a);
+            } else {
+                assertArrayEquals(e.getName(), read(e), read(a));
+            }
+        }
+    }
+
+    @Test
+    public void matchesExtractAll() throws Exception {
+        File zip = buildZip("m.zip", new int[] { 300_000, 5, 0, 1_200_000, 64 * 1024, 777_777 });
+
+        File expected = tmp.newFolder("expected");
+        new ZipFile(zip, PASSWORD.toCharArray()).extractAll(expected.getAbsolutePath());
+
+        File actual = tmp.newFolder("actual");
+        ParallelUnzipper.Result r = ParallelUnzipper.extract(zip, actual, PASSWORD, 4, null);
+        assertEquals(6, r.entries);
+        assertEquals(300_000L + 5 + 0 + 1_200_000 + 64 * 1024 + 777_777, r.bytes);
+        assertSameTree(expected, actual);
+    }
+
+    @Test
+    public void singleThreadReportsBytesWritten() throws Exception {
+        // 进度按 ProgressGate.MIN_BYTES 合并：总量得跨过几个 MiB 才有中间值
+        File zip = buildZip("m.zip", new int[] { 1_700_000, 3, 1_900_000 });
+        long[] last = { -1L, -1L };
+        AtomicLong calls = new AtomicLong();
+        ParallelUnzipper.Result r = ParallelUnzipper.extract(zip, tmp.newFolder("out"), PASSWORD, 1, null,
+                (written, total) -> {
+                    assertTrue(written > last[0]);
+                    last[0] = written;
+                    last[1] = total;
+                    calls.incrementAndGet();
+                });
+        assertEquals(r.bytes, last[0]);
+        assertEquals(r.bytes, last[1]);
+        assertTrue(calls.get() >= 3);
+    }
+
+    @Test
+    public void atRestKeyWritesEncryptedEntries() throws Exception {
+        File zip = buildZip("m.zip", new int[] { 300_000, 5, 0, 1_200_000 });
+        File expected = tmp.newFolder("expected");
+        new ZipFile(zip, PASSWORD.toCharArray()).extractAll(expected.getAbsolutePath());
+
+        SecretKey key = new SecretKeySpec(new byte[32], "AES");
+        File out = tmp.newFolder("out");
+        ParallelUnzipper.extract(zip, out, PASSWORD, 3, null, null, key);
+        for (String name : new String[] { "weights/f0.bin", "f1.bin", "weights/f2.bin", "f3.bin" }) {
+            byte[] plain = read(new File(expected, name));
+            File f = new File(out, name);
+            assertEquals(EncryptedFile.encryptedLength(plain.length, EncryptedFile.DEFAULT_CHUNK_SIZE), f.length());
+            try (ModelChannel ch = ModelChannel.open(f, key)) {
+                ByteBuffer got = ByteBuffer.allocate(plain.length);
+                while (got.hasRemaining() && ch.read(got) > 0) {
+                }
+                assertArrayEquals(name, plain, got.array());
+            }
+        }
+    }
+
+    @Test
+    public void wrongPasswordKeepsZip4jErrorType() throws Exception {
+        File zip = buildZip("m.zip", new int[] { 10_000, 20_000 });
+        try {
+            ParallelUnzipper.extract(zip, tmp.newFolder("out"), "nope", 2, null);
+            fail("expected wrong password");
+        } catch (ZipException e) {
+            assertEquals(ZipException.Type.WRONG_PASSWORD, e.getType());
+        }
+    }
+
+    /** {@code -Dmodelhub.bench=true} 时才跑：多 shard 的 AES 包，对比 extractAll。 */
+    @Test
+    public void benchmarkAgainstExtractAll() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("modelhub.bench"));
+        int[] sizes = new int[8];
+        Arrays.fill(sizes, 32 * 1024 * 1024);
+        sizes[0] = 96 * 1024 * 1024;
+        File zip = buildZip("bench.zip", sizes);
+
+        for (int round = 0; round < 3; round++) {
+            File a = tmp.newFolder("all" + round);
+            long t0 = System.nanoTime();
+            new ZipFile(zip, PASSWORD.toCharArray()).extractAll(a.getAbsolutePath());
+            long all = System.nanoTime() - t0;
+
+            File p = tmp.newFolder("par" + round);
+            t0 = System.nanoTime();
+            ParallelUnzipper.extract(zip, p, PASSWORD, ParallelUnzipper.defaultThreads(), null);
+            long par = System.nanoTime() - t0;
+
+            System.out.printf("extractAll %d ms, parallel(%d) %d ms%n", all / 1_000_000,
+                    ParallelUnzipper.defaultThreads(), par / 1_000_000);
+        }
+    }
+}
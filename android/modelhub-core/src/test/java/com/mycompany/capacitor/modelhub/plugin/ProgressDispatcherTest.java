@@ -0,0 +1,121 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ProgressDispatcherTest {
+
+    private static final class Recorder implements ProgressDispatcher.Listener {
+        final List<List<ProgressDispatcher.Event>> batches = new ArrayList<>();
+        volatile boolean concurrent;
+        private volatile boolean inside;
+
+        @Override
+        public void onBatch(List<ProgressDispatcher.Event> events) {
+            if (inside)
+                concurrent = true;
+            inside = true;
+            synchronized (batches) {
+                batches.add(new ArrayList<>(events));
+            }
+            inside = false;
+        }
+    }
+
+    @Test
+    public void coalescesPerKeyAndKeepsEveryTerminal() throws Exception {
+        int threads = 8;
+        int updates = 5_000;
+        Recorder rec = new Recorder();
+        ProgressDispatcher d = new ProgressDispatcher(20, rec);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> ts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String key = "k" + t;
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 1; i <= updates; i++)
+                    d.onProgress(key, "downloading", (long) i, (long) updates, i * 1.0 / updates, null);
+                d.onProgress(key, "done", null, null, 1.0, "installed");
+            });
+            th.start();
+            ts.add(th);
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread th : ts)
+            th.join();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        d.close();
+
+        assertFalse(rec.concurrent);
+        Map<String, Integer> done = new HashMap<>();
+        Map<String, Long> lastProgress = new HashMap<>();
+        for (List<ProgressDispatcher.Event> batch : rec.batches) {
+            Set<String> seen = new HashSet<>();
+            boolean pastTerminals = false;
+            for (ProgressDispatcher.Event e : batch) {
+                if (e.terminal()) {
+                    assertFalse("terminal after intermediate states", pastTerminals);
+                    done.merge(e.key, 1, Integer::sum);
+                    continue;
+                }
+                pastTerminals = true;
+                assertTrue("two states for " + e.key + " in one batch", seen.add(e.key));
+                assertFalse("progress after done for " + e.key, done.containsKey(e.key));
+                Long prev = lastProgress.put(e.key, e.downloaded);
+                if (prev != null)
+                    assertTrue(e.downloaded > prev);
+            }
+        }
+        for (int t = 0; t < threads; t++)
+            assertEquals(Integer.valueOf(1), done.get("k" + t));
+        // 20 fps：批次数受帧率约束，远少于事件数
+        assertTrue(rec.batches.size() + " batches in " + elapsedMs + " ms",
+                rec.batches.size() <= elapsedMs / 50 + 3);
+    }
+
+    @Test
+    public void latestStateWinsWithinAFrame() throws Exception {
+        Recorder rec = new Recorder();
+        ProgressDispatcher d = new ProgressDispatcher(1, rec);
+        // 第一帧立即发，之后的都落在一秒后的第二帧
+        d.onProgress("a", "checking", null, null, null, "checking installed");
+        Thread.sleep(100);
+        d.onProgress("a", "downloading", 10L, 100L, 0.1, null);
+        d.onProgress("b", "downloading", 1L, 2L, 0.5, null);
+        d.onProgress("a", "downloading", 50L, 100L, 0.5, null);
+        d.onProgress("b", "error", null, null, null, "HTTP_404");
+        d.close();
+
+        assertEquals(2, rec.batches.size());
+        List<ProgressDispatcher.Event> second = rec.batches.get(1);
+        assertEquals(2, second.size());
+        assertEquals("b", second.get(0).key);
+        assertEquals("error", second.get(0).phase);
+        assertEquals("a", second.get(1).key);
+        assertEquals(Long.valueOf(50L), second.get(1).downloaded);
+    }
+
+    @Test
+    public void clampsFrameRate() {
+        assertEquals(1, ProgressDispatcher.clampFps(0));
+        assertEquals(60, ProgressDispatcher.clampFps(1000));
+        assertEquals(10, ProgressDispatcher.clampFps(10));
+    }
+}
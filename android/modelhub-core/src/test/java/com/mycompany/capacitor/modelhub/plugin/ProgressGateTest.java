@@ -0,0 +1,69 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ProgressGateTest {
+
+    @Test
+    public void letsThroughEveryMibAndTheEnd() {
+        ProgressGate gate = new ProgressGate();
+        long mib = ProgressGate.MIN_BYTES;
+        assertFalse(gate.tick(8192, 3 * mib));
+        assertTrue(gate.tick(mib, 3 * mib));
+        assertFalse(gate.tick(mib + 8192, 3 * mib));
+        assertTrue(gate.pending(mib + 8192));
+        // 到终点总会报，哪怕刚报过
+        assertTrue(gate.tick(3 * mib, 3 * mib));
+        assertFalse(gate.pending(3 * mib));
+    }
+
+    @Test
+    public void letsThroughAfterTheIntervalWithoutNewBytesThreshold() throws Exception {
+        ProgressGate gate = new ProgressGate();
+        assertFalse(gate.tick(1, -1));
+        Thread.sleep(ProgressGate.MIN_INTERVAL_NS / 1_000_000 + 20);
+        assertTrue(gate.tick(2, -1));
+        assertFalse(gate.tick(3, -1));
+        assertTrue(gate.pending(3));
+    }
+
+    @Test
+    public void sharedByWorkersReportsRarelyAndTheFinalCountOnce() throws Exception {
+        ProgressGate gate = new ProgressGate();
+        long total = 8 * ProgressGate.MIN_BYTES;
+        AtomicLong done = new AtomicLong();
+        AtomicInteger reports = new AtomicInteger();
+        AtomicInteger finals = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (int w = 0; w < 4; w++) {
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < total / 4 / 1024; i++) {
+                    long d = done.addAndGet(1024);
+                    if (gate.tick(d, total)) {
+                        reports.incrementAndGet();
+                        if (d == total)
+                            finals.incrementAndGet();
+                    }
+                }
+            });
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers)
+            t.join();
+        long frames = (System.nanoTime() - t0) / ProgressGate.MIN_INTERVAL_NS;
+
+        assertEquals(total, done.get());
+        assertEquals(1, finals.get());
+        // 8192 次 read 之内：每 MiB 一次、每 50ms 一次，外加终点
+        assertTrue(reports.get() + " reports", reports.get() <= 8 + frames + 1);
+    }
+}
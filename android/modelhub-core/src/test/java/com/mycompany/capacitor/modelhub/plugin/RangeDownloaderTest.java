@@ -0,0 +1,250 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link RangeDownloader} against an in-process HTTP server that understands
+ * {@code Range: bytes=a-b}.
+ */
+public class RangeDownloaderTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private byte[] body;
+    private boolean rangesEnabled = true;
+    private volatile String etag = "\"v1\"";
+    private final Set<String> servedRanges = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger failNext = new AtomicInteger();
+    private final AtomicInteger truncateNext = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        body = new byte[CHUNK * 10 + 123];
+        new Random(42).nextBytes(body);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/model.zip", ex -> {
+            String range = ex.getRequestHeaders().getFirst("Range");
+            if (etag != null)
+                ex.getResponseHeaders().add("ETag", etag);
+            if (range != null && !range.equals("bytes=0-0") && failNext.getAndDecrement() > 0) {
+                ex.sendResponseHeaders(503, -1);
+                ex.close();
+                return;
+            }
+            if (!rangesEnabled || range == null) {
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+            if (body.length == 0) {
+                ex.getResponseHeaders().add("Content-Range", "bytes */0");
+                ex.sendResponseHeaders(416, -1);
+                ex.close();
+                return;
+            }
+            String[] se = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(se[0]);
+            int end = Integer.parseInt(se[1]);
+            if (end > 0)
+                servedRanges.add(range);
+            ex.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            ex.sendResponseHeaders(206, end - start + 1);
+            if (end > 0 && truncateNext.getAndDecrement() > 0) {
+                // 发一半就断开连接：状态码是好的，body 读到一半出错
+                OutputStream os = ex.getResponseBody();
+                os.write(body, start, (end - start + 1) / 2);
+                os.flush();
+                throw new IOException("injected truncation");
+            }
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body, start, end - start + 1);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/model.zip";
+    }
+
+    @Test
+    public void parallelRangesProduceIdenticalFile() throws Exception {
+        File out = new File(tmp.getRoot(), "m.zip");
+        long n = new RangeDownloader(4, CHUNK).download(url(), out, null);
+
+        assertEquals(body.length, n);
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertEquals(11, servedRanges.size());
+        assertFalse(RangeDownloader.journalFor(out).exists());
+    }
+
+    @Test
+    public void resumesOnlyMissingRanges() throws Exception {
+        File out = new File(tmp.getRoot(), "m.zip");
+        // 模拟上次中断：前 6 个分片已写入并记账
+        try (OutputStream os = new FileOutputStream(out)) {
+            os.write(body, 0, CHUNK * 6);
+            os.write(new byte[body.length - CHUNK * 6]);
+        }
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(RangeDownloader.journalFor(out)), "UTF-8")) {
+            w.write("mhpart1 " + body.length + " " + CHUNK + " \"v1\"\n");
+            for (int i = 0; i < 6; i++)
+                w.write(i + "\n");
+            w.write("7"); // 半行，不算
+        }
+
+        new RangeDownloader(3, CHUNK).download(url(), out, null);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertEquals(5, servedRanges.size());
+        assertFalse(servedRanges.contains("bytes=0-" + (CHUNK - 1)));
+    }
+
+    @Test
+    public void retriesTransientServerErrors() throws Exception {
+        File out = new File(tmp.getRoot(), "m.zip");
+        // 第一个分片连续 503 两次，第三次成功
+        failNext.set(2);
+        new RangeDownloader(1, CHUNK).download(url(), out, null);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+    }
+
+    @Test
+    public void refetchesChunksCutOffMidBody() throws Exception {
+        File out = new File(tmp.getRoot(), "m.zip");
+        truncateNext.set(2);
+        RangeDownloader dl = new RangeDownloader(2, CHUNK);
+        dl.download(url(), out, null);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertEquals(2, dl.retries());
+        assertEquals("\"v1\"", dl.etag());
+    }
+
+    @Test
+    public void refusedChunksAreRetriedOnlyByTheTransport() throws Exception {
+        File out = new File(tmp.getRoot(), "m.zip");
+        AtomicInteger chunkGets = new AtomicInteger();
+        UrlConnectionTransport real = new UrlConnectionTransport(2000, 5000);
+        // 探测正常，分片请求一律连不上
+        HttpTransport refusing = (u, range) -> {
+            if (range == null || range.equals("bytes=0-0"))
+                return real.get(u, range);
+            chunkGets.incrementAndGet();
+            throw new ConnectException("Connection refused");
+        };
+        RangeDownloader dl = new RangeDownloader(refusing, null, 1, body.length, new RetryPolicy(4, 1L, 5L));
+        try {
+            dl.download(url(), out, null);
+            fail("expected a connection error");
+        } catch (ConnectException expected) {
+        }
+        // 一个分片：4 次，不是 4×4
+        assertEquals(4, chunkGets.get());
+        assertEquals(3, dl.retries());
+    }
+
+    @Test
+    public void fallsBackToSingleStreamWithoutRangeSupport() throws Exception {
+        rangesEnabled = false;
+        File out = new File(tmp.getRoot(), "m.zip");
+        long[] last = { 0 };
+        long n = new RangeDownloader(4, CHUNK).download(url(), out, (d, t) -> last[0] = d);
+
+        assertEquals(body.length, n);
+        assertEquals(body.length, last[0]);
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+    }
+
+    // 上次中断留下的：前 6 个分片是旧版本的字节，journal 头写着 validator
+    private File staleDownload(String validator) throws Exception {
+        File out = new File(tmp.getRoot(), "m.zip");
+        byte[] old = new byte[body.length];
+        new Random(7).nextBytes(old);
+        Files.write(out.toPath(), old);
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(RangeDownloader.journalFor(out)), "UTF-8")) {
+            w.write("mhpart1 " + body.length + " " + CHUNK + " " + validator + "\n");
+            for (int i = 0; i < 6; i++)
+                w.write(i + "\n");
+        }
+        return out;
+    }
+
+    @Test
+    public void aJournalWithoutAValidatorIsRestartedNotSpliced() throws Exception {
+        etag = null;
+        File out = staleDownload("-");
+
+        new RangeDownloader(3, CHUNK).download(url(), out, null);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertEquals(11, servedRanges.size());
+    }
+
+    @Test
+    public void aWeakEtagIsNotEnoughToResume() throws Exception {
+        etag = "W/\"v1\"";
+        File out = staleDownload("W/\"v1\"");
+
+        new RangeDownloader(3, CHUNK).download(url(), out, null);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertEquals(11, servedRanges.size());
+    }
+
+    @Test
+    public void anEmptyRemoteFileIsACompleteDownload() throws Exception {
+        body = new byte[0];
+        File out = new File(tmp.getRoot(), "m.zip");
+        Files.write(out.toPath(), new byte[100]);
+        long[] last = { -1, -1 };
+
+        long n = new RangeDownloader(4, CHUNK).download(url(), out, (d, t) -> {
+            last[0] = d;
+            last[1] = t;
+        });
+
+        assertEquals(0, n);
+        assertEquals(0, out.length());
+        assertEquals(0, last[0]);
+        assertEquals(0, last[1]);
+        assertTrue(servedRanges.isEmpty());
+        assertFalse(RangeDownloader.journalFor(out).exists());
+    }
+}
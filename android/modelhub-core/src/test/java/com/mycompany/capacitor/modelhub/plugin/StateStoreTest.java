@@ -0,0 +1,78 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+public class StateStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static JSONObject rec(String version) throws Exception {
+        return new JSONObject().put("installedVersion", version);
+    }
+
+    @Test
+    public void writesAreJournaledAndReplayedOnReload() throws Exception {
+        File root = tmp.getRoot();
+        StateStore s = new StateStore(root);
+        s.put("a", rec("1"));
+        s.put("b", rec("1"));
+        s.put("a", rec("2"));
+        s.remove("b");
+
+        assertFalse(new File(root, StateStore.STATE_FILE_NAME).exists());
+        assertTrue(new File(root, StateStore.JOURNAL_FILE_NAME).exists());
+
+        // 模拟崩溃留下的半行
+        try (OutputStream os = new FileOutputStream(new File(root, StateStore.JOURNAL_FILE_NAME), true)) {
+            os.write("{\"k\":\"c\",\"v\":{\"inst".getBytes("UTF-8"));
+        }
+
+        StateStore reloaded = new StateStore(root);
+        assertEquals("2", reloaded.get("a").getString("installedVersion"));
+        assertFalse(reloaded.has("b"));
+        assertFalse(reloaded.has("c"));
+        // 加载时已压实进 state.json
+        assertTrue(new File(root, StateStore.STATE_FILE_NAME).exists());
+        assertFalse(new File(root, StateStore.JOURNAL_FILE_NAME).exists());
+    }
+
+    @Test
+    public void flushCompactsIntoStateJson() throws Exception {
+        File root = tmp.getRoot();
+        StateStore s = new StateStore(root);
+        for (int i = 0; i < 10; i++)
+            s.put("m" + i, rec(String.valueOf(i)));
+        s.flush();
+
+        assertFalse(new File(root, StateStore.JOURNAL_FILE_NAME).exists());
+        String json = new String(java.nio.file.Files.readAllBytes(
+                new File(root, StateStore.STATE_FILE_NAME).toPath()), "UTF-8");
+        JSONObject all = new JSONObject(json);
+        assertEquals(10, all.length());
+        assertEquals("7", all.getJSONObject("m7").getString("installedVersion"));
+
+        s.put("m0", rec("x"));
+        assertEquals("x", new StateStore(root).get("m0").getString("installedVersion"));
+    }
+
+    @Test
+    public void readsLegacyStateJson() throws Exception {
+        File root = tmp.getRoot();
+        StateStore.writeAtomic(new File(root, StateStore.STATE_FILE_NAME),
+                "{\"k1\":{\"installedVersion\":\"3\",\"unpackTo\":\"k1\"}}");
+
+        StateStore s = new StateStore(root);
+        assertEquals("3", s.get("k1").getString("installedVersion"));
+        assertEquals(1, s.snapshot().size());
+    }
+}
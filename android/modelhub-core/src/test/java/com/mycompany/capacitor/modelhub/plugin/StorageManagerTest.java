@@ -0,0 +1,268 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class StorageManagerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void write(File f, int size) throws Exception {
+        f.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(f)) {
+            os.write(new byte[size]);
+        }
+    }
+
+    private static void install(File root, StateStore state, String key, int size, long lastAccess, boolean pinned)
+            throws Exception {
+        write(new File(root, "m/" + key + "/w.bin"), size);
+        state.put(key, new JSONObject()
+                .put("unpackTo", "m/" + key)
+                .put("usage", size)
+                .put("lastAccess", lastAccess)
+                .put("pinned", pinned));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUnpinnedIdleModels() throws Exception {
+        File root = tmp.getRoot();
+        StateStore state = new StateStore(root);
+        Set<String> busy = new HashSet<>();
+        StorageManager sm = new StorageManager(root, state, null, 1000, 0, busy::contains);
+
+        install(root, state, "oldest", 300, 1, false);
+        install(root, state, "pinned", 300, 2, true);
+        install(root, state, "busy", 100, 3, false);
+        install(root, state, "recent", 200, 4, false);
+        busy.add("busy");
+        assertEquals(900, sm.usedBytes());
+
+        List<String> evicted = new ArrayList<>();
+        assertTrue(sm.ensureRoom(400, "new", evicted));
+        assertEquals(1, evicted.size());
+        assertEquals("oldest", evicted.get(0));
+        assertFalse(state.has("oldest"));
+        assertFalse(new File(root, "m/oldest").exists());
+
+        // 只剩 pinned / busy 可占，再大也腾不出来
+        evicted.clear();
+        assertFalse(sm.ensureRoom(700, "new", evicted));
+        assertEquals(1, evicted.size());
+        assertEquals("recent", evicted.get(0));
+        assertTrue(state.has("pinned"));
+        assertTrue(state.has("busy"));
+
+        // 装同一个 key 时，它自己的旧占用不算
+        assertTrue(sm.ensureRoom(700, "pinned", null));
+    }
+
+    @Test
+    public void evictionClaimsEachKeyAndSkipsOnesOpenedSinceTheCheck() throws Exception {
+        File root = tmp.getRoot();
+        StateStore state = new StateStore(root);
+        ModelHandle.Registry handles = new ModelHandle.Registry();
+        boolean[] acquiredDuringRemove = { true };
+        StorageManager sm = new StorageManager(root, state, null, 1000, 0, new StorageManager.Busy() {
+            // 模拟检查时还没人打开：筛选阶段一律放行
+            @Override
+            public boolean isBusy(String key) {
+                return false;
+            }
+
+            @Override
+            public boolean beginRemove(String key) {
+                try {
+                    handles.beginReplace(key);
+                } catch (IOException e) {
+                    return false;
+                }
+                try {
+                    handles.acquire(key);
+                } catch (IOException e) {
+                    acquiredDuringRemove[0] = false;
+                }
+                return true;
+            }
+
+            @Override
+            public void endRemove(String key) {
+                handles.endReplace(key);
+            }
+        });
+        install(root, state, "opened", 400, 1, false);
+        install(root, state, "idle", 400, 2, false);
+        handles.acquire("opened"); // 检查之后、删除之前打开的
+
+        List<String> evicted = new ArrayList<>();
+        assertTrue(sm.ensureRoom(500, "new", evicted));
+        assertEquals(1, evicted.size());
+        assertEquals("idle", evicted.get(0));
+        assertTrue(state.has("opened"));
+        assertTrue(new File(root, "m/opened/w.bin").isFile());
+        // 删除期间 open() 拿不到 handle，删完放开
+        assertFalse(acquiredDuringRemove[0]);
+        handles.acquire("idle");
+    }
+
+    @Test
+    public void removeDeletesTreeRecordAndTmpLeftovers() throws Exception {
+        File root = tmp.getRoot();
+        StateStore state = new StateStore(root);
+        StorageManager sm = new StorageManager(root, state, null, 0, 0, k -> false);
+        install(root, state, "a", 500, 1, false);
+        write(new File(root, "_tmp/a.zip"), 50);
+        write(new File(root, "_tmp/unpack_a/x"), 10);
+
+        assertEquals(560, sm.remove("a"));
+        assertFalse(state.has("a"));
+        assertFalse(new File(root, "m/a").exists());
+        assertFalse(new File(root, "_tmp/a.zip").exists());
+        assertFalse(new File(root, "_tmp/unpack_a").exists());
+        assertTrue(new File(root, "m").isDirectory());
+    }
+
+    @Test
+    public void gcKeepsResumableDownloadsOnly() throws Exception {
+        File root = tmp.getRoot();
+        StateStore state = new StateStore(root);
+        Set<String> busy = new HashSet<>();
+        busy.add("running");
+        StorageManager sm = new StorageManager(root, state, null, 0, 0, busy::contains);
+
+        write(new File(root, "_tmp/resumable.zip"), 100);
+        write(new File(root, "_tmp/resumable.zip.part"), 10);
+        write(new File(root, "_tmp/finished.zip"), 100);
+        write(new File(root, "_tmp/unpack_crashed/a.bin"), 100);
+        write(new File(root, "_tmp/old_crashed/a.bin"), 100);
+        write(new File(root, "_tmp/delta_staged/" + DeltaUpdater.STAGE_MARKER), 1);
+        write(new File(root, "_tmp/unpack_running/a.bin"), 100);
+        File stale = new File(root, "_tmp/stale.zip.part");
+        write(stale, 10);
+        write(new File(root, "_tmp/stale.zip"), 100);
+        assertTrue(stale.setLastModified(System.currentTimeMillis() - StorageManager.TMP_MAX_AGE_MS - 1000));
+
+        assertEquals(100 + 100 + 100 + 10 + 100, sm.gc());
+        assertTrue(new File(root, "_tmp/resumable.zip").exists());
+        assertTrue(new File(root, "_tmp/resumable.zip.part").exists());
+        assertTrue(new File(root, "_tmp/delta_staged").exists());
+        assertTrue(new File(root, "_tmp/unpack_running").exists());
+        assertFalse(new File(root, "_tmp/finished.zip").exists());
+        assertFalse(new File(root, "_tmp/unpack_crashed").exists());
+        assertFalse(new File(root, "_tmp/old_crashed").exists());
+        assertFalse(stale.exists());
+        assertFalse(new File(root, "_tmp/stale.zip").exists());
+    }
+
+    @Test
+    public void gcLeavesTmpAloneForAnInstallThatStartedAfterTheBusyCheck() throws Exception {
+        File root = tmp.getRoot();
+        StateStore state = new StateStore(root);
+        List<String> claimed = new ArrayList<>();
+        StorageManager sm = new StorageManager(root, state, null, 0, 0, new StorageManager.Busy() {
+            // 只看 isBusy 的话两个都是空闲的
+            @Override
+            public boolean isBusy(String key) {
+                return false;
+            }
+
+            // 调度器锁里再看一次：racing 刚被调度
+            @Override
+            public boolean whileIdle(String key, Runnable action) {
+                claimed.add(key);
+                if (key.equals("racing"))
+                    return false;
+                action.run();
+                return true;
+            }
+        });
+        write(new File(root, "_tmp/unpack_racing/a.bin"), 100);
+        write(new File(root, "_tmp/unpack_idle/a.bin"), 100);
+
+        assertEquals(100, sm.gc());
+        assertTrue(claimed.contains("racing"));
+        assertTrue(claimed.contains("idle"));
+        assertTrue(new File(root, "_tmp/unpack_racing/a.bin").isFile());
+        assertFalse(new File(root, "_tmp/unpack_idle").exists());
+        String[] trash = new File(root, StorageManager.TRASH_DIR).list();
+        assertTrue(trash == null || trash.length == 0);
+    }
+
+    @Test
+    public void gcEmptiesTrashLeftByAnEarlierProcess() throws Exception {
+        File root = tmp.getRoot();
+        write(new File(root, StorageManager.TRASH_DIR + "/0-1-m_old/w.bin"), 300);
+        write(new File(root, StorageManager.TRASH_DIR + "/0-2-old.zip"), 20);
+        StorageManager sm = new StorageManager(root, new StateStore(root), null, 0, 0, k -> false);
+
+        assertEquals(320, sm.gc());
+        assertEquals(0, new File(root, StorageManager.TRASH_DIR).list().length);
+    }
+
+    @Test
+    public void evictionDetachesUnderTheLockAndDeletesAfterReleasingIt() throws Exception {
+        File root = tmp.getRoot();
+        StateStore state = new StateStore(root);
+        StorageManager[] self = { null };
+        boolean[] detached = { false };
+        boolean[] lockedAtEnd = { false };
+        self[0] = new StorageManager(root, state, null, 1000, 0, new StorageManager.Busy() {
+            @Override
+            public boolean isBusy(String key) {
+                return false;
+            }
+
+            @Override
+            public void endRemove(String key) {
+                // 放开 key 之前：目录已挪走、记录已删，但树还在 _trash 里没删
+                detached[0] = !new File(root, "m/" + key).exists() && !state.has(key)
+                        && new File(root, StorageManager.TRASH_DIR).list().length == 1;
+                lockedAtEnd[0] = Thread.holdsLock(self[0]);
+            }
+        });
+        install(root, state, "idle", 800, 1, false);
+
+        List<String> evicted = new ArrayList<>();
+        assertTrue(self[0].ensureRoom(500, "new", evicted));
+        assertEquals("idle", evicted.get(0));
+        assertTrue(detached[0]);
+        assertTrue(lockedAtEnd[0]);
+        assertEquals(0, new File(root, StorageManager.TRASH_DIR).list().length);
+        assertEquals(0, self[0].usedBytes());
+    }
+
+    @Test
+    public void reservationsStackAndFailFastWhenDiskIsShort() throws Exception {
+        File root = tmp.getRoot();
+        StorageManager sm = new StorageManager(root, new StateStore(root), null, 0, 0, k -> false);
+        long free = root.getUsableSpace();
+
+        sm.reserve("a", free / 2);
+        // 同一 key 重新预留是替换，不是累加
+        sm.reserve("a", free / 2);
+        assertEquals(free / 2, sm.reservedBytes());
+        try {
+            sm.reserve("b", free);
+            fail("expected INSUFFICIENT_STORAGE");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("INSUFFICIENT_STORAGE"));
+        }
+        sm.release("a");
+        sm.reserve("b", free / 4);
+        assertEquals(free / 4, sm.reservedBytes());
+    }
+}
@@ -0,0 +1,172 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Single-pass installs: {@link StreamingZipInstaller} on its own, and {@code installMode:
+ * "streaming"} through {@link ModelInstaller} over an in-memory transport.
+ */
+public class StreamingZipInstallerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] zip(String... namesAndContents) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zos.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zos.write(namesAndContents[i + 1].getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static String sha(byte[] b) throws Exception {
+        return Hashes.toHex(MessageDigest.getInstance("SHA-256").digest(b));
+    }
+
+    private static String read(File f) throws Exception {
+        return new String(Files.readAllBytes(f.toPath()), "UTF-8");
+    }
+
+    @Test
+    public void entriesLandAsTheyStreamAndTheWholeSourceIsHashed() throws Exception {
+        byte[] weights = new byte[300 * 1024];
+        new Random(1).nextBytes(weights);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            zos.putNextEntry(new ZipEntry("config.json"));
+            zos.write("{}".getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("shards/w0.bin"));
+            zos.write(weights);
+            zos.closeEntry();
+        }
+        byte[] zip = bos.toByteArray();
+        File out = tmp.newFolder("out");
+        long[] lastRead = { 0 };
+
+        StreamingZipInstaller.Result r = StreamingZipInstaller.install(new ByteArrayInputStream(zip), out, null,
+                new LocalFsRoot(tmp.getRoot()), read -> lastRead[0] = read);
+
+        assertEquals(2, r.entries);
+        assertEquals("{}", read(new File(out, "config.json")));
+        assertArrayEquals(weights, Files.readAllBytes(new File(out, "shards/w0.bin").toPath()));
+        // central directory 也读进了摘要：和整包的 sha256 一致
+        assertEquals(sha(zip), Hashes.toHex(r.digest));
+        assertEquals(zip.length, r.bytesRead);
+        assertEquals(zip.length, lastRead[0]);
+    }
+
+    @Test
+    public void entriesEscapingTheTargetAreRejected() throws Exception {
+        byte[] zip = zip("ok.txt", "fine", "../evil.txt", "escaped");
+        File out = tmp.newFolder("out");
+        try {
+            StreamingZipInstaller.install(new ByteArrayInputStream(zip), out, null, new LocalFsRoot(tmp.getRoot()),
+                    null);
+            fail("expected UNPACK_INVALID");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("UNPACK_INVALID"));
+        }
+        assertFalse(new File(tmp.getRoot(), "evil.txt").exists());
+    }
+
+    @Test
+    public void aStreamingDownloadIsReadOnceAndPromotedOnlyWithAMatchingSha() throws Exception {
+        byte[] zip = zip("w0.bin", "weights v1 (16 bytes or more)");
+        AtomicInteger bodyGets = new AtomicInteger();
+        // 不支持 Range 的内存服务端：每个请求都回整包
+        HttpTransport mem = (url, range) -> {
+            if (range == null)
+                bodyGets.incrementAndGet();
+            return new HttpTransport.Response() {
+                @Override
+                public int code() {
+                    return 200;
+                }
+
+                @Override
+                public String header(String name) {
+                    return null;
+                }
+
+                @Override
+                public long contentLength() {
+                    return zip.length;
+                }
+
+                @Override
+                public InputStream body() {
+                    return new ByteArrayInputStream(zip);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        };
+        File root = tmp.newFolder("models");
+        ModelInstaller mi = new ModelInstaller(new LocalFsRoot(root), new DirectoryAssetSource(tmp.newFolder("assets")),
+                mem, (key, phase, downloaded, total, progress, message) -> {
+                }, new ModelInstaller.Options());
+
+        JSONObject item = new JSONObject()
+                .put("key", "s")
+                .put("unpackTo", "m/s")
+                .put("remoteUrl", "mem://s.zip")
+                .put("sha256", "00" + sha(zip).substring(2))
+                .put("installMode", "streaming")
+                .put("checkFiles", new JSONArray().put("w0.bin"));
+        ModelInstaller.Outcome bad = ensure(mi, item);
+        assertEquals("SHA256_MISMATCH", bad.code);
+        // 摘要对不上：解出来的东西不 promote，也没落过临时 zip
+        assertFalse(new File(root, "m/s").exists());
+        assertFalse(new File(root, "_tmp/unpack_s").exists());
+        assertFalse(new File(root, "_tmp/s.zip").exists());
+
+        bodyGets.set(0);
+        ModelInstaller.Outcome ok = ensure(mi, item.put("sha256", sha(zip)));
+        assertNull(String.valueOf(ok.error), ok.error);
+        assertEquals("weights v1 (16 bytes or more)", read(new File(root, "m/s/w0.bin")));
+        assertEquals(1, bodyGets.get());
+        assertFalse(new File(root, "_tmp/s.zip").exists());
+        mi.shutdown();
+    }
+
+    private static ModelInstaller.Outcome ensure(ModelInstaller mi, JSONObject item) throws Exception {
+        List<ModelInstaller.Outcome> box = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        mi.ensure(Collections.singletonList(item), "downloadOnly", "foreground", outs -> {
+            box.addAll(outs);
+            latch.countDown();
+        });
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        return box.get(0);
+    }
+}
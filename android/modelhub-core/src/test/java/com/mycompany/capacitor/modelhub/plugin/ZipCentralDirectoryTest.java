@@ -0,0 +1,115 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import static org.junit.Assert.*;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ZipCentralDirectoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File buildZip(String name, boolean encrypt, String comment) throws Exception {
+        File zip = new File(tmp.getRoot(), name);
+        ZipFile zf = new ZipFile(zip, "pw".toCharArray());
+        Random rnd = new Random(7);
+        int[] sizes = { 200_000, 0, 3, 90_000 };
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            rnd.nextBytes(data);
+            Arrays.fill(data, 0, data.length / 2, (byte) 1);
+            ZipParameters p = new ZipParameters();
+            p.setFileNameInZip("w/f" + i + ".bin");
+            p.setCompressionMethod(i == 3 ? CompressionMethod.STORE : CompressionMethod.DEFLATE);
+            if (encrypt) {
+                p.setEncryptFiles(true);
+                p.setEncryptionMethod(EncryptionMethod.AES);
+            }
+            zf.addStream(new ByteArrayInputStream(data), p);
+        }
+        ZipParameters dir = new ZipParameters();
+        dir.setFileNameInZip("empty/");
+        zf.addStream(new ByteArrayInputStream(new byte[0]), dir);
+        if (comment != null)
+            zf.setComment(comment);
+        zf.close();
+        return zip;
+    }
+
+    private static ZipCentralDirectory read(File zip, long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(zip, "r")) {
+            return ZipCentralDirectory.read(ZipCentralDirectory.of(raf.getChannel(), offset, raf.length() - offset));
+        }
+    }
+
+    private static void assertMatchesZip4j(File zip, ZipCentralDirectory cd) throws Exception {
+        long unc = 0;
+        long comp = 0;
+        int files = 0;
+        for (FileHeader h : new ZipFile(zip).getFileHeaders()) {
+            if (h.isDirectory())
+                continue;
+            files++;
+            unc += h.getUncompressedSize();
+            comp += h.getCompressedSize();
+        }
+        assertEquals(files, cd.entries);
+        assertEquals(unc, cd.uncompressed);
+        assertEquals(comp, cd.compressed);
+    }
+
+    @Test
+    public void totalsMatchZip4jHeaders() throws Exception {
+        File plain = buildZip("plain.zip", false, null);
+        ZipCentralDirectory cd = read(plain, 0);
+        assertEquals(4, cd.entries);
+        assertEquals(200_000 + 3 + 90_000, cd.uncompressed);
+        assertMatchesZip4j(plain, cd);
+
+        File aes = buildZip("aes.zip", true, "a trailing comment");
+        assertMatchesZip4j(aes, read(aes, 0));
+    }
+
+    @Test
+    public void readsZipEmbeddedAtAnOffset() throws Exception {
+        // 模拟 APK 里未压缩的 asset：zip 只是大文件里的一段
+        File zip = buildZip("inner.zip", false, null);
+        File outer = new File(tmp.getRoot(), "outer.bin");
+        try (OutputStream os = new FileOutputStream(outer)) {
+            os.write(new byte[12345]);
+            os.write(Files.readAllBytes(zip.toPath()));
+        }
+        assertEquals(read(zip, 0).uncompressed, read(outer, 12345).uncompressed);
+    }
+
+    @Test
+    public void rejectsNonZip() throws Exception {
+        File junk = tmp.newFile("junk.zip");
+        try (OutputStream os = new FileOutputStream(junk)) {
+            os.write(new byte[4096]);
+        }
+        try {
+            read(junk, 0);
+            fail("expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link AssetSource} over {@code assets/models/<key>.zip}. Uncompressed assets are read straight
+ * out of the APK through {@code openFd}; compressed ones only as an {@code AssetManager} stream.
+ */
+final class AndroidAssetSource implements AssetSource {
+
+    private final AssetManager am;
+    private volatile AssetIndex index;
+
+    AndroidAssetSource(AssetManager am) {
+        this.am = am;
+    }
+
+    /** Lists the assets now instead of on first use. */
+    void warmUp() {
+        index();
+    }
+
+    @Override
+    public long size(String key) {
+        AssetIndex.Entry e = index().get(key);
+        return e == null ? -1L : e.size;
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return am.open(AssetIndex.DIR + "/" + key + ".zip", AssetManager.ACCESS_STREAMING);
+    }
+
+    @Override
+    public Region openRegion(String key) throws IOException {
+        AssetIndex.Entry e = index().get(key);
+        if (e == null || !e.stored)
+            return null;
+        AssetFileDescriptor afd = am.openFd(e.assetPath());
+        FileInputStream apk;
+        try {
+            apk = new FileInputStream(afd.getFileDescriptor());
+        } catch (RuntimeException ex) {
+            afd.close();
+            throw ex;
+        }
+        return new Region(apk.getChannel(), afd.getStartOffset(), afd.getLength(), () -> {
+            try {
+                apk.close();
+            } finally {
+                afd.close();
+            }
+        });
+    }
+
+    private AssetIndex index() {
+        AssetIndex idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                if (index == null)
+                    index = AssetIndex.build(am);
+                idx = index;
+            }
+        }
+        return idx;
+    }
+}
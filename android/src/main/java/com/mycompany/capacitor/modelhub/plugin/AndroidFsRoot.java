@@ -0,0 +1,47 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * {@link FsRoot} backed by {@code android.system.Os}: {@code link(2)} works on every API level
+ * (java.nio.file only from 26) and {@code posix_fallocate} reserves real blocks, so ENOSPC shows up
+ * before the first write.
+ */
+final class AndroidFsRoot extends LocalFsRoot {
+
+    // ENOSPC
+    private static final int ERRNO_NOSPC = 28;
+
+    AndroidFsRoot(File dir) {
+        super(dir);
+    }
+
+    @Override
+    public boolean link(File src, File dst) {
+        try {
+            Os.link(src.getAbsolutePath(), dst.getAbsolutePath());
+            return true;
+        } catch (Throwable ignored) {
+            // 本地 JVM 单测里 Os 只是桩
+        }
+        return super.link(src, dst);
+    }
+
+    @Override
+    public void allocate(RandomAccessFile raf, long len) throws IOException {
+        try {
+            Os.posix_fallocate(raf.getFD(), 0, len);
+        } catch (ErrnoException e) {
+            if (e.errno == ERRNO_NOSPC)
+                throw new IOException("INSUFFICIENT_STORAGE needed=" + len, e);
+            // EOPNOTSUPP 等：调用方退回 setLength
+        } catch (Throwable ignored) {
+            // 本地 JVM 单测里 Os 只是桩
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of {@code assets/models/*.zip}, built once from {@link AssetManager#list}. Each entry
+ * records its size and whether it is stored uncompressed in the APK ({@code openFd} works),
+ * so lookups never open an asset stream again.
+ */
+final class AssetIndex {
+
+    static final String DIR = "models";
+
+    static final class Entry {
+        final String key;
+        final long size;
+        final boolean stored; // 未压缩，可 openFd 直接读 APK
+
+        Entry(String key, long size, boolean stored) {
+            this.key = key;
+            this.size = size;
+            this.stored = stored;
+        }
+
+        String assetPath() {
+            return DIR + "/" + key + ".zip";
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private AssetIndex(Map<String, Entry> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    static AssetIndex build(AssetManager am) {
+        Map<String, Entry> map = new HashMap<>();
+        String[] names;
+        try {
+            names = am.list(DIR);
+        } catch (IOException e) {
+            names = null;
+        }
+        if (names != null) {
+            for (String name : names) {
+                if (!name.endsWith(".zip"))
+                    continue;
+                String key = name.substring(0, name.length() - ".zip".length());
+                Entry e = probe(am, key, DIR + "/" + name);
+                if (e != null)
+                    map.put(key, e);
+            }
+        }
+        return new AssetIndex(map);
+    }
+
+    private static Entry probe(AssetManager am, String key, String path) {
+        try (AssetFileDescriptor afd = am.openFd(path)) {
+            return new Entry(key, afd.getLength(), true);
+        } catch (IOException compressed) {
+            // 压缩存储的 asset 打不开 fd，available() 给的是解压后长度
+            try (InputStream in = am.open(path, AssetManager.ACCESS_UNKNOWN)) {
+                return new Entry(key, in.available(), false);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    Entry get(String key) {
+        return entries.get(key);
+    }
+
+    boolean has(String key) {
+        return entries.containsKey(key);
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,115 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link KeyProvider} backed by the Android Keystore. Each model gets a random AES-256 data key,
+ * kept in {@code _keys/} wrapped (AES-GCM) by one non-exportable Keystore key. Keystore ciphers
+ * go through a system service on every call, far too slow for gigabytes of weights, so the
+ * Keystore only unwraps the data key, once per process; bulk crypto runs in-process.
+ */
+final class KeystoreKeyProvider implements KeyProvider {
+
+    static final String DIR = "_keys";
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String ALIAS = "modelhub-kek";
+
+    private final File dir;
+    private final Map<String, SecretKey> cache = new HashMap<>();
+
+    KeystoreKeyProvider(File root) {
+        dir = new File(root, DIR);
+    }
+
+    @Override
+    public synchronized SecretKey key(String modelKey, boolean create) throws IOException {
+        SecretKey k = cache.get(modelKey);
+        if (k != null)
+            return k;
+        File f = fileFor(modelKey);
+        try {
+            if (f.isFile()) {
+                k = unwrap(StateStore.readText(f).trim());
+            } else if (create) {
+                KeyGenerator g = KeyGenerator.getInstance("AES");
+                g.init(256);
+                k = g.generateKey();
+                StateStore.writeAtomic(f, wrap(k));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("ENCRYPTION_UNAVAILABLE " + e.getMessage(), e);
+        }
+        if (k != null)
+            cache.put(modelKey, k);
+        return k;
+    }
+
+    @Override
+    public synchronized void delete(String modelKey) {
+        cache.remove(modelKey);
+        // noinspection ResultOfMethodCallIgnored
+        fileFor(modelKey).delete();
+    }
+
+    // ===================== Internals =====================
+
+    // key 可能带任意字符，文件名用它的 sha256
+    private File fileFor(String modelKey) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(modelKey.getBytes("UTF-8"));
+            return new File(dir, Hashes.toHex(h) + ".key");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SecretKey kek() throws Exception {
+        KeyStore ks = KeyStore.getInstance(KEYSTORE);
+        ks.load(null);
+        if (!ks.containsAlias(ALIAS)) {
+            KeyGenerator g = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+            g.init(new KeyGenParameterSpec.Builder(ALIAS,
+                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .setKeySize(256)
+                    .build());
+            return g.generateKey();
+        }
+        return (SecretKey) ks.getKey(ALIAS, null);
+    }
+
+    // 文件内容：hex(iv) ":" hex(密文)；iv 由 Keystore 生成
+    private static String wrap(SecretKey k) throws Exception {
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.ENCRYPT_MODE, kek());
+        byte[] ct = c.doFinal(k.getEncoded());
+        return Hashes.toHex(c.getIV()) + ":" + Hashes.toHex(ct);
+    }
+
+    private static SecretKey unwrap(String s) throws Exception {
+        int i = s.indexOf(':');
+        if (i <= 0)
+            throw new IOException("ENCRYPTION_KEY_MISSING bad key file");
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.DECRYPT_MODE, kek(), new GCMParameterSpec(128, Hashes.fromHex(s.substring(0, i))));
+        return new SecretKeySpec(c.doFinal(Hashes.fromHex(s.substring(i + 1))), "AES");
+    }
+}
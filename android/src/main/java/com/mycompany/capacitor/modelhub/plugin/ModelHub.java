@@ -0,0 +1,162 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.content.Context;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.getcapacitor.CapConfig;
+import com.getcapacitor.PluginConfig;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide engine shared by the plugin and {@link ModelInstallWorker}: one {@link ModelInstaller}
+ * and one {@link JobStore} per process, so a foreground ensure and a background job for the same
+ * key join the same flight. Whichever side starts first builds it from the plugin config; the
+ * plugin attaches its progress sink while it is alive, the job store always listens.
+ *
+ * <p>Native inference code in the app gets at installed weights through {@link #open}.
+ */
+public final class ModelHub {
+
+    static final String PLUGIN_ID = "CapacitorModelhubPlugin";
+    static final String WORK_PREFIX = "modelhub-install:";
+    static final String WORK_TAG = "modelhub";
+
+    private static ModelInstaller installer;
+    private static JobStore jobs;
+    private static volatile ProgressSink ui;
+
+    private ModelHub() {
+    }
+
+    /** Called by the plugin with its own config; the first caller's config wins. */
+    static synchronized ModelInstaller installer(Context ctx, PluginConfig config) {
+        if (installer != null)
+            return installer;
+        Context app = ctx.getApplicationContext();
+        File root = new File(app.getFilesDir(), "models");
+        KeyProvider keys = new KeystoreKeyProvider(root);
+        JobStore js = new JobStore(root, keys);
+        AndroidAssetSource assets = new AndroidAssetSource(app.getAssets());
+        ModelInstaller.Options o = options(config);
+        o.keyProvider = keys;
+        installer = new ModelInstaller(
+                new AndroidFsRoot(root),
+                assets,
+                new UrlConnectionTransport(20000, 600000),
+                (key, phase, downloaded, total, progress, message) -> {
+                    js.onProgress(key, phase, downloaded, total, progress, message);
+                    ProgressSink s = ui;
+                    if (s != null)
+                        s.onProgress(key, phase, downloaded, total, progress, message);
+                },
+                o);
+        jobs = js;
+        assets.warmUp();
+        return installer;
+    }
+
+    /** Worker side: the process may have been started by WorkManager with no plugin loaded. */
+    static synchronized ModelInstaller installer(Context ctx) {
+        if (installer != null)
+            return installer;
+        return installer(ctx, CapConfig.loadDefault(ctx).getPluginConfiguration(PLUGIN_ID));
+    }
+
+    /**
+     * Read-only, ref-counted handle on an installed model (mmap / fd views, prefetch). The model is
+     * not evicted, removed or replaced until the handle is closed.
+     *
+     * @throws IOException {@code NOT_INSTALLED ...} if the key is not installed
+     */
+    public static ModelHandle open(Context ctx, String key) throws IOException {
+        return installer(ctx).open(key);
+    }
+
+    static synchronized JobStore jobs(Context ctx) {
+        installer(ctx);
+        return jobs;
+    }
+
+    static void attach(ProgressSink sink) {
+        ui = sink;
+    }
+
+    static void detach(ProgressSink sink) {
+        if (ui == sink)
+            ui = null;
+    }
+
+    static ModelInstaller.Options options(PluginConfig c) {
+        ModelInstaller.Options o = new ModelInstaller.Options();
+        o.downloadConcurrency = c.getInt("downloadConcurrency", o.downloadConcurrency);
+        o.verifyConcurrency = c.getInt("verifyConcurrency", o.verifyConcurrency);
+        o.unpackConcurrency = c.getInt("unpackConcurrency", o.unpackConcurrency);
+        o.metricsCapacity = c.getInt("metricsCapacity", o.metricsCapacity);
+        o.contentStore = c.getBoolean("contentStore", o.contentStore);
+        o.storageBudgetBytes = c.getInt("storageBudgetMb", 0) * 1024L * 1024L;
+        o.storageMarginBytes = c.getInt("storageMarginMb", 64) * 1024L * 1024L;
+        o.unpackThreads = c.getInt("unpackThreads", o.unpackThreads);
+        o.verifyThreads = c.getInt("verifyThreads", o.verifyThreads);
+        o.downloadConnections = c.getInt("downloadConnections", o.downloadConnections);
+        o.downloadChunkBytes = c.getInt("downloadChunkMb", 8) * 1024L * 1024L;
+        RetryPolicy d = RetryPolicy.defaults();
+        o.retry = new RetryPolicy(c.getInt("httpRetries", d.maxAttempts - 1) + 1,
+                c.getInt("httpRetryBaseMs", (int) d.baseDelayMs), c.getInt("httpRetryMaxMs", (int) d.maxDelayMs));
+        return o;
+    }
+
+    // ===================== Background jobs =====================
+
+    /**
+     * Records the job and hands it to WorkManager as unique work per key; an already queued or
+     * running job for the key is kept as is.
+     *
+     * @return the job's public view
+     */
+    static JSONObject enqueue(Context ctx, JSONObject item, String policy, boolean unmetered, boolean charging)
+            throws JSONException {
+        JobStore js = jobs(ctx);
+        String key = item.optString("key", "");
+        js.enqueue(item, policy);
+
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(unmetered ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                .setRequiresStorageNotLow(true)
+                .setRequiresCharging(charging)
+                .build();
+        OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(ModelInstallWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .setInputData(new Data.Builder().putString(ModelInstallWorker.KEY, key).build())
+                .addTag(WORK_TAG)
+                .build();
+        WorkManager.getInstance(ctx.getApplicationContext())
+                .enqueueUniqueWork(WORK_PREFIX + key, ExistingWorkPolicy.KEEP, req);
+        return js.view(key);
+    }
+
+    /** @return true if a queued or running job was cancelled */
+    static boolean cancelJob(Context ctx, String key) {
+        JobStore js = jobs(ctx);
+        JSONObject rec = js.get(key);
+        if (rec == null || !JobStore.active(rec))
+            return false;
+        js.cancelled(key);
+        // 运行中的 worker 会在 onStopped 里摘掉自己；前台同一 flight 的调用不受影响
+        WorkManager.getInstance(ctx.getApplicationContext()).cancelUniqueWork(WORK_PREFIX + key);
+        return true;
+    }
+}
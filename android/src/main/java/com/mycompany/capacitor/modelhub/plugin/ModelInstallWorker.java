@@ -0,0 +1,102 @@
+package com.mycompany.capacitor.modelhub.plugin;
+
+import android.content.Context;
+
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs one background install recorded in {@link JobStore}. The install itself goes through the
+ * shared {@link ModelInstaller} at background priority; a run that is stopped (constraints lost,
+ * process going away) or fails with a retryable code is retried by WorkManager and picks up from
+ * the last completed stage (download journal, stage marker). Stopping only detaches this worker
+ * from the install, so a foreground {@code ensureInstalled} sharing the same flight carries on.
+ */
+public final class ModelInstallWorker extends Worker {
+
+    static final String KEY = "key";
+    static final int MAX_ATTEMPTS = 5;
+
+    private volatile ModelInstaller.Ticket ticket;
+
+    public ModelInstallWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public Result doWork() {
+        String key = getInputData().getString(KEY);
+        if (key == null)
+            return Result.failure();
+        Context ctx = getApplicationContext();
+        JobStore jobs = ModelHub.jobs(ctx);
+        JSONObject rec = jobs.get(key);
+        if (rec == null || !JobStore.active(rec))
+            return Result.success(); // 已取消或已完成
+
+        JSONObject item;
+        try {
+            item = jobs.item(key);
+        } catch (IOException e) {
+            // 没有 KeyProvider、进程又换过：密码只能等调用方重新入队时带回来
+            jobs.failed(key, "SECRET_MISSING", e.getMessage(), null);
+            return Result.failure();
+        }
+        ModelInstaller installer = ModelHub.installer(ctx);
+        jobs.started(key, getRunAttemptCount() + 1);
+        String policy = rec.optString("policy", "bundleThenDownload");
+
+        List<ModelInstaller.Outcome> box = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        ticket = installer.ensure(Collections.singletonList(item), policy, "background", outs -> {
+            box.addAll(outs);
+            latch.countDown();
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            ticket.detach();
+            jobs.requeued(key, "CANCELLED", "interrupted");
+            return Result.retry();
+        }
+
+        ModelInstaller.Outcome out = box.get(0);
+        if (out.error == null) {
+            jobs.finished(key, out.result);
+            return Result.success();
+        }
+        if (isStopped() || "CANCELLED".equals(out.code)) {
+            // cancelJob 已经把记录标成 cancelled；这里只处理被系统叫停的情况
+            JSONObject cur = jobs.get(key);
+            if (cur != null && JobStore.active(cur)) {
+                jobs.requeued(key, out.code, "stopped");
+                return Result.retry();
+            }
+            return Result.failure();
+        }
+        if (JobStore.retryable(out.code) && getRunAttemptCount() + 1 < MAX_ATTEMPTS) {
+            jobs.requeued(key, out.code, out.error.getMessage());
+            return Result.retry();
+        }
+        jobs.failed(key, out.code, out.error.getMessage(), out.result);
+        return Result.failure();
+    }
+
+    @Override
+    public void onStopped() {
+        super.onStopped();
+        // 只摘掉本 worker：前台合并到同一 flight 的调用照常装完；没人等时才中断，下次运行从 journal / 阶段标记续上
+        ModelInstaller.Ticket t = ticket;
+        if (t != null)
+            t.detach();
+    }
+}
@@ -7,16 +7,94 @@ export type ModelItem = {
   password?: string;     // AES zip password
   sha256?: string;       // NOTE: Java expects field name "sha256"
   remoteUrl?: string;
+  mirrors?: string[]; // 与 remoteUrl 同一文件的备用地址，按测得延迟选，失败自动换下一个
   version?: string;
+  installMode?: InstallMode; // default "staged"
+  deltaManifestUrl?: string; // 已装版本与 version 不同时按此清单增量更新，失败退回 remoteUrl 整包
+  pinned?: boolean; // 不参与 LRU 淘汰
+  installSize?: number; // 预估安装后字节数；配置了 storageBudgetMb 时用来提前腾空间，读不到 zip 目录时也用于磁盘空间预检
+  integrity?: IntegrityManifest; // 安装时逐文件校验并保存，之后可 verify()
+  integrityUrl?: string; // 同上，从远端取（bundleOnly 时忽略）
+  layout?: ModelLayout; // 默认 "loose"；下次安装时生效
+  // 解压时直接按 64 KiB 分块 AES-GCM 加密写盘，磁盘上不落明文；密钥由 Android Keystore 包裹保存。
+  // 原生代码经 ModelHub.open(ctx, key).reader(path) 按需解密读取；不能与 layout "packed" 同用，不走增量更新
+  encryptAtRest?: boolean;
 };
 
+// loose: 解压后的目录树；packed: 装完再打成一个 model.mhpk（头部索引 name -> offset/length/sha256，
+// 每项按 16 KiB 对齐，可整体 mmap），check 只读一次头部。packed 不走增量更新，verify 用容器自带的哈希
+export type ModelLayout = "loose" | "packed";
+
+// 逐文件 sha256，或按 chunkSize（默认 4 MiB）切块的 sha256 列表；至少给一种。只给 sha256 时安装校验会补算分块哈希
+export type IntegrityManifest = {
+  chunkSize?: number;
+  files: { path: string; size: number; sha256?: string; chunks?: string[] }[];
+};
+
+export type VerifyResult = {
+  key: string;
+  mode: "sample" | "full";
+  ok: boolean;
+  corrupt: string[]; // 缺失、大小不对或哈希不符的路径；非空时记录标为 corrupt，下次 ensureInstalled 重装
+  files: number;
+  checkedBytes: number;
+  elapsedMs: number;
+};
+
+// 增量更新清单：逐文件 sha256；url 缺省为 baseUrl + path
+export type DeltaManifest = {
+  version?: string;
+  baseUrl?: string;
+  files: { path: string; size: number; sha256: string; url?: string }[];
+};
+
+// 仅影响远程下载。staged: zip 先落 _tmp 再校验/解压；streaming: 边下边校验边解压，不落临时 zip
+// bundle 始终直接从 APK 单遍安装
+export type InstallMode = "staged" | "streaming";
+
 export type EnsurePolicy = "bundleOnly" | "downloadOnly" | "bundleThenDownload";
 
+// foreground 插队到后台预取之前
+export type InstallPriority = "foreground" | "background";
+
+export type InstallJobState = "queued" | "running" | "succeeded" | "failed" | "cancelled";
+
+// 后台安装任务；进程被杀后下次启动仍能查到。running 时带最近一次的字节进度
+export type InstallJob = {
+  key: string;
+  state: InstallJobState;
+  phase?: ProgressEvent["phase"]; // 最近进入的阶段；重跑时从最后完成的阶段续
+  downloaded?: number;
+  total?: number;
+  progress?: number;
+  attempts: number;
+  code?: string; // 失败 / 等待重试时的错误码
+  message?: string;
+  result?: EnsureResult; // succeeded / failed 后
+  createdAt: number; // epoch ms
+  updatedAt: number;
+};
+
+export type PoolStats = {
+  threads: number;
+  queued: number;
+  active: number;
+  completed: number;
+};
+
+export type QueueStats = {
+  inflight: number; // 已调度、尚未完成的安装
+  queued: number;
+  active: number;
+  pools: { download: PoolStats; verify: PoolStats; unpack: PoolStats; maintenance: PoolStats }; // maintenance：verify()/prefetch()，不计入上面的 queued/active
+};
+
 export type CheckResult = {
   key: string;
   status: "installed" | "missing" | "corrupt";
   installedPath: string;
   hasBundledZip: boolean;
+  bundledSize?: number; // assets/models/<key>.zip 的字节数
   state?: any;
 };
 
@@ -31,13 +109,51 @@ export type EnsureResult = {
   message?: string;
 
   hasBundledZip?: boolean;
-  usedSource?: "bundle" | "download" | "none";
+  usedSource?: "bundle" | "download" | "delta" | "none";
 
   sha256?: string;
   zipSize?: number;
   unpackTo?: string;
 
   state?: any;
+  metrics?: InstallMetrics;
+};
+
+export type PhaseMetrics = {
+  ms: number;
+  bytes: number;
+  mbps?: number; // bytes > 0 时才有
+};
+
+// 单次安装的分段耗时；phase 名与 ProgressEvent.phase 一致，没走到的阶段不出现
+export type InstallMetrics = {
+  key: string;
+  startedAt: number; // epoch ms
+  totalMs: number;
+  source: "bundle" | "download" | "delta" | "none";
+  streaming: boolean;
+  retries: number; // 分片下载的重试次数
+  copyDirFallback: boolean; // renameTo 失败退回整树拷贝
+  code?: string; // "installed" 或错误码（如 INSUFFICIENT_STORAGE、STORAGE_BUDGET_EXCEEDED）
+  phases: Partial<Record<"checking" | "copying" | "downloading" | "verifying" | "unpacking" | "finalizing", PhaseMetrics>>;
+};
+
+export type ModelUsage = {
+  key: string;
+  bytes: number;
+  lastAccess: number; // epoch ms
+  pinned: boolean;
+  unpackTo: string;
+  installedVersion?: string;
+};
+
+export type StorageUsage = {
+  usedBytes: number; // 各模型安装目录之和（content store 共享的文件按各自计）
+  budgetBytes: number; // 0 = 不限
+  tmpBytes: number; // _tmp 下的续传/暂存
+  storeBytes?: number; // 开启 contentStore 时
+  freeBytes: number; // 文件系统剩余
+  models: ModelUsage[];
 };
 
 export type ProgressEvent = {
@@ -57,18 +173,60 @@ export type ProgressEvent = {
   message?: string;
 };
 
+// 一帧（progressFps，默认 10）内所有在装模型的事件：每个 key 只留最新一条，done/error 一定送达且排在前面
+export type ProgressBatchEvent = {
+  events: ProgressEvent[];
+};
+
 export interface CapacitorModelhubPluginPlugin {
   echo(options: { value: string }): Promise<{ value: string }>;
   getRoot(): Promise<{ path: string }>;
   getPath(options: { unpackTo: string }): Promise<{ path: string }>;
 
-  check(options: { items: ModelItem[] }): Promise<{ results: CheckResult[] }>;
+  // deep: 逐个 stat checkFiles 并比对安装时记录的 fingerprint，有 integrity 清单时再抽查几块；默认只 stat 一次目录
+  check(options: { items: ModelItem[]; deep?: boolean }): Promise<{ results: CheckResult[]; elapsedMs?: number }>;
 
-  ensureInstalled(options: { item: ModelItem; policy: EnsurePolicy }): Promise<EnsureResult>;
-  ensureInstalledMany(options: { items: ModelItem[]; policy: EnsurePolicy }): Promise<{ results: EnsureResult[] }>;
+  ensureInstalled(options: { item: ModelItem; policy: EnsurePolicy; priority?: InstallPriority }): Promise<EnsureResult>;
+  ensureInstalledMany(options: {
+    items: ModelItem[];
+    policy: EnsurePolicy;
+    priority?: InstallPriority;
+  }): Promise<{ results: EnsureResult[] }>;
 
+  // 交给系统的后台任务队列（Android: WorkManager），App 退出或进程被杀后继续，恢复后从最后完成的阶段续；
+  // 同一 key 已有排队/运行中的任务时直接返回它。总是按 staged 安装。进度仍走 ModelsHubProgress(Batch)
+  ensureInstalledInBackground(options: {
+    item: ModelItem;
+    policy?: EnsurePolicy;
+    requiresUnmeteredNetwork?: boolean;
+    requiresCharging?: boolean;
+  }): Promise<InstallJob>;
+  // 下次启动时先查一遍，再挂 listener 接上进度；已结束的任务保留 7 天
+  getJobs(options?: { key?: string }): Promise<{ jobs: InstallJob[] }>;
+
+  // 同时取消该 key 的后台任务
+  cancel(options: { key: string }): Promise<{ key: string; cancelled: boolean }>;
+  getQueueStats(): Promise<QueueStats>;
+  // 最近 N 次安装（metricsCapacity，默认 50），旧的在前
+  getMetrics(options?: { clear?: boolean }): Promise<{ items: InstallMetrics[] }>;
+
+  // 安装中的 key 会以 BUSY 拒绝，原生侧有 ModelHandle 开着时以 IN_USE 拒绝（更新同理，以 IN_USE 失败）
+  remove(options: { key: string }): Promise<{ key: string; removed: boolean; freedBytes: number }>;
+  pin(options: { key: string; pinned?: boolean }): Promise<{ key: string; pinned: boolean }>;
+  getUsage(): Promise<StorageUsage>;
+  // 按安装时保存的 integrity 清单重新校验；sample（默认）抽查首尾和随机块，full 读全部
+  verify(options: { key: string; mode?: "sample" | "full" }): Promise<VerifyResult>;
+  // 首次推理前把 checkFiles（没有则全部文件）顺序读进 page cache；files 为相对安装目录的路径
+  // 原生侧用 ModelHub.open(context, key) 拿 ModelHandle（mmap / fd 视图，引用计数期间不会被驱逐或替换）
+  prefetch(options: { key: string; files?: string[] }): Promise<{ key: string; bytes: number; elapsedMs: number }>;
+
+  // 逐条事件，已按帧合并；新代码建议用 ModelsHubProgressBatch，一帧只过一次桥
   addListener(
     eventName: "ModelsHubProgress",
     listenerFunc: (event: ProgressEvent) => void
   ): Promise<{ remove: () => Promise<void> }>;
+  addListener(
+    eventName: "ModelsHubProgressBatch",
+    listenerFunc: (event: ProgressBatchEvent) => void
+  ): Promise<{ remove: () => Promise<void> }>;
 }
@@ -3,13 +3,21 @@ import type {
   CapacitorModelhubPluginPlugin,
   ModelItem,
   EnsurePolicy,
+  InstallPriority,
   CheckResult,
   EnsureResult,
   ProgressEvent,
+  ProgressBatchEvent,
+  QueueStats,
+  InstallMetrics,
+  InstallJob,
+  StorageUsage,
+  VerifyResult,
 } from "./definitions";
 
 export class CapacitorModelhubPluginWeb implements CapacitorModelhubPluginPlugin {
   private listeners: Array<(e: ProgressEvent) => void> = [];
+  private batchListeners: Array<(e: ProgressBatchEvent) => void> = [];
 
   async echo(options: { value: string }) {
     return { value: options.value };
@@ -25,7 +33,7 @@ export class CapacitorModelhubPluginWeb implements CapacitorModelhubPluginPlugin
     return { path: `${root}/${rel}` };
   }
 
-  async check(options: { items: ModelItem[] }): Promise<{ results: CheckResult[] }> {
+  async check(options: { items: ModelItem[]; deep?: boolean }): Promise<{ results: CheckResult[] }> {
     const items = Array.isArray(options.items) ? options.items : [];
     const root = (await this.getRoot()).path.replace(/\/+$/, "");
 
@@ -39,23 +47,100 @@ export class CapacitorModelhubPluginWeb implements CapacitorModelhubPluginPlugin
     };
   }
 
-  async ensureInstalled(_options: { item: ModelItem; policy: EnsurePolicy }): Promise<EnsureResult> {
+  async ensureInstalled(_options: {
+    item: ModelItem;
+    policy: EnsurePolicy;
+    priority?: InstallPriority;
+  }): Promise<EnsureResult> {
     throw new Error("CapacitorModelhubPlugin is not supported on Web");
   }
 
-  async ensureInstalledMany(_options: { items: ModelItem[]; policy: EnsurePolicy }): Promise<{ results: EnsureResult[] }> {
+  async ensureInstalledMany(_options: {
+    items: ModelItem[];
+    policy: EnsurePolicy;
+    priority?: InstallPriority;
+  }): Promise<{ results: EnsureResult[] }> {
     throw new Error("CapacitorModelhubPlugin is not supported on Web");
   }
 
-  async addListener(
+  async ensureInstalledInBackground(_options: {
+    item: ModelItem;
+    policy?: EnsurePolicy;
+    requiresUnmeteredNetwork?: boolean;
+    requiresCharging?: boolean;
+  }): Promise<InstallJob> {
+    throw new Error("CapacitorModelhubPlugin is not supported on Web");
+  }
+
+  async getJobs(_options?: { key?: string }): Promise<{ jobs: InstallJob[] }> {
+    return { jobs: [] };
+  }
+
+  async cancel(options: { key: string }) {
+    return { key: options.key, cancelled: false };
+  }
+
+  async getQueueStats(): Promise<QueueStats> {
+    const idle = { threads: 0, queued: 0, active: 0, completed: 0 };
+    return {
+      inflight: 0,
+      queued: 0,
+      active: 0,
+      pools: { download: idle, verify: idle, unpack: idle, maintenance: idle },
+    };
+  }
+
+  async getMetrics(_options?: { clear?: boolean }): Promise<{ items: InstallMetrics[] }> {
+    return { items: [] };
+  }
+
+  async remove(options: { key: string }): Promise<{ key: string; removed: boolean; freedBytes: number }> {
+    return { key: options.key, removed: false, freedBytes: 0 };
+  }
+
+  async pin(_options: { key: string; pinned?: boolean }): Promise<{ key: string; pinned: boolean }> {
+    throw new Error("CapacitorModelhubPlugin is not supported on Web");
+  }
+
+  async getUsage(): Promise<StorageUsage> {
+    return { usedBytes: 0, budgetBytes: 0, tmpBytes: 0, freeBytes: 0, models: [] };
+  }
+
+  async verify(_options: { key: string; mode?: "sample" | "full" }): Promise<VerifyResult> {
+    throw new Error("CapacitorModelhubPlugin is not supported on Web");
+  }
+
+  async prefetch(_options: { key: string; files?: string[] }): Promise<{ key: string; bytes: number; elapsedMs: number }> {
+    throw new Error("CapacitorModelhubPlugin is not supported on Web");
+  }
+
+  addListener(
     eventName: "ModelsHubProgress",
     listenerFunc: (event: ProgressEvent) => void
+  ): Promise<{ remove: () => Promise<void> }>;
+  addListener(
+    eventName: "ModelsHubProgressBatch",
+    listenerFunc: (event: ProgressBatchEvent) => void
+  ): Promise<{ remove: () => Promise<void> }>;
+  async addListener(
+    eventName: "ModelsHubProgress" | "ModelsHubProgressBatch",
+    listenerFunc: ((event: ProgressEvent) => void) | ((event: ProgressBatchEvent) => void)
   ): Promise<{ remove: () => Promise<void> }> {
+    if (eventName === "ModelsHubProgressBatch") {
+      const fn = listenerFunc as (event: ProgressBatchEvent) => void;
+      this.batchListeners.push(fn);
+      return {
+        remove: async () => {
+          this.batchListeners = this.batchListeners.filter((f) => f !== fn);
+        },
+      };
+    }
     if (eventName !== "ModelsHubProgress") return { remove: async () => void 0 };
-    this.listeners.push(listenerFunc);
+    const fn = listenerFunc as (event: ProgressEvent) => void;
+    this.listeners.push(fn);
     return {
       remove: async () => {
-        this.listeners = this.listeners.filter((fn) => fn !== listenerFunc);
+        this.listeners = this.listeners.filter((f) => f !== fn);
       },
     };
   }
@@ -64,5 +149,8 @@ export class CapacitorModelhubPluginWeb implements CapacitorModelhubPluginPlugin
     for (const fn of this.listeners) {
       try { fn(ev); } catch { /* ignore */ }
     }
+    for (const fn of this.batchListeners) {
+      try { fn({ events: [ev] }); } catch { /* ignore */ }
+    }
   }
 }